@@ -0,0 +1,50 @@
+package com.dezzmeister.png.jmh;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks. This takes the same arguments as JMH's own launcher, but writes the results as JSON to
+ * <code>jmh-result.json</code> unless another format or file is given with <code>-rf</code> or <code>-rff</code>, so that the results
+ * of two runs can be compared to find regressions. For example:
+ * <pre>
+ * java -jar png-java-jmh/target/benchmarks.jar Encoder -p size=1024 -rff encoder.json
+ * </pre>
+ * 
+ * @author Joe Desmond
+ */
+public class Benchmarks {
+	
+	public static void main(final String[] args) throws CommandLineOptionException, RunnerException, IOException {
+		final CommandLineOptions commandLine = new CommandLineOptions(args);
+		
+		if (commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return;
+		}
+		
+		if (commandLine.shouldList()) {
+			new Runner(commandLine).list();
+			return;
+		}
+		
+		final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		
+		if (!commandLine.getResult().hasValue()) {
+			options.result("jmh-result.json");
+		}
+		
+		new Runner(options.build()).run();
+	}
+}
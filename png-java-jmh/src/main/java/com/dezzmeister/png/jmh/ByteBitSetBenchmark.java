@@ -0,0 +1,68 @@
+package com.dezzmeister.png.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dezzmeister.png.data.BitPacker;
+import com.dezzmeister.png.data.ByteBitSet;
+
+/**
+ * Measures packing one row of samples at each bit depth, one sample at a time with {@link ByteBitSet#put(long, int, int)} and
+ * all at once with {@link BitPacker#pack(int[], int, int, int, byte[], int)}.
+ * 
+ * @author Joe Desmond
+ */
+@State(Scope.Benchmark)
+public class ByteBitSetBenchmark {
+	
+	@Param({"1", "2", "4", "8", "16"})
+	public int bitDepth;
+	
+	@Param({"256", "1024"})
+	public int samples;
+	
+	/**
+	 * Samples that fit in {@link #bitDepth} bits
+	 */
+	private int[] masked;
+	
+	private ByteBitSet set;
+	
+	private byte[] packed;
+	
+	@Setup
+	public void setup() {
+		final int[] noise = Corpus.NOISE.generate(samples, 1);
+		final int mask = (int) (0xFFFFFFFFL >>> (32 - bitDepth));
+		
+		masked = new int[samples];
+		
+		for (int i = 0; i < samples; i++) {
+			masked[i] = noise[i] & mask;
+		}
+		
+		set = new ByteBitSet((long) samples * bitDepth);
+		packed = new byte[(int) (((long) samples * bitDepth + 7) >>> 3)];
+	}
+	
+	@Benchmark
+	public long put() {
+		long bitIndex = 0;
+		
+		set.clear();
+		
+		for (final int sample : masked) {
+			bitIndex = set.put(bitIndex, sample, bitDepth);
+		}
+		
+		return bitIndex;
+	}
+	
+	@Benchmark
+	public int pack() {
+		return BitPacker.pack(masked, 0, masked.length, bitDepth, packed, 0);
+	}
+}
@@ -0,0 +1,53 @@
+package com.dezzmeister.png.jmh;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.dezzmeister.png.functions.CRC;
+
+/**
+ * Measures {@link CRC#crc(byte[])} with each CRC implementation on one RGBA image's worth of random bytes.
+ * 
+ * @author Joe Desmond
+ */
+@State(Scope.Benchmark)
+public class CRCBenchmark {
+	
+	@Param
+	public CRC.Implementation implementation;
+	
+	/**
+	 * Width and height of the image; the data is <code>size * size * 4</code> bytes
+	 */
+	@Param({"256", "1024"})
+	public int size;
+	
+	private byte[] bytes;
+	
+	private CRC.Implementation previous;
+	
+	@Setup
+	public void setup() {
+		bytes = new byte[size * size * 4];
+		new Random(size).nextBytes(bytes);
+		
+		previous = CRC.getImplementation();
+		CRC.setImplementation(implementation);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		CRC.setImplementation(previous);
+	}
+	
+	@Benchmark
+	public long crc() {
+		return CRC.crc(bytes);
+	}
+}
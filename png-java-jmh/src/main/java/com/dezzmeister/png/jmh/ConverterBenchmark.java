@@ -0,0 +1,52 @@
+package com.dezzmeister.png.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dezzmeister.png.chunks.meta.PNGData;
+import com.dezzmeister.png.color.ColorFormat;
+
+/**
+ * Measures each {@link ColorFormat} converter on every {@link Corpus} image. {@link #convert()} keeps the color type and bit depth of the
+ * color format, {@link #convertReduced()} also looks for the smallest color type, bit depth, or palette, and {@link #convertQuantized()}
+ * reduces the image to a palette of 256 colors.
+ * 
+ * @author Joe Desmond
+ */
+@State(Scope.Benchmark)
+public class ConverterBenchmark {
+	
+	@Param
+	public Corpus corpus;
+	
+	@Param({"256", "1024"})
+	public int size;
+	
+	@Param
+	public ColorFormat format;
+	
+	private int[] pixels;
+	
+	@Setup
+	public void setup() {
+		pixels = Corpus.toFormat(corpus.generate(size, size), format);
+	}
+	
+	@Benchmark
+	public PNGData convert() {
+		return format.convertToPNGFormat(pixels, size, size, false, false);
+	}
+	
+	@Benchmark
+	public PNGData convertReduced() {
+		return format.convertToPNGFormat(pixels, size, size, true, true);
+	}
+	
+	@Benchmark
+	public PNGData convertQuantized() {
+		return format.convertToPNGFormat(pixels, size, size, true, true, 256, false);
+	}
+}
@@ -0,0 +1,238 @@
+package com.dezzmeister.png.jmh;
+
+import java.util.Random;
+
+import com.dezzmeister.png.color.ColorFormat;
+
+/**
+ * Synthetic images used by the JMH benchmarks. Each kind of image stresses a different part of the encoder: gradients are easy to
+ * predict, noise cannot be filtered or compressed, screenshots have large flat areas and sharp edges, and photos are smooth with
+ * some noise. Images are generated from a fixed seed, so every run encodes the same pixels.
+ * 
+ * @author Joe Desmond
+ */
+public enum Corpus {
+	
+	/**
+	 * Smooth horizontal and vertical color ramps
+	 */
+	GRADIENT {
+		@Override
+		protected void fill(final int[] pixels, final int width, final int height, final Random random) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					final int red = x * 255 / width;
+					final int green = y * 255 / height;
+					final int blue = (x + y) * 255 / (width + height);
+					
+					pixels[x + y * width] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+				}
+			}
+		}
+	},
+	
+	/**
+	 * Random colors and alpha values
+	 */
+	NOISE {
+		@Override
+		protected void fill(final int[] pixels, final int width, final int height, final Random random) {
+			for (int i = 0; i < pixels.length; i++) {
+				pixels[i] = random.nextInt();
+			}
+		}
+	},
+	
+	/**
+	 * Flat windows with title bars and rows of dark, text-like glyphs on a light background
+	 */
+	SCREENSHOT {
+		@Override
+		protected void fill(final int[] pixels, final int width, final int height, final Random random) {
+			fillRect(pixels, width, 0, 0, width, height, 0xFF3A6EA5);
+			
+			final int windows = 2 + random.nextInt(3);
+			
+			for (int w = 0; w < windows; w++) {
+				final int left = random.nextInt(width / 2);
+				final int top = random.nextInt(height / 2);
+				final int right = Math.min(width, left + width / 3 + random.nextInt(width / 2));
+				final int bottom = Math.min(height, top + height / 3 + random.nextInt(height / 2));
+				
+				fillRect(pixels, width, left, top, right, bottom, 0xFFF0F0F0);
+				fillRect(pixels, width, left, top, right, Math.min(bottom, top + 20), 0xFF1F4E8C);
+				
+				for (int line = top + 28; line + 10 < bottom; line += 14) {
+					int x = left + 6;
+					
+					while (x + 6 < right - 6) {
+						final int glyphWidth = 3 + random.nextInt(4);
+						
+						if (random.nextInt(6) != 0) {
+							drawGlyph(pixels, width, x, line, glyphWidth, random);
+						}
+						
+						x += glyphWidth + 2;
+					}
+				}
+			}
+		}
+	},
+	
+	/**
+	 * Overlapping low-frequency waves with a small amount of noise, like a photograph
+	 */
+	PHOTO {
+		@Override
+		protected void fill(final int[] pixels, final int width, final int height, final Random random) {
+			final double[] frequencies = new double[6];
+			final double[] phases = new double[6];
+			
+			for (int i = 0; i < frequencies.length; i++) {
+				frequencies[i] = (0.5 + random.nextDouble() * 4) * Math.PI * 2;
+				phases[i] = random.nextDouble() * Math.PI * 2;
+			}
+			
+			for (int y = 0; y < height; y++) {
+				final double v = y / (double) height;
+				
+				for (int x = 0; x < width; x++) {
+					final double u = x / (double) width;
+					final int red = wave(u, v, frequencies, phases, 0) + random.nextInt(9) - 4;
+					final int green = wave(u, v, frequencies, phases, 2) + random.nextInt(9) - 4;
+					final int blue = wave(u, v, frequencies, phases, 4) + random.nextInt(9) - 4;
+					
+					pixels[x + y * width] = 0xFF000000 | (clamp(red) << 16) | (clamp(green) << 8) | clamp(blue);
+				}
+			}
+		}
+	};
+	
+	/**
+	 * Seed used for every image, so that benchmark results can be compared between runs
+	 */
+	private static final long SEED = 0x504E47L;
+	
+	/**
+	 * Generates an image of this kind.
+	 * 
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @return pixels in {@link ColorFormat#ARGB_8888}
+	 */
+	public final int[] generate(final int width, final int height) {
+		final int[] pixels = new int[width * height];
+		
+		fill(pixels, width, height, new Random(SEED));
+		return pixels;
+	}
+	
+	/**
+	 * Fills an image with pixels of this kind.
+	 * 
+	 * @param pixels ARGB pixels
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param random random number generator to use
+	 */
+	protected abstract void fill(final int[] pixels, final int width, final int height, final Random random);
+	
+	/**
+	 * Converts ARGB pixels to another color format. Gray pixels for {@link ColorFormat#GRAYSCALE} are the luma of each pixel,
+	 * and 8-bit samples are scaled to 16 bits for the 16-bit formats.
+	 * 
+	 * @param argb pixels in {@link ColorFormat#ARGB_8888}
+	 * @param format color format to convert to
+	 * @return pixels in color format <code>format</code>
+	 */
+	public static int[] toFormat(final int[] argb, final ColorFormat format) {
+		final int intsPerPixel = format.scanlineConverter().intsPerPixel();
+		final int[] out = new int[argb.length * intsPerPixel];
+		
+		for (int i = 0; i < argb.length; i++) {
+			final int pixel = argb[i];
+			final int alpha = pixel >>> 24;
+			final int red = (pixel >>> 16) & 0xFF;
+			final int green = (pixel >>> 8) & 0xFF;
+			final int blue = pixel & 0xFF;
+			final int j = i * intsPerPixel;
+			
+			switch (format) {
+				case GRAYSCALE:
+					out[j] = ((red * 77 + green * 150 + blue * 29) >>> 8) * 257;
+					break;
+				case RGB_16:
+					out[j] = red * 257;
+					out[j + 1] = green * 257;
+					out[j + 2] = blue * 257;
+					break;
+				case ARGB_16:
+					out[j] = alpha * 257;
+					out[j + 1] = red * 257;
+					out[j + 2] = green * 257;
+					out[j + 3] = blue * 257;
+					break;
+				case RGBA_16:
+					out[j] = red * 257;
+					out[j + 1] = green * 257;
+					out[j + 2] = blue * 257;
+					out[j + 3] = alpha * 257;
+					break;
+				case RGB_888:
+					out[j] = pixel & 0xFFFFFF;
+					break;
+				case RGBA_8888:
+					out[j] = (pixel << 8) | alpha;
+					break;
+				default:
+					out[j] = pixel;
+					break;
+			}
+		}
+		
+		return out;
+	}
+	
+	private static void fillRect(final int[] pixels, final int width, final int left, final int top, final int right, final int bottom, final int color) {
+		for (int y = top; y < bottom; y++) {
+			for (int x = left; x < right; x++) {
+				pixels[x + y * width] = color;
+			}
+		}
+	}
+	
+	/**
+	 * Draws a 10 pixel high glyph made of random vertical and horizontal strokes.
+	 */
+	private static void drawGlyph(final int[] pixels, final int width, final int left, final int top, final int glyphWidth, final Random random) {
+		final int color = (random.nextInt(8) == 0) ? 0xFF0645AD : 0xFF202020;
+		final int strokes = random.nextInt(16);
+		
+		if ((strokes & 1) != 0) {
+			fillRect(pixels, width, left, top, left + 1, top + 10, color);
+		}
+		
+		if ((strokes & 2) != 0) {
+			fillRect(pixels, width, left + glyphWidth - 1, top + 3, left + glyphWidth, top + 10, color);
+		}
+		
+		if ((strokes & 4) != 0) {
+			fillRect(pixels, width, left, top + 3, left + glyphWidth, top + 4, color);
+		}
+		
+		if ((strokes & 8) != 0 || strokes == 0) {
+			fillRect(pixels, width, left, top + 9, left + glyphWidth, top + 10, color);
+		}
+	}
+	
+	private static int wave(final double u, final double v, final double[] frequencies, final double[] phases, final int index) {
+		final double a = Math.sin(u * frequencies[index] + phases[index]);
+		final double b = Math.cos(v * frequencies[index + 1] + phases[index + 1]);
+		
+		return (int) (127.5 + 127.5 * (a * 0.6 + b * 0.4));
+	}
+	
+	private static int clamp(final int sample) {
+		return Math.max(0, Math.min(255, sample));
+	}
+}
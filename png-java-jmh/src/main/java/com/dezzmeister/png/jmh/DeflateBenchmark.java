@@ -0,0 +1,96 @@
+package com.dezzmeister.png.jmh;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.Heuristic;
+import com.dezzmeister.png.filters.LineFilter;
+import com.dezzmeister.png.functions.ParallelDeflater;
+
+/**
+ * Measures compressing the filtered scanlines of an RGBA image, with one {@link Deflater} and with a {@link ParallelDeflater} on
+ * four threads.
+ * 
+ * @author Joe Desmond
+ */
+@State(Scope.Benchmark)
+public class DeflateBenchmark {
+	
+	@Param
+	public Corpus corpus;
+	
+	@Param({"256", "1024"})
+	public int size;
+	
+	@Param({"1", "6", "9"})
+	public int level;
+	
+	/**
+	 * Filtered scanlines, each starting with its filter type code
+	 */
+	private byte[] filtered;
+	
+	private byte[] out;
+	
+	private Deflater deflater;
+	
+	private ExecutorService executor;
+	
+	private ParallelDeflater parallelDeflater;
+	
+	@Setup
+	public void setup() {
+		final int[] rgba = Corpus.toFormat(corpus.generate(size, size), ColorFormat.RGBA_8888);
+		final byte[][] lines = ColorFormat.RGBA_8888.convertToPNGFormat(rgba, size, size, false, false).scanlines;
+		final LineFilter lineFilter = new LineFilter(ColorType.RGB_ALPHA, (byte) 8, Filter.DYNAMIC, Heuristic.MINIMUM_SUM.newStrategy());
+		final int lineLength = lines[0].length + 1;
+		
+		filtered = new byte[lineLength * lines.length];
+		
+		for (int y = 0; y < lines.length; y++) {
+			lineFilter.filter((y == 0) ? null : lines[y - 1], lines[y], filtered, y * lineLength);
+		}
+		
+		lineFilter.end();
+		
+		out = new byte[64 * 1024];
+		deflater = new Deflater(level);
+		executor = Executors.newFixedThreadPool(4);
+		parallelDeflater = new ParallelDeflater(executor, ParallelDeflater.DEFAULT_BLOCK_SIZE, level);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		deflater.end();
+		executor.shutdown();
+	}
+	
+	@Benchmark
+	public long deflate() {
+		deflater.reset();
+		deflater.setInput(filtered);
+		deflater.finish();
+		
+		while (!deflater.finished()) {
+			deflater.deflate(out);
+		}
+		
+		return deflater.getBytesWritten();
+	}
+	
+	@Benchmark
+	public byte[] parallelDeflate() {
+		return parallelDeflater.deflate(filtered);
+	}
+}
@@ -0,0 +1,91 @@
+package com.dezzmeister.png.jmh;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.color.ColorFormat;
+
+/**
+ * Measures encoding whole ARGB images with {@link Encoder} and {@link ReusableEncoder}. The primary score is images per second; the
+ * <code>pixelBytes</code> secondary score is the rate of ARGB input bytes encoded, and <code>pngBytes</code> the rate of PNG bytes produced.
+ * 
+ * @author Joe Desmond
+ */
+@State(Scope.Benchmark)
+public class EncoderBenchmark {
+	
+	@Param
+	public Corpus corpus;
+	
+	@Param({"256", "1024"})
+	public int size;
+	
+	private int[] pixels;
+	
+	@Setup
+	public void setup() {
+		pixels = corpus.generate(size, size);
+	}
+	
+	@Benchmark
+	public byte[] encoder(final Bytes bytes) {
+		return bytes.count(pixels, new Encoder(pixels, size, size, ColorFormat.ARGB_8888).encode());
+	}
+	
+	@Benchmark
+	public byte[] reusable(final Reusable reusable, final Bytes bytes) {
+		return bytes.count(pixels, reusable.encoder.encode(pixels, size, size, ColorFormat.ARGB_8888));
+	}
+	
+	/**
+	 * Encoder that is reused for every image encoded by one benchmark thread
+	 */
+	@State(Scope.Thread)
+	public static class Reusable {
+		
+		ReusableEncoder encoder;
+		
+		@Setup
+		public void setup() {
+			encoder = new ReusableEncoder();
+		}
+		
+		@TearDown
+		public void tearDown() {
+			encoder.close();
+		}
+	}
+	
+	/**
+	 * Bytes read and written, reported by JMH as rates next to the primary score
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Bytes {
+		
+		public long pixelBytes;
+		
+		public long pngBytes;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			pixelBytes = 0;
+			pngBytes = 0;
+		}
+		
+		byte[] count(final int[] pixels, final byte[] png) {
+			pixelBytes += pixels.length * 4L;
+			pngBytes += png.length;
+			
+			return png;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.dezzmeister.png.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.FilterFunction;
+
+/**
+ * Measures each filter's apply and remove functions over every scanline of an RGBA image. One operation filters (or unfilters) the whole image.
+ * 
+ * @author Joe Desmond
+ */
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+	
+	private static final int BYTES_PER_PIXEL = 4;
+	
+	@Param
+	public Corpus corpus;
+	
+	@Param({"256", "1024"})
+	public int size;
+	
+	@Param({"NONE", "SUB", "UP", "AVERAGE", "PAETH"})
+	public Filter filter;
+	
+	private FilterFunction function;
+	
+	/**
+	 * Unfiltered scanlines
+	 */
+	private byte[][] lines;
+	
+	/**
+	 * Scanlines filtered with {@link #filter}
+	 */
+	private byte[][] filtered;
+	
+	private byte[] out;
+	
+	@Setup
+	public void setup() {
+		final int[] rgba = Corpus.toFormat(corpus.generate(size, size), ColorFormat.RGBA_8888);
+		
+		function = filter.filterFunction();
+		lines = ColorFormat.RGBA_8888.convertToPNGFormat(rgba, size, size, false, false).scanlines;
+		filtered = new byte[lines.length][];
+		out = new byte[lines[0].length];
+		
+		for (int y = 0; y < lines.length; y++) {
+			filtered[y] = function.applyFilter((y == 0) ? null : lines[y - 1], lines[y], BYTES_PER_PIXEL);
+		}
+	}
+	
+	@Benchmark
+	public byte[] apply() {
+		for (int y = 0; y < lines.length; y++) {
+			function.applyFilter((y == 0) ? null : lines[y - 1], lines[y], BYTES_PER_PIXEL, out, 0);
+		}
+		
+		return out;
+	}
+	
+	@Benchmark
+	public byte[] remove() {
+		for (int y = 0; y < lines.length; y++) {
+			function.removeFilter((y == 0) ? null : lines[y - 1], filtered[y], BYTES_PER_PIXEL, out, 0);
+		}
+		
+		return out;
+	}
+}
@@ -0,0 +1,92 @@
+package com.dezzmeister.png.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.FilterFunction;
+
+/**
+ * Compares the Paeth filter against a reference Paeth filter that uses the branching predictor from the PNG specification, which
+ * is what the branch-free predictor replaced. Noise is the worst case for the branching predictor, because its branches cannot be
+ * predicted; gradients are the best case. One operation filters every scanline of an RGBA image.
+ * 
+ * @author Joe Desmond
+ */
+@State(Scope.Benchmark)
+public class PaethBenchmark {
+	
+	private static final int BYTES_PER_PIXEL = 4;
+	
+	@Param({"NOISE", "GRADIENT"})
+	public Corpus corpus;
+	
+	@Param({"256", "1024"})
+	public int size;
+	
+	private final FilterFunction paeth = Filter.PAETH.filterFunction();
+	
+	/**
+	 * Unfiltered scanlines
+	 */
+	private byte[][] lines;
+	
+	private byte[] out;
+	
+	@Setup
+	public void setup() {
+		final int[] rgba = Corpus.toFormat(corpus.generate(size, size), ColorFormat.RGBA_8888);
+		
+		lines = ColorFormat.RGBA_8888.convertToPNGFormat(rgba, size, size, false, false).scanlines;
+		out = new byte[lines[0].length];
+	}
+	
+	@Benchmark
+	public byte[] branchFree() {
+		for (int y = 0; y < lines.length; y++) {
+			paeth.applyFilter((y == 0) ? null : lines[y - 1], lines[y], BYTES_PER_PIXEL, out, 0);
+		}
+		
+		return out;
+	}
+	
+	@Benchmark
+	public byte[] reference() {
+		for (int y = 0; y < lines.length; y++) {
+			referencePaeth((y == 0) ? null : lines[y - 1], lines[y], BYTES_PER_PIXEL, out);
+		}
+		
+		return out;
+	}
+	
+	/**
+	 * The Paeth filter with a per-byte neighbor check and the branching predictor
+	 */
+	private static void referencePaeth(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out) {
+		for (int i = 0; i < thisLine.length; i++) {
+			final int leftIndex = i - bytesPerPixel;
+			final int a = (leftIndex < 0) ? 0 : (thisLine[leftIndex] & 0xFF);
+			final int b = (prevLine == null) ? 0 : (prevLine[i] & 0xFF);
+			final int c = (prevLine == null || leftIndex < 0) ? 0 : (prevLine[leftIndex] & 0xFF);
+			final int p = a + b - c;
+			final int pa = Math.abs(p - a);
+			final int pb = Math.abs(p - b);
+			final int pc = Math.abs(p - c);
+			final int predictor;
+			
+			if (pa <= pb && pa <= pc) {
+				predictor = a;
+			} else if (pb <= pc) {
+				predictor = b;
+			} else {
+				predictor = c;
+			}
+			
+			out[i] = (byte) (thisLine[i] - predictor);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.dezzmeister.png;
+
+import java.util.zip.Deflater;
+
+/**
+ * Deflate compression strategies. The strategy tells the compressor what kind of data to expect, which affects
+ * both the compression ratio and the speed of compression.
+ * 
+ * @author Joe Desmond
+ * @see EncoderOptions.Builder#strategy(CompressionStrategy)
+ */
+public enum CompressionStrategy {
+	
+	/**
+	 * The default strategy, suitable for most data
+	 */
+	DEFAULT(Deflater.DEFAULT_STRATEGY),
+	
+	/**
+	 * Favors Huffman coding over long string matches. This suits filtered image data, which mostly consists of small values
+	 * with a fairly random distribution. zlib's run-length strategy is not available through {@link Deflater}; this is the closest
+	 * alternative.
+	 */
+	FILTERED(Deflater.FILTERED),
+	
+	/**
+	 * Uses Huffman coding only, without looking for string matches at all. This is much faster than the other strategies,
+	 * and usually does reasonably well on filtered image data.
+	 */
+	HUFFMAN_ONLY(Deflater.HUFFMAN_ONLY);
+	
+	/**
+	 * The {@link Deflater} constant for this strategy
+	 */
+	public final int deflaterStrategy;
+	
+	private CompressionStrategy(final int _deflaterStrategy) {
+		deflaterStrategy = _deflaterStrategy;
+	}
+}
@@ -0,0 +1,103 @@
+package com.dezzmeister.png;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+
+/**
+ * Decodes PNG files. The PNG header is read on construction, and the pixels can then be decoded into any {@link ColorFormat}
+ * with {@link #decode(ColorFormat)}. To decode large images without holding every pixel in memory, use a {@link PngReader} instead.
+ * 
+ * @author Joe Desmond
+ */
+public class Decoder {
+	
+	/**
+	 * Encoded PNG
+	 */
+	private final byte[] png;
+	
+	private final int width;
+	
+	private final int height;
+	
+	private final ColorType colorType;
+	
+	private final byte bitDepth;
+	
+	/**
+	 * Creates a decoder for this PNG. The signature and header chunks are checked on construction.
+	 * 
+	 * @param _png encoded PNG
+	 * @throws IllegalArgumentException if <code>_png</code> is not a valid PNG, or uses a feature that is not supported
+	 */
+	public Decoder(final byte[] _png) {
+		png = _png;
+		
+		try (final PngReader reader = newReader(ColorFormat.ARGB_8888)) {
+			width = reader.getWidth();
+			height = reader.getHeight();
+			colorType = reader.getColorType();
+			bitDepth = reader.getBitDepth();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("PNG is truncated", e);
+		}
+	}
+	
+	/**
+	 * Decodes the image into pixels of the given color format. The returned array holds <code>width * height</code> pixels,
+	 * each made of {@link com.dezzmeister.png.color.ScanlineConverter#intsPerPixel() one or more ints}. Every chunk's CRC is checked.
+	 * 
+	 * @param colorFormat color format of the decoded pixels
+	 * @return decoded pixels
+	 * @throws IllegalArgumentException if the PNG is corrupt
+	 */
+	public int[] decode(final ColorFormat colorFormat) {
+		try (final PngReader reader = newReader(colorFormat)) {
+			final int rowLength = reader.getRowLength();
+			final int[] pixels = new int[Math.multiplyExact(rowLength, height)];
+			
+			for (int row = 0; row < height; row++) {
+				reader.readRow(pixels, row * rowLength);
+			}
+			
+			reader.finish();
+			
+			return pixels;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("PNG is truncated", e);
+		}
+	}
+	
+	private PngReader newReader(final ColorFormat colorFormat) throws IOException {
+		return new PngReader(new ByteArrayInputStream(png), colorFormat);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Returns the PNG color type of the image.
+	 * 
+	 * @return PNG color type
+	 */
+	public ColorType getColorType() {
+		return colorType;
+	}
+	
+	/**
+	 * Returns the bit depth of the image.
+	 * 
+	 * @return bit depth
+	 */
+	public byte getBitDepth() {
+		return bitDepth;
+	}
+}
@@ -3,16 +3,42 @@ package com.dezzmeister.png;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import com.dezzmeister.png.chunks.IDAT;
 import com.dezzmeister.png.chunks.IEND;
 import com.dezzmeister.png.chunks.IHDR;
+import com.dezzmeister.png.chunks.PLTE;
+import com.dezzmeister.png.chunks.TRNS;
+import com.dezzmeister.png.chunks.meta.ColorType;
 import com.dezzmeister.png.chunks.meta.PNGData;
 import com.dezzmeister.png.color.ColorFormat;
-import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.color.PixelBuffers;
+import com.dezzmeister.png.color.PixelSource;
+import com.dezzmeister.png.color.QueuedPixelSource;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.data.DirectBufferPool;
+import com.dezzmeister.png.filters.Heuristic;
+import com.dezzmeister.png.functions.ParallelDeflater;
+import com.dezzmeister.png.metrics.EncodeListener;
+import com.dezzmeister.png.metrics.EncodeStage;
+import com.dezzmeister.png.metrics.EncodeStats;
 
 /**
- * Encodes PNG files. Can either return raw PNG bytes, or write them to an {@link OutputStream}.
+ * Encodes PNG files. Can either return raw PNG bytes, or write them to an {@link OutputStream}. Unless disabled in the {@link EncoderOptions},
+ * images are written with the smallest color type and bit depth that holds every pixel exactly, or with a palette if the image has
+ * 256 or fewer colors and a palette is smaller.
  * 
  * @author Joe Desmond
  */
@@ -21,7 +47,12 @@ public class Encoder {
 	/**
      * Standard PNG header. See <a href=http://www.libpng.org/pub/png/spec/1.2/PNG-Rationale.html#R.PNG-file-signature>PNG Spec</a>
      */
-    private static final byte[] PNG_HEADER = {(byte)137, 80, 78, 71, 13, 10, 26, 10};
+    static final byte[] PNG_HEADER = {(byte)137, 80, 78, 71, 13, 10, 26, 10};
+	
+	/**
+	 * Compression thread pools shared by every encoder that is given more than one thread and no executor, by number of threads
+	 */
+	private static final Map<Integer, ExecutorService> SHARED_POOLS = new ConcurrentHashMap<Integer, ExecutorService>();
 	
 	/**
 	 * PNG file data
@@ -30,6 +61,16 @@ public class Encoder {
 	
 	private final byte[] ihdrChunk;
 	
+	/**
+	 * PLTE and tRNS chunks, if the image is written with a palette. These are empty otherwise.
+	 */
+	private final byte[] plteChunk;
+	
+	private final byte[] trnsChunk;
+	
+	/**
+	 * One or more IDAT chunks
+	 */
 	private final byte[] idatChunk;
 	
 	private final byte[] iendChunk;
@@ -43,28 +84,326 @@ public class Encoder {
 	 * @param colorFormat color format of <code>pixels</code>
 	 */
 	public Encoder(final int[] pixels, final int width, final int height, final ColorFormat colorFormat) {
-		pngData = colorFormat.convertToPNGFormat(pixels, width, height);
-
-		ihdrChunk = IHDR.encode(pngData);
-		idatChunk = IDAT.encode(pngData, Filter.DYNAMIC);
+		this(pixels, width, height, colorFormat, EncoderOptions.DEFAULT);
+	}
+	
+	/**
+	 * Creates an encoder for this image, using the given heuristic to pick a filter for each scanline.
+	 * Encodes the PNG on construction.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param heuristic filter selection heuristic
+	 */
+	public Encoder(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final Heuristic heuristic) {
+		this(pixels, width, height, colorFormat, EncoderOptions.builder().heuristic(heuristic).build());
+	}
+	
+	/**
+	 * Creates an encoder for this image, compressing the image data on <code>threads</code> threads. The filtered
+	 * image data is split into blocks of <code>blockSize</code> bytes which are compressed in parallel (see {@link ParallelDeflater}).
+	 * Smaller blocks allow more parallelism at the cost of a slightly larger PNG. Encodes the PNG on construction.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param threads number of compression threads; if this is 1, the image data is compressed on the calling thread
+	 * @param blockSize number of uncompressed bytes in each block
+	 */
+	public Encoder(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final int threads, final int blockSize) {
+		this(pixels, width, height, colorFormat, EncoderOptions.builder().threads(Math.max(1, threads)).blockSize(blockSize).build());
+	}
+	
+	/**
+	 * Creates an encoder for this image, compressing the image data in parallel on the given executor.
+	 * The executor is not shut down. Encodes the PNG on construction.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param executor executor that compresses blocks of image data
+	 * @param blockSize number of uncompressed bytes in each block
+	 * @see #Encoder(int[], int, int, ColorFormat, int, int)
+	 */
+	public Encoder(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final ExecutorService executor, final int blockSize) {
+		this(pixels, width, height, colorFormat, executor, EncoderOptions.builder().blockSize(blockSize).build());
+	}
+	
+	/**
+	 * Creates an encoder for this image with the given options. If {@link EncoderOptions#getThreads() options.getThreads()}
+	 * is more than 1, the image data is compressed on a thread pool with that many threads. The pool is created the first time it
+	 * is needed and shared by every encoder, so threads are not started for each image. Image data that fits in one
+	 * {@link EncoderOptions#getBlockSize() block} is compressed on the calling thread. Encodes the PNG on construction.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param options encoding options
+	 */
+	public Encoder(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final EncoderOptions options) {
+		this(() -> colorFormat.convertToPNGFormat(pixels, width, height, options.isPaletteEnabled(), options.isReductionEnabled(), options.getQuantizeColors(), options.isDithered()), null, options);
+	}
+	
+	/**
+	 * Creates an encoder for this image with the given options, compressing the image data in parallel on the given executor.
+	 * The number of threads in <code>options</code> is ignored, and the executor is not shut down. Image data that fits in one
+	 * {@link EncoderOptions#getBlockSize() block} is compressed on the calling thread instead. Encodes the PNG on construction.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param executor executor that compresses blocks of image data
+	 * @param options encoding options
+	 */
+	public Encoder(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final ExecutorService executor, final EncoderOptions options) {
+		this(() -> colorFormat.convertToPNGFormat(pixels, width, height, options.isPaletteEnabled(), options.isReductionEnabled(), options.getQuantizeColors(), options.isDithered()), executor, options);
+	}
+	
+	/**
+	 * Creates an encoder for an image in an IntBuffer with the given options. Rows start <code>stride</code> ints apart, starting
+	 * at the buffer's position; the buffer's position and limit are not changed. The image is converted with the color format's
+	 * {@link ScanlineConverter}, so its color type and bit depth are not reduced and no palette is used (see {@link PixelBuffers}).
+	 * Encodes the PNG on construction.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride ints from the start of one row to the start of the next
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param options encoding options
+	 */
+	public Encoder(final IntBuffer pixels, final int width, final int height, final int stride, final ColorFormat colorFormat, final EncoderOptions options) {
+		this(() -> PixelBuffers.convert(pixels, width, height, stride, colorFormat), null, options);
+	}
+	
+	/**
+	 * Creates an encoder for an image in a ByteBuffer with the given options. The buffer holds the same ints as an <code>int[]</code> of color
+	 * format <code>colorFormat</code> would, in the given byte order, so a byte buffer in another layout can often be read by picking the right
+	 * order: RGBA bytes read in big endian order are {@link ColorFormat#RGBA_8888}, and BGRA bytes read in little endian order are
+	 * {@link ColorFormat#ARGB_8888}. Rows start <code>stride</code> bytes apart, starting at the buffer's position; the buffer's position, limit,
+	 * and byte order are not changed. As with {@link #Encoder(IntBuffer, int, int, int, ColorFormat, EncoderOptions)}, the color type
+	 * and bit depth are not reduced and no palette is used. Encodes the PNG on construction.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param order byte order of the ints in <code>pixels</code>
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride bytes from the start of one row to the start of the next
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param options encoding options
+	 */
+	public Encoder(final ByteBuffer pixels, final ByteOrder order, final int width, final int height, final int stride, final ColorFormat colorFormat, final EncoderOptions options) {
+		this(() -> PixelBuffers.convert(pixels, order, width, height, stride, colorFormat), null, options);
+	}
+	
+	/**
+	 * Creates an encoder for an image that is produced one row at a time, with the given options. Rows are pulled from <code>source</code>
+	 * in order and converted with the color format's {@link ScanlineConverter} as they arrive, so only one row of pixels is held at
+	 * a time. As with {@link #Encoder(IntBuffer, int, int, int, ColorFormat, EncoderOptions)}, the color type and bit depth are not reduced
+	 * and no palette is used. Encodes the PNG on construction.
+	 * 
+	 * @param source produces each row of pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of the pixels
+	 * @param options encoding options
+	 * @see QueuedPixelSource
+	 */
+	public Encoder(final PixelSource source, final int width, final int height, final ColorFormat colorFormat, final EncoderOptions options) {
+		this(() -> source.convert(width, height, colorFormat), null, options);
+	}
+	
+	/**
+	 * Creates an encoder for the image returned by <code>converter</code>. The conversion is timed as {@link EncodeStage#CONVERT}.
+	 * 
+	 * @param converter converts the image to PNG scanlines
+	 * @param executor executor that compresses blocks of image data, or null to use the number of threads in <code>options</code>
+	 * @param options encoding options
+	 */
+	private Encoder(final Supplier<PNGData> converter, final ExecutorService executor, final EncoderOptions options) {
+		final EncodeStats stats = (options.getListener() == null) ? null : new EncodeStats();
+		final long start = EncodeStats.start(stats);
+		
+		pngData = converter.get();
+		EncodeStats.record(stats, EncodeStage.CONVERT, start);
+		
+		ihdrChunk = IHDR.encode(pngData, options.isInterlaced());
+		plteChunk = (pngData.palette == null) ? new byte[0] : PLTE.encode(pngData.palette);
+		trnsChunk = (pngData.transparency == null) ? new byte[0] : TRNS.encode(pngData.transparency);
+		
+		// Image data that fits in one block gains nothing from being compressed in parallel
+		
+		final long filteredLength = (pngData.height == 0) ? 0 : (long) (pngData.scanlines[0].length + 1) * pngData.height;
+		
+		if (filteredLength <= options.getBlockSize() || (executor == null && options.getThreads() <= 1)) {
+			idatChunk = IDAT.encode(pngData, options, stats);
+		} else {
+			idatChunk = IDAT.encode(pngData, options, parallelDeflater((executor != null) ? executor : sharedPool(options.getThreads()), options), stats);
+		}
+		
 		iendChunk = IEND.encode();
+		notifyListener(options.getListener(), stats);
+	}
+	
+	/**
+	 * Creates an encoder for scanlines that are already in a PNG color type and bit depth. Each row of <code>scanlines</code> must be laid
+	 * out exactly like an unfiltered PNG scanline: samples in PNG order, 16-bit samples big endian, and samples of less than 8 bits packed
+	 * starting with the most significant bits. The rows are copied without being converted, so this is the fastest way to encode
+	 * pixels that are already in PNG layout (for example, RGBA framebuffers with {@link ColorType#RGB_ALPHA} and a bit depth of 8).
+	 * Rows start <code>stride</code> bytes apart, starting at the buffer's position; the buffer's position and limit are not changed.
+	 * Encodes the PNG on construction.
+	 * 
+	 * @param scanlines unfiltered scanlines
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride bytes from the start of one row to the start of the next
+	 * @param colorType color type of the scanlines; cannot be {@link ColorType#PALETTE}
+	 * @param bitDepth bit depth of the scanlines
+	 * @param options encoding options
+	 * @return encoder for the scanlines
+	 * @throws IllegalArgumentException if the bit depth is not allowed for the color type, or the buffer is too small
+	 */
+	public static Encoder raw(final ByteBuffer scanlines, final int width, final int height, final int stride, final ColorType colorType, final int bitDepth, final EncoderOptions options) {
+		PixelBuffers.checkRaw(scanlines, width, height, stride, colorType, bitDepth);
+		
+		return new Encoder(() -> PixelBuffers.scanlines(scanlines, width, height, stride, colorType, bitDepth), null, options);
+	}
+	
+	/**
+	 * Gives the stats of this image to the listener, if there is one.
+	 */
+	private void notifyListener(final EncodeListener listener, final EncodeStats stats) {
+		if (stats != null) {
+			stats.addPngBytes(length());
+			listener.encoded(stats);
+		}
+	}
+	
+	/**
+	 * Returns the length of the encoded PNG.
+	 */
+	private int length() {
+		return PNG_HEADER.length + ihdrChunk.length + plteChunk.length + trnsChunk.length + idatChunk.length + iendChunk.length;
+	}
+	
+	/**
+	 * Returns the shared pool with the given number of compression threads, creating it the first time it is needed. The pools
+	 * use daemon threads and are never shut down, so that encoding many images does not start and stop threads for each one.
+	 */
+	private static ExecutorService sharedPool(final int threads) {
+		return SHARED_POOLS.computeIfAbsent(threads, n -> {
+			final AtomicInteger threadCount = new AtomicInteger();
+			
+			return Executors.newFixedThreadPool(n, task -> {
+				final Thread thread = new Thread(task, "png-deflate-" + n + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				
+				return thread;
+			});
+		});
+	}
+	
+	private static ParallelDeflater parallelDeflater(final ExecutorService executor, final EncoderOptions options) {
+		return new ParallelDeflater(executor, options.getBlockSize(), options.getLevel(), options.getStrategy().deflaterStrategy);
 	}
 	
 	public byte[] encode() {
-		final ByteBuffer out = ByteBuffer.allocate(PNG_HEADER.length + ihdrChunk.length + idatChunk.length + iendChunk.length);
+		final byte[] out = new byte[length()];
+		int offset = 0;
 		
-		out.put(PNG_HEADER);
-		out.put(ihdrChunk);
-		out.put(idatChunk);
-		out.put(iendChunk);
+		for (final byte[] part : new byte[][] {PNG_HEADER, ihdrChunk, plteChunk, trnsChunk, idatChunk, iendChunk}) {
+			System.arraycopy(part, 0, out, offset, part.length);
+			offset += part.length;
+		}
 		
-		return out.array();
+		return out;
 	}
 	
 	public void encode(final OutputStream os) throws IOException {
 		os.write(PNG_HEADER);
 		os.write(ihdrChunk);
+		os.write(plteChunk);
+		os.write(trnsChunk);
 		os.write(idatChunk);
 		os.write(iendChunk);
 	}
+	
+	/**
+	 * Writes the PNG, which was encoded on construction, to a channel. The header and chunks are copied into pooled direct buffers
+	 * and written with gathering writes if the channel supports them (see {@link DirectBufferPool}), so no second array the size of
+	 * the PNG is allocated. To write an image to a channel without holding the whole PNG in memory, use
+	 * {@link #encode(int[], int, int, ColorFormat, EncoderOptions, WritableByteChannel)} instead.
+	 * 
+	 * @param channel channel to write the PNG to
+	 * @throws IOException if there is a problem writing to <code>channel</code>
+	 */
+	public void encode(final WritableByteChannel channel) throws IOException {
+		DirectBufferPool.shared().write(channel, ByteBuffer.wrap(PNG_HEADER), ByteBuffer.wrap(ihdrChunk), ByteBuffer.wrap(plteChunk),
+				ByteBuffer.wrap(trnsChunk), ByteBuffer.wrap(idatChunk), ByteBuffer.wrap(iendChunk));
+	}
+	
+	/**
+	 * Writes the PNG, which was encoded on construction, to a file through a {@link FileChannel}, creating the file or replacing its
+	 * contents. To write an image to a file without holding the whole PNG in memory, use
+	 * {@link #encodeToFile(int[], int, int, ColorFormat, EncoderOptions, Path)} instead.
+	 * 
+	 * @param path file to write the PNG to
+	 * @throws IOException if the file cannot be written
+	 * @see #encode(WritableByteChannel)
+	 */
+	public void encodeToFile(final Path path) throws IOException {
+		try (final FileChannel channel = openFile(path)) {
+			encode(channel);
+		}
+	}
+	
+	/**
+	 * Encodes an image and writes the PNG to a channel as it is encoded. Unlike the constructors, which encode the whole PNG up front
+	 * so that it can be written any number of times, this compresses the image one row at a time with a {@link ReusableEncoder} and
+	 * writes the IDAT chunks in pieces of bounded size as they are completed (see
+	 * {@link ReusableEncoder#encode(int[], int, int, ColorFormat, WritableByteChannel)}). The number of threads in the options is ignored.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param options encoding options
+	 * @param channel channel to write the PNG to
+	 * @throws IOException if there is a problem writing to <code>channel</code>
+	 */
+	public static void encode(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final EncoderOptions options,
+			final WritableByteChannel channel) throws IOException {
+		try (final ReusableEncoder encoder = new ReusableEncoder(options)) {
+			encoder.encode(pixels, width, height, colorFormat, channel);
+		}
+	}
+	
+	/**
+	 * Encodes an image and writes the PNG to a file as it is encoded, creating the file or replacing its contents. The whole PNG is
+	 * never held in memory (see {@link #encode(int[], int, int, ColorFormat, EncoderOptions, WritableByteChannel)}).
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param options encoding options
+	 * @param path file to write the PNG to
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void encodeToFile(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final EncoderOptions options,
+			final Path path) throws IOException {
+		try (final FileChannel channel = openFile(path)) {
+			encode(pixels, width, height, colorFormat, options, channel);
+		}
+	}
+	
+	private static FileChannel openFile(final Path path) throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	}
 }
@@ -0,0 +1,518 @@
+package com.dezzmeister.png;
+
+import java.util.zip.Deflater;
+
+import com.dezzmeister.png.chunks.meta.Adam7;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.converters.PaletteConverter;
+import com.dezzmeister.png.color.converters.QuantizedConverter;
+import com.dezzmeister.png.color.converters.ReducedConverter;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.Heuristic;
+import com.dezzmeister.png.functions.ParallelDeflater;
+import com.dezzmeister.png.metrics.EncodeListener;
+import com.dezzmeister.png.metrics.EncodeStats;
+
+/**
+ * Settings that control how a PNG is encoded. EncoderOptions are immutable and are created with a {@link Builder}:
+ * 
+ * <pre>
+ * final EncoderOptions options = EncoderOptions.builder()
+ * 	.level(1)
+ * 	.strategy(CompressionStrategy.HUFFMAN_ONLY)
+ * 	.build();
+ * </pre>
+ * 
+ * Any setting that is not given keeps its default value, so {@link #DEFAULT} produces the same PNGs as an {@link Encoder}
+ * created without options.
+ * 
+ * @author Joe Desmond
+ */
+public final class EncoderOptions {
+	
+	/**
+	 * Maximum IDAT chunk length that puts all of the image data in a single chunk
+	 */
+	public static final int UNLIMITED_CHUNK_LENGTH = Integer.MAX_VALUE;
+	
+	/**
+	 * Default size of the buffer that compressed data is written into
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	/**
+	 * The default options
+	 */
+	public static final EncoderOptions DEFAULT = builder().build();
+	
+	private final int level;
+	
+	private final CompressionStrategy strategy;
+	
+	private final Filter filter;
+	
+	private final Heuristic heuristic;
+	
+	private final int maxChunkLength;
+	
+	private final int bufferSize;
+	
+	private final int threads;
+	
+	private final int blockSize;
+	
+	private final boolean palette;
+	
+	private final boolean reduce;
+	
+	private final boolean interlace;
+	
+	private final int quantizeColors;
+	
+	private final boolean dither;
+	
+	private final EncodeListener listener;
+	
+	private EncoderOptions(final Builder builder) {
+		level = builder.level;
+		strategy = builder.strategy;
+		filter = builder.filter;
+		heuristic = builder.heuristic;
+		maxChunkLength = builder.maxChunkLength;
+		bufferSize = builder.bufferSize;
+		threads = builder.threads;
+		blockSize = builder.blockSize;
+		palette = builder.palette;
+		reduce = builder.reduce;
+		interlace = builder.interlace;
+		quantizeColors = builder.quantizeColors;
+		dither = builder.dither;
+		listener = builder.listener;
+	}
+	
+	/**
+	 * Returns a new builder with every setting at its default value.
+	 * 
+	 * @return new builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * Returns a new builder with the same settings as these options.
+	 * 
+	 * @return new builder
+	 */
+	public Builder toBuilder() {
+		return new Builder()
+				.level(level)
+				.strategy(strategy)
+				.filter(filter)
+				.heuristic(heuristic)
+				.maxChunkLength(maxChunkLength)
+				.bufferSize(bufferSize)
+				.threads(threads)
+				.blockSize(blockSize)
+				.palette(palette)
+				.reduce(reduce)
+				.interlace(interlace)
+				.quantize(quantizeColors)
+				.dither(dither)
+				.listener(listener);
+	}
+	
+	/**
+	 * Creates a new {@link Deflater} with this compression level and strategy. The caller must {@link Deflater#end() end}
+	 * the deflater when it is no longer needed.
+	 * 
+	 * @return new deflater
+	 */
+	public Deflater newDeflater() {
+		final Deflater deflater = new Deflater(level);
+		deflater.setStrategy(strategy.deflaterStrategy);
+		
+		return deflater;
+	}
+	
+	/**
+	 * Returns the deflate compression level: 0-9, or {@link Deflater#DEFAULT_COMPRESSION}.
+	 * 
+	 * @return compression level
+	 */
+	public int getLevel() {
+		return level;
+	}
+	
+	/**
+	 * Returns the deflate compression strategy.
+	 * 
+	 * @return compression strategy
+	 */
+	public CompressionStrategy getStrategy() {
+		return strategy;
+	}
+	
+	/**
+	 * Returns the filter applied to every scanline, or {@link Filter#DYNAMIC} if the filter is chosen for each line.
+	 * 
+	 * @return filter
+	 */
+	public Filter getFilter() {
+		return filter;
+	}
+	
+	/**
+	 * Returns the heuristic used to choose filters when the filter is {@link Filter#DYNAMIC}.
+	 * 
+	 * @return filter selection heuristic
+	 */
+	public Heuristic getHeuristic() {
+		return heuristic;
+	}
+	
+	/**
+	 * Returns the maximum length of the data in one IDAT chunk.
+	 * 
+	 * @return maximum IDAT chunk length, or {@link #UNLIMITED_CHUNK_LENGTH}
+	 */
+	public int getMaxChunkLength() {
+		return maxChunkLength;
+	}
+	
+	/**
+	 * Returns the size of the buffer that compressed data is written into.
+	 * 
+	 * @return output buffer size
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	
+	/**
+	 * Returns the number of threads used to compress the image data.
+	 * 
+	 * @return compression threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * Returns the number of uncompressed bytes in each block when the image data is compressed in parallel.
+	 * 
+	 * @return parallel compression block size
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+	
+	/**
+	 * Returns true if images with 256 or fewer colors are written as palette images.
+	 * 
+	 * @return true if palettes are used when possible
+	 */
+	public boolean isPaletteEnabled() {
+		return palette;
+	}
+	
+	/**
+	 * Returns true if images are written with the smallest color type and bit depth that holds every pixel exactly.
+	 * 
+	 * @return true if the color type and bit depth are reduced when possible
+	 */
+	public boolean isReductionEnabled() {
+		return reduce;
+	}
+	
+	/**
+	 * Returns true if images are written with Adam7 interlacing.
+	 * 
+	 * @return true if images are interlaced
+	 */
+	public boolean isInterlaced() {
+		return interlace;
+	}
+	
+	/**
+	 * Returns the number of colors that images with more colors are quantized to, or 0 if images are never quantized.
+	 * 
+	 * @return palette size for quantized images, or 0
+	 */
+	public int getQuantizeColors() {
+		return quantizeColors;
+	}
+	
+	/**
+	 * Returns true if quantized images are dithered.
+	 * 
+	 * @return true if quantized images are dithered
+	 */
+	public boolean isDithered() {
+		return dither;
+	}
+	
+	/**
+	 * Returns the listener that receives the {@link EncodeStats} of every image, or null if encoding is not measured.
+	 * 
+	 * @return encode listener, or null
+	 */
+	public EncodeListener getListener() {
+		return listener;
+	}
+	
+	/**
+	 * Builds {@link EncoderOptions}. Every setter checks its argument and throws an {@link IllegalArgumentException}
+	 * if it is invalid.
+	 * 
+	 * @author Joe Desmond
+	 */
+	public static final class Builder {
+		private int level = Deflater.DEFAULT_COMPRESSION;
+		
+		private CompressionStrategy strategy = CompressionStrategy.DEFAULT;
+		
+		private Filter filter = Filter.DYNAMIC;
+		
+		private Heuristic heuristic = Heuristic.MINIMUM_SUM;
+		
+		private int maxChunkLength = UNLIMITED_CHUNK_LENGTH;
+		
+		private int bufferSize = DEFAULT_BUFFER_SIZE;
+		
+		private int threads = 1;
+		
+		private int blockSize = ParallelDeflater.DEFAULT_BLOCK_SIZE;
+		
+		private boolean palette = true;
+		
+		private boolean reduce = true;
+		
+		private boolean interlace = false;
+		
+		private int quantizeColors = 0;
+		
+		private boolean dither = false;
+		
+		private EncodeListener listener = null;
+		
+		private Builder() {
+		
+		}
+		
+		/**
+		 * Sets the deflate compression level. 0 stores the data without compressing it, 1 is fastest, and 9 gives the smallest output.
+		 * The default is {@link Deflater#DEFAULT_COMPRESSION} (6).
+		 * 
+		 * @param _level compression level: 0-9, or {@link Deflater#DEFAULT_COMPRESSION}
+		 * @return this builder
+		 */
+		public Builder level(final int _level) {
+			if (_level != Deflater.DEFAULT_COMPRESSION && (_level < Deflater.NO_COMPRESSION || _level > Deflater.BEST_COMPRESSION)) {
+				throw new IllegalArgumentException("Compression level must be between 0 and 9: " + _level);
+			}
+			
+			level = _level;
+			return this;
+		}
+		
+		/**
+		 * Sets the deflate compression strategy. The default is {@link CompressionStrategy#DEFAULT}.
+		 * 
+		 * @param _strategy compression strategy
+		 * @return this builder
+		 */
+		public Builder strategy(final CompressionStrategy _strategy) {
+			strategy = requireNonNull(_strategy, "Compression strategy");
+			return this;
+		}
+		
+		/**
+		 * Sets the filter used for every scanline. The default is {@link Filter#DYNAMIC}, which picks a filter for each line
+		 * with the {@link #heuristic(Heuristic) heuristic}.
+		 * 
+		 * @param _filter filter
+		 * @return this builder
+		 */
+		public Builder filter(final Filter _filter) {
+			filter = requireNonNull(_filter, "Filter");
+			return this;
+		}
+		
+		/**
+		 * Sets the heuristic used to pick filters when the filter is {@link Filter#DYNAMIC}. The default is {@link Heuristic#MINIMUM_SUM}.
+		 * 
+		 * @param _heuristic filter selection heuristic
+		 * @return this builder
+		 */
+		public Builder heuristic(final Heuristic _heuristic) {
+			heuristic = requireNonNull(_heuristic, "Heuristic");
+			return this;
+		}
+		
+		/**
+		 * Sets the maximum length of the data in one IDAT chunk. Image data that doesn't fit is split across several
+		 * IDAT chunks. The default is {@link #UNLIMITED_CHUNK_LENGTH}, which puts all of the image data in one chunk.
+		 * 
+		 * @param _maxChunkLength maximum IDAT chunk length
+		 * @return this builder
+		 */
+		public Builder maxChunkLength(final int _maxChunkLength) {
+			if (_maxChunkLength <= 0) {
+				throw new IllegalArgumentException("Maximum IDAT chunk length must be positive: " + _maxChunkLength);
+			}
+			
+			maxChunkLength = _maxChunkLength;
+			return this;
+		}
+		
+		/**
+		 * Sets the size of the buffer that compressed data is written into. Larger buffers mean fewer calls into the compressor.
+		 * {@link PngWriter} also uses this as an upper bound on the length of its IDAT chunks. The default is {@link #DEFAULT_BUFFER_SIZE}.
+		 * 
+		 * @param _bufferSize output buffer size
+		 * @return this builder
+		 */
+		public Builder bufferSize(final int _bufferSize) {
+			if (_bufferSize <= 0) {
+				throw new IllegalArgumentException("Buffer size must be positive: " + _bufferSize);
+			}
+			
+			bufferSize = _bufferSize;
+			return this;
+		}
+		
+		/**
+		 * Sets the number of threads used to compress the image data. If this is more than 1, the image data is compressed
+		 * in blocks of {@link #blockSize(int) blockSize} bytes with a {@link ParallelDeflater}, on a thread pool that is shared by every
+		 * encoder with the same number of threads. The default is 1.
+		 * 
+		 * @param _threads compression threads
+		 * @return this builder
+		 */
+		public Builder threads(final int _threads) {
+			if (_threads <= 0) {
+				throw new IllegalArgumentException("Number of threads must be positive: " + _threads);
+			}
+			
+			threads = _threads;
+			return this;
+		}
+		
+		/**
+		 * Sets the number of uncompressed bytes in each block when the image data is compressed in parallel.
+		 * The default is {@link ParallelDeflater#DEFAULT_BLOCK_SIZE}.
+		 * 
+		 * @param _blockSize parallel compression block size
+		 * @return this builder
+		 */
+		public Builder blockSize(final int _blockSize) {
+			if (_blockSize <= 0) {
+				throw new IllegalArgumentException("Block size must be positive: " + _blockSize);
+			}
+			
+			blockSize = _blockSize;
+			return this;
+		}
+		
+		/**
+		 * Sets whether images with 256 or fewer distinct colors are written as palette images (with a PLTE chunk, and a tRNS
+		 * chunk if any color is not opaque). This only applies to 8-bit packed formats ({@link ColorFormat#RGB_888},
+		 * {@link ColorFormat#ARGB_8888}, and {@link ColorFormat#RGBA_8888}) and to encoders that have the whole image; {@link PngWriter}
+		 * never uses a palette. The default is true.
+		 * 
+		 * @param _palette true to use a palette when possible
+		 * @return this builder
+		 */
+		public Builder palette(final boolean _palette) {
+			palette = _palette;
+			return this;
+		}
+		
+		/**
+		 * Sets whether images are written with the smallest color type and bit depth that holds every pixel exactly. When this is
+		 * true, opaque images are written without alpha samples, gray images are written as grayscale, images whose only transparent
+		 * pixels are one fully transparent color use a tRNS chunk instead of alpha samples, and 16-bit samples that fit in 8 bits are
+		 * written with 8 bits (see {@link ReducedConverter}). As with palettes, {@link PngWriter} never does this. The default is true.
+		 * 
+		 * @param _reduce true to reduce the color type and bit depth when possible
+		 * @return this builder
+		 */
+		public Builder reduce(final boolean _reduce) {
+			reduce = _reduce;
+			return this;
+		}
+		
+		/**
+		 * Sets whether images are written with Adam7 interlacing, so that a decoder can show a rough version of the image before all of it
+		 * has arrived (see {@link Adam7}). Interlaced images usually compress a little worse. The seven passes are filtered in parallel
+		 * on large images. {@link PngWriter} cannot interlace, because the first pass needs rows from the whole image. The default is false.
+		 * 
+		 * @param _interlace true to interlace images
+		 * @return this builder
+		 */
+		public Builder interlace(final boolean _interlace) {
+			interlace = _interlace;
+			return this;
+		}
+		
+		/**
+		 * Sets the number of colors that images are quantized to when they cannot be written exactly with 8 bits or less per pixel
+		 * (see {@link QuantizedConverter}). Quantized images are written as palette images, and lose information: each pixel becomes
+		 * the closest of at most <code>_colors</code> colors. Photographs usually become much smaller. This only applies to 8-bit packed formats
+		 * and to encoders that have the whole image. The default is 0, which never quantizes.
+		 * 
+		 * @param _colors largest number of palette entries (2 to 256), or 0 to not quantize images
+		 * @return this builder
+		 */
+		public Builder quantize(final int _colors) {
+			if (_colors != 0 && (_colors < 2 || _colors > PaletteConverter.MAX_COLORS)) {
+				throw new IllegalArgumentException("Palette size must be 0 or between 2 and " + PaletteConverter.MAX_COLORS + ": " + _colors);
+			}
+			
+			quantizeColors = _colors;
+			return this;
+		}
+		
+		/**
+		 * Sets whether quantized images are dithered, which hides banding in smooth gradients at the cost of some noise (and usually a
+		 * slightly larger file). This has no effect unless {@link #quantize(int)} is used. The default is false.
+		 * 
+		 * @param _dither true to dither quantized images
+		 * @return this builder
+		 */
+		public Builder dither(final boolean _dither) {
+			dither = _dither;
+			return this;
+		}
+		
+		/**
+		 * Sets the listener that receives the {@link EncodeStats} of every image encoded with these options: how long each stage took,
+		 * how many bytes each stage produced, and how many rows used each filter. The default is null, in which case nothing is measured.
+		 * 
+		 * @param _listener encode listener, or null
+		 * @return this builder
+		 */
+		public Builder listener(final EncodeListener _listener) {
+			listener = _listener;
+			return this;
+		}
+		
+		/**
+		 * Creates EncoderOptions with the settings of this builder.
+		 * 
+		 * @return new options
+		 */
+		public EncoderOptions build() {
+			return new EncoderOptions(this);
+		}
+		
+		private static <T> T requireNonNull(final T value, final String name) {
+			if (value == null) {
+				throw new IllegalArgumentException(name + " cannot be null");
+			}
+			
+			return value;
+		}
+	}
+}
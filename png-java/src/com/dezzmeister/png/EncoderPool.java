@@ -0,0 +1,213 @@
+package com.dezzmeister.png;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.dezzmeister.png.color.ColorFormat;
+
+/**
+ * A pool of {@link ReusableEncoder ReusableEncoders} that share the same options, for encoding images on many threads. Encoders can
+ * be borrowed with {@link #acquire()} and returned with {@link #release(ReusableEncoder)}, or {@link #encode(int[], int, int, ColorFormat)}
+ * can be called from any thread to encode an image with a pooled encoder. Up to <code>maxIdle</code> encoders are kept between uses;
+ * extra encoders are closed when they are released.
+ * <p>
+ * {@link #forCurrentThread()} returns an encoder that belongs to the calling thread, which avoids the cost of borrowing and returning
+ * an encoder for every image when the same request threads encode images over and over. When a thread's encoder is created, the encoders
+ * of threads that have ended are closed, so a pool used by short-lived threads does not keep an encoder for every thread it has seen.
+ * <p>
+ * {@link #close()} closes every idle encoder and every thread's encoder. Borrowed encoders are closed when they are released.
+ * 
+ * @author Joe Desmond
+ */
+public class EncoderPool implements Closeable {
+	
+	private final EncoderOptions options;
+	
+	private final int maxIdle;
+	
+	/**
+	 * Encoders that are not being used
+	 */
+	private final Queue<ReusableEncoder> idle = new ConcurrentLinkedQueue<ReusableEncoder>();
+	
+	/**
+	 * Number of encoders in {@link #idle}
+	 */
+	private final AtomicInteger idleCount = new AtomicInteger();
+	
+	/**
+	 * Encoders that belong to a single thread. These are also kept in {@link #threadEncoders} so that they can be closed.
+	 */
+	private final ThreadLocal<ReusableEncoder> threadEncoder = new ThreadLocal<ReusableEncoder>();
+	
+	/**
+	 * Every thread's encoder, by thread. The threads are weakly referenced so that this doesn't keep them from being collected;
+	 * if a thread is collected before its encoder is closed, the encoder's Deflater is still released when the encoder is collected.
+	 * Guarded by itself.
+	 */
+	private final Map<Thread, ReusableEncoder> threadEncoders = new WeakHashMap<Thread, ReusableEncoder>();
+	
+	private volatile boolean closed = false;
+	
+	/**
+	 * Creates a pool of encoders with the given options.
+	 * 
+	 * @param _options options used by every encoder in the pool
+	 * @param _maxIdle maximum number of encoders kept between uses
+	 */
+	public EncoderPool(final EncoderOptions _options, final int _maxIdle) {
+		if (_maxIdle < 0) {
+			throw new IllegalArgumentException("Maximum number of idle encoders cannot be negative: " + _maxIdle);
+		}
+		
+		options = _options;
+		maxIdle = _maxIdle;
+	}
+	
+	/**
+	 * Borrows an encoder from the pool, creating a new one if none are idle. The encoder must be returned with
+	 * {@link #release(ReusableEncoder)} and must not be used after it has been returned.
+	 * 
+	 * @return encoder
+	 */
+	public ReusableEncoder acquire() {
+		checkOpen();
+		
+		final ReusableEncoder encoder = idle.poll();
+		
+		if (encoder == null) {
+			return new ReusableEncoder(options);
+		}
+		
+		idleCount.decrementAndGet();
+		return encoder;
+	}
+	
+	/**
+	 * Returns an encoder to the pool. If the pool already has <code>maxIdle</code> idle encoders or has been closed, the encoder is closed instead.
+	 * 
+	 * @param encoder encoder borrowed with {@link #acquire()}
+	 */
+	public void release(final ReusableEncoder encoder) {
+		if (!closed && idleCount.incrementAndGet() <= maxIdle) {
+			idle.offer(encoder);
+			
+			// The pool may have been closed while the encoder was being returned
+			if (closed) {
+				closeIdle();
+			}
+		} else {
+			idleCount.decrementAndGet();
+			encoder.close();
+		}
+	}
+	
+	/**
+	 * Encodes an image with an encoder from the pool. This can be called from any thread.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @return encoded PNG
+	 */
+	public byte[] encode(final int[] pixels, final int width, final int height, final ColorFormat colorFormat) {
+		final ReusableEncoder encoder = acquire();
+		
+		try {
+			return encoder.encode(pixels, width, height, colorFormat);
+		} finally {
+			release(encoder);
+		}
+	}
+	
+	/**
+	 * Returns the calling thread's encoder, creating it the first time it is needed. The encoder belongs to the pool and must not be
+	 * closed or used by any other thread; it is closed when the pool is closed.
+	 * 
+	 * @return the calling thread's encoder
+	 */
+	public ReusableEncoder forCurrentThread() {
+		checkOpen();
+		
+		ReusableEncoder encoder = threadEncoder.get();
+		
+		if (encoder == null) {
+			encoder = new ReusableEncoder(options);
+			
+			synchronized (threadEncoders) {
+				
+				// The pool may have been closed after the check above, in which case close() will not see this encoder
+				if (closed) {
+					encoder.close();
+					throw new IllegalStateException("Encoder pool has been closed");
+				}
+				
+				closeEnded();
+				threadEncoders.put(Thread.currentThread(), encoder);
+			}
+			
+			threadEncoder.set(encoder);
+		}
+		
+		return encoder;
+	}
+	
+	/**
+	 * Closes and forgets the encoders of threads that have ended. Must be called while holding {@link #threadEncoders}.
+	 */
+	private void closeEnded() {
+		final Iterator<Map.Entry<Thread, ReusableEncoder>> entries = threadEncoders.entrySet().iterator();
+		
+		while (entries.hasNext()) {
+			final Map.Entry<Thread, ReusableEncoder> entry = entries.next();
+			
+			if (!entry.getKey().isAlive()) {
+				entry.getValue().close();
+				entries.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Closes every idle encoder and every thread's encoder. The pool cannot be used afterwards.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		closeIdle();
+		
+		final List<ReusableEncoder> encoders;
+		
+		synchronized (threadEncoders) {
+			encoders = new ArrayList<ReusableEncoder>(threadEncoders.values());
+			threadEncoders.clear();
+		}
+		
+		for (final ReusableEncoder encoder : encoders) {
+			encoder.close();
+		}
+	}
+	
+	private void closeIdle() {
+		ReusableEncoder encoder;
+		
+		while ((encoder = idle.poll()) != null) {
+			idleCount.decrementAndGet();
+			encoder.close();
+		}
+	}
+	
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Encoder pool has been closed");
+		}
+	}
+}
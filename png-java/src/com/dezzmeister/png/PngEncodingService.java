@@ -0,0 +1,268 @@
+package com.dezzmeister.png;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.metrics.MetricsRegistry;
+
+/**
+ * Encodes images asynchronously on a fixed pool of worker threads, so that encoding many small images (icons, sprites) is kept off of
+ * request threads. Each worker thread encodes with its own {@link ReusableEncoder} (see {@link EncoderPool#forCurrentThread()}), so its
+ * Deflater and buffers are reused from one image to the next.
+ * <p>
+ * At most <code>threads + queueCapacity</code> images can be waiting or being encoded at once. When that many have been submitted,
+ * {@link #submit(int[], int, int, ColorFormat)} waits for one to finish, and {@link #trySubmit(int[], int, int, ColorFormat)} gives up
+ * immediately, so callers that produce images faster than they can be encoded are slowed down instead of filling memory with queued images.
+ * <p>
+ * The service keeps its own counters of submitted, completed, failed, and rejected images, the number of images waiting, and the time
+ * images spend waiting and being encoded (see {@link #snapshot()}). Per-image stats can still be collected by giving the options a
+ * {@link MetricsRegistry} as a listener.
+ * 
+ * @author Joe Desmond
+ */
+public class PngEncodingService implements Closeable {
+	
+	private final EncoderPool encoders;
+	
+	private final ThreadPoolExecutor executor;
+	
+	/**
+	 * One permit for each image that can be waiting or being encoded
+	 */
+	private final Semaphore slots;
+	
+	private final long startNanos = System.nanoTime();
+	
+	private final LongAdder submitted = new LongAdder();
+	
+	private final LongAdder completed = new LongAdder();
+	
+	private final LongAdder failed = new LongAdder();
+	
+	private final LongAdder rejected = new LongAdder();
+	
+	private final LongAdder queuedNanos = new LongAdder();
+	
+	private final LongAdder encodeNanos = new LongAdder();
+	
+	private final LongAdder pngBytes = new LongAdder();
+	
+	/**
+	 * Number of images that have been submitted but not started
+	 */
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	
+	private final AtomicInteger peakQueueDepth = new AtomicInteger();
+	
+	private volatile boolean closed = false;
+	
+	/**
+	 * Creates an encoding service with the given options, number of worker threads, and queue capacity.
+	 * 
+	 * @param options options used to encode every image
+	 * @param threads number of worker threads
+	 * @param queueCapacity number of images that can wait for a worker thread
+	 * @throws IllegalArgumentException if <code>threads</code> is not positive or <code>queueCapacity</code> is negative
+	 */
+	public PngEncodingService(final EncoderOptions options, final int threads, final int queueCapacity) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+		}
+		
+		if (queueCapacity < 0) {
+			throw new IllegalArgumentException("Queue capacity cannot be negative: " + queueCapacity);
+		}
+		
+		final AtomicInteger threadCount = new AtomicInteger();
+		
+		encoders = new EncoderPool(options, 0);
+		slots = new Semaphore(threads + queueCapacity);
+		
+		// The semaphore bounds the number of tasks, so the executor's own queue never needs to reject any
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), task -> {
+			final Thread thread = new Thread(task, "png-encoder-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		});
+	}
+	
+	/**
+	 * Submits an image to be encoded, waiting until there is room in the queue if it is full. <code>pixels</code> must not be changed
+	 * until the returned future is complete.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @return the encoded PNG, or the exception that stopped it from being encoded
+	 * @throws IllegalStateException if the service has been closed, or the calling thread is interrupted while waiting
+	 */
+	public CompletableFuture<byte[]> submit(final int[] pixels, final int width, final int height, final ColorFormat colorFormat) {
+		checkOpen();
+		
+		try {
+			slots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for room in the queue", e);
+		}
+		
+		return enqueue(pixels, width, height, colorFormat);
+	}
+	
+	/**
+	 * Submits an image to be encoded if there is room in the queue. <code>pixels</code> must not be changed until the returned
+	 * future is complete.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @return the encoded PNG, or null if the queue is full
+	 * @throws IllegalStateException if the service has been closed
+	 */
+	public CompletableFuture<byte[]> trySubmit(final int[] pixels, final int width, final int height, final ColorFormat colorFormat) {
+		checkOpen();
+		
+		if (!slots.tryAcquire()) {
+			rejected.increment();
+			return null;
+		}
+		
+		return enqueue(pixels, width, height, colorFormat);
+	}
+	
+	/**
+	 * Hands an image to the worker threads. The caller must hold a permit, which is released when the image is done.
+	 */
+	private CompletableFuture<byte[]> enqueue(final int[] pixels, final int width, final int height, final ColorFormat colorFormat) {
+		final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		final long submitTime = System.nanoTime();
+		
+		peakQueueDepth.accumulateAndGet(queueDepth.incrementAndGet(), Math::max);
+		
+		try {
+			executor.execute(() -> encode(pixels, width, height, colorFormat, future, submitTime));
+		} catch (RejectedExecutionException e) {
+			queueDepth.decrementAndGet();
+			slots.release();
+			throw new IllegalStateException("Encoding service has been closed", e);
+		}
+		
+		submitted.increment();
+		return future;
+	}
+	
+	/**
+	 * Encodes one image on a worker thread and completes its future.
+	 */
+	private void encode(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final CompletableFuture<byte[]> future, final long submitTime) {
+		final long start = System.nanoTime();
+		
+		queueDepth.decrementAndGet();
+		queuedNanos.add(start - submitTime);
+		
+		try {
+			final byte[] png = encoders.forCurrentThread().encode(pixels, width, height, colorFormat);
+			
+			encodeNanos.add(System.nanoTime() - start);
+			pngBytes.add(png.length);
+			completed.increment();
+			slots.release();
+			future.complete(png);
+		} catch (RuntimeException | Error e) {
+			encodeNanos.add(System.nanoTime() - start);
+			failed.increment();
+			slots.release();
+			future.completeExceptionally(e);
+		}
+	}
+	
+	/**
+	 * Returns the number of images that have been submitted but not started.
+	 * 
+	 * @return queue depth
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+	
+	/**
+	 * Returns the number of images encoded per second since the service was created.
+	 * 
+	 * @return images per second
+	 */
+	public double getThroughput() {
+		return completed.sum() * 1e9 / Math.max(1, System.nanoTime() - startNanos);
+	}
+	
+	/**
+	 * Returns the current value of every metric of the service. The metrics are:
+	 * <ul>
+	 * <li><code>png.service.submitted</code>, <code>png.service.completed</code>, <code>png.service.failed</code>: images submitted,
+	 * encoded, and failed</li>
+	 * <li><code>png.service.rejected</code>: images turned away by {@link #trySubmit(int[], int, int, ColorFormat)} because the queue was full</li>
+	 * <li><code>png.service.queue.depth</code>, <code>png.service.queue.peak</code>: images waiting for a worker thread now, and at most</li>
+	 * <li><code>png.service.nanos.queued</code>, <code>png.service.nanos.encode</code>: nanoseconds images have spent waiting and being encoded</li>
+	 * <li><code>png.service.nanos.uptime</code>: nanoseconds since the service was created, for computing throughput</li>
+	 * <li><code>png.service.bytes.png</code>: bytes of PNG files produced</li>
+	 * </ul>
+	 * As with {@link MetricsRegistry#snapshot()}, metrics are read one at a time while images are being encoded.
+	 * 
+	 * @return metric names and values, in the order above
+	 */
+	public Map<String, Long> snapshot() {
+		final Map<String, Long> out = new LinkedHashMap<String, Long>();
+		
+		out.put("png.service.submitted", submitted.sum());
+		out.put("png.service.completed", completed.sum());
+		out.put("png.service.failed", failed.sum());
+		out.put("png.service.rejected", rejected.sum());
+		out.put("png.service.queue.depth", (long) queueDepth.get());
+		out.put("png.service.queue.peak", (long) peakQueueDepth.get());
+		out.put("png.service.nanos.queued", queuedNanos.sum());
+		out.put("png.service.nanos.encode", encodeNanos.sum());
+		out.put("png.service.nanos.uptime", System.nanoTime() - startNanos);
+		out.put("png.service.bytes.png", pngBytes.sum());
+		
+		return out;
+	}
+	
+	/**
+	 * Stops accepting images, waits for every submitted image to be encoded, and closes the worker threads' encoders.
+	 * 
+	 * @throws IllegalStateException if the calling thread is interrupted while waiting; the encoders are left open, because the worker
+	 * 			threads may still be using them
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		executor.shutdown();
+		
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for images to be encoded", e);
+		}
+		
+		encoders.close();
+	}
+	
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Encoding service has been closed");
+		}
+	}
+}
@@ -0,0 +1,519 @@
+package com.dezzmeister.png;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.dezzmeister.png.chunks.ChunkType;
+import com.dezzmeister.png.chunks.meta.Adam7;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.PixelUnpacker;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.functions.CRC;
+
+/**
+ * Streaming PNG decoder. A PngReader reads a PNG from an {@link InputStream} one row at a time: IDAT data is inflated only as far as
+ * the next scanline, and only the previous and current scanlines are kept in memory, so memory use depends on the width of the image
+ * but not its height. This is the reading counterpart of {@link PngWriter}.
+ * <p>
+ * The PNG signature, IHDR chunk, and every chunk before the first IDAT chunk are read when the PngReader is constructed, so the dimensions
+ * and pixel format are known before any rows are read. Rows are read with {@link #readRow(int[], int)}, and {@link #finish()} reads the rest
+ * of the PNG up to the IEND chunk. Every chunk's CRC is checked. PLTE and tRNS chunks are used; other ancillary chunks are skipped.
+ * <p>
+ * Interlaced PNGs can be read, but their rows cannot be streamed: every {@link Adam7} pass has rows from the whole image, so all
+ * of the passes are read and put together when the first row is read, and the whole image is kept in memory.
+ * 
+ * @author Joe Desmond
+ * @see Decoder
+ */
+public class PngReader implements Closeable {
+	
+	/**
+	 * Size of the buffer that IDAT data is read into
+	 */
+	private static final int INPUT_BUFFER_SIZE = 8192;
+	
+	private final DataInputStream in;
+	
+	private final int width;
+	
+	private final int height;
+	
+	private final ColorType colorType;
+	
+	private final byte bitDepth;
+	
+	private final int bytesPerPixel;
+	
+	private final boolean interlaced;
+	
+	/**
+	 * Unfiltered scanlines of the whole image, if the image is interlaced and the passes have been read
+	 */
+	private byte[][] deinterlaced = null;
+	
+	/**
+	 * PLTE chunk data, or null
+	 */
+	private byte[] palette = null;
+	
+	/**
+	 * tRNS chunk data, or null
+	 */
+	private byte[] transparency = null;
+	
+	/**
+	 * Converts scanlines to the color format given to the constructor
+	 */
+	private final PixelUnpacker unpacker;
+	
+	private final Inflater inflater = new Inflater();
+	
+	/**
+	 * Compressed image data read from the current IDAT chunk
+	 */
+	private final byte[] input = new byte[INPUT_BUFFER_SIZE];
+	
+	/**
+	 * Type of the chunk being read
+	 */
+	private final byte[] chunkType = new byte[4];
+	
+	/**
+	 * CRC of the chunk being read
+	 */
+	private final Checksum checksum = CRC.newChecksum();
+	
+	/**
+	 * Number of unread bytes in the current IDAT chunk
+	 */
+	private int idatRemaining;
+	
+	/**
+	 * Filter type code of the scanline being read
+	 */
+	private final byte[] filterType = new byte[1];
+	
+	/**
+	 * Previous unfiltered scanline
+	 */
+	private byte[] prevLine;
+	
+	/**
+	 * Scanline being read
+	 */
+	private byte[] thisLine;
+	
+	/**
+	 * Number of rows read so far
+	 */
+	private int row = 0;
+	
+	private boolean finished = false;
+	
+	/**
+	 * Creates a PngReader that reads a PNG from <code>_in</code> and produces pixels in the given color format.
+	 * The signature and every chunk up to the first IDAT chunk are read immediately.
+	 * 
+	 * @param _in stream to read the PNG from
+	 * @param colorFormat color format of the rows that will be read
+	 * @throws IOException if there is a problem reading from <code>_in</code>
+	 * @throws IllegalArgumentException if the data is not a valid PNG, or uses a feature that is not supported
+	 */
+	public PngReader(final InputStream _in, final ColorFormat colorFormat) throws IOException {
+		in = new DataInputStream((_in instanceof BufferedInputStream) ? _in : new BufferedInputStream(_in));
+		
+		final byte[] signature = new byte[Encoder.PNG_HEADER.length];
+		in.readFully(signature);
+		
+		if (!Arrays.equals(signature, Encoder.PNG_HEADER)) {
+			throw new IllegalArgumentException("Not a PNG file");
+		}
+		
+		if (readChunkHeader() != 13 || !Arrays.equals(chunkType, ChunkType.IHDR.getByteName())) {
+			throw new IllegalArgumentException("PNG must start with an IHDR chunk");
+		}
+		
+		final byte[] ihdr = readChunk(13);
+		
+		width = readInt(ihdr, 0);
+		height = readInt(ihdr, 4);
+		bitDepth = ihdr[8];
+		
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image dimensions must be positive: " + width + "x" + height);
+		}
+		
+		colorType = ColorType.getColorType(ihdr[9]);
+		
+		if (!colorType.isAllowedBitDepth(bitDepth)) {
+			throw new IllegalArgumentException("Bit depth " + bitDepth + " is not allowed for color type " + colorType);
+		}
+		
+		if (ihdr[10] != 0 || ihdr[11] != 0) {
+			throw new IllegalArgumentException("Unknown compression or filter method");
+		}
+		
+		if (ihdr[12] != 0 && ihdr[12] != 1) {
+			throw new IllegalArgumentException("Unknown interlace method: " + ihdr[12]);
+		}
+		
+		interlaced = (ihdr[12] == 1);
+		
+		bytesPerPixel = colorType.getBytesPerPixel(bitDepth);
+		
+		final int lineLength = colorType.getScanlineLength(width, bitDepth);
+		prevLine = new byte[lineLength];
+		thisLine = new byte[lineLength];
+		
+		readChunksBeforeData();
+		
+		unpacker = new PixelUnpacker(colorType, bitDepth, palette, transparency, colorFormat);
+	}
+	
+	/**
+	 * Reads chunks until the first IDAT chunk.
+	 * 
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	private void readChunksBeforeData() throws IOException {
+		while (true) {
+			final int length = readChunkHeader();
+			
+			if (Arrays.equals(chunkType, ChunkType.IDAT.getByteName())) {
+				idatRemaining = length;
+				return;
+			} else if (Arrays.equals(chunkType, ChunkType.PLTE.getByteName())) {
+				if (length % 3 != 0 || length > 256 * 3) {
+					throw new IllegalArgumentException("Invalid PLTE chunk length: " + length);
+				}
+				
+				palette = readChunk(length);
+			} else if (Arrays.equals(chunkType, ChunkType.TRNS.getByteName())) {
+				transparency = readChunk(length);
+			} else if (Arrays.equals(chunkType, ChunkType.IEND.getByteName())) {
+				throw new IllegalArgumentException("PNG has no image data");
+			} else {
+				skipChunk(length);
+			}
+		}
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Returns the PNG color type of the image. Pixels are converted from this color type to the color format given to the constructor.
+	 * 
+	 * @return PNG color type
+	 */
+	public ColorType getColorType() {
+		return colorType;
+	}
+	
+	/**
+	 * Returns the bit depth of the image.
+	 * 
+	 * @return bit depth
+	 */
+	public byte getBitDepth() {
+		return bitDepth;
+	}
+	
+	/**
+	 * Returns true if the image is interlaced with {@link Adam7}.
+	 * 
+	 * @return true if the image is interlaced
+	 */
+	public boolean isInterlaced() {
+		return interlaced;
+	}
+	
+	/**
+	 * Returns the number of ints in one row of pixels produced by {@link #readRow(int[], int)}.
+	 * 
+	 * @return ints per row
+	 */
+	public int getRowLength() {
+		return width * unpacker.intsPerPixel();
+	}
+	
+	/**
+	 * Reads the next row of the image into <code>pixels</code>.
+	 * 
+	 * @param pixels destination array; must hold at least {@link #getRowLength()} ints
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	public void readRow(final int[] pixels) throws IOException {
+		readRow(pixels, 0);
+	}
+	
+	/**
+	 * Reads the next row of the image into <code>pixels</code>, starting at index <code>offset</code>. This can be used to read rows
+	 * straight into a larger pixel array.
+	 * 
+	 * @param pixels destination array
+	 * @param offset index of the first int of the row
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	public void readRow(final int[] pixels, final int offset) throws IOException {
+		unpacker.unpackLine(readScanline(), width, pixels, offset);
+	}
+	
+	/**
+	 * Reads the next row of the image as an unfiltered PNG scanline, in the image's own color type and bit depth. The returned
+	 * array is reused, so it is only valid until the next row is read.
+	 * 
+	 * @return unfiltered scanline
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	public byte[] readScanline() throws IOException {
+		if (finished) {
+			throw new IllegalStateException("PNG has already been finished");
+		}
+		
+		if (row == height) {
+			throw new IllegalStateException("All " + height + " rows have already been read");
+		}
+		
+		if (interlaced) {
+			if (deinterlaced == null) {
+				deinterlaced = readPasses();
+			}
+			
+			return deinterlaced[row++];
+		}
+		
+		final byte[] temp = prevLine;
+		prevLine = thisLine;
+		thisLine = temp;
+		
+		inflate(filterType);
+		inflate(thisLine);
+		unfilter((row == 0) ? null : prevLine, thisLine);
+		row++;
+		
+		return thisLine;
+	}
+	
+	/**
+	 * Reads every pass of an interlaced image and puts them together.
+	 * 
+	 * @return unfiltered scanlines of the whole image
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	private byte[][] readPasses() throws IOException {
+		final byte[][] scanlines = new byte[height][colorType.getScanlineLength(width, bitDepth)];
+		
+		for (int pass = 0; pass < Adam7.PASSES; pass++) {
+			if (Adam7.isEmpty(pass, width, height)) {
+				continue;
+			}
+			
+			final int passLength = colorType.getScanlineLength(Adam7.passWidth(pass, width), bitDepth);
+			byte[] prevPassLine = new byte[passLength];
+			byte[] passLine = new byte[passLength];
+			
+			for (int passRow = 0; passRow < Adam7.passHeight(pass, height); passRow++) {
+				inflate(filterType);
+				inflate(passLine);
+				unfilter((passRow == 0) ? null : prevPassLine, passLine);
+				Adam7.insert(passLine, pass, passRow, scanlines, width, colorType, bitDepth);
+				
+				final byte[] temp = prevPassLine;
+				prevPassLine = passLine;
+				passLine = temp;
+			}
+		}
+		
+		return scanlines;
+	}
+	
+	/**
+	 * Removes the filter given by {@link #filterType} from a scanline, in place.
+	 * 
+	 * @param prevLine previous unfiltered scanline, or null if this is the first scanline (of the image or pass)
+	 * @param line filtered scanline
+	 */
+	private void unfilter(final byte[] prevLine, final byte[] line) {
+		if (filterType[0] < Filter.NONE.typeCode || filterType[0] > Filter.PAETH.typeCode) {
+			throw new IllegalArgumentException("Unknown filter type " + filterType[0] + " in row " + row);
+		}
+		
+		Filter.getFilter(filterType[0]).filterFunction().removeFilter(prevLine, line, bytesPerPixel, line, 0);
+	}
+	
+	/**
+	 * Reads the rest of the PNG, up to and including the IEND chunk, checking the CRC of every chunk. Every row must have been read.
+	 * 
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		
+		if (row != height) {
+			throw new IllegalStateException("Only " + row + " of " + height + " rows have been read");
+		}
+		
+		skipChunk(idatRemaining);
+		
+		do {
+			skipChunk(readChunkHeader());
+		} while (!Arrays.equals(chunkType, ChunkType.IEND.getByteName()));
+		
+		finished = true;
+	}
+	
+	/**
+	 * Releases the decompressor and closes the input stream. Chunks after the last row are not checked unless {@link #finish()}
+	 * has been called.
+	 * 
+	 * @throws IOException if there is a problem closing the input stream
+	 */
+	@Override
+	public void close() throws IOException {
+		inflater.end();
+		in.close();
+	}
+	
+	/**
+	 * Inflates image data until <code>out</code> is full, reading more IDAT chunks as needed.
+	 * 
+	 * @param out destination array
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	private void inflate(final byte[] out) throws IOException {
+		int offset = 0;
+		
+		try {
+			while (offset < out.length) {
+				final int inflated = inflater.inflate(out, offset, out.length - offset);
+				
+				if (inflated == 0) {
+					if (inflater.finished() || inflater.needsDictionary()) {
+						throw new IllegalArgumentException("Image data ended after " + row + " of " + height + " rows");
+					}
+					
+					if (inflater.needsInput()) {
+						readImageData();
+					}
+				}
+				
+				offset += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Corrupt image data", e);
+		}
+	}
+	
+	/**
+	 * Gives the inflater more compressed data from the current IDAT chunk, moving on to the next IDAT chunk if the current one is
+	 * used up.
+	 * 
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	private void readImageData() throws IOException {
+		while (idatRemaining == 0) {
+			checkCRC();
+			idatRemaining = readChunkHeader();
+			
+			if (!Arrays.equals(chunkType, ChunkType.IDAT.getByteName())) {
+				throw new IllegalArgumentException("Image data ended after " + row + " of " + height + " rows");
+			}
+		}
+		
+		final int length = Math.min(idatRemaining, input.length);
+		readChunkData(input, length);
+		inflater.setInput(input, 0, length);
+		idatRemaining -= length;
+	}
+	
+	/**
+	 * Reads the length and type of the next chunk, and starts computing its CRC.
+	 * 
+	 * @return chunk length
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	private int readChunkHeader() throws IOException {
+		final int length = in.readInt();
+		
+		if (length < 0) {
+			throw new IllegalArgumentException("Invalid chunk length: " + length);
+		}
+		
+		in.readFully(chunkType);
+		checksum.reset();
+		checksum.update(chunkType, 0, 4);
+		
+		return length;
+	}
+	
+	private void readChunkData(final byte[] data, final int length) throws IOException {
+		in.readFully(data, 0, length);
+		checksum.update(data, 0, length);
+	}
+	
+	/**
+	 * Reads the rest of the current chunk's data and checks its CRC.
+	 * 
+	 * @param length length of the chunk data
+	 * @return chunk data
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	private byte[] readChunk(final int length) throws IOException {
+		final byte[] data = new byte[length];
+		readChunkData(data, length);
+		checkCRC();
+		
+		return data;
+	}
+	
+	/**
+	 * Skips the rest of the current chunk's data and checks its CRC. Unknown critical chunks are rejected.
+	 * 
+	 * @param length number of unread bytes in the chunk
+	 * @throws IOException if there is a problem reading from the stream
+	 */
+	private void skipChunk(final int length) throws IOException {
+		if ((chunkType[0] & 0x20) == 0 && !Arrays.equals(chunkType, ChunkType.IDAT.getByteName()) && !Arrays.equals(chunkType, ChunkType.IEND.getByteName())) {
+			throw new IllegalArgumentException("Unsupported critical chunk: " + new String(chunkType, StandardCharsets.US_ASCII));
+		}
+		
+		int remaining = length;
+		
+		while (remaining > 0) {
+			final int skipped = Math.min(remaining, input.length);
+			readChunkData(input, skipped);
+			remaining -= skipped;
+		}
+		
+		checkCRC();
+	}
+	
+	private void checkCRC() throws IOException {
+		final int crc = in.readInt();
+		
+		if (crc != (int) checksum.getValue()) {
+			throw new IllegalArgumentException("CRC mismatch in " + new String(chunkType, StandardCharsets.US_ASCII) + " chunk");
+		}
+	}
+	
+	private static int readInt(final byte[] data, final int index) {
+		return ((data[index] & 0xFF) << 24) | ((data[index + 1] & 0xFF) << 16) | ((data[index + 2] & 0xFF) << 8) | (data[index + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,401 @@
+package com.dezzmeister.png;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+import com.dezzmeister.png.chunks.ChunkType;
+import com.dezzmeister.png.chunks.ChunkWriter;
+import com.dezzmeister.png.chunks.IEND;
+import com.dezzmeister.png.chunks.IHDR;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.PixelSource;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.Heuristic;
+import com.dezzmeister.png.filters.LineFilter;
+import com.dezzmeister.png.functions.CRC;
+import com.dezzmeister.png.metrics.EncodeListener;
+import com.dezzmeister.png.metrics.EncodeStage;
+import com.dezzmeister.png.metrics.EncodeStats;
+
+/**
+ * Streaming PNG encoder. Unlike {@link Encoder}, which needs every pixel up front, a PngWriter accepts the image
+ * one row at a time and writes the PNG to an {@link OutputStream} as it goes. Only the previous and current scanlines
+ * are kept in memory; filtered lines are deflated immediately and written out in IDAT chunks of bounded size, so memory
+ * use depends on the width of the image but not its height.
+ * <p>
+ * The PNG signature and IHDR chunk are written when the PngWriter is constructed. After exactly <code>height</code>
+ * rows have been written with {@link #writeRow(int[])} (or pulled from a {@link PixelSource} with {@link #writeRows(PixelSource)}),
+ * {@link #finish()} must be called to write the remaining IDAT data and the IEND chunk.
+ * 
+ * @author Joe Desmond
+ */
+public class PngWriter implements Closeable {
+	
+	/**
+	 * Default maximum length of the data in a single IDAT chunk
+	 */
+	public static final int DEFAULT_CHUNK_LENGTH = 8192;
+	
+	/**
+	 * Stream that receives the encoded PNG
+	 */
+	private final OutputStream os;
+	
+	/**
+	 * Frames the IDAT chunks written to {@link #os}
+	 */
+	private final ChunkWriter chunkWriter;
+	
+	/**
+	 * Converts rows of pixels to unfiltered scanlines
+	 */
+	private final ScanlineConverter converter;
+	
+	private final int width;
+	
+	private final int height;
+	
+	private final ColorType colorType;
+	
+	private final byte bitDepth;
+	
+	private final LineFilter lineFilter;
+	
+	private final Deflater deflater;
+	
+	/**
+	 * Previous unfiltered scanline. This is ignored when the first row is filtered
+	 */
+	private byte[] prevLine;
+	
+	/**
+	 * Unfiltered scanline being written
+	 */
+	private byte[] thisLine;
+	
+	/**
+	 * Filter type code followed by the filtered scanline
+	 */
+	private final byte[] filteredLine;
+	
+	/**
+	 * 'IDAT' followed by up to {@link #maxChunkLength} bytes of compressed data
+	 */
+	private final byte[] chunk;
+	
+	private final int maxChunkLength;
+	
+	/**
+	 * CRC of the current IDAT chunk, updated as compressed data is added to the chunk
+	 */
+	private final Checksum checksum = CRC.newChecksum();
+	
+	/**
+	 * Number of compressed bytes currently in {@link #chunk}
+	 */
+	private int chunkLength = 0;
+	
+	/**
+	 * Number of rows written so far
+	 */
+	private int row = 0;
+	
+	private boolean finished = false;
+	
+	private final EncodeListener listener;
+	
+	/**
+	 * Stats of the image, or null if there is no {@link #listener}
+	 */
+	private final EncodeStats stats;
+	
+	/**
+	 * Creates a PngWriter that writes a PNG with the given dimensions and color format to <code>os</code>,
+	 * using dynamic filtering and IDAT chunks of at most {@link #DEFAULT_CHUNK_LENGTH} bytes.
+	 * The PNG signature and IHDR chunk are written immediately.
+	 * 
+	 * @param os stream to write the PNG to
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of the rows that will be written
+	 * @throws IOException if there is a problem writing to <code>os</code>
+	 */
+	public PngWriter(final OutputStream os, final int width, final int height, final ColorFormat colorFormat) throws IOException {
+		this(os, width, height, colorFormat, Filter.DYNAMIC, DEFAULT_CHUNK_LENGTH);
+	}
+	
+	/**
+	 * Creates a PngWriter that writes a PNG with the given dimensions and color format to <code>channel</code>.
+	 * 
+	 * @param channel channel to write the PNG to
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of the rows that will be written
+	 * @throws IOException if there is a problem writing to <code>channel</code>
+	 * @see #PngWriter(OutputStream, int, int, ColorFormat)
+	 */
+	public PngWriter(final WritableByteChannel channel, final int width, final int height, final ColorFormat colorFormat) throws IOException {
+		this(Channels.newOutputStream(channel), width, height, colorFormat);
+	}
+	
+	/**
+	 * Creates a PngWriter that writes a PNG with the given dimensions and color format to <code>os</code>.
+	 * The PNG signature and IHDR chunk are written immediately.
+	 * 
+	 * @param os stream to write the PNG to
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of the rows that will be written
+	 * @param filter filtering strategy
+	 * @param maxChunkLength maximum length of the data in one IDAT chunk
+	 * @throws IOException if there is a problem writing to <code>os</code>
+	 */
+	public PngWriter(final OutputStream os, final int width, final int height, final ColorFormat colorFormat, final Filter filter, final int maxChunkLength) throws IOException {
+		this(os, width, height, colorFormat, filter, Heuristic.MINIMUM_SUM, maxChunkLength);
+	}
+	
+	/**
+	 * Creates a PngWriter that writes a PNG with the given dimensions and color format to <code>os</code>.
+	 * If <code>filter</code> is {@link Filter#DYNAMIC}, the filter for each row is chosen with <code>heuristic</code>.
+	 * The PNG signature and IHDR chunk are written immediately.
+	 * 
+	 * @param os stream to write the PNG to
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of the rows that will be written
+	 * @param filter filtering strategy
+	 * @param heuristic filter selection heuristic
+	 * @param maxChunkLength maximum length of the data in one IDAT chunk; chunks are never longer than
+	 * {@link EncoderOptions#DEFAULT_BUFFER_SIZE} bytes, so that a large limit does not allocate a large buffer
+	 * @throws IOException if there is a problem writing to <code>os</code>
+	 */
+	public PngWriter(final OutputStream os, final int width, final int height, final ColorFormat colorFormat, final Filter filter, final Heuristic heuristic, final int maxChunkLength) throws IOException {
+		this(os, width, height, colorFormat, EncoderOptions.builder()
+				.filter(filter)
+				.heuristic(heuristic)
+				.maxChunkLength(maxChunkLength)
+				.build());
+	}
+	
+	/**
+	 * Creates a PngWriter that writes a PNG with the given dimensions and color format to <code>os</code>, using the
+	 * filter, compression level, and compression strategy from <code>options</code>. Each IDAT chunk holds at most
+	 * {@link EncoderOptions#getMaxChunkLength() getMaxChunkLength()} or {@link EncoderOptions#getBufferSize() getBufferSize()}
+	 * bytes of data, whichever is smaller. The number of threads in <code>options</code> is ignored, and the options cannot
+	 * enable interlacing. The PNG signature and IHDR chunk are written immediately.
+	 * 
+	 * @param _os stream to write the PNG to
+	 * @param _width pixel width
+	 * @param _height pixel height
+	 * @param colorFormat color format of the rows that will be written
+	 * @param options encoding options
+	 * @throws IOException if there is a problem writing to <code>_os</code>
+	 */
+	public PngWriter(final OutputStream _os, final int _width, final int _height, final ColorFormat colorFormat, final EncoderOptions options) throws IOException {
+		if (_width <= 0 || _height <= 0) {
+			throw new IllegalArgumentException("Image dimensions must be positive: " + _width + "x" + _height);
+		}
+		
+		if (options.isInterlaced()) {
+			throw new IllegalArgumentException("PngWriter cannot write interlaced images");
+		}
+		
+		os = _os;
+		chunkWriter = new ChunkWriter(_os);
+		width = _width;
+		height = _height;
+		maxChunkLength = Math.min(options.getMaxChunkLength(), options.getBufferSize());
+		
+		converter = colorFormat.scanlineConverter();
+		colorType = converter.colorType();
+		bitDepth = converter.bitDepth();
+		
+		final int lineLength = colorType.getScanlineLength(width, bitDepth);
+		prevLine = new byte[lineLength];
+		thisLine = new byte[lineLength];
+		filteredLine = new byte[lineLength + 1];
+		lineFilter = new LineFilter(colorType, bitDepth, options.getFilter(), options.getHeuristic().newStrategy());
+		
+		chunk = new byte[4 + maxChunkLength];
+		System.arraycopy(ChunkType.IDAT.getByteName(), 0, chunk, 0, 4);
+		checksum.update(chunk, 0, 4);
+		
+		deflater = options.newDeflater();
+		listener = options.getListener();
+		stats = (listener == null) ? null : new EncodeStats();
+		
+		final byte[] ihdr = IHDR.encode(width, height, bitDepth, colorType);
+		
+		os.write(Encoder.PNG_HEADER);
+		os.write(ihdr);
+		
+		if (stats != null) {
+			stats.addPngBytes(Encoder.PNG_HEADER.length + ihdr.length);
+		}
+	}
+	
+	/**
+	 * Writes the next row of the image. <code>pixels</code> holds one row of pixels in the color format given to the constructor.
+	 * 
+	 * @param pixels row of pixels
+	 * @throws IOException if there is a problem writing to the output stream
+	 */
+	public void writeRow(final int[] pixels) throws IOException {
+		writeRow(pixels, 0);
+	}
+	
+	/**
+	 * Writes the next row of the image. The row starts at index <code>offset</code> in <code>pixels</code>. This can be used
+	 * to write rows straight out of a larger pixel array.
+	 * 
+	 * @param pixels pixel array
+	 * @param offset index of the first int of the row
+	 * @throws IOException if there is a problem writing to the output stream
+	 */
+	public void writeRow(final int[] pixels, final int offset) throws IOException {
+		if (finished) {
+			throw new IllegalStateException("PNG has already been finished");
+		}
+		
+		if (row == height) {
+			throw new IllegalStateException("All " + height + " rows have already been written");
+		}
+		
+		final long convertStart = EncodeStats.start(stats);
+		converter.convertLine(pixels, offset, width, thisLine);
+		
+		final long filterStart = EncodeStats.record(stats, EncodeStage.CONVERT, convertStart);
+		final Filter used = lineFilter.filter((row == 0) ? null : prevLine, thisLine, filteredLine, 0);
+		EncodeStats.record(stats, EncodeStage.FILTER, filterStart);
+		
+		if (stats != null) {
+			stats.addFilter(used);
+		}
+		
+		deflater.setInput(filteredLine);
+		
+		while (!deflater.needsInput()) {
+			deflate();
+		}
+		
+		final byte[] temp = prevLine;
+		prevLine = thisLine;
+		thisLine = temp;
+		row++;
+	}
+	
+	/**
+	 * Writes every remaining row of the image, pulling each row from <code>source</code> just before it is written. Only one row of
+	 * pixels is held at a time. {@link #finish()} must still be called afterwards.
+	 * 
+	 * @param source produces each row of pixels (in the color format given to the constructor)
+	 * @throws IOException if there is a problem writing to the output stream
+	 * @see com.dezzmeister.png.color.QueuedPixelSource QueuedPixelSource
+	 */
+	public void writeRows(final PixelSource source) throws IOException {
+		final int[] pixels = new int[width * converter.intsPerPixel()];
+		
+		while (row < height) {
+			source.fillRow(row, pixels);
+			writeRow(pixels, 0);
+		}
+	}
+	
+	/**
+	 * Finishes the PNG: compresses any remaining data, writes the last IDAT chunk, and writes the IEND chunk.
+	 * Every row of the image must have been written.
+	 * 
+	 * @throws IOException if there is a problem writing to the output stream
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		
+		if (row != height) {
+			throw new IllegalStateException("Only " + row + " of " + height + " rows have been written");
+		}
+		
+		deflater.finish();
+		
+		while (!deflater.finished()) {
+			deflate();
+		}
+		
+		if (chunkLength > 0) {
+			writeChunk();
+		}
+		
+		IEND.write(os);
+		os.flush();
+		
+		if (stats != null) {
+			stats.addRawBytes((long) thisLine.length * height);
+			stats.addFilteredBytes(deflater.getBytesRead());
+			stats.addCompressedBytes(deflater.getBytesWritten());
+			stats.addPngBytes(IEND.LENGTH);
+			listener.encoded(stats);
+		}
+		
+		deflater.end();
+		lineFilter.end();
+		finished = true;
+	}
+	
+	/**
+	 * Finishes the PNG if every row has been written, releases the compressor, and closes the output stream.
+	 * 
+	 * @throws IOException if there is a problem writing to or closing the output stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (!finished && row == height) {
+				finish();
+			}
+		} finally {
+			deflater.end();
+			lineFilter.end();
+			os.close();
+		}
+	}
+	
+	/**
+	 * Compresses data into the current IDAT chunk, writing the chunk when it becomes full.
+	 * 
+	 * @throws IOException if there is a problem writing to the output stream
+	 */
+	private void deflate() throws IOException {
+		final long deflateStart = EncodeStats.start(stats);
+		final int written = deflater.deflate(chunk, 4 + chunkLength, maxChunkLength - chunkLength);
+		final long crcStart = EncodeStats.record(stats, EncodeStage.DEFLATE, deflateStart);
+		
+		checksum.update(chunk, 4 + chunkLength, written);
+		EncodeStats.record(stats, EncodeStage.CRC, crcStart);
+		chunkLength += written;
+		
+		if (chunkLength == maxChunkLength) {
+			writeChunk();
+		}
+	}
+	
+	private void writeChunk() throws IOException {
+		chunkWriter.writeChunk(chunk, chunkLength, (int) checksum.getValue());
+		
+		if (stats != null) {
+			stats.addPngBytes(chunkLength + ChunkWriter.OVERHEAD);
+		}
+		
+		chunkLength = 0;
+		
+		checksum.reset();
+		checksum.update(chunk, 0, 4);
+	}
+}
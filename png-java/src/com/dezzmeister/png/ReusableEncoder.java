@@ -0,0 +1,614 @@
+package com.dezzmeister.png;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+import com.dezzmeister.png.chunks.ChunkType;
+import com.dezzmeister.png.chunks.ChunkWriter;
+import com.dezzmeister.png.chunks.IEND;
+import com.dezzmeister.png.chunks.IHDR;
+import com.dezzmeister.png.chunks.PLTE;
+import com.dezzmeister.png.chunks.TRNS;
+import com.dezzmeister.png.chunks.meta.Adam7;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.chunks.meta.PNGData;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.PixelBuffers;
+import com.dezzmeister.png.color.PixelSource;
+import com.dezzmeister.png.color.QueuedPixelSource;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.color.converters.PaletteConverter;
+import com.dezzmeister.png.data.DirectBufferPool;
+import com.dezzmeister.png.data.IntHashSet;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.FilterStrategy;
+import com.dezzmeister.png.filters.LineFilter;
+import com.dezzmeister.png.functions.CRC;
+import com.dezzmeister.png.metrics.EncodeStage;
+import com.dezzmeister.png.metrics.EncodeStats;
+
+/**
+ * A PNG encoder that can encode many images, one after another. Unlike {@link Encoder}, which allocates a new {@link Deflater} and new
+ * buffers for every image, a ReusableEncoder keeps its Deflater, filter strategy, scanline buffers, and output buffer between images,
+ * so encoding many images of similar size allocates almost nothing. Each image is converted, filtered, and compressed one row at a time,
+ * straight into the output buffer.
+ * <p>
+ * A ReusableEncoder is not thread safe. {@link EncoderPool} can be used to share encoders between threads. When an encoder is no
+ * longer needed, {@link #close()} must be called to release the Deflater's native memory.
+ * <p>
+ * Each image is first analyzed to find the smallest color type and bit depth (or palette) that holds it exactly, unless this is
+ * disabled in the options. Otherwise, rows are converted with each format's {@link ScanlineConverter}, so {@link ColorFormat#GRAYSCALE}
+ * images are written with a bit depth of 16 (as with {@link PngWriter}). The number of threads in the options is ignored.
+ * 
+ * @author Joe Desmond
+ * @see EncoderPool
+ */
+public class ReusableEncoder implements Closeable {
+	
+	/**
+	 * Initial size of the output buffer
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	
+	private final EncoderOptions options;
+	
+	private final Deflater deflater;
+	
+	/**
+	 * Picks filters when the filter is dynamic. This is shared by every image.
+	 */
+	private final FilterStrategy strategy;
+	
+	/**
+	 * CRC of the current IDAT chunk
+	 */
+	private final Checksum checksum = CRC.newChecksum();
+	
+	/**
+	 * Collects the colors of each image when palettes are enabled
+	 */
+	private final IntHashSet colors = new IntHashSet(PaletteConverter.MAX_COLORS);
+	
+	/**
+	 * Previous unfiltered scanline
+	 */
+	private byte[] prevLine = new byte[0];
+	
+	/**
+	 * Unfiltered scanline being encoded
+	 */
+	private byte[] thisLine = new byte[0];
+	
+	/**
+	 * Filter type code followed by the filtered scanline
+	 */
+	private byte[] filteredLine = new byte[1];
+	
+	/**
+	 * The encoded PNG. This grows as needed and is kept between images.
+	 */
+	private byte[] out = new byte[INITIAL_BUFFER_SIZE];
+	
+	/**
+	 * Number of bytes in {@link #out}
+	 */
+	private int outLength = 0;
+	
+	/**
+	 * Index in {@link #out} of the length field of the current IDAT chunk, or -1 if no chunk has been started
+	 */
+	private int chunkStart = -1;
+	
+	/**
+	 * Number of compressed bytes in the current IDAT chunk
+	 */
+	private int chunkLength = 0;
+	
+	/**
+	 * Channel that {@link #out} is flushed to as IDAT chunks are completed, or null if the whole PNG is kept in {@link #out}
+	 */
+	private WritableByteChannel sink = null;
+	
+	/**
+	 * Number of bytes of the current image that have been flushed to {@link #sink}
+	 */
+	private long flushedLength = 0;
+	
+	/**
+	 * One row of pixels read from a buffer or pixel source. This grows as needed and is kept between images.
+	 */
+	private int[] rowPixels = new int[0];
+	
+	private boolean closed = false;
+	
+	/**
+	 * Creates a ReusableEncoder with the default options.
+	 */
+	public ReusableEncoder() {
+		this(EncoderOptions.DEFAULT);
+	}
+	
+	/**
+	 * Creates a ReusableEncoder that encodes every image with the given options.
+	 * 
+	 * @param _options encoding options
+	 */
+	public ReusableEncoder(final EncoderOptions _options) {
+		options = _options;
+		deflater = options.newDeflater();
+		strategy = options.getHeuristic().newStrategy();
+	}
+	
+	/**
+	 * Encodes an image and returns the PNG.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @return encoded PNG
+	 */
+	public byte[] encode(final int[] pixels, final int width, final int height, final ColorFormat colorFormat) {
+		encodeToBuffer(pixels, width, height, colorFormat);
+		
+		return Arrays.copyOf(out, outLength);
+	}
+	
+	/**
+	 * Encodes an image and writes the PNG to the given stream. The PNG is written straight from this encoder's output buffer,
+	 * without being copied.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param os stream to write the PNG to
+	 * @throws IOException if there is a problem writing to <code>os</code>
+	 */
+	public void encode(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final OutputStream os) throws IOException {
+		encodeToBuffer(pixels, width, height, colorFormat);
+		
+		os.write(out, 0, outLength);
+	}
+	
+	/**
+	 * Encodes an image and writes the PNG to the given channel as it is encoded. Every time the output buffer holds at least one
+	 * {@link DirectBufferPool#getBufferSize() pooled buffer} of completed chunks, they are copied into pooled direct buffers and
+	 * written with gathering writes if the channel supports them (see {@link DirectBufferPool}), so the whole PNG is never held
+	 * in memory. So that each chunk can be written once it is complete, IDAT chunks are no longer than the
+	 * {@link EncoderOptions#getBufferSize() buffer size}, as with {@link PngWriter}.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @param channel channel to write the PNG to
+	 * @throws IOException if there is a problem writing to <code>channel</code>
+	 */
+	public void encode(final int[] pixels, final int width, final int height, final ColorFormat colorFormat, final WritableByteChannel channel) throws IOException {
+		sink = channel;
+		
+		try {
+			encodeToBuffer(pixels, width, height, colorFormat);
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			sink = null;
+		}
+	}
+	
+	/**
+	 * Encodes an image in an IntBuffer and returns the PNG. Rows start <code>stride</code> ints apart, starting at the buffer's position;
+	 * the buffer's position and limit are not changed. The image is converted with the color format's {@link ScanlineConverter},
+	 * so its color type and bit depth are not reduced and no palette is used (see {@link PixelBuffers}).
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride ints from the start of one row to the start of the next
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @return encoded PNG
+	 */
+	public byte[] encode(final IntBuffer pixels, final int width, final int height, final int stride, final ColorFormat colorFormat) {
+		final ScanlineConverter converter = colorFormat.scanlineConverter();
+		final int rowInts = width * converter.intsPerPixel();
+		
+		checkOpen();
+		PixelBuffers.checkBounds(pixels.remaining(), width, height, stride, rowInts);
+		
+		final int[] row = rowPixels(rowInts);
+		
+		encodeToBuffer(width, height, converter.colorType(), converter.bitDepth(), null, null, (y, line) -> {
+			PixelBuffers.readRow(pixels, y, stride, row, rowInts);
+			converter.convertLine(row, 0, width, line);
+		}, newStats());
+		
+		return Arrays.copyOf(out, outLength);
+	}
+	
+	/**
+	 * Encodes an image in a ByteBuffer and returns the PNG. The buffer holds the same ints as an <code>int[]</code> of color format
+	 * <code>colorFormat</code> would, in the given byte order. Rows start <code>stride</code> bytes apart, starting at the buffer's position;
+	 * the buffer's position, limit, and byte order are not changed. As with {@link #encode(IntBuffer, int, int, int, ColorFormat)},
+	 * the color type and bit depth are not reduced and no palette is used.
+	 * 
+	 * @param pixels pixels (in color format <code>colorFormat</code>)
+	 * @param order byte order of the ints in <code>pixels</code>
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride bytes from the start of one row to the start of the next
+	 * @param colorFormat color format of <code>pixels</code>
+	 * @return encoded PNG
+	 */
+	public byte[] encode(final ByteBuffer pixels, final ByteOrder order, final int width, final int height, final int stride, final ColorFormat colorFormat) {
+		final ScanlineConverter converter = colorFormat.scanlineConverter();
+		final int rowInts = width * converter.intsPerPixel();
+		
+		checkOpen();
+		PixelBuffers.checkBounds(pixels.remaining(), width, height, stride, (long) rowInts * 4);
+		
+		final ByteBuffer ordered = PixelBuffers.withOrder(pixels, order);
+		final int[] row = rowPixels(rowInts);
+		
+		encodeToBuffer(width, height, converter.colorType(), converter.bitDepth(), null, null, (y, line) -> {
+			PixelBuffers.readRow(ordered, y, stride, row, rowInts);
+			converter.convertLine(row, 0, width, line);
+		}, newStats());
+		
+		return Arrays.copyOf(out, outLength);
+	}
+	
+	/**
+	 * Encodes an image that is produced one row at a time and returns the PNG. Each row is pulled from <code>source</code> just before it is
+	 * filtered and compressed, so the only pixels held are one row in a scratch array that is kept between images. As with
+	 * {@link #encode(IntBuffer, int, int, int, ColorFormat)}, the color type and bit depth are not reduced and no palette is used.
+	 * 
+	 * @param source produces each row of pixels (in color format <code>colorFormat</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param colorFormat color format of the pixels
+	 * @return encoded PNG
+	 * @see QueuedPixelSource
+	 */
+	public byte[] encode(final PixelSource source, final int width, final int height, final ColorFormat colorFormat) {
+		checkOpen();
+		PixelSource.checkDimensions(width, height);
+		
+		final ScanlineConverter converter = colorFormat.scanlineConverter();
+		final int[] row = rowPixels(width * converter.intsPerPixel());
+		
+		encodeToBuffer(width, height, converter.colorType(), converter.bitDepth(), null, null, (y, line) -> {
+			source.fillRow(y, row);
+			converter.convertLine(row, 0, width, line);
+		}, newStats());
+		
+		return Arrays.copyOf(out, outLength);
+	}
+	
+	/**
+	 * Encodes scanlines that are already in a PNG color type and bit depth and returns the PNG. Each row is copied into the encoder
+	 * without being converted (see {@link Encoder#raw(ByteBuffer, int, int, int, ColorType, int, EncoderOptions)}).
+	 * 
+	 * @param scanlines unfiltered scanlines; the first row starts at the buffer's position
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride bytes from the start of one row to the start of the next
+	 * @param colorType color type of the scanlines; cannot be {@link ColorType#PALETTE}
+	 * @param bitDepth bit depth of the scanlines
+	 * @return encoded PNG
+	 * @throws IllegalArgumentException if the bit depth is not allowed for the color type, or the buffer is too small
+	 */
+	public byte[] encodeRaw(final ByteBuffer scanlines, final int width, final int height, final int stride, final ColorType colorType, final int bitDepth) {
+		checkOpen();
+		
+		final int lineLength = PixelBuffers.checkRaw(scanlines, width, height, stride, colorType, bitDepth);
+		
+		encodeToBuffer(width, height, colorType, (byte) bitDepth, null, null, (y, line) -> PixelBuffers.readScanline(scanlines, y, stride, line, lineLength), newStats());
+		
+		return Arrays.copyOf(out, outLength);
+	}
+	
+	/**
+	 * Analyzes an image and encodes it into {@link #out}.
+	 */
+	private void encodeToBuffer(final int[] pixels, final int width, final int height, final ColorFormat colorFormat) {
+		checkOpen();
+		
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image dimensions must be positive: " + width + "x" + height);
+		}
+		
+		final EncodeStats stats = newStats();
+		final long analyzeStart = EncodeStats.start(stats);
+		final ScanlineConverter converter = colorFormat.scanlineConverter(pixels, width, height, options.isPaletteEnabled(), options.isReductionEnabled(), colors,
+				options.getQuantizeColors(), options.isDithered());
+		final int rowInts = width * converter.intsPerPixel();
+		EncodeStats.record(stats, EncodeStage.CONVERT, analyzeStart);
+		
+		encodeToBuffer(width, height, converter.colorType(), converter.bitDepth(), converter.palette(), converter.transparency(),
+				(row, line) -> converter.convertLine(pixels, row * rowInts, width, line), stats);
+	}
+	
+	/**
+	 * Encodes an image into {@link #out}, one row at a time.
+	 * 
+	 * @param palette PLTE chunk data, or null
+	 * @param transparency tRNS chunk data, or null
+	 * @param rows fills each unfiltered scanline
+	 * @param stats stats of the image, or null
+	 */
+	private void encodeToBuffer(final int width, final int height, final ColorType colorType, final byte bitDepth, final byte[] palette,
+			final byte[] transparency, final RowSource rows, final EncodeStats stats) {
+		final int lineLength = colorType.getScanlineLength(width, bitDepth);
+		
+		if (thisLine.length != lineLength) {
+			prevLine = new byte[lineLength];
+			thisLine = new byte[lineLength];
+			filteredLine = new byte[lineLength + 1];
+		}
+		
+		final LineFilter lineFilter = new LineFilter(colorType, bitDepth, options.getFilter(), strategy);
+		
+		deflater.reset();
+		outLength = 0;
+		flushedLength = 0;
+		chunkStart = -1;
+		
+		write(Encoder.PNG_HEADER);
+		ensureCapacity(IHDR.LENGTH);
+		outLength += IHDR.write(width, height, bitDepth, colorType, options.isInterlaced(), out, outLength);
+		
+		if (palette != null) {
+			ensureCapacity(palette.length + ChunkWriter.OVERHEAD);
+			outLength += PLTE.write(palette, out, outLength);
+		}
+		
+		if (transparency != null) {
+			ensureCapacity(transparency.length + ChunkWriter.OVERHEAD);
+			outLength += TRNS.write(transparency, out, outLength);
+		}
+		
+		if (options.isInterlaced()) {
+			encodePasses(width, height, colorType, bitDepth, rows, lineFilter, stats);
+		} else {
+			for (int row = 0; row < height; row++) {
+				final long convertStart = EncodeStats.start(stats);
+				rows.fill(row, thisLine);
+				EncodeStats.record(stats, EncodeStage.CONVERT, convertStart);
+				
+				encodeLine((row == 0) ? null : prevLine, thisLine, lineFilter, stats);
+				
+				final byte[] temp = prevLine;
+				prevLine = thisLine;
+				thisLine = temp;
+			}
+		}
+		
+		deflater.finish();
+		
+		while (!deflater.finished()) {
+			deflate(stats);
+		}
+		
+		if (chunkStart != -1) {
+			endChunk();
+		}
+		
+		ensureCapacity(IEND.LENGTH);
+		outLength += IEND.write(out, outLength);
+		
+		if (sink != null) {
+			flush();
+		}
+		
+		if (stats != null) {
+			stats.addRawBytes((long) lineLength * height);
+			stats.addFilteredBytes(deflater.getBytesRead());
+			stats.addCompressedBytes(deflater.getBytesWritten());
+			stats.addPngBytes(flushedLength + outLength);
+			options.getListener().encoded(stats);
+		}
+	}
+	
+	/**
+	 * Encodes an image with {@link Adam7} interlacing. Every pass needs rows from the whole image, so the whole image is converted
+	 * first, and then each pass is extracted and encoded one row at a time.
+	 */
+	private void encodePasses(final int width, final int height, final ColorType colorType, final byte bitDepth, final RowSource rows,
+			final LineFilter lineFilter, final EncodeStats stats) {
+		final long convertStart = EncodeStats.start(stats);
+		final byte[][] scanlines = new byte[height][colorType.getScanlineLength(width, bitDepth)];
+		
+		for (int row = 0; row < height; row++) {
+			rows.fill(row, scanlines[row]);
+		}
+		
+		final PNGData image = new PNGData(colorType, bitDepth, scanlines, width, height);
+		EncodeStats.record(stats, EncodeStage.CONVERT, convertStart);
+		
+		for (int pass = 0; pass < Adam7.PASSES; pass++) {
+			final PNGData passData = Adam7.extract(image, pass);
+			
+			if (passData != null) {
+				for (int row = 0; row < passData.height; row++) {
+					encodeLine((row == 0) ? null : passData.scanlines[row - 1], passData.scanlines[row], lineFilter, stats);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Filters an unfiltered scanline into {@link #filteredLine} and compresses it.
+	 * 
+	 * @param prevLine previous unfiltered scanline, or null if this is the first scanline (of the image or pass)
+	 * @param line unfiltered scanline
+	 * @param lineFilter filter for the image
+	 * @param stats stats of the image, or null
+	 */
+	private void encodeLine(final byte[] prevLine, final byte[] line, final LineFilter lineFilter, final EncodeStats stats) {
+		final long filterStart = EncodeStats.start(stats);
+		final Filter used = lineFilter.filter(prevLine, line, filteredLine, 0);
+		EncodeStats.record(stats, EncodeStage.FILTER, filterStart);
+		
+		if (stats != null) {
+			stats.addFilter(used);
+		}
+		
+		deflater.setInput(filteredLine, 0, line.length + 1);
+		
+		while (!deflater.needsInput()) {
+			deflate(stats);
+		}
+	}
+	
+	/**
+	 * Returns a scratch array for one row of pixels read from a buffer or pixel source.
+	 */
+	private int[] rowPixels(final int length) {
+		if (rowPixels.length < length) {
+			rowPixels = new int[length];
+		}
+		
+		return rowPixels;
+	}
+	
+	/**
+	 * Returns new stats for an image, or null if there is no listener.
+	 */
+	private EncodeStats newStats() {
+		return (options.getListener() == null) ? null : new EncodeStats();
+	}
+	
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Encoder has been closed");
+		}
+	}
+	
+	/**
+	 * Compresses data into the current IDAT chunk, starting a new chunk if needed and ending the chunk when it becomes full.
+	 * 
+	 * @param stats stats of the image being encoded, or null
+	 */
+	private void deflate(final EncodeStats stats) {
+		if (chunkStart == -1) {
+			startChunk();
+		}
+		
+		final int maxChunkLength = (sink == null) ? options.getMaxChunkLength() : Math.min(options.getMaxChunkLength(), options.getBufferSize());
+		final int room = Math.min(maxChunkLength - chunkLength, options.getBufferSize());
+		ensureCapacity(room);
+		
+		final long deflateStart = EncodeStats.start(stats);
+		final int written = deflater.deflate(out, outLength, room);
+		final long crcStart = EncodeStats.record(stats, EncodeStage.DEFLATE, deflateStart);
+		checksum.update(out, outLength, written);
+		EncodeStats.record(stats, EncodeStage.CRC, crcStart);
+		outLength += written;
+		chunkLength += written;
+		
+		if (chunkLength == maxChunkLength) {
+			endChunk();
+			
+			if (sink != null && outLength >= DirectBufferPool.shared().getBufferSize()) {
+				flush();
+			}
+		}
+	}
+	
+	/**
+	 * Leaves room for the length of a new IDAT chunk and writes the chunk type.
+	 */
+	private void startChunk() {
+		ensureCapacity(8);
+		chunkStart = outLength;
+		chunkLength = 0;
+		outLength += 4;
+		
+		write(ChunkType.IDAT.getByteName());
+		checksum.reset();
+		checksum.update(ChunkType.IDAT.getByteName(), 0, 4);
+	}
+	
+	/**
+	 * Fills in the length of the current IDAT chunk and writes its CRC.
+	 */
+	private void endChunk() {
+		ChunkWriter.putInt(out, chunkStart, chunkLength);
+		ensureCapacity(4);
+		ChunkWriter.putInt(out, outLength, (int) checksum.getValue());
+		outLength += 4;
+		chunkStart = -1;
+	}
+	
+	/**
+	 * Writes {@link #out} to {@link #sink} and empties it. The channel's IOException is rethrown unchecked, so that it can pass
+	 * through the row loop, and unwrapped by the method that was given the channel.
+	 */
+	private void flush() {
+		try {
+			flushedLength += DirectBufferPool.shared().write(sink, ByteBuffer.wrap(out, 0, outLength));
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		outLength = 0;
+	}
+	
+	private void write(final byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, out, outLength, bytes.length);
+		outLength += bytes.length;
+	}
+	
+	/**
+	 * Makes sure there is room for <code>length</code> more bytes in the output buffer.
+	 */
+	private void ensureCapacity(final int length) {
+		final long required = (long) outLength + length;
+		
+		if (required > out.length) {
+			if (required > Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("Encoded PNG is too large for a byte array");
+			}
+			
+			out = Arrays.copyOf(out, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, (long) out.length * 2)));
+		}
+	}
+	
+	/**
+	 * Releases the Deflater and the filter strategy. The encoder cannot be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			deflater.end();
+			strategy.end();
+		}
+	}
+	
+	/**
+	 * Fills the unfiltered scanlines of an image, one row at a time
+	 */
+	@FunctionalInterface
+	private interface RowSource {
+		
+		/**
+		 * Fills one unfiltered scanline.
+		 * 
+		 * @param row row index
+		 * @param line scanline to fill
+		 */
+		void fill(int row, byte[] line);
+	}
+}
\ No newline at end of file
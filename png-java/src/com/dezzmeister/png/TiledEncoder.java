@@ -0,0 +1,543 @@
+package com.dezzmeister.png;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Checksum;
+
+import com.dezzmeister.png.chunks.ChunkType;
+import com.dezzmeister.png.chunks.ChunkWriter;
+import com.dezzmeister.png.chunks.IEND;
+import com.dezzmeister.png.chunks.IHDR;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.filters.LineFilter;
+import com.dezzmeister.png.functions.CRC;
+import com.dezzmeister.png.functions.ParallelDeflater;
+import com.dezzmeister.png.functions.ParallelDeflater.Block;
+
+/**
+ * Streaming PNG encoder for images that are put together from a grid of tiles, such as huge mosaics rendered by many workers. The
+ * image is never held in memory as a whole, so it can have more than 2<sup>31</sup> pixels; only a few rows of tiles (bands) are kept
+ * at a time.
+ * <p>
+ * Tiles can be added with {@link #putTile(int, int, int[])} from any number of threads and in any order within the window of
+ * <code>maxPendingBands</code> bands after the first band that has not been written yet. A thread adding a tile past the window waits
+ * until earlier bands have been written. As soon as every tile of a band has arrived (and every band before it), the band is
+ * converted, filtered, and deflated on the executor as an independent deflate segment, in parallel with the other bands. Segments
+ * end with a sync flush, so they can be concatenated into a single zlib stream; each one is written out in IDAT chunks as soon as
+ * every segment before it has been written. Only the first row of each band depends on the band before it, through the last row of
+ * pixels of that band, which is copied when the band is started.
+ * <p>
+ * Bands are compressed independently, without the previous band as a dictionary, so very short bands compress slightly worse than
+ * a single deflate stream. As with {@link PngWriter}, rows are converted with the color format's {@link ScanlineConverter}, so the color
+ * type and bit depth are not reduced, no palette is used, and interlacing is not supported. {@link #finish()} must be called after
+ * every tile has been added.
+ * 
+ * @author Joe Desmond
+ */
+public class TiledEncoder implements Closeable {
+	
+	/**
+	 * Stream that receives the encoded PNG
+	 */
+	private final OutputStream os;
+	
+	private final int width;
+	
+	private final int height;
+	
+	private final int tileWidth;
+	
+	private final int tileHeight;
+	
+	/**
+	 * Number of tiles in each band
+	 */
+	private final int columns;
+	
+	/**
+	 * Number of bands
+	 */
+	private final int bands;
+	
+	/**
+	 * Number of bands that can receive tiles before the first unwritten band is written
+	 */
+	private final int maxPendingBands;
+	
+	private final ScanlineConverter converter;
+	
+	private final int intsPerPixel;
+	
+	private final int lineLength;
+	
+	private final EncoderOptions options;
+	
+	private final ExecutorService executor;
+	
+	/**
+	 * Deflates each band as one block
+	 */
+	private final ParallelDeflater deflater;
+	
+	/**
+	 * Bands that are still receiving tiles, by band index
+	 */
+	private final Map<Integer, Band> pending = new HashMap<Integer, Band>();
+	
+	/**
+	 * Bands that are being encoded or are waiting to be written, by band index
+	 */
+	private final Map<Integer, CompletableFuture<Block>> segments = new HashMap<Integer, CompletableFuture<Block>>();
+	
+	/**
+	 * Index of the next band to be encoded
+	 */
+	private int nextBand = 0;
+	
+	/**
+	 * Index of the next band to be written
+	 */
+	private int nextWrite = 0;
+	
+	/**
+	 * Last row of pixels of the band before {@link #nextBand}, or null if no band has been started
+	 */
+	private int[] previousRow = null;
+	
+	/**
+	 * The first exception thrown while encoding or writing a band
+	 */
+	private Throwable failure = null;
+	
+	private boolean finished = false;
+	
+	/**
+	 * Held while writing to the output stream. Segments are written by whichever thread finished encoding them, so this lock keeps
+	 * them in order. It is never acquired while holding this encoder's own lock.
+	 */
+	private final Object writeLock = new Object();
+	
+	/**
+	 * Chunk type followed by the data of the IDAT chunk being filled
+	 */
+	private final byte[] chunk;
+	
+	private final int maxChunkLength;
+	
+	private final Checksum checksum = CRC.newChecksum();
+	
+	private final ChunkWriter chunkWriter;
+	
+	private int chunkLength = 0;
+	
+	/**
+	 * Adler-32 checksum of the filtered data of every band written so far
+	 */
+	private long adler = 1;
+	
+	/**
+	 * Creates a TiledEncoder that writes a PNG with the given dimensions and color format to <code>_os</code>. The PNG signature,
+	 * IHDR chunk, and zlib header are written immediately.
+	 * 
+	 * @param _os stream to write the PNG to
+	 * @param _width pixel width of the whole image
+	 * @param _height pixel height of the whole image
+	 * @param colorFormat color format of the tiles
+	 * @param _tileWidth pixel width of every tile except the last in each band, which may be narrower
+	 * @param _tileHeight pixel height of every tile except those in the last band, which may be shorter
+	 * @param _maxPendingBands number of bands that can receive tiles at once
+	 * @param _executor executor that encodes the bands, and writes them when they are done
+	 * @param _options encoding options
+	 * @throws IOException if there is a problem writing to <code>_os</code>
+	 * @throws IllegalArgumentException if any dimension is not positive, a band would not fit in an array, or interlacing is enabled
+	 */
+	public TiledEncoder(final OutputStream _os, final int _width, final int _height, final ColorFormat colorFormat, final int _tileWidth, final int _tileHeight,
+			final int _maxPendingBands, final ExecutorService _executor, final EncoderOptions _options) throws IOException {
+		if (_width <= 0 || _height <= 0) {
+			throw new IllegalArgumentException("Image dimensions must be positive: " + _width + "x" + _height);
+		}
+		
+		if (_tileWidth <= 0 || _tileHeight <= 0) {
+			throw new IllegalArgumentException("Tile dimensions must be positive: " + _tileWidth + "x" + _tileHeight);
+		}
+		
+		if (_maxPendingBands <= 0) {
+			throw new IllegalArgumentException("Number of pending bands must be positive: " + _maxPendingBands);
+		}
+		
+		if (_options.isInterlaced()) {
+			throw new IllegalArgumentException("TiledEncoder cannot write interlaced images");
+		}
+		
+		os = _os;
+		chunkWriter = new ChunkWriter(_os);
+		width = _width;
+		height = _height;
+		tileWidth = Math.min(_tileWidth, width);
+		tileHeight = Math.min(_tileHeight, height);
+		columns = (int) ((width + (long) tileWidth - 1) / tileWidth);
+		bands = (int) ((height + (long) tileHeight - 1) / tileHeight);
+		maxPendingBands = _maxPendingBands;
+		options = _options;
+		executor = _executor;
+		
+		converter = colorFormat.scanlineConverter();
+		intsPerPixel = converter.intsPerPixel();
+		lineLength = converter.colorType().getScanlineLength(width, converter.bitDepth());
+		
+		checkArrayLength((long) width * intsPerPixel * tileHeight, "pixels");
+		checkArrayLength((lineLength + 1L) * tileHeight, "filtered bytes");
+		
+		deflater = new ParallelDeflater(executor, ParallelDeflater.DEFAULT_BLOCK_SIZE, options.getLevel(), options.getStrategy().deflaterStrategy);
+		maxChunkLength = Math.min(options.getMaxChunkLength(), options.getBufferSize());
+		chunk = new byte[4 + maxChunkLength];
+		System.arraycopy(ChunkType.IDAT.getByteName(), 0, chunk, 0, 4);
+		checksum.update(chunk, 0, 4);
+		
+		os.write(Encoder.PNG_HEADER);
+		os.write(IHDR.encode(width, height, converter.bitDepth(), converter.colorType()));
+		writeCompressed(deflater.header());
+	}
+	
+	/**
+	 * Adds one tile of the image. The tile holds <code>tileWidth * tileHeight</code> pixels (fewer at the right and bottom edges of the
+	 * image) in the color format given to the constructor, one row after another. This can be called from any thread. If the tile's band
+	 * is <code>maxPendingBands</code> or more bands past the first band that has not been written yet, this waits until enough bands have
+	 * been written.
+	 * 
+	 * @param column tile column, from 0 at the left of the image
+	 * @param row tile row (band), from 0 at the top of the image
+	 * @param pixels pixels of the tile
+	 * @throws IOException if a band could not be written
+	 * @throws IllegalArgumentException if the tile is outside of the image, has the wrong number of pixels, or has already been added
+	 * @throws IllegalStateException if the PNG has been finished, or encoding a band failed
+	 */
+	public void putTile(final int column, final int row, final int[] pixels) throws IOException {
+		if (column < 0 || column >= columns || row < 0 || row >= bands) {
+			throw new IllegalArgumentException("Tile (" + column + ", " + row + ") is outside of the " + columns + "x" + bands + " grid of tiles");
+		}
+		
+		final int x = column * tileWidth;
+		final int pixelWidth = Math.min(tileWidth, width - x);
+		final int rowInts = pixelWidth * intsPerPixel;
+		final int rows = bandHeight(row);
+		
+		if (pixels.length != (long) rowInts * rows) {
+			throw new IllegalArgumentException("Tile (" + column + ", " + row + ") should have " + ((long) rowInts * rows) + " ints, but it has " + pixels.length);
+		}
+		
+		final Band band;
+		
+		synchronized (this) {
+			while (failure == null && !finished && row >= nextWrite + maxPendingBands) {
+				awaitWrite();
+			}
+			
+			checkState();
+			
+			if (row < nextBand || (pending.containsKey(row) && pending.get(row).received[column])) {
+				throw new IllegalArgumentException("Tile (" + column + ", " + row + ") has already been added");
+			}
+			
+			band = pending.computeIfAbsent(row, index -> new Band(index, bandHeight(index)));
+			band.received[column] = true;
+		}
+		
+		// Tiles of the same band fill separate parts of its pixels, so they can be copied without holding the lock
+		
+		for (int y = 0; y < rows; y++) {
+			System.arraycopy(pixels, y * rowInts, band.pixels, (y * width + x) * intsPerPixel, rowInts);
+		}
+		
+		synchronized (this) {
+			band.tiles++;
+			startBands();
+		}
+	}
+	
+	/**
+	 * Waits for every band to be written, then finishes the zlib stream, writes the last IDAT chunk, and writes the IEND chunk.
+	 * Every tile of the image must have been added.
+	 * 
+	 * @throws IOException if there is a problem writing to the output stream
+	 * @throws IllegalStateException if some tiles have not been added, or encoding a band failed
+	 */
+	public void finish() throws IOException {
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			
+			checkState();
+			
+			if (nextBand != bands) {
+				throw new IllegalStateException("Only " + nextBand + " of " + bands + " bands have every tile");
+			}
+			
+			while (failure == null && nextWrite != bands) {
+				awaitWrite();
+			}
+			
+			checkState();
+			finished = true;
+		}
+		
+		synchronized (writeLock) {
+			writeCompressed(ParallelDeflater.trailer(adler));
+			
+			if (chunkLength > 0) {
+				writeChunk();
+			}
+			
+			IEND.write(os);
+			os.flush();
+		}
+	}
+	
+	/**
+	 * Finishes the PNG if every tile has been added and closes the output stream. Bands that are still being encoded are not
+	 * waited for if some tiles are missing.
+	 * 
+	 * @throws IOException if there is a problem writing to or closing the output stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			final boolean complete;
+			
+			synchronized (this) {
+				complete = !finished && failure == null && nextBand == bands;
+			}
+			
+			if (complete) {
+				finish();
+			}
+		} finally {
+			synchronized (this) {
+				finished = true;
+				notifyAll();
+			}
+			
+			synchronized (writeLock) {
+				os.close();
+			}
+		}
+	}
+	
+	/**
+	 * Starts encoding every band that has all of its tiles, in order. Must be called while holding this encoder's lock.
+	 */
+	private void startBands() {
+		Band band;
+		
+		while ((band = pending.get(nextBand)) != null && band.tiles == columns) {
+			final Band ready = band;
+			final int[] prevRow = previousRow;
+			final int lastRow = (ready.rows - 1) * width * intsPerPixel;
+			
+			// The band's pixels are released once it has been filtered, so its last row has to be copied first
+			previousRow = Arrays.copyOfRange(ready.pixels, lastRow, lastRow + width * intsPerPixel);
+			
+			final CompletableFuture<Block> segment = CompletableFuture.supplyAsync(() -> encodeBand(ready, prevRow), executor);
+			pending.remove(nextBand);
+			segments.put(nextBand, segment);
+			nextBand++;
+			
+			// Always write asynchronously, so that writing never starts while this encoder's lock is held
+			segment.whenCompleteAsync((block, error) -> writeSegments(), executor);
+		}
+	}
+	
+	/**
+	 * Converts, filters, and deflates one band.
+	 * 
+	 * @param band band with every tile
+	 * @param prevRow last row of pixels of the band before, or null if this is the first band
+	 * @return the deflated band, ending with a sync flush unless it is the last band
+	 */
+	private Block encodeBand(final Band band, final int[] prevRow) {
+		final int rowInts = width * intsPerPixel;
+		final byte[] filtered = new byte[(lineLength + 1) * band.rows];
+		final LineFilter lineFilter = new LineFilter(converter.colorType(), converter.bitDepth(), options.getFilter(), options.getHeuristic().newStrategy());
+		byte[] prevLine = null;
+		byte[] thisLine = new byte[lineLength];
+		
+		if (prevRow != null) {
+			prevLine = new byte[lineLength];
+			converter.convertLine(prevRow, 0, width, prevLine);
+		}
+		
+		try {
+			for (int y = 0; y < band.rows; y++) {
+				converter.convertLine(band.pixels, y * rowInts, width, thisLine);
+				lineFilter.filter(prevLine, thisLine, filtered, y * (lineLength + 1));
+				
+				final byte[] temp = (prevLine == null) ? new byte[lineLength] : prevLine;
+				prevLine = thisLine;
+				thisLine = temp;
+			}
+		} finally {
+			lineFilter.end();
+		}
+		
+		// The pixels are not needed anymore, and the band may still wait a while to be written
+		band.pixels = null;
+		
+		return deflater.deflateBlock(filtered, 0, filtered.length, band.index == bands - 1);
+	}
+	
+	/**
+	 * Writes every encoded band that is next in line, in order. This is called each time a band finishes encoding, so every band is
+	 * eventually written by the thread that encoded it or the one that encoded the band after it.
+	 */
+	private void writeSegments() {
+		synchronized (writeLock) {
+			while (true) {
+				final CompletableFuture<Block> segment;
+				
+				synchronized (this) {
+					if (failure != null || finished) {
+						return;
+					}
+					
+					segment = segments.get(nextWrite);
+				}
+				
+				if (segment == null || !segment.isDone()) {
+					return;
+				}
+				
+				try {
+					final Block block = segment.join();
+					
+					writeCompressed(block.compressed);
+					adler = ParallelDeflater.combineAdler32(adler, block.adler, block.length);
+				} catch (CompletionException e) {
+					fail(e.getCause());
+					return;
+				} catch (IOException | RuntimeException e) {
+					fail(e);
+					return;
+				}
+				
+				synchronized (this) {
+					segments.remove(nextWrite);
+					nextWrite++;
+					notifyAll();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copies compressed data into IDAT chunks, writing each chunk when it becomes full. Must be called while holding {@link #writeLock}.
+	 */
+	private void writeCompressed(final byte[] compressed) throws IOException {
+		int offset = 0;
+		
+		while (offset < compressed.length) {
+			final int length = Math.min(compressed.length - offset, maxChunkLength - chunkLength);
+			
+			System.arraycopy(compressed, offset, chunk, 4 + chunkLength, length);
+			checksum.update(compressed, offset, length);
+			chunkLength += length;
+			offset += length;
+			
+			if (chunkLength == maxChunkLength) {
+				writeChunk();
+			}
+		}
+	}
+	
+	private void writeChunk() throws IOException {
+		chunkWriter.writeChunk(chunk, chunkLength, (int) checksum.getValue());
+		chunkLength = 0;
+		
+		checksum.reset();
+		checksum.update(chunk, 0, 4);
+	}
+	
+	private synchronized void fail(final Throwable error) {
+		if (failure == null) {
+			failure = error;
+		}
+		
+		notifyAll();
+	}
+	
+	/**
+	 * Waits until a band is written or encoding fails. Must be called while holding this encoder's lock.
+	 */
+	private void awaitWrite() {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for bands to be written", e);
+		}
+	}
+	
+	/**
+	 * Rethrows the first exception from encoding or writing a band, if there is one. Must be called while holding this encoder's lock.
+	 */
+	private void checkState() throws IOException {
+		if (failure instanceof IOException) {
+			throw new IOException("Failed to write a band", failure);
+		}
+		
+		if (failure != null) {
+			throw new IllegalStateException("Failed to encode a band", failure);
+		}
+		
+		if (finished) {
+			throw new IllegalStateException("PNG has already been finished");
+		}
+	}
+	
+	private int bandHeight(final int band) {
+		return Math.min(tileHeight, height - band * tileHeight);
+	}
+	
+	private static void checkArrayLength(final long length, final String name) {
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("A band of tiles has too many " + name + " for an array: " + length);
+		}
+	}
+	
+	/**
+	 * One row of tiles
+	 */
+	private final class Band {
+		final int index;
+		final int rows;
+		
+		/**
+		 * Pixels of every tile in the band. This is released once the band has been filtered.
+		 */
+		int[] pixels;
+		
+		/**
+		 * Columns of the tiles that have been added
+		 */
+		final boolean[] received = new boolean[columns];
+		
+		/**
+		 * Number of tiles that have been copied into {@link #pixels}
+		 */
+		int tiles = 0;
+		
+		Band(final int _index, final int _rows) {
+			index = _index;
+			rows = _rows;
+			pixels = new int[width * intsPerPixel * rows];
+		}
+	}
+}
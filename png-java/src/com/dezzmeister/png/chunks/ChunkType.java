@@ -11,6 +11,8 @@ import java.util.Arrays;
  */
 public enum ChunkType {
 	IHDR,
+	PLTE,
+	TRNS("tRNS"),
 	IDAT,
 	IEND;
 	
@@ -23,6 +25,13 @@ public enum ChunkType {
 		byteName = name().getBytes(StandardCharsets.US_ASCII);
 	}
 	
+	/**
+	 * Used for chunk types that are not all uppercase, whose names can't be used as enum constants.
+	 */
+	private ChunkType(final String chunkName) {
+		byteName = chunkName.getBytes(StandardCharsets.US_ASCII);
+	}
+	
 	/**
 	 * Returns the 4-byte chunk type. This can be written to a PNG file.
 	 * 
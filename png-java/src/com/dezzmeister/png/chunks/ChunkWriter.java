@@ -0,0 +1,183 @@
+package com.dezzmeister.png.chunks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Checksum;
+
+import com.dezzmeister.png.functions.CRC;
+
+/**
+ * Frames PNG chunks: the 4-byte data length, the 4-byte chunk type, the chunk data, and the CRC of the type and data.
+ * <p>
+ * The static methods frame a chunk into a byte array, either one that already holds the chunk data at
+ * <code>offset + 8</code> ({@link #frame(byte[], int, ChunkType, int)}) or by copying the data in
+ * ({@link #write(ChunkType, byte[], byte[], int)}). They don't allocate any buffers, so an encoder can frame its chunks
+ * straight into its output buffer.
+ * <p>
+ * A ChunkWriter object writes chunks to an {@link OutputStream}. It keeps one small header buffer and one CRC
+ * {@link Checksum} and reuses them for every chunk, so writing many chunks (such as the IDAT chunks of a large image)
+ * doesn't allocate anything per chunk either. The CRC is updated over the chunk type and then the data as they are written,
+ * without copying them together first.
+ * 
+ * @author Joe Desmond
+ * @see <a href=http://www.libpng.org/pub/png/spec/1.2/PNG-Structures.html#Chunk-layout>PNG Spec - Chunk layout</a>
+ */
+public final class ChunkWriter {
+	
+	/**
+	 * Number of bytes a chunk adds around its data: the length, the chunk type, and the CRC
+	 */
+	public static final int OVERHEAD = 12;
+	
+	private final OutputStream os;
+	
+	private final Checksum checksum = CRC.newChecksum();
+	
+	/**
+	 * Holds the length and chunk type, or the CRC, while they are written
+	 */
+	private final byte[] header = new byte[8];
+	
+	/**
+	 * Creates a ChunkWriter that writes chunks to the given stream.
+	 * 
+	 * @param _os stream to write to
+	 */
+	public ChunkWriter(final OutputStream _os) {
+		os = _os;
+	}
+	
+	/**
+	 * Writes a chunk with the given type and data.
+	 * 
+	 * @param type chunk type
+	 * @param data chunk data
+	 * @throws IOException if there is a problem writing to the stream
+	 */
+	public void writeChunk(final ChunkType type, final byte[] data) throws IOException {
+		writeChunk(type, data, 0, data.length);
+	}
+	
+	/**
+	 * Writes a chunk with the given type and <code>length</code> bytes of data, starting at <code>offset</code>.
+	 * 
+	 * @param type chunk type
+	 * @param data chunk data
+	 * @param offset index of the first byte of chunk data
+	 * @param length length of the chunk data
+	 * @throws IOException if there is a problem writing to the stream
+	 */
+	public void writeChunk(final ChunkType type, final byte[] data, final int offset, final int length) throws IOException {
+		final byte[] typeName = type.getByteName();
+		
+		putInt(header, 0, length);
+		System.arraycopy(typeName, 0, header, 4, 4);
+		
+		checksum.reset();
+		checksum.update(typeName, 0, 4);
+		checksum.update(data, offset, length);
+		
+		os.write(header, 0, 8);
+		os.write(data, offset, length);
+		writeInt((int) checksum.getValue());
+	}
+	
+	/**
+	 * Writes a chunk whose CRC has already been computed, for example while the chunk data was being produced.
+	 * <code>chunk</code> must begin with the 4-byte chunk type, followed by <code>length</code> bytes of chunk data.
+	 * The length and CRC are written around it.
+	 * 
+	 * @param chunk chunk type followed by chunk data
+	 * @param length length of the chunk data (not including the chunk type)
+	 * @param crc CRC of the chunk type and chunk data
+	 * @throws IOException if there is a problem writing to the stream
+	 */
+	public void writeChunk(final byte[] chunk, final int length, final int crc) throws IOException {
+		writeInt(length);
+		os.write(chunk, 0, length + 4);
+		writeInt(crc);
+	}
+	
+	private void writeInt(final int value) throws IOException {
+		putInt(header, 0, value);
+		os.write(header, 0, 4);
+	}
+	
+	/**
+	 * Encodes a chunk with the given type and data into a new array.
+	 * 
+	 * @param type chunk type
+	 * @param data chunk data
+	 * @return encoded chunk
+	 */
+	public static byte[] encode(final ChunkType type, final byte[] data) {
+		final byte[] out = new byte[OVERHEAD + data.length];
+		write(type, data, out, 0);
+		
+		return out;
+	}
+	
+	/**
+	 * Copies chunk data into <code>out</code> and frames it as a chunk of the given type, starting at <code>offset</code>.
+	 * 
+	 * @param type chunk type
+	 * @param data chunk data
+	 * @param out array to write the chunk to
+	 * @param offset index in <code>out</code> of the first byte of the chunk
+	 * @return number of bytes written (<code>data.length + </code>{@link #OVERHEAD})
+	 */
+	public static int write(final ChunkType type, final byte[] data, final byte[] out, final int offset) {
+		System.arraycopy(data, 0, out, offset + 8, data.length);
+		
+		return frame(out, offset, type, data.length);
+	}
+	
+	/**
+	 * Frames chunk data that is already in <code>out</code>, starting at <code>offset + 8</code>. The length and chunk type
+	 * are written before the data, and the CRC is computed and written after it.
+	 * 
+	 * @param out array holding the chunk data
+	 * @param offset index in <code>out</code> of the first byte of the chunk
+	 * @param type chunk type
+	 * @param length length of the chunk data
+	 * @return number of bytes in the chunk (<code>length + </code>{@link #OVERHEAD})
+	 */
+	public static int frame(final byte[] out, final int offset, final ChunkType type, final int length) {
+		System.arraycopy(type.getByteName(), 0, out, offset + 4, 4);
+		
+		return frame(out, offset, type, length, (int) CRC.crc(out, offset + 4, length + 4));
+	}
+	
+	/**
+	 * Frames chunk data that is already in <code>out</code>, starting at <code>offset + 8</code>, with a CRC that has already
+	 * been computed.
+	 * 
+	 * @param out array holding the chunk data
+	 * @param offset index in <code>out</code> of the first byte of the chunk
+	 * @param type chunk type
+	 * @param length length of the chunk data
+	 * @param crc CRC of the chunk type and chunk data
+	 * @return number of bytes in the chunk (<code>length + </code>{@link #OVERHEAD})
+	 */
+	public static int frame(final byte[] out, final int offset, final ChunkType type, final int length, final int crc) {
+		putInt(out, offset, length);
+		System.arraycopy(type.getByteName(), 0, out, offset + 4, 4);
+		putInt(out, offset + 8 + length, crc);
+		
+		return OVERHEAD + length;
+	}
+	
+	/**
+	 * Writes a 4-byte big endian integer into <code>out</code>.
+	 * 
+	 * @param out array to write to
+	 * @param index index of the first byte
+	 * @param value integer to write
+	 */
+	public static void putInt(final byte[] out, final int index, final int value) {
+		out[index] = (byte) (value >>> 24);
+		out[index + 1] = (byte) (value >>> 16);
+		out[index + 2] = (byte) (value >>> 8);
+		out[index + 3] = (byte) value;
+	}
+}
@@ -1,14 +1,25 @@
 package com.dezzmeister.png.chunks;
 
 import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.Checksum;
 import java.util.zip.Deflater;
 
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.chunks.meta.Adam7;
 import com.dezzmeister.png.chunks.meta.ColorType;
 import com.dezzmeister.png.chunks.meta.PNGData;
-import com.dezzmeister.png.data.Conversions;
 import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.Heuristic;
+import com.dezzmeister.png.filters.LineFilter;
 import com.dezzmeister.png.functions.CRC;
+import com.dezzmeister.png.functions.ParallelDeflater;
+import com.dezzmeister.png.metrics.EncodeStage;
+import com.dezzmeister.png.metrics.EncodeStats;
 
 /**
  * IDAT chunk encoding/decoding class.
@@ -17,6 +28,20 @@ import com.dezzmeister.png.functions.CRC;
  */
 public class IDAT {
 	
+	/**
+	 * Images with at least this many bytes of filtered scanline data are filtered on several threads. Filtering smaller
+	 * images (such as thumbnails and icons) in parallel would cost more than it saves.
+	 */
+	public static final int PARALLEL_FILTER_THRESHOLD = 256 * 1024;
+	
+	/**
+	 * When filtering in parallel, the image is split into this many bands for each available thread, so that
+	 * threads that finish early can pick up more work
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+	
+	private static final int FILTER_COUNT = Filter.values().length;
+	
 	/**
 	 * Encodes an IDAT chunk and returns the entire chunk (includes 'IDAT' header, length, compressed
 	 * data, and CRC).
@@ -26,140 +51,449 @@ public class IDAT {
 	 * @return encoded IDAT chunk
 	 */
 	public static byte[] encode(final PNGData imageData, final Filter filter) {
-		final byte[][] scanlines = imageData.scanlines;
-		final int width = scanlines[0].length;
-		final int height = scanlines.length;
-		
-		// Allocate enough memory to hold the compressed scanlines
-		final ByteBuffer filteredLines = ByteBuffer.allocate(((width + 1) * height));
+		return encode(imageData, EncoderOptions.builder().filter(filter).build());
+	}
+	
+	/**
+	 * Encodes an IDAT chunk and returns the entire chunk. If <code>filter</code> is {@link Filter#DYNAMIC}, the filter
+	 * for each line is chosen with the given heuristic.
+	 * 
+	 * @param imageData image data to encode
+	 * @param filter filtering strategy
+	 * @param heuristic picks the filter for each line when <code>filter</code> is dynamic
+	 * @return encoded IDAT chunk
+	 */
+	public static byte[] encode(final PNGData imageData, final Filter filter, final Heuristic heuristic) {
+		return encode(imageData, EncoderOptions.builder().filter(filter).heuristic(heuristic).build());
+	}
+	
+	/**
+	 * Encodes the image data with the given options and returns the IDAT chunks (each with its length, 'IDAT' header,
+	 * compressed data, and CRC). The compressed data is split into as many chunks as needed to respect
+	 * {@link EncoderOptions#getMaxChunkLength() the maximum chunk length}.
+	 * 
+	 * @param imageData image data to encode
+	 * @param options filtering and compression options
+	 * @return encoded IDAT chunks
+	 */
+	public static byte[] encode(final PNGData imageData, final EncoderOptions options) {
+		return encode(imageData, options, (EncodeStats) null);
+	}
+	
+	/**
+	 * Encodes the image data with the given options and returns the IDAT chunks, recording how long filtering, compression,
+	 * and CRCs took and how many bytes each stage produced.
+	 * 
+	 * @param imageData image data to encode
+	 * @param options filtering and compression options
+	 * @param stats stats of the image being encoded, or null to not measure anything
+	 * @return encoded IDAT chunks
+	 */
+	public static byte[] encode(final PNGData imageData, final EncoderOptions options, final EncodeStats stats) {
+		final byte[] rawLines = options.isInterlaced() ? filterPasses(imageData, options.getFilter(), options.getHeuristic(), stats)
+				: filterLines(imageData, options.getFilter(), options.getHeuristic(), stats);
+		final Deflater deflater = options.newDeflater();
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final ChunkCRCs crcs = new ChunkCRCs(options.getMaxChunkLength());
 		
-		for (int line = 0; line < height; line++) {
-			final byte[] prevLine = (line == 0) ? null : scanlines[line - 1];
-			final byte[] thisLine = scanlines[line];
+		try {
+			deflater.setInput(rawLines);
+			deflater.finish();
+			
+			final byte[] buffer = new byte[options.getBufferSize()];
 			
-			final byte[] filtered = filter(prevLine, thisLine, imageData, filter);
-			filteredLines.put(filtered);
+			while (!deflater.finished()) {
+				final long deflateStart = EncodeStats.start(stats);
+				final int bytesRead = deflater.deflate(buffer);
+				baos.write(buffer, 0, bytesRead);
+				
+				final long crcStart = EncodeStats.record(stats, EncodeStage.DEFLATE, deflateStart);
+				crcs.update(buffer, 0, bytesRead);
+				EncodeStats.record(stats, EncodeStage.CRC, crcStart);
+			}
+		} finally {
+			deflater.end();
 		}
 		
-		final byte[] rawLines = filteredLines.array();
-		final Deflater deflater = new Deflater();
-		
-		deflater.setInput(rawLines);
-		deflater.finish();
-		
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		baos.write(ChunkType.IDAT.getByteName(), 0, 4);
-		byte[] buffer = new byte[1024];
-		int bytesRead = 0;
-		
-		while ((bytesRead = deflater.deflate(buffer)) != 0) {
-			baos.write(buffer, 0, bytesRead);
+		if (stats != null) {
+			stats.addCompressedBytes(baos.size());
 		}
 		
-		final byte[] rawData = baos.toByteArray();
-		final int length = rawData.length - 4;
-		final int crc = (int) CRC.crc(rawData);
+		return chunks(baos.toByteArray(), options.getMaxChunkLength(), crcs.finish());
+	}
+	
+	/**
+	 * Encodes an IDAT chunk and returns the entire chunk, compressing the filtered scanlines on several threads
+	 * with the given {@link ParallelDeflater}.
+	 * 
+	 * @param imageData image data to encode
+	 * @param filter filtering strategy
+	 * @param deflater parallel compressor
+	 * @return encoded IDAT chunk
+	 */
+	public static byte[] encode(final PNGData imageData, final Filter filter, final ParallelDeflater deflater) {
+		return encode(imageData, EncoderOptions.builder().filter(filter).build(), deflater);
+	}
+	
+	/**
+	 * Encodes an IDAT chunk and returns the entire chunk, choosing filters with the given heuristic and compressing
+	 * the filtered scanlines on several threads with the given {@link ParallelDeflater}.
+	 * 
+	 * @param imageData image data to encode
+	 * @param filter filtering strategy
+	 * @param heuristic picks the filter for each line when <code>filter</code> is dynamic
+	 * @param deflater parallel compressor
+	 * @return encoded IDAT chunk
+	 */
+	public static byte[] encode(final PNGData imageData, final Filter filter, final Heuristic heuristic, final ParallelDeflater deflater) {
+		return encode(imageData, EncoderOptions.builder().filter(filter).heuristic(heuristic).build(), deflater);
+	}
+	
+	/**
+	 * Encodes the image data with the given options and returns the IDAT chunks, compressing the filtered scanlines
+	 * on several threads with the given {@link ParallelDeflater}. The compression settings of <code>options</code> are ignored;
+	 * the ParallelDeflater's own settings are used instead.
+	 * 
+	 * @param imageData image data to encode
+	 * @param options filtering and chunk options
+	 * @param deflater parallel compressor
+	 * @return encoded IDAT chunks
+	 */
+	public static byte[] encode(final PNGData imageData, final EncoderOptions options, final ParallelDeflater deflater) {
+		return encode(imageData, options, deflater, null);
+	}
+	
+	/**
+	 * Encodes the image data with the given options and returns the IDAT chunks, compressing the filtered scanlines
+	 * on several threads with the given {@link ParallelDeflater}, and recording how long each stage took and how many
+	 * bytes it produced.
+	 * 
+	 * @param imageData image data to encode
+	 * @param options filtering and chunk options
+	 * @param deflater parallel compressor
+	 * @param stats stats of the image being encoded, or null to not measure anything
+	 * @return encoded IDAT chunks
+	 */
+	public static byte[] encode(final PNGData imageData, final EncoderOptions options, final ParallelDeflater deflater, final EncodeStats stats) {
+		final byte[] rawLines = options.isInterlaced() ? filterPasses(imageData, options.getFilter(), options.getHeuristic(), stats)
+				: filterLines(imageData, options.getFilter(), options.getHeuristic(), stats);
 		
-		final ByteBuffer out = ByteBuffer.allocate(rawData.length + 8);
-		final byte[] lengthBytes = Conversions.fromInt(length);
-		final byte[] crcBytes = Conversions.fromInt(crc);
+		final long deflateStart = EncodeStats.start(stats);
+		final byte[] compressed = deflater.deflate(rawLines);
+		final long crcStart = EncodeStats.record(stats, EncodeStage.DEFLATE, deflateStart);
+		final ChunkCRCs crcs = new ChunkCRCs(options.getMaxChunkLength());
+		crcs.update(compressed, 0, compressed.length);
+		EncodeStats.record(stats, EncodeStage.CRC, crcStart);
 		
-		out.put(lengthBytes);
-		out.put(rawData);
-		out.put(crcBytes);
+		if (stats != null) {
+			stats.addCompressedBytes(compressed.length);
+		}
 		
-		return out.array();
+		return chunks(compressed, options.getMaxChunkLength(), crcs.finish());
 	}
 	
 	/**
-	 * Filters the given scanline. If a specific filter is specified, it will be used here. Otherwise,
-	 * if the filter is dynamic, the best filter is chosen using the minimum sum of absolute differences heuristic.
+	 * Filters every scanline in the image and concatenates the filtered lines (each starting with its filter type code).
+	 * Each line only depends on the unfiltered previous line, so large images are split into bands of rows that are filtered
+	 * in parallel, each band writing directly into its own slice of the output. Images with less than {@link #PARALLEL_FILTER_THRESHOLD}
+	 * bytes of scanline data are filtered on the calling thread.
 	 * 
-	 * @param prevLine previous scanline
-	 * @param line current scanline
-	 * @param imageData image data
-	 * @param filter filter type
-	 * @return filtered scanline
+	 * @param imageData image data to filter
+	 * @param filter filtering strategy
+	 * @param heuristic picks the filter for each line when <code>filter</code> is dynamic
+	 * @param stats stats of the image being encoded, or null. Filtering is timed, and the filter used for each line is counted.
+	 * @return filtered scanlines
 	 */
-	private static byte[] filter(final byte[] prevLine, final byte[] line, final PNGData imageData, final Filter filter) {
-		final int bytesPerPixel = imageData.colorType.getBytesPerPixel(imageData.bitDepth);
+	private static byte[] filterLines(final PNGData imageData, final Filter filter, final Heuristic heuristic, final EncodeStats stats) {
+		final long start = EncodeStats.start(stats);
+		final byte[][] scanlines = imageData.scanlines;
+		final int lineLength = scanlines[0].length + 1;
+		final int height = scanlines.length;
 		
-		if (filter != Filter.DYNAMIC) {
-			final byte[] out = new byte[line.length + 1];
-			out[0] = filter.typeCode;
-			
-			final byte[] filtered = filter.filterFunction().applyFilter(prevLine, line, bytesPerPixel);
-			System.arraycopy(filtered, 0, out, 1, filtered.length);
-			
-			return filtered;
+		final long length = (long) lineLength * height;
+		
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Filtered image data is too large for a byte array: " + length + " bytes");
 		}
 		
-		if (imageData.colorType == ColorType.GRAYSCALE && imageData.bitDepth < 8) {
-			// Default to NONE for grayscale images with bit depth less than 8. To see the rationale
-			// for this, visit http://www.libpng.org/pub/png/book/chapter09.html
+		// Allocate enough memory to hold the filtered scanlines
+		final byte[] filteredLines = new byte[(int) length];
+		
+		if (length < PARALLEL_FILTER_THRESHOLD) {
+			final int[] counts = (stats == null) ? null : new int[FILTER_COUNT];
+			
+			filterBand(imageData, filter, heuristic, filteredLines, 0, 0, height, counts);
+			
+			if (stats != null) {
+				stats.addFilterCounts(counts);
+			}
+		} else {
+			final int bands = Math.min(height, ForkJoinPool.getCommonPoolParallelism() * BANDS_PER_THREAD);
 			
-			final byte[] out = new byte[line.length + 1];
-			out[0] = Filter.NONE.typeCode;
-			System.arraycopy(line, 0, out, 1, line.length);
+			// Each band counts its own filters, so the counts can be added up on this thread afterwards
+			final int[][] bandCounts = (stats == null) ? null : new int[bands][FILTER_COUNT];
 			
-			return out;
+			IntStream.range(0, bands).parallel().forEach(band -> {
+				final int startLine = (int) (((long) band * height) / bands);
+				final int endLine = (int) (((long) (band + 1) * height) / bands);
+				
+				filterBand(imageData, filter, heuristic, filteredLines, 0, startLine, endLine, (bandCounts == null) ? null : bandCounts[band]);
+			});
+			
+			if (stats != null) {
+				for (final int[] counts : bandCounts) {
+					stats.addFilterCounts(counts);
+				}
+			}
 		}
 		
-		// We need to pick the best filter
+		if (stats != null) {
+			EncodeStats.record(stats, EncodeStage.FILTER, start);
+			stats.addRawBytes((long) scanlines[0].length * height);
+			stats.addFilteredBytes(filteredLines.length);
+		}
 		
-		final byte[] rawData = new byte[line.length + 1]; // Plus 1 to hold filter type code
+		return filteredLines;
+	}
+	
+	/**
+	 * Splits the image into its seven {@link Adam7} passes, filters every pass, and concatenates the filtered passes. Each pass is
+	 * filtered as an image of its own, so the passes are independent: large images extract and filter their passes in parallel,
+	 * each pass writing directly into its own slice of the output. Images with less than {@link #PARALLEL_FILTER_THRESHOLD}
+	 * bytes of filtered data are filtered on the calling thread.
+	 * 
+	 * @param imageData image data to filter
+	 * @param filter filtering strategy
+	 * @param heuristic picks the filter for each line when <code>filter</code> is dynamic
+	 * @param stats stats of the image being encoded, or null. Filtering is timed, and the filter used for each line is counted.
+	 * @return filtered scanlines of every pass
+	 */
+	private static byte[] filterPasses(final PNGData imageData, final Filter filter, final Heuristic heuristic, final EncodeStats stats) {
+		final long start = EncodeStats.start(stats);
 		
-		final byte[] none = Filter.NONE.filterFunction().applyFilter(prevLine, line, bytesPerPixel);
-		final byte[] sub = Filter.SUB.filterFunction().applyFilter(prevLine, line, bytesPerPixel);
-		final byte[] up = Filter.UP.filterFunction().applyFilter(prevLine, line, bytesPerPixel);
-		final byte[] average = Filter.AVERAGE.filterFunction().applyFilter(prevLine, line, bytesPerPixel);
-		final byte[] paeth = Filter.PAETH.filterFunction().applyFilter(prevLine, line, bytesPerPixel);
+		// Where each pass starts in the output
+		final int[] offsets = new int[Adam7.PASSES];
+		long length = 0;
+		long rows = 0;
 		
-		final FilterCandidate noneCand = new FilterCandidate(none, sum(none), Filter.NONE);
-		final FilterCandidate subCand = new FilterCandidate(sub, sum(sub), Filter.SUB);
-		final FilterCandidate upCand = new FilterCandidate(up, sum(up), Filter.UP);
-		final FilterCandidate averageCand = new FilterCandidate(average, sum(average), Filter.AVERAGE);
-		final FilterCandidate paethCand = new FilterCandidate(paeth, sum(paeth), Filter.PAETH);
+		for (int pass = 0; pass < Adam7.PASSES; pass++) {
+			offsets[pass] = (int) length;
+			
+			if (!Adam7.isEmpty(pass, imageData.width, imageData.height)) {
+				final int passHeight = Adam7.passHeight(pass, imageData.height);
+				final int lineLength = imageData.colorType.getScanlineLength(Adam7.passWidth(pass, imageData.width), imageData.bitDepth) + 1;
+				
+				length += (long) lineLength * passHeight;
+				rows += passHeight;
+			}
+		}
 		
-		final FilterCandidate best = min(new FilterCandidate[] {noneCand, subCand, upCand, averageCand, paethCand});
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Filtered image data is too large for a byte array: " + length + " bytes");
+		}
 		
-		rawData[0] = best.filter.typeCode;
-		System.arraycopy(best.filtered, 0, rawData, 1, best.filtered.length);
+		final byte[] filteredLines = new byte[(int) length];
+		final int[][] passCounts = (stats == null) ? null : new int[Adam7.PASSES][FILTER_COUNT];
+		final IntStream passes = IntStream.range(0, Adam7.PASSES);
 		
-		return rawData;
+		(length < PARALLEL_FILTER_THRESHOLD ? passes : passes.parallel()).forEach(pass -> {
+			final PNGData passData = Adam7.extract(imageData, pass);
+			
+			if (passData != null) {
+				filterBand(passData, filter, heuristic, filteredLines, offsets[pass], 0, passData.height, (passCounts == null) ? null : passCounts[pass]);
+			}
+		});
+		
+		if (stats != null) {
+			for (final int[] counts : passCounts) {
+				stats.addFilterCounts(counts);
+			}
+			
+			EncodeStats.record(stats, EncodeStage.FILTER, start);
+			stats.addRawBytes(length - rows);
+			stats.addFilteredBytes(length);
+		}
+		
+		return filteredLines;
 	}
 	
-	private static class FilterCandidate {
-		final byte[] filtered;
-		final int sum;
-		final Filter filter;
+	/**
+	 * Filters the scanlines from <code>startLine</code> (inclusive) to <code>endLine</code> (exclusive) and puts
+	 * them in their places in <code>filteredLines</code>, starting at <code>offset</code>. A single {@link LineFilter} is reused for the whole band,
+	 * so no memory is allocated per line. Each band gets its own instance of the heuristic's strategy, so a stateful
+	 * strategy starts over at the top of every band.
+	 * 
+	 * @param imageData image data to filter
+	 * @param filter filtering strategy
+	 * @param heuristic picks the filter for each line when <code>filter</code> is dynamic
+	 * @param filteredLines all filtered scanlines
+	 * @param offset index in <code>filteredLines</code> of the first filtered scanline of the image
+	 * @param startLine first scanline to filter
+	 * @param endLine scanline after the last one to filter
+	 * @param counts number of lines filtered with each filter, indexed by {@link Filter#ordinal()}, or null if filters should not be counted
+	 */
+	private static void filterBand(final PNGData imageData, final Filter filter, final Heuristic heuristic, final byte[] filteredLines, final int offset, final int startLine, final int endLine, final int[] counts) {
+		final byte[][] scanlines = imageData.scanlines;
+		final int lineLength = scanlines[0].length + 1;
+		final LineFilter lineFilter = new LineFilter(imageData.colorType, imageData.bitDepth, filter, heuristic.newStrategy());
 		
-		FilterCandidate(final byte[] _filtered, final int _sum, final Filter _filter) {
-			filtered = _filtered;
-			sum = _sum;
-			filter = _filter;
+		try {
+			for (int line = startLine; line < endLine; line++) {
+				final byte[] prevLine = (line == 0) ? null : scanlines[line - 1];
+				final byte[] thisLine = scanlines[line];
+				
+				final Filter used = lineFilter.filter(prevLine, thisLine, filteredLines, offset + line * lineLength);
+				
+				if (counts != null) {
+					counts[used.ordinal()]++;
+				}
+			}
+		} finally {
+			lineFilter.end();
 		}
 	}
 	
-	private static FilterCandidate min(final FilterCandidate[] cands) {
-		FilterCandidate min = cands[0];
+	/**
+	 * Splits compressed image data into IDAT chunks with at most <code>maxChunkLength</code> bytes of data each,
+	 * and adds the length, chunk type, and CRC to each chunk.
+	 * 
+	 * @param compressed compressed image data
+	 * @param maxChunkLength maximum length of the data in one chunk
+	 * @param crcs CRC of each chunk, from {@link ChunkCRCs}
+	 * @return complete IDAT chunks
+	 */
+	private static byte[] chunks(final byte[] compressed, final int maxChunkLength, final int[] crcs) {
+		final int count = (int) Math.max(1, (compressed.length + (long) maxChunkLength - 1) / maxChunkLength);
+		final byte[] out = new byte[compressed.length + (count * ChunkWriter.OVERHEAD)];
+		int position = 0;
 		
-		for (int i = 1; i < cands.length; i++) {
-			if (cands[i].sum < min.sum) {
-				min = cands[i];
-			}
+		for (int i = 0; i < count; i++) {
+			final int offset = i * maxChunkLength;
+			final int length = Math.min(maxChunkLength, compressed.length - offset);
+			
+			System.arraycopy(compressed, offset, out, position + 8, length);
+			position += ChunkWriter.frame(out, position, ChunkType.IDAT, length, crcs[i]);
 		}
 		
-		return min;
+		return out;
+	}
+	
+	/**
+	 * Writes a single IDAT chunk to the given stream. <code>chunk</code> must begin with the 4-byte
+	 * chunk type ('IDAT'), followed by <code>length</code> bytes of compressed data. The chunk length and CRC
+	 * are written around it.
+	 * 
+	 * @param os stream to write to
+	 * @param chunk chunk type followed by chunk data
+	 * @param length length of the chunk data (not including the chunk type)
+	 * @throws IOException if there is a problem writing to <code>os</code>
+	 */
+	public static void writeChunk(final OutputStream os, final byte[] chunk, final int length) throws IOException {
+		writeChunk(os, chunk, length, (int) CRC.crc(chunk, 0, length + 4));
+	}
+	
+	/**
+	 * Writes a single IDAT chunk with a CRC that has already been computed. This can be used when the CRC is updated
+	 * as the chunk data is produced. Callers that write many chunks to the same stream should keep a {@link ChunkWriter}
+	 * and use {@link ChunkWriter#writeChunk(byte[], int, int)} instead.
+	 * 
+	 * @param os stream to write to
+	 * @param chunk chunk type followed by chunk data
+	 * @param length length of the chunk data (not including the chunk type)
+	 * @param crc CRC of the chunk type and chunk data
+	 * @throws IOException if there is a problem writing to <code>os</code>
+	 */
+	public static void writeChunk(final OutputStream os, final byte[] chunk, final int length, final int crc) throws IOException {
+		new ChunkWriter(os).writeChunk(chunk, length, crc);
+	}
+	
+	/**
+	 * Filters the given scanline. If a specific filter is specified, it will be used here. Otherwise,
+	 * if the filter is dynamic, the best filter is chosen using the minimum sum of absolute differences heuristic.
+	 * This allocates a new {@link LineFilter} and output line; use a LineFilter directly to filter many lines.
+	 * 
+	 * @param prevLine previous scanline, or null if <code>line</code> is the first scanline
+	 * @param line current scanline
+	 * @param colorType color type of the image
+	 * @param bitDepth bit depth of the image
+	 * @param filter filter type
+	 * @return filtered scanline, starting with the filter type code
+	 */
+	public static byte[] filter(final byte[] prevLine, final byte[] line, final ColorType colorType, final byte bitDepth, final Filter filter) {
+		final byte[] out = new byte[line.length + 1];
+		new LineFilter(colorType, bitDepth, filter, Heuristic.MINIMUM_SUM.newStrategy()).filter(prevLine, line, out, 0);
+		
+		return out;
 	}
 	
-	private static int sum(final byte[] items) {
-		int sum = 0;
+	/**
+	 * Computes the CRC of each IDAT chunk while the compressed data is being produced, so that the data does not
+	 * have to be read again once compression has finished.
+	 */
+	private static final class ChunkCRCs {
+		private final Checksum checksum = CRC.newChecksum();
+		
+		private final int maxChunkLength;
+		
+		/**
+		 * CRCs of the completed chunks
+		 */
+		private int[] crcs = new int[4];
+		
+		private int count = 0;
+		
+		/**
+		 * Number of bytes in the current chunk
+		 */
+		private int chunkLength = 0;
+		
+		ChunkCRCs(final int _maxChunkLength) {
+			maxChunkLength = _maxChunkLength;
+			checksum.update(ChunkType.IDAT.getByteName());
+		}
+		
+		/**
+		 * Adds compressed data to the current chunk, starting new chunks as needed.
+		 */
+		void update(final byte[] data, final int offset, final int length) {
+			int position = offset;
+			int remaining = length;
+			
+			while (remaining > 0) {
+				final int take = Math.min(remaining, maxChunkLength - chunkLength);
+				
+				checksum.update(data, position, take);
+				chunkLength += take;
+				position += take;
+				remaining -= take;
+				
+				if (chunkLength == maxChunkLength) {
+					endChunk();
+				}
+			}
+		}
 		
-		for (int i = 0; i < items.length; i++) {
-			sum += Math.abs(items[i]);
+		/**
+		 * Ends the last chunk and returns the CRC of every chunk.
+		 */
+		int[] finish() {
+			if (chunkLength > 0 || count == 0) {
+				endChunk();
+			}
+			
+			return crcs;
 		}
 		
-		return sum;
+		private void endChunk() {
+			if (count == crcs.length) {
+				crcs = Arrays.copyOf(crcs, count * 2);
+			}
+			
+			crcs[count++] = (int) checksum.getValue();
+			
+			checksum.reset();
+			checksum.update(ChunkType.IDAT.getByteName());
+			chunkLength = 0;
+		}
 	}
 }
@@ -1,20 +1,53 @@
 package com.dezzmeister.png.chunks;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-
-import com.dezzmeister.png.functions.CRC;
+import java.io.IOException;
+import java.io.OutputStream;
 
+/**
+ * IEND chunk encoding class. The IEND chunk marks the end of a PNG file and has no data, so it is the same 12 bytes
+ * in every file; they are encoded once and copied from then on.
+ * 
+ * @author Joe Desmond
+ * @see <a href=http://www.libpng.org/pub/png/spec/1.2/PNG-Chunks.html#C.IEND>PNG Spec - IEND</a>
+ */
 public class IEND {
 	
+	/**
+	 * Length of the encoded IEND chunk
+	 */
+	public static final int LENGTH = ChunkWriter.OVERHEAD;
+	
+	private static final byte[] CHUNK = ChunkWriter.encode(ChunkType.IEND, new byte[0]);
+	
+	/**
+	 * Returns a copy of the encoded IEND chunk.
+	 * 
+	 * @return encoded IEND chunk
+	 */
 	public static byte[] encode() {
-		final ByteBuffer out = ByteBuffer.allocate(12);
-		final byte[] chunkType = "IEND".getBytes(StandardCharsets.US_ASCII);
-		
-		out.putInt(0);
-		out.put(chunkType);
-		out.putInt((int) CRC.crc(chunkType));
+		return CHUNK.clone();
+	}
+	
+	/**
+	 * Copies the encoded IEND chunk into <code>out</code>.
+	 * 
+	 * @param out array to write the chunk to
+	 * @param offset index in <code>out</code> of the first byte of the chunk
+	 * @return number of bytes written ({@link #LENGTH})
+	 */
+	public static int write(final byte[] out, final int offset) {
+		System.arraycopy(CHUNK, 0, out, offset, LENGTH);
 		
-		return out.array();
+		return LENGTH;
+	}
+	
+	/**
+	 * Writes the encoded IEND chunk to the given stream.
+	 * 
+	 * @param os stream to write to
+	 * @throws IOException if there is a problem writing to <code>os</code>
+	 */
+	public static void write(final OutputStream os) throws IOException {
+		os.write(CHUNK);
 	}
 }
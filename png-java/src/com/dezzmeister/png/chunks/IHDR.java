@@ -1,9 +1,8 @@
 package com.dezzmeister.png.chunks;
 
-import java.nio.ByteBuffer;
-
+import com.dezzmeister.png.chunks.meta.Adam7;
+import com.dezzmeister.png.chunks.meta.ColorType;
 import com.dezzmeister.png.chunks.meta.PNGData;
-import com.dezzmeister.png.functions.CRC;
 
 /**
  * IHDR chunk encoding/decoding class.
@@ -13,24 +12,86 @@ import com.dezzmeister.png.functions.CRC;
  */
 public class IHDR {
 	
+	/**
+	 * Length of the IHDR chunk data
+	 */
+	private static final int DATA_LENGTH = 13;
+	
+	/**
+	 * Length of the encoded IHDR chunk
+	 */
+	public static final int LENGTH = DATA_LENGTH + ChunkWriter.OVERHEAD;
+	
 	public static byte[] encode(final PNGData imageData) {
-		// 4 byte chunk type + 13 byte chunk data
-		final ByteBuffer data = ByteBuffer.allocate(4 + 13);
-		data.put(ChunkType.IHDR.getByteName());
-		data.putInt(imageData.width); // Width
-		data.putInt(imageData.height); // Height
-		data.put(imageData.bitDepth);
-		data.put(imageData.colorType.getTypeCode());
-		data.put((byte) 0); // Compression method (must be 0)
-		data.put((byte) 0); // Filter method (must be 0)
-		data.put((byte) 0); // Interlace method (interlacing not supported)
-		final int crc = (int) CRC.crc(data.array());
+		return encode(imageData, false);
+	}
+	
+	/**
+	 * Encodes an IHDR chunk for the given image, with or without Adam7 interlacing.
+	 * 
+	 * @param imageData image data
+	 * @param interlaced true if the image data is interlaced
+	 * @return encoded IHDR chunk
+	 */
+	public static byte[] encode(final PNGData imageData, final boolean interlaced) {
+		return encode(imageData.width, imageData.height, imageData.bitDepth, imageData.colorType, interlaced);
+	}
+	
+	/**
+	 * Encodes an IHDR chunk for an image with the given dimensions and pixel format. This does not require
+	 * the image data itself, so it can be used when the image is encoded one scanline at a time.
+	 * 
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param bitDepth bit depth
+	 * @param colorType PNG color type
+	 * @return encoded IHDR chunk
+	 */
+	public static byte[] encode(final int width, final int height, final byte bitDepth, final ColorType colorType) {
+		return encode(width, height, bitDepth, colorType, false);
+	}
+	
+	/**
+	 * Encodes an IHDR chunk for an image with the given dimensions, pixel format, and interlace method.
+	 * 
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param bitDepth bit depth
+	 * @param colorType PNG color type
+	 * @param interlaced true if the image data is interlaced with {@link Adam7}
+	 * @return encoded IHDR chunk
+	 */
+	public static byte[] encode(final int width, final int height, final byte bitDepth, final ColorType colorType, final boolean interlaced) {
+		final byte[] out = new byte[LENGTH];
+		write(width, height, bitDepth, colorType, interlaced, out, 0);
+		
+		return out;
+	}
+	
+	/**
+	 * Encodes an IHDR chunk into <code>out</code>, starting at <code>offset</code>.
+	 * 
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param bitDepth bit depth
+	 * @param colorType PNG color type
+	 * @param interlaced true if the image data is interlaced with {@link Adam7}
+	 * @param out array to write the chunk to
+	 * @param offset index in <code>out</code> of the first byte of the chunk
+	 * @return number of bytes written ({@link #LENGTH})
+	 */
+	public static int write(final int width, final int height, final byte bitDepth, final ColorType colorType, final boolean interlaced,
+			final byte[] out, final int offset) {
+		final int data = offset + 8;
 		
-		final ByteBuffer out = ByteBuffer.allocate(4 + 4 + 13 + 4);
-		out.putInt(13);
-		out.put(data.array());
-		out.putInt(crc);
+		ChunkWriter.putInt(out, data, width);
+		ChunkWriter.putInt(out, data + 4, height);
+		out[data + 8] = bitDepth;
+		out[data + 9] = colorType.getTypeCode();
+		out[data + 10] = 0; // Compression method (must be 0)
+		out[data + 11] = 0; // Filter method (must be 0)
+		out[data + 12] = (byte) (interlaced ? 1 : 0); // Interlace method (0 is none, 1 is Adam7)
 		
-		return out.array();
+		return ChunkWriter.frame(out, offset, ChunkType.IHDR, DATA_LENGTH);
 	}
 }
@@ -0,0 +1,43 @@
+package com.dezzmeister.png.chunks;
+
+/**
+ * PLTE chunk encoding class. A PLTE chunk holds the palette of a palette image: one red, green, and blue byte for each
+ * palette entry.
+ * 
+ * @author Joe Desmond
+ * @see <a href=http://www.libpng.org/pub/png/spec/1.2/PNG-Chunks.html#C.PLTE>PNG Spec - PLTE</a>
+ */
+public class PLTE {
+	
+	/**
+	 * Encodes a PLTE chunk.
+	 * 
+	 * @param palette palette entries (3 bytes per entry, 1 to 256 entries)
+	 * @return encoded PLTE chunk
+	 */
+	public static byte[] encode(final byte[] palette) {
+		checkLength(palette);
+		
+		return ChunkWriter.encode(ChunkType.PLTE, palette);
+	}
+	
+	/**
+	 * Encodes a PLTE chunk into <code>out</code>, starting at <code>offset</code>.
+	 * 
+	 * @param palette palette entries (3 bytes per entry, 1 to 256 entries)
+	 * @param out array to write the chunk to
+	 * @param offset index in <code>out</code> of the first byte of the chunk
+	 * @return number of bytes written (<code>palette.length + </code>{@link ChunkWriter#OVERHEAD})
+	 */
+	public static int write(final byte[] palette, final byte[] out, final int offset) {
+		checkLength(palette);
+		
+		return ChunkWriter.write(ChunkType.PLTE, palette, out, offset);
+	}
+	
+	private static void checkLength(final byte[] palette) {
+		if (palette.length == 0 || palette.length > 256 * 3 || palette.length % 3 != 0) {
+			throw new IllegalArgumentException("Invalid palette length: " + palette.length);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.dezzmeister.png.chunks;
+
+/**
+ * tRNS chunk encoding class. For palette images, a tRNS chunk holds one alpha byte for each palette entry; entries past
+ * the end of the chunk are opaque.
+ * 
+ * @author Joe Desmond
+ * @see <a href=http://www.libpng.org/pub/png/spec/1.2/PNG-Chunks.html#C.tRNS>PNG Spec - tRNS</a>
+ */
+public class TRNS {
+	
+	/**
+	 * Encodes a tRNS chunk.
+	 * 
+	 * @param transparency tRNS chunk data
+	 * @return encoded tRNS chunk
+	 */
+	public static byte[] encode(final byte[] transparency) {
+		return ChunkWriter.encode(ChunkType.TRNS, transparency);
+	}
+	
+	/**
+	 * Encodes a tRNS chunk into <code>out</code>, starting at <code>offset</code>.
+	 * 
+	 * @param transparency tRNS chunk data
+	 * @param out array to write the chunk to
+	 * @param offset index in <code>out</code> of the first byte of the chunk
+	 * @return number of bytes written (<code>transparency.length + </code>{@link ChunkWriter#OVERHEAD})
+	 */
+	public static int write(final byte[] transparency, final byte[] out, final int offset) {
+		return ChunkWriter.write(ChunkType.TRNS, transparency, out, offset);
+	}
+}
@@ -0,0 +1,168 @@
+package com.dezzmeister.png.chunks.meta;
+
+/**
+ * Splits images into the seven passes of Adam7 interlacing, and puts them back together. Each pass is a smaller image made of every
+ * pixel on a coarse grid, starting with every 8th pixel of every 8th row, so that a decoder can show a rough version of the image
+ * before all of it has arrived. Each pass is filtered on its own (its first row has no previous row), and the filtered passes are
+ * compressed one after another into a single zlib stream. Passes with no pixels (in images narrower or shorter than 5 pixels) have
+ * no scanlines at all.
+ * 
+ * @author Joe Desmond
+ * @see <a href=http://www.libpng.org/pub/png/spec/1.2/PNG-DataRep.html#DR.Interlaced-data-order>PNG Spec - Interlaced data order</a>
+ */
+public final class Adam7 {
+	
+	/**
+	 * Number of passes
+	 */
+	public static final int PASSES = 7;
+	
+	private static final int[] X_START = {0, 4, 0, 2, 0, 1, 0};
+	
+	private static final int[] Y_START = {0, 0, 4, 0, 2, 0, 1};
+	
+	private static final int[] X_STEP = {8, 8, 4, 4, 2, 2, 1};
+	
+	private static final int[] Y_STEP = {8, 8, 8, 4, 4, 2, 2};
+	
+	private Adam7() {
+	
+	}
+	
+	/**
+	 * Returns the width of a pass.
+	 * 
+	 * @param pass pass index (0 to 6)
+	 * @param width width of the whole image
+	 * @return number of pixels in each row of the pass
+	 */
+	public static int passWidth(final int pass, final int width) {
+		return (width <= X_START[pass]) ? 0 : (width - X_START[pass] + X_STEP[pass] - 1) / X_STEP[pass];
+	}
+	
+	/**
+	 * Returns the height of a pass.
+	 * 
+	 * @param pass pass index (0 to 6)
+	 * @param height height of the whole image
+	 * @return number of rows in the pass
+	 */
+	public static int passHeight(final int pass, final int height) {
+		return (height <= Y_START[pass]) ? 0 : (height - Y_START[pass] + Y_STEP[pass] - 1) / Y_STEP[pass];
+	}
+	
+	/**
+	 * Returns true if a pass has no pixels, and therefore no scanlines.
+	 * 
+	 * @param pass pass index (0 to 6)
+	 * @param width width of the whole image
+	 * @param height height of the whole image
+	 * @return true if the pass is empty
+	 */
+	public static boolean isEmpty(final int pass, final int width, final int height) {
+		return passWidth(pass, width) == 0 || passHeight(pass, height) == 0;
+	}
+	
+	/**
+	 * Copies the pixels of one pass out of an image. The returned image has the same color type, bit depth, palette, and transparency
+	 * as <code>image</code>.
+	 * 
+	 * @param image unfiltered image
+	 * @param pass pass index (0 to 6)
+	 * @return the pass as an image of its own, or null if the pass is empty
+	 */
+	public static PNGData extract(final PNGData image, final int pass) {
+		if (isEmpty(pass, image.width, image.height)) {
+			return null;
+		}
+		
+		final int width = passWidth(pass, image.width);
+		final int height = passHeight(pass, image.height);
+		final int bitsPerPixel = image.colorType.getSamplesPerPixel() * image.bitDepth;
+		final byte[][] scanlines = new byte[height][image.colorType.getScanlineLength(width, image.bitDepth)];
+		
+		for (int y = 0; y < height; y++) {
+			final byte[] line = image.scanlines[Y_START[pass] + y * Y_STEP[pass]];
+			final byte[] out = scanlines[y];
+			
+			if (bitsPerPixel >= 8) {
+				final int bytesPerPixel = bitsPerPixel >>> 3;
+				
+				for (int x = 0; x < width; x++) {
+					System.arraycopy(line, (X_START[pass] + x * X_STEP[pass]) * bytesPerPixel, out, x * bytesPerPixel, bytesPerPixel);
+				}
+			} else {
+				for (int x = 0; x < width; x++) {
+					setPixel(out, x, bitsPerPixel, getPixel(line, X_START[pass] + x * X_STEP[pass], bitsPerPixel));
+				}
+			}
+		}
+		
+		return new PNGData(image.colorType, image.bitDepth, scanlines, width, height, image.palette, image.transparency);
+	}
+	
+	/**
+	 * Splits an image into its seven passes.
+	 * 
+	 * @param image unfiltered image
+	 * @return the passes, with null for every empty pass
+	 * @see #extract(PNGData, int)
+	 */
+	public static PNGData[] extract(final PNGData image) {
+		final PNGData[] passes = new PNGData[PASSES];
+		
+		for (int pass = 0; pass < PASSES; pass++) {
+			passes[pass] = extract(image, pass);
+		}
+		
+		return passes;
+	}
+	
+	/**
+	 * Copies one unfiltered scanline of a pass into its place in the whole image. The pixels of sub-byte images are combined with
+	 * the bits already in the image's scanlines, so they must start out as zeros.
+	 * 
+	 * @param passLine unfiltered scanline of the pass
+	 * @param pass pass index (0 to 6)
+	 * @param passRow row index within the pass
+	 * @param scanlines unfiltered scanlines of the whole image
+	 * @param width width of the whole image
+	 * @param colorType color type of the image
+	 * @param bitDepth bit depth of the image
+	 */
+	public static void insert(final byte[] passLine, final int pass, final int passRow, final byte[][] scanlines, final int width, final ColorType colorType, final int bitDepth) {
+		final byte[] line = scanlines[Y_START[pass] + passRow * Y_STEP[pass]];
+		final int passWidth = passWidth(pass, width);
+		final int bitsPerPixel = colorType.getSamplesPerPixel() * bitDepth;
+		
+		if (bitsPerPixel >= 8) {
+			final int bytesPerPixel = bitsPerPixel >>> 3;
+			
+			for (int x = 0; x < passWidth; x++) {
+				System.arraycopy(passLine, x * bytesPerPixel, line, (X_START[pass] + x * X_STEP[pass]) * bytesPerPixel, bytesPerPixel);
+			}
+		} else {
+			for (int x = 0; x < passWidth; x++) {
+				setPixel(line, X_START[pass] + x * X_STEP[pass], bitsPerPixel, getPixel(passLine, x, bitsPerPixel));
+			}
+		}
+	}
+	
+	/**
+	 * Returns the pixel at index <code>x</code> of a scanline with less than 8 bits per pixel.
+	 */
+	private static int getPixel(final byte[] line, final int x, final int bitsPerPixel) {
+		final int bit = x * bitsPerPixel;
+		
+		return ((line[bit >>> 3] & 0xFF) >>> (8 - bitsPerPixel - (bit & 7))) & ((1 << bitsPerPixel) - 1);
+	}
+	
+	/**
+	 * Combines a pixel with the bits at index <code>x</code> of a scanline with less than 8 bits per pixel. The bits must be zero.
+	 */
+	private static void setPixel(final byte[] line, final int x, final int bitsPerPixel, final int pixel) {
+		final int bit = x * bitsPerPixel;
+		
+		line[bit >>> 3] |= pixel << (8 - bitsPerPixel - (bit & 7));
+	}
+}
@@ -10,33 +10,38 @@ public enum ColorType {
 	/**
 	 * Each pixel is made of one sample: a grayscale value
 	 */
-	GRAYSCALE((byte) 0, new byte[] {1, 2, 4, 8, 16}, new int[] {1, 1, 1, 1, 2}),
+	GRAYSCALE((byte) 0, 1, new byte[] {1, 2, 4, 8, 16}, new int[] {1, 1, 1, 1, 2}),
 	
 	/**
 	 * Each pixel is made of three samples: red, green, blue (in that order)
 	 */
-	RGB((byte) 2, new byte[] {8, 16}, new int[] {3, 6}),
+	RGB((byte) 2, 3, new byte[] {8, 16}, new int[] {3, 6}),
 	
 	/**
 	 * Each pixel is made of one sample: an index into a color palette
 	 */
-	PALETTE((byte) 3, new byte[] {1, 2, 4, 8}, new int[] {1, 1, 1, 1}),
+	PALETTE((byte) 3, 1, new byte[] {1, 2, 4, 8}, new int[] {1, 1, 1, 1}),
 	
 	/**
 	 * Each pixel is made of two samples: a grayscale value and an alpha (in that order)
 	 */
-	GRAYSCALE_ALPHA((byte) 4, new byte[] {8, 16}, new int[] {2, 4}),
+	GRAYSCALE_ALPHA((byte) 4, 2, new byte[] {8, 16}, new int[] {2, 4}),
 	
 	/**
 	 * Each pixel is made of four samples: red, green, blue, alpha (in that order)
 	 */
-	RGB_ALPHA((byte) 6, new byte[] {8, 16}, new int[] {4, 8});
+	RGB_ALPHA((byte) 6, 4, new byte[] {8, 16}, new int[] {4, 8});
 	
 	/**
 	 * The type code, used in the IHDR chunk to identify the color type
 	 */
 	private final byte typeCode;
 	
+	/**
+	 * The number of samples in each pixel
+	 */
+	private final int samplesPerPixel;
+	
 	/**
 	 * The acceptable bit depths for this color type
 	 */
@@ -47,8 +52,9 @@ public enum ColorType {
 	 */
 	private final int[] bytesPerPixel;
 	
-	private ColorType(final byte _typeCode, final byte[] _bitDepths, final int[] _bytesPerPixel) {
+	private ColorType(final byte _typeCode, final int _samplesPerPixel, final byte[] _bitDepths, final int[] _bytesPerPixel) {
 		typeCode = _typeCode;
+		samplesPerPixel = _samplesPerPixel;
 		bitDepths = _bitDepths;
 		bytesPerPixel = _bytesPerPixel;
 	}
@@ -72,6 +78,35 @@ public enum ColorType {
 		throw new IllegalArgumentException("Unsupported bit depth for this color type: " + bitDepth);
 	}
 	
+	/**
+	 * Returns the number of samples in each pixel of this color type.
+	 * 
+	 * @return samples per pixel
+	 */
+	public int getSamplesPerPixel() {
+		return samplesPerPixel;
+	}
+	
+	/**
+	 * Returns the length in bytes of one unfiltered scanline (without the filter type byte) for this color type and
+	 * the given bit depth. Scanlines always end on a byte boundary, so any leftover bits in the last byte are unused.
+	 * 
+	 * @param width pixel width of the image
+	 * @param bitDepth bit depth
+	 * @return number of bytes in one scanline
+	 * @throws IllegalArgumentException if a scanline (with its filter type byte) would not fit in a byte array
+	 */
+	public int getScanlineLength(final int width, final int bitDepth) {
+		final long bits = (long) width * samplesPerPixel * bitDepth;
+		final long length = (bits + 7) >>> 3;
+		
+		if (length >= Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Scanlines of " + width + " pixels are too long for a byte array");
+		}
+		
+		return (int) length;
+	}
+	
 	/**
 	 * Returns the type code for a given color type. The type code
 	 * is used in the IHDR chunk to identify the color type.
@@ -27,12 +27,28 @@ public class PNGData {
 	
 	public final int height;
 	
+	/**
+	 * PLTE chunk data (3 bytes per palette entry), or null if the image does not have a palette
+	 */
+	public final byte[] palette;
+	
+	/**
+	 * tRNS chunk data, or null if the image does not have a tRNS chunk
+	 */
+	public final byte[] transparency;
+	
 	public PNGData(final ColorType _colorType, final byte _bitDepth, final byte[][] _scanlines, final int _width, final int _height) {
+		this(_colorType, _bitDepth, _scanlines, _width, _height, null, null);
+	}
+	
+	public PNGData(final ColorType _colorType, final byte _bitDepth, final byte[][] _scanlines, final int _width, final int _height, final byte[] _palette, final byte[] _transparency) {
 		colorType = _colorType;
 		bitDepth = _bitDepth;
 		scanlines = _scanlines;
 		width = _width;
 		height = _height;
+		palette = _palette;
+		transparency = _transparency;
 	}
 	
 	public final String debugInfo() {
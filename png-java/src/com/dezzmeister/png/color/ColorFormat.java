@@ -4,15 +4,18 @@ import com.dezzmeister.png.chunks.meta.PNGData;
 import com.dezzmeister.png.color.converters.ARGBConverter16;
 import com.dezzmeister.png.color.converters.ARGBConverter8;
 import com.dezzmeister.png.color.converters.GrayscaleConverter;
+import com.dezzmeister.png.color.converters.PaletteConverter;
+import com.dezzmeister.png.color.converters.QuantizedConverter;
 import com.dezzmeister.png.color.converters.RGBConverter16;
 import com.dezzmeister.png.color.converters.RGBConverter8;
+import com.dezzmeister.png.color.converters.ReducedConverter;
+import com.dezzmeister.png.data.IntHashSet;
 
 /**
  * Various color formats. Each format has a conversion function to convert pixels of the format
  * to a standard PNG format. There are five PNG color types, and several accepted bit depths (depending on the color
- * type).
- * 
- * TODO: Optimize the converter to use a palette if possible
+ * type). Images can also be converted to a smaller color type or bit depth, or to a palette image, when no
+ * information is lost (see {@link #convertToPNGFormat(int[], int, int, boolean, boolean)}).
  * 
  * @author Joe Desmond
  * @see <a href="http://www.libpng.org/pub/png/spec/1.2/PNG-Chunks.html#C.IHDR">PNG specification</a>
@@ -79,9 +82,9 @@ public enum ColorFormat {
 	/**
 	 * Conversion function: converts pixels of this color space to a PNG color space
 	 */
-	private final ColorSpaceConverter converter;
+	private final ScanlineConverter converter;
 	
-	private ColorFormat(final ColorSpaceConverter _converter) {
+	private ColorFormat(final ScanlineConverter _converter) {
 		converter = _converter;
 	}
 	
@@ -96,4 +99,109 @@ public enum ColorFormat {
 	public final PNGData convertToPNGFormat(final int[] pixels, final int width, final int height) {
 		return converter.convert(pixels, width, height);
 	}
+	
+	/**
+	 * Converts the given image data to a PNG format, using a palette and reducing the color type and bit depth when this can be
+	 * done without losing any information. See {@link #scanlineConverter(int[], int, int, boolean, boolean, IntHashSet)}.
+	 * 
+	 * @param pixels pixel array (in this ColorFormat)
+	 * @param width pixel width of the image
+	 * @param height pixel height of the image
+	 * @param palette true to use a palette if possible
+	 * @param reduce true to reduce the color type and bit depth if possible
+	 * @return PNG scanlines and color info
+	 */
+	public final PNGData convertToPNGFormat(final int[] pixels, final int width, final int height, final boolean palette, final boolean reduce) {
+		final IntHashSet colors = palette ? new IntHashSet(PaletteConverter.MAX_COLORS) : null;
+		
+		return scanlineConverter(pixels, width, height, palette, reduce, colors).convert(pixels, width, height);
+	}
+	
+	/**
+	 * Converts the given image data to a PNG format as {@link #convertToPNGFormat(int[], int, int, boolean, boolean)} does, quantizing
+	 * the image to a palette if it would otherwise need more than 8 bits per pixel. See
+	 * {@link #scanlineConverter(int[], int, int, boolean, boolean, IntHashSet, int, boolean)}.
+	 * 
+	 * @param pixels pixel array (in this ColorFormat)
+	 * @param width pixel width of the image
+	 * @param height pixel height of the image
+	 * @param palette true to use a palette if possible
+	 * @param reduce true to reduce the color type and bit depth if possible
+	 * @param quantizeColors largest number of colors in a quantized palette, or 0 to never quantize
+	 * @param dither true to dither quantized images
+	 * @return PNG scanlines and color info
+	 */
+	public final PNGData convertToPNGFormat(final int[] pixels, final int width, final int height, final boolean palette, final boolean reduce, final int quantizeColors, final boolean dither) {
+		final IntHashSet colors = palette ? new IntHashSet(PaletteConverter.MAX_COLORS) : null;
+		
+		return scanlineConverter(pixels, width, height, palette, reduce, colors, quantizeColors, dither).convert(pixels, width, height);
+	}
+	
+	/**
+	 * Returns a converter that can convert pixels of this ColorFormat one scanline at a time.
+	 * 
+	 * @return scanline converter for this ColorFormat
+	 */
+	public final ScanlineConverter scanlineConverter() {
+		return converter;
+	}
+	
+	/**
+	 * Returns a converter for the given image. If <code>reduce</code> is true, the image is analyzed by a {@link ReducedConverter}, which
+	 * picks the smallest color type and bit depth that holds every pixel exactly (and a palette, if <code>palette</code> is true and
+	 * the palette is smaller). If only <code>palette</code> is true, a {@link PaletteConverter} is used if the image has few enough colors.
+	 * Otherwise, this ColorFormat's own {@link #scanlineConverter() converter} is returned.
+	 * 
+	 * @param pixels pixel array (in this ColorFormat)
+	 * @param width pixel width of the image
+	 * @param height pixel height of the image
+	 * @param palette true to use a palette if possible
+	 * @param reduce true to reduce the color type and bit depth if possible
+	 * @param colors set used to collect colors for a palette; may be null if <code>palette</code> is false
+	 * @return scanline converter for the image
+	 */
+	public final ScanlineConverter scanlineConverter(final int[] pixels, final int width, final int height, final boolean palette, final boolean reduce, final IntHashSet colors) {
+		if (reduce) {
+			return ReducedConverter.analyze(pixels, width, height, this, palette ? colors : null);
+		}
+		
+		if (palette) {
+			final PaletteConverter paletteConverter = PaletteConverter.create(pixels, width, height, this, colors);
+			
+			if (paletteConverter != null) {
+				return paletteConverter;
+			}
+		}
+		
+		return converter;
+	}
+	
+	/**
+	 * Returns a converter for the given image, like {@link #scanlineConverter(int[], int, int, boolean, boolean, IntHashSet)}, except that
+	 * images that would need more than 8 bits per pixel are quantized to at most <code>quantizeColors</code> colors with a
+	 * {@link QuantizedConverter}. Images that can be written exactly with a palette or with 8 bits or less per pixel are not quantized,
+	 * and neither are images in formats that cannot use a palette.
+	 * 
+	 * @param pixels pixel array (in this ColorFormat)
+	 * @param width pixel width of the image
+	 * @param height pixel height of the image
+	 * @param palette true to use a palette if possible
+	 * @param reduce true to reduce the color type and bit depth if possible
+	 * @param colors set used to collect colors for a palette; may be null if <code>palette</code> is false
+	 * @param quantizeColors largest number of colors in a quantized palette, or 0 to never quantize
+	 * @param dither true to dither quantized images
+	 * @return scanline converter for the image
+	 */
+	public final ScanlineConverter scanlineConverter(final int[] pixels, final int width, final int height, final boolean palette, final boolean reduce, final IntHashSet colors,
+			final int quantizeColors, final boolean dither) {
+		final ScanlineConverter exact = scanlineConverter(pixels, width, height, palette, reduce, colors);
+		
+		if (quantizeColors == 0 || exact.colorType().getSamplesPerPixel() * exact.bitDepth() <= 8) {
+			return exact;
+		}
+		
+		final QuantizedConverter quantized = QuantizedConverter.create(pixels, width, height, this, quantizeColors, dither);
+		
+		return (quantized == null) ? exact : quantized;
+	}
 }
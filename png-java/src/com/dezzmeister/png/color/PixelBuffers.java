@@ -0,0 +1,227 @@
+package com.dezzmeister.png.color;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.chunks.meta.PNGData;
+
+/**
+ * Reads images from NIO buffers, which may be heap buffers, direct buffers, or memory-mapped files. Images are read one row at a time with
+ * absolute gets, so the buffers' positions and limits are never changed, and the whole image is never copied into an <code>int[]</code>.
+ * Rows start <code>stride</code> elements apart, starting at the buffer's position, so an image can be read out of a larger buffer
+ * (such as a framebuffer with padded rows).
+ * <p>
+ * Pixels can be read from an {@link IntBuffer}, or from a {@link ByteBuffer} that holds ints in a given byte order. The byte order
+ * lets a byte buffer be read in another layout: an RGBA framebuffer (bytes R, G, B, A) read in {@link ByteOrder#BIG_ENDIAN big endian} order
+ * is {@link ColorFormat#RGBA_8888}, and a BGRA framebuffer read in {@link ByteOrder#LITTLE_ENDIAN little endian} order is {@link ColorFormat#ARGB_8888}.
+ * <p>
+ * A ByteBuffer can also hold scanlines that are already in a PNG color type and bit depth, which are copied without being converted.
+ * <p>
+ * Images read from buffers are converted with each format's own {@link ScanlineConverter}; the color type and bit depth are not reduced
+ * and palettes are not used, because that would require reading the whole image twice.
+ * 
+ * @author Joe Desmond
+ */
+public final class PixelBuffers {
+	
+	private PixelBuffers() {
+	
+	}
+	
+	/**
+	 * Reads one row of ints from an IntBuffer.
+	 * 
+	 * @param pixels pixel buffer; the first row starts at its position
+	 * @param row row index
+	 * @param stride ints from the start of one row to the start of the next
+	 * @param dst destination array
+	 * @param length number of ints in a row
+	 */
+	public static void readRow(final IntBuffer pixels, final int row, final int stride, final int[] dst, final int length) {
+		pixels.get(pixels.position() + row * stride, dst, 0, length);
+	}
+	
+	/**
+	 * Reads one row of ints from a ByteBuffer. The buffer's own byte order is used, so the caller should give a view with the
+	 * right order (see {@link #withOrder(ByteBuffer, ByteOrder)}).
+	 * 
+	 * @param pixels pixel buffer; the first row starts at its position
+	 * @param row row index
+	 * @param stride bytes from the start of one row to the start of the next
+	 * @param dst destination array
+	 * @param length number of ints in a row
+	 */
+	public static void readRow(final ByteBuffer pixels, final int row, final int stride, final int[] dst, final int length) {
+		final int start = pixels.position() + row * stride;
+		
+		for (int i = 0; i < length; i++) {
+			dst[i] = pixels.getInt(start + (i << 2));
+		}
+	}
+	
+	/**
+	 * Returns a view of the given buffer with the given byte order. The view shares the buffer's content, position, and limit.
+	 * 
+	 * @param buffer a ByteBuffer
+	 * @param order byte order of the ints in the buffer
+	 * @return buffer with byte order <code>order</code>
+	 */
+	public static ByteBuffer withOrder(final ByteBuffer buffer, final ByteOrder order) {
+		return buffer.duplicate().order(order);
+	}
+	
+	/**
+	 * Converts an image in an IntBuffer to unfiltered PNG scanlines.
+	 * 
+	 * @param pixels pixels (in color format <code>format</code>); the first row starts at the buffer's position
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride ints from the start of one row to the start of the next
+	 * @param format color format of the pixels
+	 * @return PNG scanlines and color info
+	 */
+	public static PNGData convert(final IntBuffer pixels, final int width, final int height, final int stride, final ColorFormat format) {
+		final ScanlineConverter converter = format.scanlineConverter();
+		final int rowInts = width * converter.intsPerPixel();
+		
+		checkBounds(pixels.remaining(), width, height, stride, rowInts);
+		
+		final byte[][] scanlines = newScanlines(converter.colorType(), converter.bitDepth(), width, height);
+		final int[] row = new int[rowInts];
+		
+		for (int y = 0; y < height; y++) {
+			readRow(pixels, y, stride, row, rowInts);
+			converter.convertLine(row, 0, width, scanlines[y]);
+		}
+		
+		return new PNGData(converter.colorType(), converter.bitDepth(), scanlines, width, height);
+	}
+	
+	/**
+	 * Converts an image in a ByteBuffer to unfiltered PNG scanlines. The buffer holds the same ints as an <code>int[]</code>
+	 * of color format <code>format</code> would, in the given byte order.
+	 * 
+	 * @param pixels pixels (in color format <code>format</code>); the first row starts at the buffer's position
+	 * @param order byte order of the ints in <code>pixels</code>
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride bytes from the start of one row to the start of the next
+	 * @param format color format of the pixels
+	 * @return PNG scanlines and color info
+	 */
+	public static PNGData convert(final ByteBuffer pixels, final ByteOrder order, final int width, final int height, final int stride, final ColorFormat format) {
+		final ScanlineConverter converter = format.scanlineConverter();
+		final int rowInts = width * converter.intsPerPixel();
+		
+		checkBounds(pixels.remaining(), width, height, stride, (long) rowInts * 4);
+		
+		final ByteBuffer ordered = withOrder(pixels, order);
+		final byte[][] scanlines = newScanlines(converter.colorType(), converter.bitDepth(), width, height);
+		final int[] row = new int[rowInts];
+		
+		for (int y = 0; y < height; y++) {
+			readRow(ordered, y, stride, row, rowInts);
+			converter.convertLine(row, 0, width, scanlines[y]);
+		}
+		
+		return new PNGData(converter.colorType(), converter.bitDepth(), scanlines, width, height);
+	}
+	
+	/**
+	 * Copies scanlines that are already in a PNG color type and bit depth out of a ByteBuffer. Each row must be laid out exactly
+	 * like an unfiltered PNG scanline (without the filter type code): samples in PNG order, 16-bit samples big endian, and samples of
+	 * less than 8 bits packed starting with the most significant bits. Nothing is converted. {@link ColorType#PALETTE} is not allowed,
+	 * because there is no palette.
+	 * 
+	 * @param scanlines unfiltered scanlines; the first row starts at the buffer's position
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride bytes from the start of one row to the start of the next
+	 * @param colorType color type of the scanlines
+	 * @param bitDepth bit depth of the scanlines
+	 * @return the scanlines and color info
+	 */
+	public static PNGData scanlines(final ByteBuffer scanlines, final int width, final int height, final int stride, final ColorType colorType, final int bitDepth) {
+		final int lineLength = checkRaw(scanlines, width, height, stride, colorType, bitDepth);
+		final byte[][] out = newScanlines(colorType, bitDepth, width, height);
+		
+		for (int y = 0; y < height; y++) {
+			readScanline(scanlines, y, stride, out[y], lineLength);
+		}
+		
+		return new PNGData(colorType, (byte) bitDepth, out, width, height);
+	}
+	
+	/**
+	 * Copies one scanline out of a ByteBuffer.
+	 * 
+	 * @param scanlines unfiltered scanlines; the first row starts at the buffer's position
+	 * @param row row index
+	 * @param stride bytes from the start of one row to the start of the next
+	 * @param dst destination array
+	 * @param length number of bytes in a scanline
+	 */
+	public static void readScanline(final ByteBuffer scanlines, final int row, final int stride, final byte[] dst, final int length) {
+		scanlines.get(scanlines.position() + row * stride, dst, 0, length);
+	}
+	
+	/**
+	 * Checks that a buffer of raw scanlines can be read with the given dimensions, color type, and bit depth.
+	 * 
+	 * @return length of one scanline
+	 * @throws IllegalArgumentException if the color type, bit depth, dimensions, or stride are not valid, or the buffer is too small
+	 */
+	public static int checkRaw(final ByteBuffer scanlines, final int width, final int height, final int stride, final ColorType colorType, final int bitDepth) {
+		if (colorType == ColorType.PALETTE) {
+			throw new IllegalArgumentException("Raw scanlines cannot use a palette");
+		}
+		
+		if (bitDepth < 1 || bitDepth > 16 || !colorType.isAllowedBitDepth((byte) bitDepth)) {
+			throw new IllegalArgumentException("Unsupported bit depth for " + colorType + ": " + bitDepth);
+		}
+		
+		final int lineLength = colorType.getScanlineLength(width, bitDepth);
+		
+		checkBounds(scanlines.remaining(), width, height, stride, lineLength);
+		return lineLength;
+	}
+	
+	/**
+	 * Checks that a buffer holds an image with the given dimensions and stride.
+	 * 
+	 * @param remaining number of elements from the buffer's position to its limit
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param stride elements from the start of one row to the start of the next
+	 * @param rowLength elements in one row
+	 * @throws IllegalArgumentException if the dimensions or stride are not valid, or the buffer is too small
+	 */
+	public static void checkBounds(final int remaining, final int width, final int height, final int stride, final long rowLength) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image dimensions must be positive: " + width + "x" + height);
+		}
+		
+		if (stride < rowLength) {
+			throw new IllegalArgumentException("Stride (" + stride + ") is less than the length of a row (" + rowLength + ")");
+		}
+		
+		final long required = (long) stride * (height - 1) + rowLength;
+		
+		if (required > remaining) {
+			throw new IllegalArgumentException("Buffer has " + remaining + " elements remaining, but the image needs " + required);
+		}
+	}
+	
+	private static byte[][] newScanlines(final ColorType colorType, final int bitDepth, final int width, final int height) {
+		final byte[][] scanlines = new byte[height][];
+		final int lineLength = colorType.getScanlineLength(width, bitDepth);
+		
+		for (int y = 0; y < height; y++) {
+			scanlines[y] = new byte[lineLength];
+		}
+		
+		return scanlines;
+	}
+}
@@ -0,0 +1,67 @@
+package com.dezzmeister.png.color;
+
+import com.dezzmeister.png.chunks.meta.PNGData;
+
+/**
+ * Produces an image one row at a time, so that images that are generated (or put together from tiles) can be encoded without ever
+ * holding all of their pixels in one <code>int[]</code>. The encoders pull rows from a source as they need them and convert each row
+ * with the color format's {@link ScanlineConverter}, so only one row of pixels is held at a time. Because the pixels are never seen
+ * all at once, the color type and bit depth are not reduced and palettes are not used (as with {@link PixelBuffers}).
+ * <p>
+ * Rows are requested in order, from row 0 to the last row, and each row is requested once. A source that is slow to produce its
+ * rows can run on another thread with {@link QueuedPixelSource}.
+ * 
+ * @author Joe Desmond
+ * @see QueuedPixelSource
+ */
+@FunctionalInterface
+public interface PixelSource {
+	
+	/**
+	 * Fills one row of pixels. The pixels must be in the color format the source is encoded with, so <code>dst</code> holds
+	 * <code>width * {@link ScanlineConverter#intsPerPixel()}</code> ints.
+	 * 
+	 * @param y row index
+	 * @param dst destination array; this may be reused for the next row
+	 */
+	void fillRow(int y, int[] dst);
+	
+	/**
+	 * Converts every row of this source to unfiltered PNG scanlines, one row at a time.
+	 * 
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param format color format of the pixels
+	 * @return PNG scanlines and color info
+	 * @throws IllegalArgumentException if the dimensions are not positive
+	 */
+	default PNGData convert(final int width, final int height, final ColorFormat format) {
+		checkDimensions(width, height);
+		
+		final ScanlineConverter converter = format.scanlineConverter();
+		final int lineLength = converter.colorType().getScanlineLength(width, converter.bitDepth());
+		final byte[][] scanlines = new byte[height][];
+		final int[] row = new int[width * converter.intsPerPixel()];
+		
+		for (int y = 0; y < height; y++) {
+			fillRow(y, row);
+			scanlines[y] = new byte[lineLength];
+			converter.convertLine(row, 0, width, scanlines[y]);
+		}
+		
+		return new PNGData(converter.colorType(), converter.bitDepth(), scanlines, width, height);
+	}
+	
+	/**
+	 * Checks that the dimensions of an image are positive.
+	 * 
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @throws IllegalArgumentException if the dimensions are not positive
+	 */
+	static void checkDimensions(final int width, final int height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Image dimensions must be positive: " + width + "x" + height);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.dezzmeister.png.color;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+
+/**
+ * Converts unfiltered PNG scanlines back to pixels of a {@link ColorFormat}. This is the reverse of a {@link ScanlineConverter}, except
+ * that any PNG color type and bit depth can be converted to any ColorFormat. Each sample is first scaled to 16 bits, so an
+ * 8-bit sample <code>v</code> becomes <code>v * 257</code> and a 1-bit sample becomes 0 or 65535; the samples are then packed into the
+ * target format. 8-bit formats use the most significant byte of each 16-bit sample. When a color image is unpacked to {@link ColorFormat#GRAYSCALE},
+ * the luma of each pixel is used (ITU-R BT.601 weights). Formats without alpha drop the alpha sample.
+ * <p>
+ * Palette images need the palette from the PLTE chunk, and transparency from a tRNS chunk is applied for every color type.
+ * 
+ * @author Joe Desmond
+ */
+public class PixelUnpacker {
+	
+	private final ColorType colorType;
+	
+	private final int bitDepth;
+	
+	private final ColorFormat format;
+	
+	/**
+	 * PLTE chunk data (3 bytes per entry), or null
+	 */
+	private final byte[] palette;
+	
+	/**
+	 * tRNS chunk data, or null
+	 */
+	private final byte[] transparency;
+	
+	/**
+	 * Creates a PixelUnpacker for scanlines with the given color type and bit depth.
+	 * 
+	 * @param _colorType PNG color type of the scanlines
+	 * @param _bitDepth bit depth of the scanlines
+	 * @param _palette PLTE chunk data; required if <code>_colorType</code> is {@link ColorType#PALETTE}, ignored otherwise
+	 * @param _transparency tRNS chunk data, or null if the image has no tRNS chunk
+	 * @param _format format of the unpacked pixels
+	 */
+	public PixelUnpacker(final ColorType _colorType, final int _bitDepth, final byte[] _palette, final byte[] _transparency, final ColorFormat _format) {
+		if (_colorType == ColorType.PALETTE && _palette == null) {
+			throw new IllegalArgumentException("Palette images need a palette");
+		}
+		
+		colorType = _colorType;
+		bitDepth = _bitDepth;
+		palette = _palette;
+		transparency = _transparency;
+		format = _format;
+	}
+	
+	/**
+	 * Returns the number of ints that make up one pixel in the target format.
+	 * 
+	 * @return ints per pixel
+	 */
+	public int intsPerPixel() {
+		return format.scanlineConverter().intsPerPixel();
+	}
+	
+	/**
+	 * Unpacks one unfiltered scanline.
+	 * 
+	 * @param scanline unfiltered scanline (without the filter type code)
+	 * @param width pixel width of the scanline
+	 * @param out destination pixel array
+	 * @param offset index in <code>out</code> of the first int of the row
+	 */
+	public void unpackLine(final byte[] scanline, final int width, final int[] out, final int offset) {
+		final int samples = colorType.getSamplesPerPixel();
+		final int maxSample = (1 << bitDepth) - 1;
+		int index = offset;
+		
+		for (int x = 0; x < width; x++) {
+			final int first = sample(scanline, x * samples);
+			final int r;
+			final int g;
+			final int b;
+			int a = 0xFFFF;
+			
+			switch (colorType) {
+				case GRAYSCALE:
+					r = g = b = scale(first, maxSample);
+					
+					if (transparency != null && first == readShort(transparency, 0)) {
+						a = 0;
+					}
+					break;
+				case GRAYSCALE_ALPHA:
+					r = g = b = scale(first, maxSample);
+					a = scale(sample(scanline, x * samples + 1), maxSample);
+					break;
+				case PALETTE:
+					if ((first * 3) + 2 >= palette.length) {
+						throw new IllegalArgumentException("Palette index out of range: " + first);
+					}
+					
+					r = (palette[first * 3] & 0xFF) * 257;
+					g = (palette[first * 3 + 1] & 0xFF) * 257;
+					b = (palette[first * 3 + 2] & 0xFF) * 257;
+					
+					if (transparency != null && first < transparency.length) {
+						a = (transparency[first] & 0xFF) * 257;
+					}
+					break;
+				case RGB: {
+					final int green = sample(scanline, x * samples + 1);
+					final int blue = sample(scanline, x * samples + 2);
+					
+					r = scale(first, maxSample);
+					g = scale(green, maxSample);
+					b = scale(blue, maxSample);
+					
+					if (transparency != null && first == readShort(transparency, 0) && green == readShort(transparency, 2) && blue == readShort(transparency, 4)) {
+						a = 0;
+					}
+					break;
+				}
+				default:
+					r = scale(first, maxSample);
+					g = scale(sample(scanline, x * samples + 1), maxSample);
+					b = scale(sample(scanline, x * samples + 2), maxSample);
+					a = scale(sample(scanline, x * samples + 3), maxSample);
+					break;
+			}
+			
+			index = pack(r, g, b, a, out, index);
+		}
+	}
+	
+	/**
+	 * Reads the sample at the given sample index from a scanline.
+	 */
+	private int sample(final byte[] scanline, final int sampleIndex) {
+		switch (bitDepth) {
+			case 16:
+				return ((scanline[sampleIndex << 1] & 0xFF) << 8) | (scanline[(sampleIndex << 1) + 1] & 0xFF);
+			case 8:
+				return scanline[sampleIndex] & 0xFF;
+			default:
+				final int bit = sampleIndex * bitDepth;
+				final int shift = 8 - bitDepth - (bit & 7);
+				
+				return ((scanline[bit >>> 3] & 0xFF) >>> shift) & ((1 << bitDepth) - 1);
+		}
+	}
+	
+	/**
+	 * Scales a sample to 16 bits.
+	 */
+	private static int scale(final int sample, final int maxSample) {
+		return (maxSample == 0xFFFF) ? sample : (sample * 0xFFFF) / maxSample;
+	}
+	
+	/**
+	 * Packs 16-bit samples into the target format.
+	 * 
+	 * @return index in <code>out</code> after the packed pixel
+	 */
+	private int pack(final int r, final int g, final int b, final int a, final int[] out, final int index) {
+		switch (format) {
+			case GRAYSCALE:
+				out[index] = (r == g && g == b) ? r : ((r * 299) + (g * 587) + (b * 114) + 500) / 1000;
+				return index + 1;
+			case RGB_16:
+				out[index] = r;
+				out[index + 1] = g;
+				out[index + 2] = b;
+				return index + 3;
+			case ARGB_16:
+				out[index] = a;
+				out[index + 1] = r;
+				out[index + 2] = g;
+				out[index + 3] = b;
+				return index + 4;
+			case RGBA_16:
+				out[index] = r;
+				out[index + 1] = g;
+				out[index + 2] = b;
+				out[index + 3] = a;
+				return index + 4;
+			case RGB_888:
+				out[index] = ((r >>> 8) << 16) | ((g >>> 8) << 8) | (b >>> 8);
+				return index + 1;
+			case ARGB_8888:
+				out[index] = ((a >>> 8) << 24) | ((r >>> 8) << 16) | ((g >>> 8) << 8) | (b >>> 8);
+				return index + 1;
+			default:
+				out[index] = ((r >>> 8) << 24) | ((g >>> 8) << 16) | ((b >>> 8) << 8) | (a >>> 8);
+				return index + 1;
+		}
+	}
+	
+	private static int readShort(final byte[] data, final int index) {
+		if (index + 1 >= data.length) {
+			return -1;
+		}
+		
+		return ((data[index] & 0xFF) << 8) | (data[index + 1] & 0xFF);
+	}
+}
@@ -0,0 +1,151 @@
+package com.dezzmeister.png.color;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link PixelSource} that runs another source on a different thread, so that rows can be generated while earlier rows are being
+ * filtered and compressed. The generator fills rows into a fixed number of row buffers and hands them to the encoder through a bounded
+ * queue; when every buffer is full, the generator waits for the encoder to catch up. The memory used is <code>capacity</code> rows,
+ * however tall the image is.
+ * <p>
+ * The generator starts as soon as the QueuedPixelSource is created. If the generator throws an exception, the encoder gets an
+ * {@link IllegalStateException} caused by it when it asks for the row that failed. If the encoder stops before reading every row,
+ * {@link #close()} must be called so that the generator stops too.
+ * 
+ * @author Joe Desmond
+ */
+public final class QueuedPixelSource implements PixelSource, Closeable {
+	
+	/**
+	 * Put in the queue of filled rows when the generator fails, and in the queue of free rows when the source is closed
+	 */
+	private static final int[] END = new int[0];
+	
+	/**
+	 * Row buffers that the generator can fill
+	 */
+	private final BlockingQueue<int[]> free;
+	
+	/**
+	 * Rows filled by the generator, in order. This has room for every row buffer and {@link #END}, so the generator never waits on it.
+	 */
+	private final BlockingQueue<int[]> filled;
+	
+	private final int rowLength;
+	
+	/**
+	 * The exception thrown by the generator, if it failed
+	 */
+	private volatile Throwable failure;
+	
+	private volatile boolean closed = false;
+	
+	/**
+	 * Index of the next row to be read
+	 */
+	private int next = 0;
+	
+	/**
+	 * Starts running <code>generator</code> on the given executor. The generator fills every row of the image in order.
+	 * 
+	 * @param generator source of the pixels, run on <code>executor</code>
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param format color format of the pixels
+	 * @param capacity number of rows that can be generated ahead of the encoder
+	 * @param executor runs the generator
+	 * @throws IllegalArgumentException if the dimensions or capacity are not positive
+	 */
+	public QueuedPixelSource(final PixelSource generator, final int width, final int height, final ColorFormat format, final int capacity, final Executor executor) {
+		PixelSource.checkDimensions(width, height);
+		
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		
+		rowLength = width * format.scanlineConverter().intsPerPixel();
+		free = new ArrayBlockingQueue<int[]>(capacity);
+		filled = new ArrayBlockingQueue<int[]>(capacity + 1);
+		
+		for (int i = 0; i < capacity; i++) {
+			free.add(new int[rowLength]);
+		}
+		
+		executor.execute(() -> generate(generator, height));
+	}
+	
+	/**
+	 * Fills every row, stopping early if the source is closed.
+	 */
+	private void generate(final PixelSource generator, final int height) {
+		try {
+			for (int y = 0; y < height; y++) {
+				final int[] row = free.take();
+				
+				if (closed) {
+					return;
+				}
+				
+				generator.fillRow(y, row);
+				filled.add(row);
+			}
+		} catch (InterruptedException e) {
+			failure = e;
+			filled.add(END);
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			filled.add(END);
+		}
+	}
+	
+	/**
+	 * Copies the next generated row into <code>dst</code>, waiting for the generator if the row is not ready yet.
+	 * 
+	 * @throws IllegalStateException if the rows are not read in order, the source has been closed, the generator failed, or the
+	 * 			calling thread is interrupted while waiting
+	 */
+	@Override
+	public void fillRow(final int y, final int[] dst) {
+		if (closed) {
+			throw new IllegalStateException("Pixel source has been closed");
+		}
+		
+		if (y != next) {
+			throw new IllegalStateException("Rows must be read in order: expected row " + next + " but got row " + y);
+		}
+		
+		final int[] row;
+		
+		try {
+			row = filled.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for row " + y, e);
+		}
+		
+		if (row == END) {
+			throw new IllegalStateException("Pixel generator failed at row " + y, failure);
+		}
+		
+		System.arraycopy(row, 0, dst, 0, rowLength);
+		free.add(row);
+		next++;
+	}
+	
+	/**
+	 * Stops the generator. Rows cannot be read afterwards.
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			
+			// The generator only waits when there are no free rows, so there is always room to wake it up
+			free.offer(END);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.dezzmeister.png.color;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.chunks.meta.PNGData;
+
+/**
+ * A {@link ColorSpaceConverter} that can convert one scanline at a time. The color type and bit depth of a
+ * scanline converter are fixed and known before any pixels are seen, so images can be converted row by row
+ * without ever holding the entire image in memory (see {@link com.dezzmeister.png.PngWriter PngWriter}).
+ * 
+ * @author Joe Desmond
+ */
+public interface ScanlineConverter extends ColorSpaceConverter {
+	
+	/**
+	 * Returns the PNG color type of the scanlines produced by this converter.
+	 * 
+	 * @return PNG color type
+	 */
+	ColorType colorType();
+	
+	/**
+	 * Returns the bit depth of the scanlines produced by this converter.
+	 * 
+	 * @return bit depth
+	 */
+	byte bitDepth();
+	
+	/**
+	 * Returns the number of ints in the input pixel array that make up one pixel. This is 1 for formats that pack
+	 * an entire pixel into an int, and the number of samples for formats that store one sample per int.
+	 * 
+	 * @return number of ints per pixel
+	 */
+	int intsPerPixel();
+	
+	/**
+	 * Converts one row of pixels to an unfiltered PNG scanline. <code>out</code> must be at least
+	 * {@link ColorType#getScanlineLength(int, int) colorType().getScanlineLength(width, bitDepth())} bytes long.
+	 * 
+	 * @param pixels pixel array
+	 * @param offset index of the first int of the row in <code>pixels</code>
+	 * @param width pixel width of the row
+	 * @param out destination scanline
+	 */
+	void convertLine(int[] pixels, int offset, int width, byte[] out);
+	
+	/**
+	 * Returns the PLTE chunk data for the scanlines produced by this converter (3 bytes per palette entry), or null if the
+	 * scanlines don't use a palette.
+	 * 
+	 * @return palette, or null
+	 */
+	default byte[] palette() {
+		return null;
+	}
+	
+	/**
+	 * Returns the tRNS chunk data for the scanlines produced by this converter, or null if there is no tRNS chunk.
+	 * 
+	 * @return transparency, or null
+	 */
+	default byte[] transparency() {
+		return null;
+	}
+	
+	/**
+	 * Converts the entire image by calling {@link #convertLine(int[], int, int, byte[])} for every row.
+	 */
+	@Override
+	default PNGData convert(final int[] pixels, final int width, final int height) {
+		final ColorType colorType = colorType();
+		final byte bitDepth = bitDepth();
+		final int lineLength = colorType.getScanlineLength(width, bitDepth);
+		final int rowInts = width * intsPerPixel();
+		final byte[][] scanlines = new byte[height][];
+		
+		for (int line = 0; line < height; line++) {
+			final byte[] samples = new byte[lineLength];
+			convertLine(pixels, line * rowInts, width, samples);
+			scanlines[line] = samples;
+		}
+		
+		return new PNGData(colorType, bitDepth, scanlines, width, height, palette(), transparency());
+	}
+}
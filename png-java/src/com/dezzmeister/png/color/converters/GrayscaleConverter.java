@@ -2,8 +2,8 @@ package com.dezzmeister.png.color.converters;
 
 import com.dezzmeister.png.chunks.meta.ColorType;
 import com.dezzmeister.png.chunks.meta.PNGData;
-import com.dezzmeister.png.color.ColorSpaceConverter;
-import com.dezzmeister.png.data.ByteBitSet;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.data.BitPacker;
 
 /**
  * Converts 16-bit grayscale images to unfiltered PNG scanlines. If possible, a lower
@@ -14,16 +14,19 @@ import com.dezzmeister.png.data.ByteBitSet;
  * 21845. The samples must be <b>EXACT</b> multiples to force the converter to reduce the bit depth. In the interest
  * of preserving every bit of pixel data, the converter will not reduce the bit depth if samples are "close enough"
  * to a multiple.
+ * <p>
+ * The bit depth can only be reduced when the whole image is available. When converting one scanline at a time
+ * (see {@link ScanlineConverter}), samples are always written with a bit depth of 16.
  * 
  * @author Joe Desmond
  * @see #ALIGNMENTS
  */
-public class GrayscaleConverter implements ColorSpaceConverter {
+public class GrayscaleConverter implements ScanlineConverter {
 	
 	/**
 	 * List of allowed (PNG standard) bit depths
 	 */
-	public static final byte[] ALLOWED_DEPTHS = {1, 2, 8, 4, 16};
+	public static final byte[] ALLOWED_DEPTHS = {1, 2, 4, 8, 16};
 	
 	/**
 	 * The converter uses these values to determine if a pixel array can be represented with less than 16 bits.
@@ -33,42 +36,71 @@ public class GrayscaleConverter implements ColorSpaceConverter {
 	 * 
 	 * @see #determineOptimalBitDepth(int[])
 	 */
-	public static final int[] ALIGNMENTS = {65535, 21845, 4369, 256, 1};
+	public static final int[] ALIGNMENTS = {65535, 21845, 4369, 257, 1};
+	
+	@Override
+	public ColorType colorType() {
+		return ColorType.GRAYSCALE;
+	}
+	
+	@Override
+	public byte bitDepth() {
+		return 16;
+	}
+	
+	@Override
+	public int intsPerPixel() {
+		return 1;
+	}
+	
+	@Override
+	public void convertLine(final int[] pixels, final int offset, final int width, final byte[] out) {
+		int sampleIndex = 0;
+		
+		for (int i = offset; i < offset + width; i++) {
+			final int pixel = pixels[i];
+			
+			out[sampleIndex++] = (byte) ((pixel >>> 8) & 0xFF);
+			out[sampleIndex++] = (byte) (pixel & 0xFF);
+		}
+	}
 
 	@Override
 	public PNGData convert(final int[] pixels, final int width, final int height) {
 		final int bitdepth = determineOptimalBitDepth(pixels);
+		final int alignment = ALIGNMENTS[depthIndex(bitdepth)];
+		final int lineLength = ColorType.GRAYSCALE.getScanlineLength(width, bitdepth);
 		final byte[][] scanlines = new byte[height][];
+		final int[] samples = new int[width];
 		
 		for (int line = 0; line < scanlines.length; line++) {
-			final ByteBitSet bits = new ByteBitSet(bitdepth * width);
-			long bitIndex = 0;
 			final int pixIndex = line * width;
 			
-			for (int i = pixIndex; i < (line * width) + width; i++) {
-				final int pixel = convertToBitDepth(pixels[i], bitdepth);
-				bitIndex = bits.put(bitIndex, pixel, bitdepth);
+			for (int i = 0; i < width; i++) {
+				samples[i] = pixels[pixIndex + i] / alignment;
 			}
 			
-			scanlines[line] = bits.getArray();
+			scanlines[line] = new byte[lineLength];
+			BitPacker.pack(samples, 0, width, bitdepth, scanlines[line], 0);
 		}
 		
 		return new PNGData(ColorType.GRAYSCALE, (byte) bitdepth, scanlines, width, height);
 	}
 	
 	/**
-	 * Converts a 16-bit grayscale pixel to the given bit depth.
+	 * Returns the index of a bit depth in {@link #ALLOWED_DEPTHS} (and of its alignment in {@link #ALIGNMENTS}).
 	 * 
-	 * @param pixel 16-bit grayscale pixel
 	 * @param depth bit depth
-	 * @return <code>pixel</code> represented in <code>depth</code> bits
+	 * @return index of <code>depth</code>
 	 */
-	private int convertToBitDepth(final int pixel, final int depth) {
-		if (depth == 16) {
-			return pixel;
+	private static int depthIndex(final int depth) {
+		for (int i = 0; i < ALLOWED_DEPTHS.length; i++) {
+			if (ALLOWED_DEPTHS[i] == depth) {
+				return i;
+			}
 		}
 		
-		return pixel / ALIGNMENTS[depth - 1];
+		throw new IllegalArgumentException("Invalid bit depth: " + depth);
 	}
 	
 	/**
@@ -0,0 +1,266 @@
+package com.dezzmeister.png.color.converters;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.data.BitPacker;
+import com.dezzmeister.png.data.IntHashSet;
+
+/**
+ * Converts images with 256 or fewer distinct colors to palette scanlines. A PaletteConverter is created for one image with
+ * {@link #create(int[], int, int, ColorFormat)}, which collects the image's colors in an {@link IntHashSet} and gives up as soon as
+ * it finds more than {@link #MAX_COLORS}. The palette index of each pixel is packed into as few bits as possible: 1 bit for 2 colors,
+ * 2 bits for 4, 4 bits for 16, and 8 bits for up to 256.
+ * <p>
+ * Palette entries that are not opaque are put at the start of the palette, so the tRNS chunk only needs to list their alpha values.
+ * If every color is opaque, there is no tRNS chunk at all.
+ * <p>
+ * Only 8-bit packed formats ({@link ColorFormat#RGB_888}, {@link ColorFormat#ARGB_8888}, and {@link ColorFormat#RGBA_8888}) can be
+ * converted, because a palette entry has 8 bits per sample.
+ * 
+ * @author Joe Desmond
+ * @see <a href="http://www.libpng.org/pub/png/spec/1.2/PNG-Chunks.html#C.PLTE">PNG specification</a>
+ */
+public class PaletteConverter implements ScanlineConverter {
+	
+	/**
+	 * Maximum number of entries in a PNG palette
+	 */
+	public static final int MAX_COLORS = 256;
+	
+	private final ColorFormat format;
+	
+	/**
+	 * Every color in the image, as ARGB
+	 */
+	private final IntHashSet colors;
+	
+	/**
+	 * Palette index of each color in {@link #colors}
+	 */
+	private final int[] indices;
+	
+	private final byte bitDepth;
+	
+	private final byte[] palette;
+	
+	private final byte[] transparency;
+	
+	/**
+	 * Creates a PaletteConverter from colors that have already been collected. Every color of the image must be in <code>_colors</code>,
+	 * as an ARGB int. The set belongs to the converter until the converter is no longer used.
+	 * 
+	 * @param _format color format of the image; must be {@linkplain #isSupported(ColorFormat) supported}
+	 * @param _colors every color in the image (at most {@link #MAX_COLORS})
+	 */
+	public PaletteConverter(final ColorFormat _format, final IntHashSet _colors) {
+		if (!isSupported(_format) || _colors.size() == 0 || _colors.size() > MAX_COLORS) {
+			throw new IllegalArgumentException("Cannot create a palette for " + _colors.size() + " colors in format " + _format);
+		}
+		
+		format = _format;
+		colors = _colors;
+		
+		final int size = colors.size();
+		int transparent = 0;
+		
+		for (int i = 0; i < size; i++) {
+			if ((colors.get(i) >>> 24) != 0xFF) {
+				transparent++;
+			}
+		}
+		
+		indices = new int[size];
+		palette = new byte[size * 3];
+		transparency = (transparent == 0) ? null : new byte[transparent];
+		
+		int nextTransparent = 0;
+		int nextOpaque = transparent;
+		
+		for (int i = 0; i < size; i++) {
+			final int argb = colors.get(i);
+			final int alpha = argb >>> 24;
+			final int index;
+			
+			if (alpha != 0xFF) {
+				index = nextTransparent++;
+				transparency[index] = (byte) alpha;
+			} else {
+				index = nextOpaque++;
+			}
+			
+			indices[i] = index;
+			palette[index * 3] = (byte) (argb >>> 16);
+			palette[index * 3 + 1] = (byte) (argb >>> 8);
+			palette[index * 3 + 2] = (byte) argb;
+		}
+		
+		if (size <= 2) {
+			bitDepth = 1;
+		} else if (size <= 4) {
+			bitDepth = 2;
+		} else if (size <= 16) {
+			bitDepth = 4;
+		} else {
+			bitDepth = 8;
+		}
+	}
+	
+	/**
+	 * Creates a PaletteConverter for the given image, if the image can be converted to a palette image.
+	 * 
+	 * @param pixels pixels (in color format <code>format</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param format color format of <code>pixels</code>
+	 * @return a PaletteConverter for the image, or null if <code>format</code> is not supported or the image has more than {@link #MAX_COLORS} colors
+	 */
+	public static PaletteConverter create(final int[] pixels, final int width, final int height, final ColorFormat format) {
+		return create(pixels, width, height, format, new IntHashSet(MAX_COLORS));
+	}
+	
+	/**
+	 * Creates a PaletteConverter for the given image, collecting the image's colors in the given set. The set is cleared first, and
+	 * belongs to the returned converter until the converter is no longer used. This allows an encoder to reuse the same set for many images.
+	 * 
+	 * @param pixels pixels (in color format <code>format</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param format color format of <code>pixels</code>
+	 * @param colors set used to collect colors
+	 * @return a PaletteConverter for the image, or null if <code>format</code> is not supported or the image has more than {@link #MAX_COLORS} colors
+	 */
+	public static PaletteConverter create(final int[] pixels, final int width, final int height, final ColorFormat format, final IntHashSet colors) {
+		if (!isSupported(format)) {
+			return null;
+		}
+		
+		colors.clear();
+		
+		final int count = width * height;
+		int last = 0;
+		
+		for (int i = 0; i < count; i++) {
+			final int pixel = pixels[i];
+			
+			// Neighboring pixels are often the same color, so most pixels can skip the lookup
+			if (i != 0 && pixel == last) {
+				continue;
+			}
+			
+			last = pixel;
+			
+			if (colors.add(toARGB(pixel, format)) == IntHashSet.FULL || colors.size() > MAX_COLORS) {
+				return null;
+			}
+		}
+		
+		return (colors.size() == 0) ? null : new PaletteConverter(format, colors);
+	}
+	
+	/**
+	 * Returns true if images in the given format can be converted to palette images.
+	 * 
+	 * @param format color format
+	 * @return true if the format is supported
+	 */
+	public static boolean isSupported(final ColorFormat format) {
+		return format == ColorFormat.RGB_888 || format == ColorFormat.ARGB_8888 || format == ColorFormat.RGBA_8888;
+	}
+	
+	/**
+	 * Returns the PLTE chunk data: 3 bytes (red, green, blue) for each palette entry.
+	 */
+	@Override
+	public byte[] palette() {
+		return palette;
+	}
+	
+	/**
+	 * Returns the tRNS chunk data: the alpha value of each palette entry up to the last entry that is not opaque,
+	 * or null if every color is opaque.
+	 */
+	@Override
+	public byte[] transparency() {
+		return transparency;
+	}
+	
+	@Override
+	public ColorType colorType() {
+		return ColorType.PALETTE;
+	}
+	
+	@Override
+	public byte bitDepth() {
+		return bitDepth;
+	}
+	
+	@Override
+	public int intsPerPixel() {
+		return 1;
+	}
+	
+	@Override
+	public void convertLine(final int[] pixels, final int offset, final int width, final byte[] out) {
+		int lastPixel = pixels[offset];
+		int lastIndex = paletteIndex(lastPixel);
+		
+		if (bitDepth == 8) {
+			for (int i = 0; i < width; i++) {
+				final int pixel = pixels[offset + i];
+				
+				if (pixel != lastPixel) {
+					lastPixel = pixel;
+					lastIndex = paletteIndex(pixel);
+				}
+				
+				out[i] = (byte) lastIndex;
+			}
+			
+			return;
+		}
+		
+		final BitPacker packer = new BitPacker(out, 0, bitDepth);
+		
+		for (int i = 0; i < width; i++) {
+			final int pixel = pixels[offset + i];
+			
+			if (pixel != lastPixel) {
+				lastPixel = pixel;
+				lastIndex = paletteIndex(pixel);
+			}
+			
+			packer.put(lastIndex);
+		}
+		
+		packer.finish();
+	}
+	
+	private int paletteIndex(final int pixel) {
+		final int color = colors.indexOf(toARGB(pixel, format));
+		
+		if (color == IntHashSet.NOT_FOUND) {
+			throw new IllegalArgumentException("Color is not in the palette: " + Integer.toHexString(pixel));
+		}
+		
+		return indices[color];
+	}
+	
+	/**
+	 * Converts a pixel of one of the supported formats to ARGB.
+	 * 
+	 * @param pixel pixel in color format <code>format</code>
+	 * @param format a supported color format
+	 * @return the pixel as an ARGB int
+	 */
+	public static int toARGB(final int pixel, final ColorFormat format) {
+		switch (format) {
+			case RGB_888:
+				return 0xFF000000 | (pixel & 0xFFFFFF);
+			case RGBA_8888:
+				return (pixel >>> 8) | (pixel << 24);
+			default:
+				return pixel;
+		}
+	}
+}
@@ -0,0 +1,609 @@
+package com.dezzmeister.png.color.converters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.data.BitPacker;
+
+/**
+ * Converts images with any number of colors to palette scanlines by quantizing them to at most a given number of colors. Unlike
+ * {@link PaletteConverter}, this loses information: each pixel is written as the closest palette entry. A QuantizedConverter is
+ * created for one image with {@link #create(int[], int, int, ColorFormat, int, boolean)}, which picks the palette and the palette
+ * index of every pixel; scanlines are made from those indices, so the converter can only convert the image it was created for.
+ * <p>
+ * The palette is picked with the median cut algorithm. The colors of the image are counted in a histogram of 5 bits per color sample
+ * (and 8 levels of alpha, with fully transparent and fully opaque pixels kept apart from the rest), and the histogram is split into
+ * boxes until there are enough boxes or no box can be split. Each palette entry is then moved to the exact mean of the pixels closest to it.
+ * Large images are split into bands of rows whose histograms and means are computed in parallel.
+ * <p>
+ * With dithering, the error between each pixel and its palette entry is spread to the pixels to its right and below it
+ * (Floyd-Steinberg), which hides banding in smooth gradients at the cost of some noise. Alpha is never dithered.
+ * <p>
+ * As with PaletteConverter, entries that are not opaque are put at the start of the palette, and the palette indices are packed
+ * into 1, 2, 4, or 8 bits.
+ * 
+ * @author Joe Desmond
+ * @see <a href="https://en.wikipedia.org/wiki/Median_cut">Median cut</a>
+ */
+public class QuantizedConverter implements ScanlineConverter {
+	
+	/**
+	 * Images with at least this many pixels are quantized on several threads
+	 */
+	public static final int PARALLEL_THRESHOLD = 64 * 1024;
+	
+	/**
+	 * Number of cells in the color histogram: 3 bits of alpha and 5 bits of each color sample
+	 */
+	private static final int CELLS = 1 << 18;
+	
+	private final byte bitDepth;
+	
+	private final byte[] palette;
+	
+	private final byte[] transparency;
+	
+	/**
+	 * Palette index of every pixel in the image
+	 */
+	private final byte[] indices;
+	
+	private QuantizedConverter(final byte _bitDepth, final byte[] _palette, final byte[] _transparency, final byte[] _indices) {
+		bitDepth = _bitDepth;
+		palette = _palette;
+		transparency = _transparency;
+		indices = _indices;
+	}
+	
+	/**
+	 * Quantizes an image to at most <code>maxColors</code> colors.
+	 * 
+	 * @param pixels pixels (in color format <code>format</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param format color format of <code>pixels</code>
+	 * @param maxColors largest number of palette entries (2 to {@link PaletteConverter#MAX_COLORS})
+	 * @param dither true to spread the quantization error with Floyd-Steinberg dithering
+	 * @return a QuantizedConverter for the image, or null if <code>format</code> is not {@linkplain PaletteConverter#isSupported(ColorFormat) supported}
+	 */
+	public static QuantizedConverter create(final int[] pixels, final int width, final int height, final ColorFormat format, final int maxColors, final boolean dither) {
+		if (maxColors < 2 || maxColors > PaletteConverter.MAX_COLORS) {
+			throw new IllegalArgumentException("Palette size must be between 2 and " + PaletteConverter.MAX_COLORS + ": " + maxColors);
+		}
+		
+		if (!PaletteConverter.isSupported(format)) {
+			return null;
+		}
+		
+		final int bands = ((long) width * height < PARALLEL_THRESHOLD) ? 1 : Math.min(height, ForkJoinPool.getCommonPoolParallelism());
+		final int[] histogram = histogram(pixels, width, height, format, bands);
+		final int[] cells = occupiedCells(histogram);
+		
+		// The median cut palette only has cell colors, so each entry is moved to the mean of its pixels, and unused entries are dropped
+		final int[] initial = medianCut(histogram, cells, maxColors);
+		final int[] colors = sortTransparentFirst(refine(pixels, width, height, format, bands, initial, nearestMap(cells, initial)));
+		final int[] map = nearestMap(cells, colors);
+		final byte[] indices = new byte[width * height];
+		
+		if (dither) {
+			dither(pixels, width, height, format, colors, map, indices);
+		} else {
+			bands(height, bands).forEach(band -> {
+				final int end = bandEnd(band, height, bands) * width;
+				
+				for (int i = bandStart(band, height, bands) * width; i < end; i++) {
+					indices[i] = (byte) map[cell(PaletteConverter.toARGB(pixels[i], format))];
+				}
+			});
+		}
+		
+		int transparent = 0;
+		
+		while (transparent < colors.length && (colors[transparent] >>> 24) != 0xFF) {
+			transparent++;
+		}
+		
+		final byte[] palette = new byte[colors.length * 3];
+		final byte[] transparency = (transparent == 0) ? null : new byte[transparent];
+		
+		for (int i = 0; i < colors.length; i++) {
+			palette[i * 3] = (byte) (colors[i] >>> 16);
+			palette[i * 3 + 1] = (byte) (colors[i] >>> 8);
+			palette[i * 3 + 2] = (byte) colors[i];
+			
+			if (i < transparent) {
+				transparency[i] = (byte) (colors[i] >>> 24);
+			}
+		}
+		
+		return new QuantizedConverter(bitDepth(colors.length), palette, transparency, indices);
+	}
+	
+	/**
+	 * Counts the pixels in each histogram cell, one band of rows per thread.
+	 */
+	private static int[] histogram(final int[] pixels, final int width, final int height, final ColorFormat format, final int bands) {
+		final int[][] histograms = new int[bands][];
+		
+		bands(height, bands).forEach(band -> {
+			final int[] histogram = new int[CELLS];
+			final int end = bandEnd(band, height, bands) * width;
+			
+			for (int i = bandStart(band, height, bands) * width; i < end; i++) {
+				histogram[cell(PaletteConverter.toARGB(pixels[i], format))]++;
+			}
+			
+			histograms[band] = histogram;
+		});
+		
+		final int[] histogram = histograms[0];
+		
+		for (int band = 1; band < bands; band++) {
+			for (int i = 0; i < CELLS; i++) {
+				histogram[i] += histograms[band][i];
+			}
+		}
+		
+		return histogram;
+	}
+	
+	/**
+	 * Returns every histogram cell with at least one pixel.
+	 */
+	private static int[] occupiedCells(final int[] histogram) {
+		int count = 0;
+		
+		for (int i = 0; i < CELLS; i++) {
+			if (histogram[i] != 0) {
+				count++;
+			}
+		}
+		
+		final int[] cells = new int[count];
+		int next = 0;
+		
+		for (int i = 0; i < CELLS; i++) {
+			if (histogram[i] != 0) {
+				cells[next++] = i;
+			}
+		}
+		
+		return cells;
+	}
+	
+	/**
+	 * Splits the occupied cells into at most <code>maxColors</code> boxes, always splitting the box with the most pixels times its
+	 * widest range at the median pixel of its widest channel. The cells of each box are kept together in <code>cells</code>.
+	 * 
+	 * @return the count-weighted mean cell color of each box, as ARGB
+	 */
+	private static int[] medianCut(final int[] histogram, final int[] cells, final int maxColors) {
+		final List<Box> boxes = new ArrayList<Box>();
+		boxes.add(new Box(histogram, cells, 0, cells.length));
+		
+		while (boxes.size() < maxColors) {
+			Box widest = null;
+			
+			for (final Box box : boxes) {
+				if (box.end - box.start > 1 && (widest == null || box.priority() > widest.priority())) {
+					widest = box;
+				}
+			}
+			
+			if (widest == null) {
+				break;
+			}
+			
+			final int channel = widest.widestChannel();
+			final int[] sorted = new int[widest.end - widest.start];
+			
+			for (int i = 0; i < sorted.length; i++) {
+				final int cell = cells[widest.start + i];
+				sorted[i] = (channel(cell, channel) << 18) | cell;
+			}
+			
+			Arrays.sort(sorted);
+			
+			long seen = 0;
+			int split = widest.end - 1;
+			
+			for (int i = 0; i < sorted.length; i++) {
+				final int cell = sorted[i] & (CELLS - 1);
+				
+				cells[widest.start + i] = cell;
+				seen += histogram[cell];
+				
+				if (seen * 2 >= widest.count && split == widest.end - 1) {
+					split = Math.min(widest.start + i + 1, widest.end - 1);
+				}
+			}
+			
+			boxes.remove(widest);
+			boxes.add(new Box(histogram, cells, widest.start, split));
+			boxes.add(new Box(histogram, cells, split, widest.end));
+		}
+		
+		final int[] colors = new int[boxes.size()];
+		
+		for (int i = 0; i < colors.length; i++) {
+			colors[i] = boxes.get(i).meanColor(histogram, cells);
+		}
+		
+		return colors;
+	}
+	
+	/**
+	 * Moves each palette entry to the exact mean color of the pixels that are closest to it, and drops entries that no pixel is closest to.
+	 */
+	private static int[] refine(final int[] pixels, final int width, final int height, final ColorFormat format, final int bands, final int[] colors, final int[] map) {
+		// Pixel count and sums of alpha, red, green, and blue for each entry, one set per band
+		final long[][] sums = new long[bands][colors.length * 5];
+		
+		bands(height, bands).forEach(band -> {
+			final long[] bandSums = sums[band];
+			final int end = bandEnd(band, height, bands) * width;
+			
+			for (int i = bandStart(band, height, bands) * width; i < end; i++) {
+				final int argb = PaletteConverter.toARGB(pixels[i], format);
+				final int entry = map[cell(argb)] * 5;
+				
+				bandSums[entry]++;
+				bandSums[entry + 1] += argb >>> 24;
+				bandSums[entry + 2] += (argb >>> 16) & 0xFF;
+				bandSums[entry + 3] += (argb >>> 8) & 0xFF;
+				bandSums[entry + 4] += argb & 0xFF;
+			}
+		});
+		
+		final int[] refined = new int[colors.length];
+		int count = 0;
+		
+		for (int i = 0; i < colors.length; i++) {
+			final long[] total = new long[5];
+			
+			for (final long[] bandSums : sums) {
+				for (int j = 0; j < 5; j++) {
+					total[j] += bandSums[i * 5 + j];
+				}
+			}
+			
+			if (total[0] != 0) {
+				refined[count++] = (mean(total[1], total[0]) << 24) | (mean(total[2], total[0]) << 16) | (mean(total[3], total[0]) << 8) | mean(total[4], total[0]);
+			}
+		}
+		
+		return Arrays.copyOf(refined, count);
+	}
+	
+	/**
+	 * Puts the palette entries that are not opaque first, so that the tRNS chunk only has to list those.
+	 */
+	private static int[] sortTransparentFirst(final int[] colors) {
+		final int[] sorted = new int[colors.length];
+		int next = 0;
+		
+		for (final int color : colors) {
+			if ((color >>> 24) != 0xFF) {
+				sorted[next++] = color;
+			}
+		}
+		
+		for (final int color : colors) {
+			if ((color >>> 24) == 0xFF) {
+				sorted[next++] = color;
+			}
+		}
+		
+		return sorted;
+	}
+	
+	/**
+	 * Finds the closest palette entry to the center of every occupied cell. The other cells are -1, and are filled in as needed when dithering.
+	 */
+	private static int[] nearestMap(final int[] cells, final int[] colors) {
+		final int[] map = new int[CELLS];
+		Arrays.fill(map, -1);
+		
+		final IntStream indices = IntStream.range(0, cells.length);
+		
+		((long) cells.length * colors.length < PARALLEL_THRESHOLD ? indices : indices.parallel()).forEach(i -> {
+			map[cells[i]] = nearest(center(cells[i]), colors);
+		});
+		
+		return map;
+	}
+	
+	/**
+	 * Picks the palette index of every pixel, spreading the error of each pixel's red, green, and blue samples to the pixels to its right
+	 * and below it. The errors are kept in sixteenths.
+	 */
+	private static void dither(final int[] pixels, final int width, final int height, final ColorFormat format, final int[] colors, final int[] map, final byte[] indices) {
+		// Errors of this row and the next, 3 samples per pixel, with an extra pixel on each side
+		int[] errors = new int[(width + 2) * 3];
+		int[] nextErrors = new int[(width + 2) * 3];
+		
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int i = x + y * width;
+				final int argb = PaletteConverter.toARGB(pixels[i], format);
+				final int alpha = argb >>> 24;
+				
+				if (alpha == 0) {
+					indices[i] = (byte) lookup(0, colors, map);
+					continue;
+				}
+				
+				final int e = (x + 1) * 3;
+				final int red = clamp(((argb >>> 16) & 0xFF) + (errors[e] >> 4));
+				final int green = clamp(((argb >>> 8) & 0xFF) + (errors[e + 1] >> 4));
+				final int blue = clamp((argb & 0xFF) + (errors[e + 2] >> 4));
+				final int index = lookup(cell((alpha << 24) | (red << 16) | (green << 8) | blue), colors, map);
+				final int chosen = colors[index];
+				
+				indices[i] = (byte) index;
+				
+				spread(red - ((chosen >>> 16) & 0xFF), e, errors, nextErrors);
+				spread(green - ((chosen >>> 8) & 0xFF), e + 1, errors, nextErrors);
+				spread(blue - (chosen & 0xFF), e + 2, errors, nextErrors);
+			}
+			
+			final int[] temp = errors;
+			errors = nextErrors;
+			nextErrors = temp;
+			Arrays.fill(nextErrors, 0);
+		}
+	}
+	
+	/**
+	 * Spreads the error of one sample: 7/16 to the right, and 3/16, 5/16, and 1/16 to the pixels below left, below, and below right.
+	 */
+	private static void spread(final int error, final int index, final int[] errors, final int[] nextErrors) {
+		errors[index + 3] += error * 7;
+		nextErrors[index - 3] += error * 3;
+		nextErrors[index] += error * 5;
+		nextErrors[index + 3] += error;
+	}
+	
+	/**
+	 * Returns the palette index for a cell, finding the closest palette entry if the cell has not been looked up yet.
+	 */
+	private static int lookup(final int cell, final int[] colors, final int[] map) {
+		if (map[cell] == -1) {
+			map[cell] = nearest(center(cell), colors);
+		}
+		
+		return map[cell];
+	}
+	
+	/**
+	 * Returns the index of the palette entry closest to the given color, by squared distance of every sample.
+	 */
+	private static int nearest(final int argb, final int[] colors) {
+		int best = 0;
+		int bestDistance = Integer.MAX_VALUE;
+		
+		for (int i = 0; i < colors.length; i++) {
+			final int da = (argb >>> 24) - (colors[i] >>> 24);
+			final int dr = ((argb >>> 16) & 0xFF) - ((colors[i] >>> 16) & 0xFF);
+			final int dg = ((argb >>> 8) & 0xFF) - ((colors[i] >>> 8) & 0xFF);
+			final int db = (argb & 0xFF) - (colors[i] & 0xFF);
+			final int distance = da * da + dr * dr + dg * dg + db * db;
+			
+			if (distance < bestDistance) {
+				best = i;
+				bestDistance = distance;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Returns the histogram cell of an ARGB color. Every fully transparent color is in cell 0. Fully opaque colors have an alpha level of 7,
+	 * and the other alpha values are split into levels 1 to 6.
+	 */
+	private static int cell(final int argb) {
+		final int alpha = argb >>> 24;
+		
+		if (alpha == 0) {
+			return 0;
+		}
+		
+		final int level = (alpha == 0xFF) ? 7 : 1 + ((alpha * 6) >>> 8);
+		
+		return (level << 15) | ((argb >>> 9) & 0x7C00) | ((argb >>> 6) & 0x3E0) | ((argb >>> 3) & 0x1F);
+	}
+	
+	/**
+	 * Returns the color at the center of a histogram cell, as ARGB.
+	 */
+	private static int center(final int cell) {
+		final int level = cell >>> 15;
+		
+		if (level == 0) {
+			return 0;
+		}
+		
+		final int alpha = (level == 7) ? 0xFF : ((2 * level - 1) * 128) / 6;
+		
+		return (alpha << 24) | (sampleCenter(cell >>> 10) << 16) | (sampleCenter(cell >>> 5) << 8) | sampleCenter(cell);
+	}
+	
+	private static int sampleCenter(final int bits) {
+		return ((bits & 0x1F) << 3) | 4;
+	}
+	
+	/**
+	 * Returns one channel of a cell, scaled so that alpha levels are as far apart as 4 color levels.
+	 * 
+	 * @param channel 0 for alpha, 1 for red, 2 for green, 3 for blue
+	 */
+	private static int channel(final int cell, final int channel) {
+		return (channel == 0) ? (cell >>> 15) << 2 : (cell >>> (15 - channel * 5)) & 0x1F;
+	}
+	
+	private static int mean(final long sum, final long count) {
+		return (int) ((sum + count / 2) / count);
+	}
+	
+	private static int clamp(final int sample) {
+		return Math.max(0, Math.min(255, sample));
+	}
+	
+	private static byte bitDepth(final int size) {
+		if (size <= 2) {
+			return 1;
+		} else if (size <= 4) {
+			return 2;
+		} else if (size <= 16) {
+			return 4;
+		} else {
+			return 8;
+		}
+	}
+	
+	private static IntStream bands(final int height, final int bands) {
+		return (bands == 1) ? IntStream.of(0) : IntStream.range(0, bands).parallel();
+	}
+	
+	private static int bandStart(final int band, final int height, final int bands) {
+		return (int) (((long) band * height) / bands);
+	}
+	
+	private static int bandEnd(final int band, final int height, final int bands) {
+		return (int) (((long) (band + 1) * height) / bands);
+	}
+	
+	/**
+	 * Returns the PLTE chunk data: 3 bytes (red, green, blue) for each palette entry.
+	 */
+	@Override
+	public byte[] palette() {
+		return palette;
+	}
+	
+	/**
+	 * Returns the tRNS chunk data: the alpha value of each palette entry up to the last entry that is not opaque,
+	 * or null if every color is opaque.
+	 */
+	@Override
+	public byte[] transparency() {
+		return transparency;
+	}
+	
+	@Override
+	public ColorType colorType() {
+		return ColorType.PALETTE;
+	}
+	
+	@Override
+	public byte bitDepth() {
+		return bitDepth;
+	}
+	
+	@Override
+	public int intsPerPixel() {
+		return 1;
+	}
+	
+	/**
+	 * Packs the palette indices of one row. <code>pixels</code> is not read; the indices were picked when the converter was created,
+	 * and <code>offset</code> is only used to find the row.
+	 */
+	@Override
+	public void convertLine(final int[] pixels, final int offset, final int width, final byte[] out) {
+		if (bitDepth == 8) {
+			System.arraycopy(indices, offset, out, 0, width);
+			return;
+		}
+		
+		final BitPacker packer = new BitPacker(out, 0, bitDepth);
+		
+		for (int i = 0; i < width; i++) {
+			packer.put(indices[offset + i]);
+		}
+		
+		packer.finish();
+	}
+	
+	/**
+	 * A box of histogram cells: the cells from <code>start</code> (inclusive) to <code>end</code> (exclusive) in the cell array
+	 */
+	private static final class Box {
+		private final int start;
+		
+		private final int end;
+		
+		/**
+		 * Number of pixels in the box
+		 */
+		private final long count;
+		
+		/**
+		 * Smallest and largest value of each channel
+		 */
+		private final int[] min = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+		
+		private final int[] max = new int[4];
+		
+		Box(final int[] histogram, final int[] cells, final int _start, final int _end) {
+			start = _start;
+			end = _end;
+			
+			long pixels = 0;
+			
+			for (int i = start; i < end; i++) {
+				pixels += histogram[cells[i]];
+				
+				for (int channel = 0; channel < 4; channel++) {
+					final int value = channel(cells[i], channel);
+					
+					min[channel] = Math.min(min[channel], value);
+					max[channel] = Math.max(max[channel], value);
+				}
+			}
+			
+			count = pixels;
+		}
+		
+		int widestChannel() {
+			int widest = 0;
+			
+			for (int channel = 1; channel < 4; channel++) {
+				if (max[channel] - min[channel] > max[widest] - min[widest]) {
+					widest = channel;
+				}
+			}
+			
+			return widest;
+		}
+		
+		long priority() {
+			final int channel = widestChannel();
+			
+			return count * (max[channel] - min[channel]);
+		}
+		
+		int meanColor(final int[] histogram, final int[] cells) {
+			final long[] sums = new long[4];
+			
+			for (int i = start; i < end; i++) {
+				final int color = center(cells[i]);
+				final int pixels = histogram[cells[i]];
+				
+				sums[0] += (long) (color >>> 24) * pixels;
+				sums[1] += (long) ((color >>> 16) & 0xFF) * pixels;
+				sums[2] += (long) ((color >>> 8) & 0xFF) * pixels;
+				sums[3] += (long) (color & 0xFF) * pixels;
+			}
+			
+			return (mean(sums[0], count) << 24) | (mean(sums[1], count) << 16) | (mean(sums[2], count) << 8) | mean(sums[3], count);
+		}
+	}
+}
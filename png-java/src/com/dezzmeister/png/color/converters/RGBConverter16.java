@@ -1,34 +1,39 @@
 package com.dezzmeister.png.color.converters;
 
 import com.dezzmeister.png.chunks.meta.ColorType;
-import com.dezzmeister.png.chunks.meta.PNGData;
-import com.dezzmeister.png.color.ColorSpaceConverter;
-import com.dezzmeister.png.data.ByteBitSet;
+import com.dezzmeister.png.color.ScanlineConverter;
 
 /**
  * Converts an array of RGB pixels with 16-bit samples to a PNG format.
  * 
  * @author Joseph Desmond
  */
-public class RGBConverter16 implements ColorSpaceConverter {
+public class RGBConverter16 implements ScanlineConverter {
+	
+	@Override
+	public ColorType colorType() {
+		return ColorType.RGB;
+	}
+	
+	@Override
+	public byte bitDepth() {
+		return 16;
+	}
+	
+	@Override
+	public int intsPerPixel() {
+		return 3;
+	}
 
 	@Override
-	public PNGData convert(final int[] pixels, final int width, final int height) {
-		final int bitdepth = 16;
-		final byte[][] scanlines = new byte[height][];
+	public void convertLine(final int[] pixels, final int offset, final int width, final byte[] out) {
+		int sampleIndex = 0;
 		
-		for (int line = 0; line < height; line++) {
-			final ByteBitSet bits = new ByteBitSet(width * 48);
-			long bitIndex = 0;
-			final int pixIndex = line * width * 3;
+		for (int i = offset; i < offset + (width * 3); i++) {
+			final int sample = pixels[i];
 			
-			for (int i = pixIndex; i < ((line + 1) * width * 3); i++) {
-				bitIndex = bits.put(bitIndex, pixels[i], bitdepth);
-			}
-			
-			scanlines[line] = bits.getArray();
+			out[sampleIndex++] = (byte) ((sample >>> 8) & 0xFF);
+			out[sampleIndex++] = (byte) (sample & 0xFF);
 		}
-		
-		return new PNGData(ColorType.RGB, (byte) bitdepth, scanlines, width, height);
 	}
 }
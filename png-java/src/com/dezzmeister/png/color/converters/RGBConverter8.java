@@ -1,40 +1,53 @@
 package com.dezzmeister.png.color.converters;
 
+import java.nio.ByteBuffer;
+
 import com.dezzmeister.png.chunks.meta.ColorType;
-import com.dezzmeister.png.chunks.meta.PNGData;
-import com.dezzmeister.png.color.ColorSpaceConverter;
+import com.dezzmeister.png.color.ScanlineConverter;
 
 /**
  * Converts an array of RGB pixels (8 bits per sample) to a PNG format.
  * 
  * @author Joe Desmond
  */
-public class RGBConverter8 implements ColorSpaceConverter {
-
+public class RGBConverter8 implements ScanlineConverter {
+	
+	@Override
+	public ColorType colorType() {
+		return ColorType.RGB;
+	}
+	
+	@Override
+	public byte bitDepth() {
+		return 8;
+	}
+	
 	@Override
-	public PNGData convert(final int[] pixels, final int width, final int height) {
-		final byte bitdepth = 8;
-		final byte[][] scanlines = new byte[height][];
+	public int intsPerPixel() {
+		return 1;
+	}
+	
+	@Override
+	public void convertLine(final int[] pixels, final int offset, final int width, final byte[] out) {
+		if (width == 0) {
+			return;
+		}
 		
-		for (int line = 0; line < height; line++) {
-			final byte[] samples = new byte[width * 3];
-			int sampleIndex = 0;
-			
-			for (int i = (line * width); i < ((line + 1) * width); i++) {
-				final int pixel = pixels[i];
-				final int red = (pixel >>> 16) & 0xFF;
-				final int green = (pixel >>> 8) & 0xFF;
-				final int blue = pixel & 0xFF;
-				
-				samples[sampleIndex++] = (byte) red;
-				samples[sampleIndex++] = (byte) green;
-				samples[sampleIndex++] = (byte) blue;
-			}
-			
-			scanlines[line] = samples;
+		final ByteBuffer buffer = ByteBuffer.wrap(out);
+		final int last = width - 1;
+		
+		// Each pixel is written as a whole int (red, green, blue, and a zero byte). The zero byte is overwritten by the next pixel.
+		for (int i = 0; i < last; i++) {
+			buffer.putInt(i * 3, pixels[offset + i] << 8);
 		}
 		
-		return new PNGData(ColorType.RGB, bitdepth, scanlines, width, height);
+		// The last pixel's zero byte would not fit in the scanline
+		final int pixel = pixels[offset + last];
+		final int sampleIndex = last * 3;
+		
+		out[sampleIndex] = (byte) (pixel >>> 16);
+		out[sampleIndex + 1] = (byte) (pixel >>> 8);
+		out[sampleIndex + 2] = (byte) pixel;
 	}
 
 }
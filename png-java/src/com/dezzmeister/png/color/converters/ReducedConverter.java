@@ -0,0 +1,327 @@
+package com.dezzmeister.png.color.converters;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.data.BitPacker;
+import com.dezzmeister.png.data.IntHashSet;
+
+/**
+ * Converts images to the smallest PNG color type and bit depth that holds every pixel exactly. {@link #analyze(int[], int, int, ColorFormat, IntHashSet)}
+ * looks at every pixel once and checks whether:
+ * <ul>
+ * <li>every pixel is opaque, so the alpha samples can be dropped</li>
+ * <li>every pixel is gray (red, green, and blue are equal), so {@link ColorType#GRAYSCALE} or {@link ColorType#GRAYSCALE_ALPHA} can be used</li>
+ * <li>gray samples are multiples of one of the {@link GrayscaleConverter#ALIGNMENTS}, so grayscale can use a bit depth of 1, 2, 4, or 8</li>
+ * <li>every pixel that is not opaque is the same fully transparent color, which no opaque pixel has, so a tRNS chunk can be used instead of alpha samples</li>
+ * <li>every 16-bit sample has the same high and low byte, so a bit depth of 8 can be used</li>
+ * </ul>
+ * The same pass can also collect the colors of the image for a {@link PaletteConverter}; the palette is used if it needs fewer bits per pixel.
+ * Once nothing can be reduced any more, the rest of the image is skipped.
+ * <p>
+ * Every {@link ColorFormat} can be analyzed. Scanlines are converted from the original pixels, so the pixels must not change between
+ * analyzing an image and converting it.
+ * 
+ * @author Joe Desmond
+ */
+public class ReducedConverter implements ScanlineConverter {
+	
+	private final ColorFormat format;
+	
+	private final ColorType colorType;
+	
+	private final byte bitDepth;
+	
+	/**
+	 * Gray samples are scaled to 16 bits and divided by this to get a sample of {@link #bitDepth}. Only used for {@link ColorType#GRAYSCALE}.
+	 */
+	private final int alignment;
+	
+	private final byte[] transparency;
+	
+	private ReducedConverter(final ColorFormat _format, final ColorType _colorType, final byte _bitDepth, final int _alignment, final byte[] _transparency) {
+		format = _format;
+		colorType = _colorType;
+		bitDepth = _bitDepth;
+		alignment = _alignment;
+		transparency = _transparency;
+	}
+	
+	/**
+	 * Finds the smallest lossless color type and bit depth for an image, and returns a converter that converts the image to it.
+	 * 
+	 * @param pixels pixels (in color format <code>format</code>)
+	 * @param width pixel width
+	 * @param height pixel height
+	 * @param format color format of <code>pixels</code>
+	 * @param colors set used to collect the image's colors for a palette, or null if a palette should not be used. The set is
+	 * cleared first, and belongs to the returned converter if a {@link PaletteConverter} is returned.
+	 * @return a ReducedConverter or PaletteConverter for the image
+	 */
+	public static ScanlineConverter analyze(final int[] pixels, final int width, final int height, final ColorFormat format, final IntHashSet colors) {
+		final int intsPerPixel = format.scanlineConverter().intsPerPixel();
+		final int count = width * height;
+		final boolean packed = PaletteConverter.isSupported(format);
+		final int[] sample = new int[4];
+		
+		boolean opaque = true;
+		boolean gray = true;
+		boolean eightBit = true;
+		boolean keyPossible = true;
+		boolean haveKey = false;
+		long key = 0;
+		int grayDepthIndex = 0;
+		boolean paletteFull = (colors == null) || !packed;
+		int lastPixel = 0;
+		
+		if (!paletteFull) {
+			colors.clear();
+		}
+		
+		for (int i = 0; i < count; i++) {
+			read(pixels, i * intsPerPixel, format, sample);
+			
+			final int r = sample[0];
+			final int g = sample[1];
+			final int b = sample[2];
+			final int a = sample[3];
+			final long rgb = ((long) r << 32) | ((long) g << 16) | b;
+			
+			if (a != 0xFFFF) {
+				opaque = false;
+				
+				if (keyPossible) {
+					if (a != 0) {
+						keyPossible = false;
+					} else if (!haveKey) {
+						// Every pixel before this one is opaque, and none of them can have the transparent color
+						haveKey = true;
+						key = rgb;
+						keyPossible = !hasColor(pixels, i, format, intsPerPixel, key, sample);
+					} else if (rgb != key) {
+						keyPossible = false;
+					}
+				}
+			} else if (haveKey && rgb == key) {
+				keyPossible = false;
+			}
+			
+			if (gray) {
+				if (r != g || g != b) {
+					gray = false;
+				} else {
+					while (grayDepthIndex < 4 && r % GrayscaleConverter.ALIGNMENTS[grayDepthIndex] != 0) {
+						grayDepthIndex++;
+					}
+				}
+			}
+			
+			if (eightBit && !packed) {
+				eightBit = isEightBit(r) && isEightBit(g) && isEightBit(b) && isEightBit(a);
+			}
+			
+			if (!paletteFull && (i == 0 || pixels[i] != lastPixel)) {
+				lastPixel = pixels[i];
+				paletteFull = colors.add(PaletteConverter.toARGB(lastPixel, format)) == IntHashSet.FULL || colors.size() > PaletteConverter.MAX_COLORS;
+			}
+			
+			if (!opaque && !gray && !keyPossible && !(eightBit && !packed) && paletteFull) {
+				break;
+			}
+		}
+		
+		final byte colorDepth = (byte) (eightBit ? 8 : 16);
+		final ReducedConverter reduced;
+		
+		if (gray && (opaque || keyPossible)) {
+			final int alignment = GrayscaleConverter.ALIGNMENTS[grayDepthIndex];
+			final byte[] transparency = opaque ? null : toBytes(new int[] {(int) (key & 0xFFFF) / alignment});
+			
+			reduced = new ReducedConverter(format, ColorType.GRAYSCALE, GrayscaleConverter.ALLOWED_DEPTHS[grayDepthIndex], alignment, transparency);
+		} else if (gray) {
+			reduced = new ReducedConverter(format, ColorType.GRAYSCALE_ALPHA, colorDepth, 1, null);
+		} else if (opaque || keyPossible) {
+			final int shift = eightBit ? 8 : 0;
+			final byte[] transparency = opaque ? null : toBytes(new int[] {(int) (key >>> 32) >>> shift, (int) ((key >>> 16) & 0xFFFF) >>> shift, (int) (key & 0xFFFF) >>> shift});
+			
+			reduced = new ReducedConverter(format, ColorType.RGB, colorDepth, 1, transparency);
+		} else {
+			reduced = new ReducedConverter(format, ColorType.RGB_ALPHA, colorDepth, 1, null);
+		}
+		
+		if (!paletteFull && colors.size() > 0) {
+			final PaletteConverter palette = new PaletteConverter(format, colors);
+			
+			if (palette.bitDepth() < reduced.colorType.getSamplesPerPixel() * reduced.bitDepth) {
+				return palette;
+			}
+		}
+		
+		return reduced;
+	}
+	
+	@Override
+	public ColorType colorType() {
+		return colorType;
+	}
+	
+	@Override
+	public byte bitDepth() {
+		return bitDepth;
+	}
+	
+	@Override
+	public int intsPerPixel() {
+		return format.scanlineConverter().intsPerPixel();
+	}
+	
+	@Override
+	public byte[] transparency() {
+		return transparency;
+	}
+	
+	@Override
+	public void convertLine(final int[] pixels, final int offset, final int width, final byte[] out) {
+		final int intsPerPixel = intsPerPixel();
+		final int[] sample = new int[4];
+		int outIndex = 0;
+		
+		if (colorType == ColorType.GRAYSCALE && bitDepth < 8) {
+			final BitPacker packer = new BitPacker(out, 0, bitDepth);
+			
+			for (int i = 0; i < width; i++) {
+				read(pixels, offset + i * intsPerPixel, format, sample);
+				packer.put(sample[0] / alignment);
+			}
+			
+			packer.finish();
+			return;
+		}
+		
+		for (int i = 0; i < width; i++) {
+			read(pixels, offset + i * intsPerPixel, format, sample);
+			
+			switch (colorType) {
+				case GRAYSCALE:
+					outIndex = put(sample[0], out, outIndex);
+					break;
+				case GRAYSCALE_ALPHA:
+					outIndex = put(sample[0], out, outIndex);
+					outIndex = put(sample[3], out, outIndex);
+					break;
+				case RGB:
+					outIndex = put(sample[0], out, outIndex);
+					outIndex = put(sample[1], out, outIndex);
+					outIndex = put(sample[2], out, outIndex);
+					break;
+				default:
+					outIndex = put(sample[0], out, outIndex);
+					outIndex = put(sample[1], out, outIndex);
+					outIndex = put(sample[2], out, outIndex);
+					outIndex = put(sample[3], out, outIndex);
+					break;
+			}
+		}
+	}
+	
+	/**
+	 * Writes a 16-bit sample at this converter's bit depth (8 or 16).
+	 * 
+	 * @return index in <code>out</code> after the sample
+	 */
+	private int put(final int sample, final byte[] out, final int index) {
+		if (bitDepth == 8) {
+			out[index] = (byte) (sample >>> 8);
+			return index + 1;
+		}
+		
+		out[index] = (byte) (sample >>> 8);
+		out[index + 1] = (byte) sample;
+		return index + 2;
+	}
+	
+	/**
+	 * Reads one pixel as 16-bit red, green, blue, and alpha samples. 8-bit samples are scaled to 16 bits.
+	 * 
+	 * @param pixels pixel array
+	 * @param index index in <code>pixels</code> of the first int of the pixel
+	 * @param format color format of <code>pixels</code>
+	 * @param out red, green, blue, and alpha samples
+	 */
+	private static void read(final int[] pixels, final int index, final ColorFormat format, final int[] out) {
+		switch (format) {
+			case GRAYSCALE: {
+				final int value = pixels[index] & 0xFFFF;
+				
+				out[0] = value;
+				out[1] = value;
+				out[2] = value;
+				out[3] = 0xFFFF;
+				return;
+			}
+			case RGB_16:
+				out[0] = pixels[index] & 0xFFFF;
+				out[1] = pixels[index + 1] & 0xFFFF;
+				out[2] = pixels[index + 2] & 0xFFFF;
+				out[3] = 0xFFFF;
+				return;
+			case ARGB_16:
+				out[3] = pixels[index] & 0xFFFF;
+				out[0] = pixels[index + 1] & 0xFFFF;
+				out[1] = pixels[index + 2] & 0xFFFF;
+				out[2] = pixels[index + 3] & 0xFFFF;
+				return;
+			case RGBA_16:
+				out[0] = pixels[index] & 0xFFFF;
+				out[1] = pixels[index + 1] & 0xFFFF;
+				out[2] = pixels[index + 2] & 0xFFFF;
+				out[3] = pixels[index + 3] & 0xFFFF;
+				return;
+			default: {
+				final int argb = PaletteConverter.toARGB(pixels[index], format);
+				
+				out[0] = ((argb >>> 16) & 0xFF) * 257;
+				out[1] = ((argb >>> 8) & 0xFF) * 257;
+				out[2] = (argb & 0xFF) * 257;
+				out[3] = (argb >>> 24) * 257;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if any of the first <code>count</code> pixels has the given 48-bit RGB color.
+	 */
+	private static boolean hasColor(final int[] pixels, final int count, final ColorFormat format, final int intsPerPixel, final long rgb, final int[] sample) {
+		for (int i = 0; i < count; i++) {
+			read(pixels, i * intsPerPixel, format, sample);
+			
+			if ((((long) sample[0] << 32) | ((long) sample[1] << 16) | sample[2]) == rgb) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns true if a 16-bit sample has the same high and low byte, so it can be written with 8 bits.
+	 */
+	private static boolean isEightBit(final int sample) {
+		return (sample >>> 8) == (sample & 0xFF);
+	}
+	
+	/**
+	 * Converts tRNS samples to 2-byte big-endian values.
+	 */
+	private static byte[] toBytes(final int[] samples) {
+		final byte[] out = new byte[samples.length * 2];
+		
+		for (int i = 0; i < samples.length; i++) {
+			out[i * 2] = (byte) (samples[i] >>> 8);
+			out[i * 2 + 1] = (byte) samples[i];
+		}
+		
+		return out;
+	}
+}
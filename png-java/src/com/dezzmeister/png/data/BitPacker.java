@@ -0,0 +1,197 @@
+package com.dezzmeister.png.data;
+
+/**
+ * Packs samples of a fixed bit depth into bytes, starting with the most significant bits of each byte, as PNG scanlines
+ * with bit depths of less than 8 require. Samples are shifted into a 64-bit register and only written out once the register
+ * is full, so packing does not read or write the output one sample at a time and does not allocate anything.
+ * <p>
+ * A BitPacker can be used one sample at a time with {@link #put(int)} and {@link #finish()}, or a whole row of samples can be
+ * packed at once with {@link #pack(int[], int, int, int, byte[], int)}, which has faster paths for bit depths of 1, 2, and 4.
+ * <p>
+ * Unlike {@link ByteBitSet}, a BitPacker only appends bits and overwrites the output instead of combining bits with it,
+ * so the output does not have to be cleared first.
+ * 
+ * @author Joe Desmond
+ */
+public final class BitPacker {
+	
+	private final byte[] out;
+	
+	private final int bitDepth;
+	
+	/**
+	 * Index in {@link #out} of the next byte to write
+	 */
+	private int index;
+	
+	/**
+	 * Bits that have not been written yet, in the least significant {@link #bitCount} bits
+	 */
+	private long bits = 0;
+	
+	private int bitCount = 0;
+	
+	/**
+	 * Creates a BitPacker that writes samples of the given bit depth to <code>_out</code>, starting at <code>offset</code>.
+	 * 
+	 * @param _out output array
+	 * @param offset index of the first byte to write
+	 * @param _bitDepth bits per sample (1 to 32)
+	 */
+	public BitPacker(final byte[] _out, final int offset, final int _bitDepth) {
+		if (_bitDepth < 1 || _bitDepth > 32) {
+			throw new IllegalArgumentException("Invalid bit depth: " + _bitDepth);
+		}
+		
+		out = _out;
+		index = offset;
+		bitDepth = _bitDepth;
+	}
+	
+	/**
+	 * Appends a sample. Only the least significant bits of the sample (as many as the bit depth) are used.
+	 * 
+	 * @param sample sample to append
+	 */
+	public void put(final int sample) {
+		if (bitCount + bitDepth > 64) {
+			flush();
+		}
+		
+		bits = (bits << bitDepth) | (sample & (0xFFFFFFFFL >>> (32 - bitDepth)));
+		bitCount += bitDepth;
+	}
+	
+	/**
+	 * Writes any bits that are left, padding the last byte with zeros.
+	 * 
+	 * @return index in the output array after the last byte that was written
+	 */
+	public int finish() {
+		flush();
+		
+		if (bitCount != 0) {
+			out[index++] = (byte) (bits << (8 - bitCount));
+			bits = 0;
+			bitCount = 0;
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * Writes every whole byte in the register.
+	 */
+	private void flush() {
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			out[index++] = (byte) (bits >>> bitCount);
+		}
+	}
+	
+	/**
+	 * Packs <code>count</code> samples into bytes. The last byte is padded with zeros if the samples do not fill it. Bit depths of 1, 2, and 4
+	 * pack 8, 4, and 2 samples into each byte without a register, and bit depths of 8 and 16 copy each sample into 1 or 2 bytes; any other
+	 * bit depth uses a {@link BitPacker}.
+	 * 
+	 * @param samples samples to pack; each must fit in <code>bitDepth</code> bits
+	 * @param offset index of the first sample
+	 * @param count number of samples
+	 * @param bitDepth bits per sample (1 to 32)
+	 * @param out output array
+	 * @param outOffset index of the first byte to write
+	 * @return number of bytes written
+	 */
+	public static int pack(final int[] samples, final int offset, final int count, final int bitDepth, final byte[] out, final int outOffset) {
+		switch (bitDepth) {
+			case 1:
+				return pack1(samples, offset, count, out, outOffset);
+			case 2:
+				return pack2(samples, offset, count, out, outOffset);
+			case 4:
+				return pack4(samples, offset, count, out, outOffset);
+			case 8:
+				for (int i = 0; i < count; i++) {
+					out[outOffset + i] = (byte) samples[offset + i];
+				}
+				
+				return count;
+			case 16:
+				for (int i = 0; i < count; i++) {
+					final int sample = samples[offset + i];
+					
+					out[outOffset + 2 * i] = (byte) (sample >>> 8);
+					out[outOffset + 2 * i + 1] = (byte) sample;
+				}
+				
+				return count * 2;
+			default: {
+				final BitPacker packer = new BitPacker(out, outOffset, bitDepth);
+				
+				for (int i = 0; i < count; i++) {
+					packer.put(samples[offset + i]);
+				}
+				
+				return packer.finish() - outOffset;
+			}
+		}
+	}
+	
+	private static int pack1(final int[] samples, final int offset, final int count, final byte[] out, final int outOffset) {
+		final int whole = count >>> 3;
+		
+		for (int i = 0; i < whole; i++) {
+			final int s = offset + (i << 3);
+			
+			out[outOffset + i] = (byte) (((samples[s] & 1) << 7) | ((samples[s + 1] & 1) << 6) | ((samples[s + 2] & 1) << 5) | ((samples[s + 3] & 1) << 4)
+					| ((samples[s + 4] & 1) << 3) | ((samples[s + 5] & 1) << 2) | ((samples[s + 6] & 1) << 1) | (samples[s + 7] & 1));
+		}
+		
+		return whole + packTail(samples, offset + (whole << 3), count & 7, 1, out, outOffset + whole);
+	}
+	
+	private static int pack2(final int[] samples, final int offset, final int count, final byte[] out, final int outOffset) {
+		final int whole = count >>> 2;
+		
+		for (int i = 0; i < whole; i++) {
+			final int s = offset + (i << 2);
+			
+			out[outOffset + i] = (byte) (((samples[s] & 3) << 6) | ((samples[s + 1] & 3) << 4) | ((samples[s + 2] & 3) << 2) | (samples[s + 3] & 3));
+		}
+		
+		return whole + packTail(samples, offset + (whole << 2), count & 3, 2, out, outOffset + whole);
+	}
+	
+	private static int pack4(final int[] samples, final int offset, final int count, final byte[] out, final int outOffset) {
+		final int whole = count >>> 1;
+		
+		for (int i = 0; i < whole; i++) {
+			final int s = offset + (i << 1);
+			
+			out[outOffset + i] = (byte) (((samples[s] & 15) << 4) | (samples[s + 1] & 15));
+		}
+		
+		return whole + packTail(samples, offset + (whole << 1), count & 1, 4, out, outOffset + whole);
+	}
+	
+	/**
+	 * Packs the samples that do not fill a whole byte into one byte, padded with zeros.
+	 * 
+	 * @return number of bytes written (0 or 1)
+	 */
+	private static int packTail(final int[] samples, final int offset, final int count, final int bitDepth, final byte[] out, final int outOffset) {
+		if (count == 0) {
+			return 0;
+		}
+		
+		final int mask = (1 << bitDepth) - 1;
+		int bits = 0;
+		
+		for (int i = 0; i < count; i++) {
+			bits = (bits << bitDepth) | (samples[offset + i] & mask);
+		}
+		
+		out[outOffset] = (byte) (bits << (8 - count * bitDepth));
+		return 1;
+	}
+}
@@ -10,7 +10,7 @@ package com.dezzmeister.png.data;
  * </ul>
  * 
  * This class is well suited for PNG encoding; which requires color samples to be packed into bitstreams
- * regardless of byte boundaries.
+ * regardless of byte boundaries. To pack a row of samples that all have the same bit depth, {@link BitPacker} is faster.
  * 
  * @author Joe Desmond
  */
@@ -69,78 +69,25 @@ public class ByteBitSet {
 		final int byteIndex = (int)(bitIndex >>> 3); // Divide by 8
 		final int localBitIndex = (int)(bitIndex & 0x7); // Find the remainder
 		final int masked = value & BITMASKS[numBits];
+		final int endBit = localBitIndex + numBits;
 		
-		if (numBits <= (8 - localBitIndex)) {
-			array[byteIndex] |= (masked << (8 - numBits - localBitIndex));
+		if (endBit <= 8) {
+			array[byteIndex] |= (masked << (8 - endBit));
 		} else {
-			int valueByteIndex = numBits >>> 3;
-			final int valueExtraBits = numBits - (valueByteIndex << 3);
-			final int availableSpace = 8 - localBitIndex;
-			final long shifted;
+			// The bits span at most 5 bytes, so they can be lined up with the byte boundaries in a long and written
+			// one byte at a time, starting with the last byte
+			final int byteCount = (endBit + 7) >>> 3;
+			long shifted = (masked & 0xFFFFFFFFL) << ((byteCount << 3) - endBit);
 			
-			if (valueExtraBits < availableSpace) {
-				shifted = ((long) masked) << (availableSpace - valueExtraBits - 8);
-				valueByteIndex--;
-			} else if (valueExtraBits > availableSpace) {
-				shifted = (((long) masked) << 8) >>> (valueExtraBits - availableSpace);
-				valueByteIndex++;
-			} else {
-				shifted = masked;
+			for (int i = byteIndex + byteCount - 1; i >= byteIndex; i--) {
+				array[i] |= (byte) shifted;
+				shifted >>>= 8;
 			}
-			
-			putLong(byteIndex, shifted, valueByteIndex);
 		}
 		
 		return bitIndex + numBits;
 	}
 	
-	/**
-	 * Inserts the given long into the bitset. This method is used internally by {@link #put(long, int, int)},
-	 * which aligns the bits in the long with the previous bits in the bitset. <code>valueStartByte</code>
-	 * identifies the first byte in the long that contains nonzero bits (indexed from LSB) to prevent unnecessary
-	 * bitwise or operations.
-	 * 
-	 * @param byteIndex byte index to backing array (<code>value</code> is inserted here)
-	 * @param value bits to insert
-	 * @param valueStartByte first byte in <code>value</code> containing nonzero bits
-	 */
-	private void putLong(final int byteIndex, final long value, final int valueStartByte) {
-		final byte[] bytes = longToBytes(value);
-		int arrayIndex = byteIndex;
-		int startIndex = 7 - valueStartByte;
-		
-		for (int i = startIndex; i < 8; i++) {
-			array[arrayIndex] |= bytes[i];
-			arrayIndex++;
-		}
-		
-		for (int i = 0; i < 8; i++) {
-			
-		}
-	}
-	
-	/**
-	 * Breaks a long into an array of 8 bytes. The first byte in the array is the
-	 * MSB (most significant byte).
-	 * 
-	 * @param l long to break into bytes
-	 * @return 8 byte array
-	 */
-	private byte[] longToBytes(final long l) {
-		final byte[] out = new byte[8];
-		
-		out[0] = (byte)((l & 0xFF00000000000000L) >>> 56);
-		out[1] = (byte)((l & 0xFF000000000000L) >>> 48);
-		out[2] = (byte)((l & 0xFF0000000000L) >>> 40);
-		out[3] = (byte)((l & 0xFF00000000L) >>> 32);
-		out[4] = (byte)((l & 0xFF000000L) >>> 24);
-		out[5] = (byte)((l & 0xFF0000L) >>> 16);
-		out[6] = (byte)((l & 0xFF00L) >>> 8);
-		out[7] = (byte) (l & 0xFF);
-		
-		return out;
-	}
-	
 	/**
 	 * Generates a bitmask with the given length. The mask will contain <code>numBits</code> ones
 	 * starting from the least significant bit. 
@@ -0,0 +1,203 @@
+package com.dezzmeister.png.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed-size direct buffers used to write encoded PNGs to channels. When a heap buffer is written to a channel, the JDK
+ * copies it into a temporary direct buffer as large as the heap buffer, and only buffers below a small size are cached; writing a
+ * whole PNG that way allocates native memory the size of the file. Writing through a few pooled direct buffers instead copies the
+ * PNG in pieces of a fixed size, and several pieces are written with one gathering write when the channel supports it.
+ * <p>
+ * A DirectBufferPool is thread safe. Buffers that are released when the pool is full are left to the garbage collector.
+ * 
+ * @author Joe Desmond
+ */
+public final class DirectBufferPool {
+	
+	/**
+	 * Size of the buffers in the {@link #shared() shared pool}
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Number of buffers filled before each gathering write
+	 */
+	private static final int GATHER_COUNT = 4;
+	
+	private static final DirectBufferPool SHARED = new DirectBufferPool(DEFAULT_BUFFER_SIZE, 4 * GATHER_COUNT);
+	
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	
+	/**
+	 * Number of buffers in {@link #buffers}
+	 */
+	private final AtomicInteger pooled = new AtomicInteger();
+	
+	private final int bufferSize;
+	
+	private final int maxPooled;
+	
+	/**
+	 * Creates a pool of direct buffers.
+	 * 
+	 * @param _bufferSize size of each buffer in bytes
+	 * @param _maxPooled largest number of idle buffers kept in the pool
+	 */
+	public DirectBufferPool(final int _bufferSize, final int _maxPooled) {
+		if (_bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive: " + _bufferSize);
+		}
+		
+		if (_maxPooled < 0) {
+			throw new IllegalArgumentException("Pool size cannot be negative: " + _maxPooled);
+		}
+		
+		bufferSize = _bufferSize;
+		maxPooled = _maxPooled;
+	}
+	
+	/**
+	 * Returns a pool that is shared by every encoder, with buffers of {@link #DEFAULT_BUFFER_SIZE} bytes.
+	 * 
+	 * @return shared pool
+	 */
+	public static DirectBufferPool shared() {
+		return SHARED;
+	}
+	
+	/**
+	 * Takes a cleared buffer from the pool, or allocates one if the pool is empty.
+	 * 
+	 * @return a direct buffer of {@link #getBufferSize()} bytes
+	 */
+	public ByteBuffer acquire() {
+		final ByteBuffer buffer = buffers.poll();
+		
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+	
+	/**
+	 * Returns a buffer to the pool. The buffer must not be used afterwards.
+	 * 
+	 * @param buffer buffer from {@link #acquire()}
+	 */
+	public void release(final ByteBuffer buffer) {
+		if (pooled.incrementAndGet() <= maxPooled) {
+			buffers.offer(buffer);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Writes the remaining bytes of every source buffer to a channel, in order. The sources are copied into pooled direct buffers,
+	 * which are written with gathering writes if the channel is a {@link GatheringByteChannel}. The sources' positions are moved
+	 * to their limits.
+	 * 
+	 * @param channel channel to write to
+	 * @param sources buffers to write (usually heap buffers wrapping encoded chunks)
+	 * @return number of bytes written
+	 * @throws IOException if there is a problem writing to the channel
+	 */
+	public long write(final WritableByteChannel channel, final ByteBuffer ... sources) throws IOException {
+		final ByteBuffer[] gather = new ByteBuffer[GATHER_COUNT];
+		long written = 0;
+		int source = 0;
+		
+		try {
+			for (int i = 0; i < gather.length; i++) {
+				gather[i] = acquire();
+			}
+			
+			while (source < sources.length) {
+				int filled = 0;
+				
+				while (filled < gather.length && source < sources.length) {
+					final ByteBuffer dst = gather[filled];
+					
+					dst.clear();
+					
+					while (dst.hasRemaining() && source < sources.length) {
+						if (copy(sources[source], dst)) {
+							source++;
+						}
+					}
+					
+					dst.flip();
+					filled++;
+				}
+				
+				written += writeFully(channel, gather, filled);
+			}
+		} finally {
+			for (final ByteBuffer buffer : gather) {
+				if (buffer != null) {
+					release(buffer);
+				}
+			}
+		}
+		
+		return written;
+	}
+	
+	/**
+	 * Copies as much of <code>src</code> as fits into <code>dst</code>.
+	 * 
+	 * @return true if all of <code>src</code> has been copied
+	 */
+	private static boolean copy(final ByteBuffer src, final ByteBuffer dst) {
+		final int length = Math.min(src.remaining(), dst.remaining());
+		final int limit = src.limit();
+		
+		src.limit(src.position() + length);
+		dst.put(src);
+		src.limit(limit);
+		
+		return !src.hasRemaining();
+	}
+	
+	private static long writeFully(final WritableByteChannel channel, final ByteBuffer[] buffers, final int count) throws IOException {
+		long written = 0;
+		
+		if (channel instanceof GatheringByteChannel) {
+			final GatheringByteChannel gathering = (GatheringByteChannel) channel;
+			long length = 0;
+			
+			for (int i = 0; i < count; i++) {
+				length += buffers[i].remaining();
+			}
+			
+			while (written < length) {
+				written += gathering.write(buffers, 0, count);
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				while (buffers[i].hasRemaining()) {
+					written += channel.write(buffers[i]);
+				}
+			}
+		}
+		
+		return written;
+	}
+	
+	/**
+	 * Returns the size of each buffer in this pool.
+	 * 
+	 * @return buffer size in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+}
@@ -0,0 +1,159 @@
+package com.dezzmeister.png.data;
+
+/**
+ * A set of ints with a fixed maximum size, using open addressing with linear probing. Ints are stored as primitives, so nothing is
+ * allocated when ints are added or looked up. Each int is given an index when it is added: the first int added has index 0, the second
+ * has index 1, and so on. This makes the set useful for building color palettes, where each distinct color needs a palette index.
+ * <p>
+ * Ints cannot be removed, but the whole set can be {@link #clear() cleared} and reused.
+ * 
+ * @author Joe Desmond
+ */
+public class IntHashSet {
+	
+	/**
+	 * Returned by {@link #add(int)} when the set is full
+	 */
+	public static final int FULL = -1;
+	
+	/**
+	 * Returned by {@link #indexOf(int)} when the int is not in the set
+	 */
+	public static final int NOT_FOUND = -1;
+	
+	private final int maxSize;
+	
+	/**
+	 * Hash table of ints
+	 */
+	private final int[] keys;
+	
+	/**
+	 * Index of each int in {@link #keys}, plus one. 0 marks an empty slot (so that 0 can be stored in the set).
+	 */
+	private final int[] slots;
+	
+	/**
+	 * Ints in the order they were added
+	 */
+	private final int[] elements;
+	
+	/**
+	 * Mask that maps a hash to a slot
+	 */
+	private final int mask;
+	
+	private int size = 0;
+	
+	/**
+	 * Creates a set that can hold up to <code>_maxSize</code> ints.
+	 * 
+	 * @param _maxSize maximum number of ints in the set
+	 */
+	public IntHashSet(final int _maxSize) {
+		if (_maxSize <= 0 || _maxSize > (1 << 28)) {
+			throw new IllegalArgumentException("Invalid maximum size: " + _maxSize);
+		}
+		
+		maxSize = _maxSize;
+		
+		// Keep the table at most half full, so that probe sequences stay short
+		final int capacity = Integer.highestOneBit(_maxSize * 2 - 1) << 1;
+		
+		keys = new int[capacity];
+		slots = new int[capacity];
+		elements = new int[_maxSize];
+		mask = capacity - 1;
+	}
+	
+	/**
+	 * Adds an int to the set, if it is not already in the set.
+	 * 
+	 * @param key int to add
+	 * @return index of <code>key</code> in the set, or {@link #FULL} if <code>key</code> is not in the set and the set is full
+	 */
+	public int add(final int key) {
+		int slot = hash(key) & mask;
+		
+		while (slots[slot] != 0) {
+			if (keys[slot] == key) {
+				return slots[slot] - 1;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		if (size == maxSize) {
+			return FULL;
+		}
+		
+		keys[slot] = key;
+		slots[slot] = size + 1;
+		elements[size] = key;
+		
+		return size++;
+	}
+	
+	/**
+	 * Returns the index of an int in the set.
+	 * 
+	 * @param key int to look for
+	 * @return index of <code>key</code>, or {@link #NOT_FOUND} if <code>key</code> is not in the set
+	 */
+	public int indexOf(final int key) {
+		int slot = hash(key) & mask;
+		
+		while (slots[slot] != 0) {
+			if (keys[slot] == key) {
+				return slots[slot] - 1;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return NOT_FOUND;
+	}
+	
+	/**
+	 * Returns the int with the given index.
+	 * 
+	 * @param index index of the int, between 0 and <code>size() - 1</code>
+	 * @return the int with the given index
+	 */
+	public int get(final int index) {
+		if (index < 0 || index >= size) {
+			throw new IllegalArgumentException("Index out of range: " + index);
+		}
+		
+		return elements[index];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Removes every int from the set.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			int slot = hash(elements[i]) & mask;
+			
+			while (slots[slot] != 0) {
+				slots[slot] = 0;
+				slot = (slot + 1) & mask;
+			}
+		}
+		
+		size = 0;
+	}
+	
+	/**
+	 * Spreads the bits of an int, so that colors that differ only in their low bits don't all land in neighboring slots.
+	 */
+	private static int hash(final int key) {
+		final int h = key * 0x9E3779B9;
+		
+		return h ^ (h >>> 16);
+	}
+}
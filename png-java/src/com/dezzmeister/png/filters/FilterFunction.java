@@ -4,6 +4,10 @@ package com.dezzmeister.png.filters;
  * A PNG filtering function. Specifies two functions: one to apply the filter, and another to remove it.
  * Filters are applied to individual scanlines instead of the entire image at once, so that different filters can be
  * applied to each line.
+ * <p>
+ * Each function comes in two forms: one that returns a new array, and one that writes into an array supplied by the
+ * caller. The second form does not allocate anything, so it should be used when many lines are filtered with the same
+ * scratch buffers.
  * 
  * @author Joe Desmond
  */
@@ -19,7 +23,25 @@ public interface FilterFunction {
 	 * @param bytesPerPixel number of bytes in one pixel, rounded up to 1 if fractional
 	 * @return filtered scanline
 	 */
-	byte[] applyFilter(byte[] prevLine, byte[] thisLine, int bytesPerPixel);
+	default byte[] applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
+		final byte[] out = new byte[thisLine.length];
+		applyFilter(prevLine, thisLine, bytesPerPixel, out, 0);
+		
+		return out;
+	}
+	
+	/**
+	 * Applies a filter to <code>thisLine</code> and writes the filtered line to <code>out</code>, starting at
+	 * <code>outOffset</code>. <code>thisLine.length</code> bytes are written. <code>out</code> must not be the same array as
+	 * <code>thisLine</code> or <code>prevLine</code>.
+	 * 
+	 * @param prevLine previous scanline (unfiltered), or null
+	 * @param thisLine scanline being filtered
+	 * @param bytesPerPixel number of bytes in one pixel, rounded up to 1 if fractional
+	 * @param out destination array
+	 * @param outOffset index in <code>out</code> of the first filtered byte
+	 */
+	void applyFilter(byte[] prevLine, byte[] thisLine, int bytesPerPixel, byte[] out, int outOffset);
 	
 	/**
 	 * Removes a filter from <code>thisLine</code> and returns the unfiltered line. <code>prevLine</code>
@@ -31,5 +53,24 @@ public interface FilterFunction {
 	 * @param bytesPerPixel number of bytes in one pixel, rounded up to 1 if fractional
 	 * @return unfiltered scanline
 	 */
-	byte[] removeFilter(byte[] prevLine, byte[] thisLine, int bytesPerPixel);
+	default byte[] removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
+		final byte[] out = new byte[thisLine.length];
+		removeFilter(prevLine, thisLine, bytesPerPixel, out, 0);
+		
+		return out;
+	}
+	
+	/**
+	 * Removes a filter from <code>thisLine</code> and writes the unfiltered line to <code>out</code>, starting at
+	 * <code>outOffset</code>. <code>thisLine.length</code> bytes are written. Each byte of <code>thisLine</code> is read
+	 * before the same byte of <code>out</code> is written, so a filter can be removed in place by passing the same array
+	 * for both (with an offset of 0).
+	 * 
+	 * @param prevLine previous <b>DECODED</b> (unfiltered) scanline, or null
+	 * @param thisLine scanline with filter being removed
+	 * @param bytesPerPixel number of bytes in one pixel, rounded up to 1 if fractional
+	 * @param out destination array
+	 * @param outOffset index in <code>out</code> of the first unfiltered byte
+	 */
+	void removeFilter(byte[] prevLine, byte[] thisLine, int bytesPerPixel, byte[] out, int outOffset);
 }
@@ -0,0 +1,33 @@
+package com.dezzmeister.png.filters;
+
+/**
+ * A heuristic that picks the filter for each scanline when {@link Filter#DYNAMIC} filtering is used. The PNG standard
+ * does not say how filters should be chosen; different heuristics trade encoding speed for compression ratio.
+ * <p>
+ * A strategy may keep state between lines (such as scratch buffers or the previous line's choice), so a strategy
+ * instance should only be used to filter the lines of one image, in order, on one thread. {@link Heuristic} creates new instances
+ * of the built-in strategies.
+ * 
+ * @author Joe Desmond
+ * @see Heuristic
+ */
+public interface FilterStrategy {
+	
+	/**
+	 * Picks a filter for <code>thisLine</code>. The returned filter must be one of the five standard filters
+	 * (not {@link Filter#DYNAMIC}).
+	 * 
+	 * @param prevLine previous scanline (unfiltered), or null if <code>thisLine</code> is the first scanline
+	 * @param thisLine scanline being filtered
+	 * @param bytesPerPixel number of bytes in one pixel, rounded up to 1 if fractional
+	 * @return the filter to use for <code>thisLine</code>
+	 */
+	Filter select(byte[] prevLine, byte[] thisLine, int bytesPerPixel);
+	
+	/**
+	 * Releases any native resources held by this strategy. The strategy should not be used afterwards.
+	 */
+	default void end() {
+	
+	}
+}
@@ -0,0 +1,67 @@
+package com.dezzmeister.png.filters;
+
+import java.util.function.Supplier;
+
+import com.dezzmeister.png.filters.strategies.AdaptiveStrategy;
+import com.dezzmeister.png.filters.strategies.EntropyStrategy;
+import com.dezzmeister.png.filters.strategies.MinimumSumStrategy;
+import com.dezzmeister.png.filters.strategies.TryCompressStrategy;
+
+/**
+ * The built-in {@link FilterStrategy filter selection strategies}, from fastest to slowest:
+ * {@link #ADAPTIVE}, {@link #MINIMUM_SUM}, {@link #ENTROPY}, {@link #TRY_COMPRESS}. The slower strategies usually
+ * produce smaller PNGs.
+ * 
+ * @author Joe Desmond
+ */
+public enum Heuristic {
+	
+	/**
+	 * The minimum sum of absolute differences heuristic recommended by the PNG specification. Each byte of a filtered
+	 * line is treated as a signed value, and the filter with the smallest sum of absolute values is chosen.
+	 * 
+	 * @see MinimumSumStrategy
+	 */
+	MINIMUM_SUM(MinimumSumStrategy::new),
+	
+	/**
+	 * Picks the filter whose output has the lowest Shannon entropy (estimated from a histogram of the filtered bytes).
+	 * 
+	 * @see EntropyStrategy
+	 */
+	ENTROPY(EntropyStrategy::new),
+	
+	/**
+	 * Compresses each filtered line with a fast deflate level and picks the filter with the smallest output.
+	 * 
+	 * @see TryCompressStrategy
+	 */
+	TRY_COMPRESS(TryCompressStrategy::new),
+	
+	/**
+	 * Reuses the previous line's filter unless it does noticeably worse on this line than it did when it was chosen,
+	 * in which case the minimum sum heuristic is used to pick a new filter.
+	 * 
+	 * @see AdaptiveStrategy
+	 */
+	ADAPTIVE(AdaptiveStrategy::new);
+	
+	/**
+	 * Creates new instances of the strategy
+	 */
+	private final Supplier<FilterStrategy> factory;
+	
+	private Heuristic(final Supplier<FilterStrategy> _factory) {
+		factory = _factory;
+	}
+	
+	/**
+	 * Creates a new instance of this strategy. Strategies can keep state between lines, so each image (and each thread
+	 * filtering part of an image) needs its own instance.
+	 * 
+	 * @return new filter strategy
+	 */
+	public FilterStrategy newStrategy() {
+		return factory.get();
+	}
+}
@@ -0,0 +1,89 @@
+package com.dezzmeister.png.filters;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+
+/**
+ * Filters the scanlines of one image. Filtering a line does not allocate anything. When the filter is {@link Filter#DYNAMIC},
+ * a {@link FilterStrategy} picks the filter for each line and only the winning filter is applied. A LineFilter is not thread safe;
+ * each thread filtering lines of an image needs its own instance.
+ * 
+ * @author Joe Desmond
+ */
+public class LineFilter {
+	
+	private final Filter filter;
+	
+	private final int bytesPerPixel;
+	
+	/**
+	 * True if every line should use the None filter. See {@link #filter(byte[], byte[], byte[], int)}.
+	 */
+	private final boolean alwaysNone;
+	
+	/**
+	 * Picks filters when {@link #filter} is {@link Filter#DYNAMIC}
+	 */
+	private final FilterStrategy strategy;
+	
+	/**
+	 * Creates a LineFilter that uses the given strategy to pick filters when <code>_filter</code> is {@link Filter#DYNAMIC}.
+	 * The strategy should not be shared with any other LineFilter.
+	 * 
+	 * @param colorType color type of the image
+	 * @param bitDepth bit depth of the image
+	 * @param _filter filter to use for every line, or {@link Filter#DYNAMIC}
+	 * @param _strategy picks the filter for each line if <code>_filter</code> is dynamic
+	 */
+	public LineFilter(final ColorType colorType, final byte bitDepth, final Filter _filter, final FilterStrategy _strategy) {
+		filter = _filter;
+		strategy = _strategy;
+		bytesPerPixel = colorType.getBytesPerPixel(bitDepth);
+		alwaysNone = (colorType == ColorType.PALETTE) || (colorType == ColorType.GRAYSCALE && bitDepth < 8);
+	}
+	
+	/**
+	 * Filters the given scanline. If a specific filter is specified, it will be used here. Otherwise,
+	 * if the filter is dynamic, the filter is chosen by this LineFilter's {@link FilterStrategy}.
+	 * The filter type code is written to <code>out[outOffset]</code>, followed by the filtered line.
+	 * 
+	 * @param prevLine previous scanline, or null if <code>line</code> is the first scanline
+	 * @param line current scanline
+	 * @param out destination array; must have room for <code>line.length + 1</code> bytes after <code>outOffset</code>
+	 * @param outOffset index of the filter type code in <code>out</code>
+	 * @return the filter that was used
+	 */
+	public Filter filter(final byte[] prevLine, final byte[] line, final byte[] out, final int outOffset) {
+		if (filter != Filter.DYNAMIC) {
+			out[outOffset] = filter.typeCode;
+			filter.filterFunction().applyFilter(prevLine, line, bytesPerPixel, out, outOffset + 1);
+			
+			return filter;
+		}
+		
+		if (alwaysNone) {
+			// Default to NONE for palette images and grayscale images with bit depth less than 8. To see the rationale
+			// for this, visit http://www.libpng.org/pub/png/book/chapter09.html
+			
+			out[outOffset] = Filter.NONE.typeCode;
+			System.arraycopy(line, 0, out, outOffset + 1, line.length);
+			
+			return Filter.NONE;
+		}
+		
+		// We need to pick the best filter
+		
+		final Filter best = strategy.select(prevLine, line, bytesPerPixel);
+		
+		out[outOffset] = best.typeCode;
+		best.filterFunction().applyFilter(prevLine, line, bytesPerPixel, out, outOffset + 1);
+		
+		return best;
+	}
+	
+	/**
+	 * Releases any resources held by this LineFilter's {@link FilterStrategy}. The LineFilter should not be used afterwards.
+	 */
+	public void end() {
+		strategy.end();
+	}
+}
@@ -10,57 +10,49 @@ import com.dezzmeister.png.filters.FilterFunction;
 public class AverageFilter implements FilterFunction {
 
 	@Override
-	public byte[] applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
-		final byte[] out = new byte[thisLine.length];
+	public void applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
+		final int first = Math.min(bytesPerPixel, thisLine.length);
 		
-		for (int i = 0; i < thisLine.length; i++) {
-			final int leftIndex = i - bytesPerPixel;
-			final byte left;
-			final byte up;
+		// The first pixel and the first line are handled in their own loops, so that the loops over the rest of the line have no
+		// branches and can be vectorized by the JIT
+		if (prevLine == null) {
+			System.arraycopy(thisLine, 0, out, outOffset, first);
 			
-			if (leftIndex < 0) {
-				left = 0;
-			} else {
-				left = thisLine[leftIndex];
+			for (int i = first; i < thisLine.length; i++) {
+				out[outOffset + i] = (byte) (thisLine[i] - ((thisLine[i - bytesPerPixel] & 0xFF) >>> 1));
 			}
-			
-			if (prevLine == null) {
-				up = 0;
-			} else {
-				up = prevLine[i];
+		} else {
+			for (int i = 0; i < first; i++) {
+				out[outOffset + i] = (byte) (thisLine[i] - ((prevLine[i] & 0xFF) >>> 1));
 			}
 			
-			out[i] = (byte) (thisLine[i] - ((left + up) >>> 1));
+			for (int i = first; i < thisLine.length; i++) {
+				out[outOffset + i] = (byte) (thisLine[i] - (((thisLine[i - bytesPerPixel] & 0xFF) + (prevLine[i] & 0xFF)) >>> 1));
+			}
 		}
-		
-		return out;
 	}
 
 	@Override
-	public byte[] removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
-		final byte[] out = new byte[thisLine.length];
+	public void removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
+		final int first = Math.min(bytesPerPixel, thisLine.length);
 		
-		for (int i = 0; i < thisLine.length; i++) {
-			final int leftIndex = i - bytesPerPixel;
-			final byte left;
-			final byte up;
-			
-			if (leftIndex < 0) {
-				left = 0;
-			} else {
-				left = out[leftIndex];
+		if (prevLine == null) {
+			if (thisLine != out || outOffset != 0) {
+				System.arraycopy(thisLine, 0, out, outOffset, first);
 			}
 			
-			if (prevLine == null) {
-				up = 0;
-			} else {
-				up = prevLine[i];
+			for (int i = first; i < thisLine.length; i++) {
+				out[outOffset + i] = (byte) (thisLine[i] + ((out[outOffset + i - bytesPerPixel] & 0xFF) >>> 1));
+			}
+		} else {
+			for (int i = 0; i < first; i++) {
+				out[outOffset + i] = (byte) (thisLine[i] + ((prevLine[i] & 0xFF) >>> 1));
 			}
 			
-			out[i] = (byte) (thisLine[i] + ((left + up) >>> 1));
+			for (int i = first; i < thisLine.length; i++) {
+				out[outOffset + i] = (byte) (thisLine[i] + (((out[outOffset + i - bytesPerPixel] & 0xFF) + (prevLine[i] & 0xFF)) >>> 1));
+			}
 		}
-		
-		return out;
 	}
 
 }
@@ -15,11 +15,23 @@ public class NoneFilter implements FilterFunction {
 		
 		return thisLine;
 	}
+	
+	@Override
+	public void applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
+		System.arraycopy(thisLine, 0, out, outOffset, thisLine.length);
+	}
 
 	@Override
 	public byte[] removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
 		
 		return thisLine;
 	}
+	
+	@Override
+	public void removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
+		if (thisLine != out || outOffset != 0) {
+			System.arraycopy(thisLine, 0, out, outOffset, thisLine.length);
+		}
+	}
 
 }
@@ -10,91 +10,88 @@ import com.dezzmeister.png.filters.FilterFunction;
 public class PaethFilter implements FilterFunction {
 
 	@Override
-	public byte[] applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
-		final byte[] out = new byte[thisLine.length];
+	public void applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
+		final int first = Math.min(bytesPerPixel, thisLine.length);
 		
-		for (int i = 0; i < thisLine.length; i++) {
-			final int leftIndex = i - bytesPerPixel;
-			final byte left;
-			final byte up;
-			final byte upperLeft;
+		// Without a previous line, the predictor is always the left byte (the same as the Sub filter). In the first pixel,
+		// there is no left byte, so the predictor is the upper byte (the same as the Up filter). The rest of the line
+		// can then be filtered without checking for missing neighbors.
+		if (prevLine == null) {
+			System.arraycopy(thisLine, 0, out, outOffset, first);
 			
-			if (leftIndex < 0) {
-				left = 0;
-			} else {
-				left = thisLine[leftIndex];
+			for (int i = first; i < thisLine.length; i++) {
+				out[outOffset + i] = (byte) (thisLine[i] - thisLine[i - bytesPerPixel]);
 			}
 			
-			if (prevLine == null) {
-				up = 0;
-			} else {
-				up = prevLine[i];
-			}
-			
-			if (prevLine == null || leftIndex < 0) {
-				upperLeft = 0;
-			} else {
-				upperLeft = prevLine[leftIndex];
-			}
-			
-			out[i] = (byte) (thisLine[i] - paethPredictor(left, up, upperLeft));
+			return;
 		}
 		
-		return out;
+		for (int i = 0; i < first; i++) {
+			out[outOffset + i] = (byte) (thisLine[i] - prevLine[i]);
+		}
+		
+		for (int i = first; i < thisLine.length; i++) {
+			final int left = thisLine[i - bytesPerPixel] & 0xFF;
+			final int up = prevLine[i] & 0xFF;
+			final int upperLeft = prevLine[i - bytesPerPixel] & 0xFF;
+			
+			out[outOffset + i] = (byte) (thisLine[i] - predict(left, up, upperLeft));
+		}
 	}
 
 	@Override
-	public byte[] removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
-		final byte[] out = new byte[thisLine.length];
+	public void removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
+		final int first = Math.min(bytesPerPixel, thisLine.length);
 		
-		for (int i = 0; i < thisLine.length; i++) {
-			final int leftIndex = i - bytesPerPixel;
-			final byte left;
-			final byte up;
-			final byte upperLeft;
-			
-			if (leftIndex < 0) {
-				left = 0;
-			} else {
-				left = out[leftIndex];
+		if (prevLine == null) {
+			if (thisLine != out || outOffset != 0) {
+				System.arraycopy(thisLine, 0, out, outOffset, first);
 			}
 			
-			if (prevLine == null) {
-				up = 0;
-			} else {
-				up = prevLine[i];
+			for (int i = first; i < thisLine.length; i++) {
+				out[outOffset + i] = (byte) (thisLine[i] + out[outOffset + i - bytesPerPixel]);
 			}
 			
-			if (prevLine == null || leftIndex < 0) {
-				upperLeft = 0;
-			} else {
-				upperLeft = prevLine[leftIndex];
-			}
-			
-			out[i] = (byte) (thisLine[i] + paethPredictor(left, up, upperLeft));
+			return;
+		}
+		
+		for (int i = 0; i < first; i++) {
+			out[outOffset + i] = (byte) (thisLine[i] + prevLine[i]);
 		}
 		
-		return out;
+		for (int i = first; i < thisLine.length; i++) {
+			final int left = out[outOffset + i - bytesPerPixel] & 0xFF;
+			final int up = prevLine[i] & 0xFF;
+			final int upperLeft = prevLine[i - bytesPerPixel] & 0xFF;
+			
+			out[outOffset + i] = (byte) (thisLine[i] + predict(left, up, upperLeft));
+		}
 	}
 	
-	private byte paethPredictor(final byte left, final byte above, final byte upperLeft) {
+	/**
+	 * The Paeth predictor, computed without branches. The usual form of the predictor picks the left, upper, or upper left
+	 * byte with two conditional returns, which are hard to predict on noisy images. Here, each comparison is turned into a mask
+	 * (all ones if true, all zeros if false), and the masks select the predictor.
+	 * 
+	 * @param left unsigned left byte
+	 * @param up unsigned upper byte
+	 * @param upperLeft unsigned upper left byte
+	 * @return the Paeth predictor (unsigned)
+	 */
+	public static int predict(final int left, final int up, final int upperLeft) {
+		// Distances from p = left + up - upperLeft to each neighbor
+		final int pa = Math.abs(up - upperLeft);
+		final int pb = Math.abs(left - upperLeft);
+		final int pc = Math.abs(left + up - upperLeft - upperLeft);
 		
-		// Convert to unsigned ints
-		final int ua = ((int)left & 0xFF);
-		final int ub = ((int)above & 0xFF);
-		final int uc = ((int)upperLeft & 0xFF);
+		// All ones if pa > pb or pa > pc (left loses)
+		final int notLeft = ((pb - pa) | (pc - pa)) >> 31;
 		
-		final int p = ua + ub - uc;
-		final int pa = Math.abs(p - ua);
-		final int pb = Math.abs(p - ub);
-		final int pc = Math.abs(p - uc);
+		// All ones if pc < pb (upper left beats up)
+		final int upperLeftWins = (pc - pb) >> 31;
 		
-		if (pa <= pb && pa <= pc) {
-			return left;
-		} else if (pb <= pc) {
-			return above;
-		} else {
-			return upperLeft;
-		}
+		final int upOrUpperLeft = up ^ ((up ^ upperLeft) & upperLeftWins);
+		
+		return left ^ ((left ^ upOrUpperLeft) & notLeft);
 	}
 }
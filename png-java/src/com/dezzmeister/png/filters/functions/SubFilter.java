@@ -11,39 +11,28 @@ import com.dezzmeister.png.filters.FilterFunction;
 public class SubFilter implements FilterFunction {
 
 	@Override
-	public byte[] applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
-		final byte[] out = new byte[thisLine.length];
+	public void applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
+		final int first = Math.min(bytesPerPixel, thisLine.length);
 		
-		out[0] = thisLine[0];
+		// The first pixel has nothing to its left, so it is copied as is. The rest of the line has no branches, so the JIT can vectorize it.
+		System.arraycopy(thisLine, 0, out, outOffset, first);
 		
-		for (int i = 1; i < thisLine.length; i++) {
-			final int prevIndex = i - bytesPerPixel;
-			
-			if (prevIndex < 0) {
-				out[i] = thisLine[i];
-			} else {
-				out[i] = (byte) (thisLine[i] - thisLine[prevIndex]);
-			}
+		for (int i = first; i < thisLine.length; i++) {
+			out[outOffset + i] = (byte) (thisLine[i] - thisLine[i - bytesPerPixel]);
 		}
-		
-		return out;
 	}
 
 	@Override
-	public byte[] removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
-		final byte[] out = new byte[thisLine.length];
+	public void removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
+		final int first = Math.min(bytesPerPixel, thisLine.length);
 		
-		for (int i = 0; i < thisLine.length; i++) {
-			final int prevIndex = i - bytesPerPixel;
-			
-			if (prevIndex < 0) {
-				out[i] = thisLine[i];
-			} else {
-				out[i] = (byte) (thisLine[i] + out[prevIndex]);
-			}
+		if (thisLine != out || outOffset != 0) {
+			System.arraycopy(thisLine, 0, out, outOffset, first);
 		}
 		
-		return out;
+		for (int i = first; i < thisLine.length; i++) {
+			out[outOffset + i] = (byte) (thisLine[i] + out[outOffset + i - bytesPerPixel]);
+		}
 	}
 
 }
@@ -12,33 +12,27 @@ import com.dezzmeister.png.filters.FilterFunction;
 public class UpFilter implements FilterFunction {
 
 	@Override
-	public byte[] applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
-		final byte[] out = new byte[thisLine.length];
-		
+	public void applyFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
 		if (prevLine == null) {
-			System.arraycopy(thisLine, 0, out, 0, thisLine.length);
+			System.arraycopy(thisLine, 0, out, outOffset, thisLine.length);
 		} else {
 			for (int i = 0; i < thisLine.length; i++) {
-				out[i] = (byte) (thisLine[i] - prevLine[i]);
+				out[outOffset + i] = (byte) (thisLine[i] - prevLine[i]);
 			}
 		}
-		
-		return out;
 	}
 
 	@Override
-	public byte[] removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
-		final byte[] out = new byte[thisLine.length];
-		
+	public void removeFilter(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel, final byte[] out, final int outOffset) {
 		if (prevLine == null) {
-			System.arraycopy(thisLine, 0, out, 0, thisLine.length);
+			if (thisLine != out || outOffset != 0) {
+				System.arraycopy(thisLine, 0, out, outOffset, thisLine.length);
+			}
 		} else {
 			for (int i = 0; i < thisLine.length; i++) {
-				out[i] = (byte) (thisLine[i] + prevLine[i]);
+				out[outOffset + i] = (byte) (thisLine[i] + prevLine[i]);
 			}
 		}
-		
-		return out;
 	}
 
 }
@@ -0,0 +1,79 @@
+package com.dezzmeister.png.filters.strategies;
+
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.FilterStrategy;
+
+/**
+ * A cheaper version of the minimum sum heuristic. Neighboring lines of an image are usually similar, so the filter that was
+ * best for one line is likely to be best for the next line too. This strategy scores only the previous line's filter; if its
+ * score has grown by more than a set fraction since the filter was chosen, every candidate is scored again with a
+ * {@link MinimumSumStrategy} and the new winner is used. On smooth images this scores one filter per line instead of five.
+ * 
+ * @author Joe Desmond
+ */
+public class AdaptiveStrategy implements FilterStrategy {
+	
+	/**
+	 * Default fraction by which the score of the current filter may grow before all filters are tried again
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.25;
+	
+	private final MinimumSumStrategy minimumSum = new MinimumSumStrategy();
+	
+	private final double tolerance;
+	
+	/**
+	 * Filter used for the previous line, or null if no lines have been filtered yet
+	 */
+	private Filter current = null;
+	
+	/**
+	 * Score of {@link #current} on the line where it was chosen
+	 */
+	private long baseline = 0;
+	
+	/**
+	 * Creates an AdaptiveStrategy with {@link #DEFAULT_TOLERANCE}.
+	 */
+	public AdaptiveStrategy() {
+		this(DEFAULT_TOLERANCE);
+	}
+	
+	/**
+	 * Creates an AdaptiveStrategy that tries all filters again when the score of the current filter grows by more than
+	 * <code>_tolerance</code> (as a fraction of the score it had when it was chosen).
+	 * 
+	 * @param _tolerance allowed growth of the current filter's score; must not be negative
+	 */
+	public AdaptiveStrategy(final double _tolerance) {
+		if (!(_tolerance >= 0)) {
+			throw new IllegalArgumentException("Tolerance must not be negative: " + _tolerance);
+		}
+		
+		tolerance = _tolerance;
+	}
+	
+	@Override
+	public Filter select(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
+		if (prevLine == null) {
+			
+			// The first line can't use Up, so its choice says little about the lines below it
+			
+			current = null;
+			return minimumSum.select(prevLine, thisLine, bytesPerPixel);
+		}
+		
+		if (current != null) {
+			final long score = MinimumSumStrategy.score(current, prevLine, thisLine, bytesPerPixel);
+			
+			if (score <= baseline + (long) (baseline * tolerance)) {
+				return current;
+			}
+		}
+		
+		current = minimumSum.select(prevLine, thisLine, bytesPerPixel);
+		baseline = MinimumSumStrategy.score(current, prevLine, thisLine, bytesPerPixel);
+		
+		return current;
+	}
+}
@@ -0,0 +1,227 @@
+package com.dezzmeister.png.filters.strategies;
+
+import java.util.Arrays;
+
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.FilterStrategy;
+import com.dezzmeister.png.filters.functions.PaethFilter;
+
+/**
+ * Picks filters using the minimum sum of absolute differences heuristic. The scores of all five candidate filters are computed
+ * together in one pass over the previous and current lines, without producing any filtered lines. After every {@link #SCORE_BLOCK_SIZE}
+ * bytes, a candidate is dropped if its score is already higher than the highest score another candidate could possibly reach by
+ * the end of the line, and scoring stops as soon as only one candidate is left.
+ * 
+ * @author Joe Desmond
+ */
+public class MinimumSumStrategy implements FilterStrategy {
+	
+	/**
+	 * The candidate filters, in order of preference when two filters are equally good
+	 */
+	static final Filter[] CANDIDATES = {Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE, Filter.PAETH};
+	
+	/**
+	 * Number of bytes scored between checks for candidates that can no longer win
+	 */
+	private static final int SCORE_BLOCK_SIZE = 256;
+	
+	/**
+	 * Largest possible score of a single filtered byte (the absolute value of a signed byte)
+	 */
+	private static final int MAX_BYTE_SCORE = 128;
+	
+	/**
+	 * Partial score of each candidate filter
+	 */
+	private final long[] scores = new long[CANDIDATES.length];
+	
+	/**
+	 * True for each candidate filter that can no longer have the lowest score
+	 */
+	private final boolean[] eliminated = new boolean[CANDIDATES.length];
+	
+	/**
+	 * Zeros, used in place of the previous line when scoring the first line of an image. This is shared by every thread; it is
+	 * never written to, and it is only replaced by a longer array of zeros.
+	 */
+	private static volatile byte[] zeros = new byte[0];
+	
+	@Override
+	public Filter select(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
+		final byte[] prev = (prevLine == null) ? zeros(thisLine.length) : prevLine;
+		final int first = Math.min(bytesPerPixel, thisLine.length);
+		long none = 0;
+		long sub = 0;
+		long up = 0;
+		long average = 0;
+		long paeth = 0;
+		
+		Arrays.fill(eliminated, false);
+		
+		// The first pixel has nothing to its left, so Sub is the same as None and Paeth is the same as Up
+		for (int i = 0; i < first; i++) {
+			final int x = thisLine[i];
+			final int b = prev[i] & 0xFF;
+			final int filteredUp = Math.abs((byte) (x - b));
+			
+			none += Math.abs(x);
+			sub += Math.abs(x);
+			up += filteredUp;
+			average += Math.abs((byte) (x - (b >>> 1)));
+			paeth += filteredUp;
+		}
+		
+		// The rest of the line is scored without checking for missing neighbors
+		for (int blockStart = first; blockStart < thisLine.length; blockStart += SCORE_BLOCK_SIZE) {
+			final int blockEnd = Math.min(thisLine.length, blockStart + SCORE_BLOCK_SIZE);
+			
+			for (int i = blockStart; i < blockEnd; i++) {
+				final int x = thisLine[i];
+				final int a = thisLine[i - bytesPerPixel] & 0xFF;
+				final int b = prev[i] & 0xFF;
+				final int c = prev[i - bytesPerPixel] & 0xFF;
+				
+				none += Math.abs(x);
+				sub += Math.abs((byte) (x - a));
+				up += Math.abs((byte) (x - b));
+				average += Math.abs((byte) (x - ((a + b) >>> 1)));
+				paeth += Math.abs((byte) (x - PaethFilter.predict(a, b, c)));
+			}
+			
+			storeScores(none, sub, up, average, paeth);
+			
+			if (blockEnd < thisLine.length && eliminate((long) (thisLine.length - blockEnd) * MAX_BYTE_SCORE)) {
+				break;
+			}
+		}
+		
+		// Lines no longer than one pixel skip the loop above
+		if (first == thisLine.length) {
+			storeScores(none, sub, up, average, paeth);
+		}
+		
+		int best = -1;
+		
+		for (int i = 0; i < scores.length; i++) {
+			if (!eliminated[i] && (best == -1 || scores[i] < scores[best])) {
+				best = i;
+			}
+		}
+		
+		return CANDIDATES[best];
+	}
+	
+	/**
+	 * Computes the sum of absolute differences for a single filter, without producing the filtered line. Each filter is
+	 * scored in its own loop, with the first pixel handled separately, so that the loops have no branches.
+	 * 
+	 * @param filter filter to score (not {@link Filter#DYNAMIC})
+	 * @param prevLine previous scanline, or null
+	 * @param thisLine current scanline
+	 * @param bytesPerPixel number of bytes in one pixel, rounded up to 1 if fractional
+	 * @return sum of the absolute values of the filtered bytes
+	 */
+	static long score(final Filter filter, final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
+		final byte[] prev = (prevLine == null) ? zeros(thisLine.length) : prevLine;
+		final int first = Math.min(bytesPerPixel, thisLine.length);
+		long sum = 0;
+		
+		switch (filter) {
+			case SUB:
+				for (int i = 0; i < first; i++) {
+					sum += Math.abs(thisLine[i]);
+				}
+				
+				for (int i = first; i < thisLine.length; i++) {
+					sum += Math.abs((byte) (thisLine[i] - thisLine[i - bytesPerPixel]));
+				}
+				break;
+			case UP:
+				for (int i = 0; i < thisLine.length; i++) {
+					sum += Math.abs((byte) (thisLine[i] - prev[i]));
+				}
+				break;
+			case AVERAGE:
+				for (int i = 0; i < first; i++) {
+					sum += Math.abs((byte) (thisLine[i] - ((prev[i] & 0xFF) >>> 1)));
+				}
+				
+				for (int i = first; i < thisLine.length; i++) {
+					sum += Math.abs((byte) (thisLine[i] - (((thisLine[i - bytesPerPixel] & 0xFF) + (prev[i] & 0xFF)) >>> 1)));
+				}
+				break;
+			case PAETH:
+				for (int i = 0; i < first; i++) {
+					sum += Math.abs((byte) (thisLine[i] - prev[i]));
+				}
+				
+				for (int i = first; i < thisLine.length; i++) {
+					final int predictor = PaethFilter.predict(thisLine[i - bytesPerPixel] & 0xFF, prev[i] & 0xFF, prev[i - bytesPerPixel] & 0xFF);
+					
+					sum += Math.abs((byte) (thisLine[i] - predictor));
+				}
+				break;
+			default:
+				for (int i = 0; i < thisLine.length; i++) {
+					sum += Math.abs(thisLine[i]);
+				}
+				break;
+		}
+		
+		return sum;
+	}
+	
+	private void storeScores(final long none, final long sub, final long up, final long average, final long paeth) {
+		scores[0] = none;
+		scores[1] = sub;
+		scores[2] = up;
+		scores[3] = average;
+		scores[4] = paeth;
+	}
+	
+	/**
+	 * Returns at least <code>length</code> zeros.
+	 */
+	private static byte[] zeros(final int length) {
+		byte[] out = zeros;
+		
+		if (out.length < length) {
+			out = new byte[length];
+			zeros = out;
+		}
+		
+		return out;
+	}
+	
+	/**
+	 * Eliminates candidates that can no longer win. A candidate can no longer win if its score is higher than another
+	 * candidate's score plus <code>remaining</code>, the most that the other candidate's score could still grow.
+	 * 
+	 * @param remaining largest possible score of the rest of the line
+	 * @return true if only one candidate is left
+	 */
+	private boolean eliminate(final long remaining) {
+		long lowest = Long.MAX_VALUE;
+		
+		for (int i = 0; i < scores.length; i++) {
+			if (!eliminated[i]) {
+				lowest = Math.min(lowest, scores[i]);
+			}
+		}
+		
+		int left = 0;
+		
+		for (int i = 0; i < scores.length; i++) {
+			if (!eliminated[i] && scores[i] > lowest + remaining) {
+				eliminated[i] = true;
+			}
+			
+			if (!eliminated[i]) {
+				left++;
+			}
+		}
+		
+		return left == 1;
+	}
+}
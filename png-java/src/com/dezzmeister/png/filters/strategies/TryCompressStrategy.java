@@ -0,0 +1,99 @@
+package com.dezzmeister.png.filters.strategies;
+
+import java.util.zip.Deflater;
+
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.FilterStrategy;
+
+/**
+ * Picks filters by compressing the line with each candidate filter and keeping the filter with the smallest output.
+ * This measures the quantity that actually matters, but each line is compressed five times, so it is by far the slowest
+ * strategy. A fast compression level is used for the trials; the relative sizes are usually the same as at higher levels.
+ * <p>
+ * Each line is compressed on its own, so matches against earlier lines are not taken into account. This strategy holds a native
+ * {@link Deflater}, which is released by {@link #end()}.
+ * 
+ * @author Joe Desmond
+ */
+public class TryCompressStrategy implements FilterStrategy {
+	
+	/**
+	 * Default compression level used for the trials
+	 */
+	public static final int DEFAULT_TRIAL_LEVEL = Deflater.BEST_SPEED;
+	
+	private final Deflater deflater;
+	
+	/**
+	 * Filtered line. This grows to the length of the longest line seen.
+	 */
+	private byte[] scratch = new byte[0];
+	
+	/**
+	 * Receives compressed output, which is discarded
+	 */
+	private final byte[] sink = new byte[4096];
+	
+	/**
+	 * Creates a TryCompressStrategy that uses {@link #DEFAULT_TRIAL_LEVEL}.
+	 */
+	public TryCompressStrategy() {
+		this(DEFAULT_TRIAL_LEVEL);
+	}
+	
+	/**
+	 * Creates a TryCompressStrategy that compresses trial lines at the given level.
+	 * 
+	 * @param level deflate compression level (1-9)
+	 */
+	public TryCompressStrategy(final int level) {
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Trial compression level must be between 1 and 9: " + level);
+		}
+		
+		deflater = new Deflater(level, true);
+	}
+	
+	@Override
+	public Filter select(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
+		if (scratch.length < thisLine.length) {
+			scratch = new byte[thisLine.length];
+		}
+		
+		Filter best = null;
+		long bestSize = Long.MAX_VALUE;
+		
+		for (final Filter filter : MinimumSumStrategy.CANDIDATES) {
+			filter.filterFunction().applyFilter(prevLine, thisLine, bytesPerPixel, scratch, 0);
+			
+			final long size = compressedSize(thisLine.length);
+			
+			if (size < bestSize) {
+				best = filter;
+				bestSize = size;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Compresses the first <code>length</code> bytes of {@link #scratch} and returns the size of the output.
+	 */
+	private long compressedSize(final int length) {
+		deflater.reset();
+		deflater.setInput(scratch, 0, length);
+		deflater.finish();
+		
+		while (!deflater.finished()) {
+			deflater.deflate(sink);
+		}
+		
+		return deflater.getBytesWritten();
+	}
+	
+	@Override
+	public void end() {
+		deflater.end();
+	}
+}
@@ -1,56 +1,214 @@
 package com.dezzmeister.png.functions;
 
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
 /**
- * Static class containing 32-bit CRC functions.
- * {@link #crc(byte[])} can be used to compute the CRC of some data.
+ * 32-bit CRC used by PNG chunks. {@link #crc(byte[])} can be used to compute the CRC of some data.
+ * <p>
+ * A CRC object can also compute a CRC incrementally, so that the CRC of a chunk can be updated as its data is produced
+ * instead of in a second pass over the finished chunk. The pure Java implementation processes eight bytes at a time
+ * using the slice-by-8 algorithm. On most JVMs, {@link CRC32} is an intrinsic that uses dedicated CPU instructions and is faster
+ * still; {@link #setImplementation(Implementation)} chooses which one {@link #newChecksum()} and the static methods use.
  * 
  * @author Joe Desmond
  */
-public class CRC {
+public class CRC implements Checksum {
 	
 	/**
-	 * CRC lookup table
+	 * CRC implementations
 	 */
-	private static final long[] CRC_TABLE = buildCRCTable();
+	public enum Implementation {
+		
+		/**
+		 * Pure Java slice-by-8 implementation
+		 */
+		SLICE_BY_8,
+		
+		/**
+		 * {@link CRC32}
+		 */
+		ZIP
+	}
 	
-	private static long[] buildCRCTable() {
-		final long[] out = new long[256];
+	/**
+	 * CRC lookup tables. <code>CRC_TABLES[0]</code> is the standard byte-at-a-time table, and <code>CRC_TABLES[k][n]</code>
+	 * is the CRC of byte <code>n</code> followed by <code>k</code> zero bytes.
+	 */
+	private static final int[][] CRC_TABLES = buildCRCTables();
+	
+	private static final int[] T0 = CRC_TABLES[0];
+	private static final int[] T1 = CRC_TABLES[1];
+	private static final int[] T2 = CRC_TABLES[2];
+	private static final int[] T3 = CRC_TABLES[3];
+	private static final int[] T4 = CRC_TABLES[4];
+	private static final int[] T5 = CRC_TABLES[5];
+	private static final int[] T6 = CRC_TABLES[6];
+	private static final int[] T7 = CRC_TABLES[7];
+	
+	private static volatile Implementation implementation = Implementation.ZIP;
+	
+	/**
+	 * Current CRC register, before the final inversion
+	 */
+	private int crc = 0xFFFFFFFF;
+	
+	private static int[][] buildCRCTables() {
+		final int[][] out = new int[8][256];
 		
-		long c;
+		int c;
 		
 		for (int n = 0; n < 256; n++) {
-			c = (long) n;
+			c = n;
 			
 			for (int k = 0; k < 8; k++) {
 				if ((c & 1) == 1) {
-					c = 0xEDB88320L ^ (c >>> 1);
+					c = 0xEDB88320 ^ (c >>> 1);
 				} else {
 					c = c >>> 1;
 				}
 			}
-			out[n] = c;
+			out[0][n] = c;
+		}
+		
+		for (int n = 0; n < 256; n++) {
+			c = out[0][n];
+			
+			for (int k = 1; k < 8; k++) {
+				c = out[0][c & 0xFF] ^ (c >>> 8);
+				out[k][n] = c;
+			}
 		}
 		
 		return out;
 	}
 	
 	/**
-	 * Updates an existing CRC with the given data.
+	 * Sets the implementation used by {@link #newChecksum()} and the static CRC methods. The default is {@link Implementation#ZIP}.
 	 * 
-	 * @param crc existing CRC
+	 * @param _implementation CRC implementation
+	 */
+	public static void setImplementation(final Implementation _implementation) {
+		if (_implementation == null) {
+			throw new IllegalArgumentException("CRC implementation cannot be null");
+		}
+		
+		implementation = _implementation;
+	}
+	
+	/**
+	 * Returns the implementation used by {@link #newChecksum()} and the static CRC methods.
+	 * 
+	 * @return CRC implementation
+	 */
+	public static Implementation getImplementation() {
+		return implementation;
+	}
+	
+	/**
+	 * Creates a new checksum that computes the PNG CRC with the current {@link #getImplementation() implementation}.
+	 * 
+	 * @return new CRC checksum
+	 */
+	public static Checksum newChecksum() {
+		return (implementation == Implementation.ZIP) ? new CRC32() : new CRC();
+	}
+	
+	@Override
+	public void update(final int b) {
+		crc = T0[(crc ^ b) & 0xFF] ^ (crc >>> 8);
+	}
+	
+	@Override
+	public void update(final byte[] bytes, final int offset, final int length) {
+		crc = update(crc, bytes, offset, length);
+	}
+	
+	@Override
+	public void update(final ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			final int position = buffer.position();
+			final int length = buffer.remaining();
+			
+			update(buffer.array(), buffer.arrayOffset() + position, length);
+			buffer.position(position + length);
+		} else {
+			int c = crc;
+			
+			while (buffer.hasRemaining()) {
+				c = T0[(c ^ buffer.get()) & 0xFF] ^ (c >>> 8);
+			}
+			
+			crc = c;
+		}
+	}
+	
+	@Override
+	public long getValue() {
+		return (~crc) & 0xFFFFFFFFL;
+	}
+	
+	@Override
+	public void reset() {
+		crc = 0xFFFFFFFF;
+	}
+	
+	/**
+	 * Updates a CRC register with the given bytes, eight bytes at a time.
+	 * 
+	 * @param crc CRC register
 	 * @param bytes data
-	 * @return new CRC with <code>bytes</code>
+	 * @param offset index of the first byte to use
+	 * @param length number of bytes to use
+	 * @return updated CRC register
 	 */
-	public static final long updateCRC(final long crc, final byte[] bytes) {
-		long c = crc;
+	private static int update(final int crc, final byte[] bytes, final int offset, final int length) {
+		final int end = offset + length;
+		final int wordEnd = offset + (length & ~7);
+		int c = crc;
+		int i = offset;
+		
+		for (; i < wordEnd; i += 8) {
+			final int lo = c ^ ((bytes[i] & 0xFF) | ((bytes[i + 1] & 0xFF) << 8) | ((bytes[i + 2] & 0xFF) << 16) | (bytes[i + 3] << 24));
+			
+			c = T7[lo & 0xFF] ^ T6[(lo >>> 8) & 0xFF] ^ T5[(lo >>> 16) & 0xFF] ^ T4[lo >>> 24] ^
+				T3[bytes[i + 4] & 0xFF] ^ T2[bytes[i + 5] & 0xFF] ^ T1[bytes[i + 6] & 0xFF] ^ T0[bytes[i + 7] & 0xFF];
+		}
 		
-		for (int n = 0; n < bytes.length; n++) {
-			c = CRC_TABLE[(int) ((c ^ bytes[n]) & 0xFF)] ^ (c >>> 8);
+		for (; i < end; i++) {
+			c = T0[(c ^ bytes[i]) & 0xFF] ^ (c >>> 8);
 		}
 		
 		return c;
 	}
 	
+	/**
+	 * Updates an existing CRC with the given data.
+	 * 
+	 * @param crc existing CRC
+	 * @param bytes data
+	 * @return new CRC with <code>bytes</code>
+	 */
+	public static final long updateCRC(final long crc, final byte[] bytes) {
+		return updateCRC(crc, bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Updates an existing CRC with <code>length</code> bytes of the given data, starting at <code>offset</code>.
+	 * The CRC is the raw register value (not inverted); start with <code>0xFFFFFFFFL</code> and invert the result.
+	 * This always uses the slice-by-8 implementation, because {@link CRC32} cannot continue from a raw register value.
+	 * 
+	 * @param crc existing CRC
+	 * @param bytes data
+	 * @param offset index of the first byte to use
+	 * @param length number of bytes to use
+	 * @return new CRC with the given bytes
+	 */
+	public static final long updateCRC(final long crc, final byte[] bytes, final int offset, final int length) {
+		return update((int) crc, bytes, offset, length) & 0xFFFFFFFFL;
+	}
+	
 	/**
 	 * Computes a 32-bit CRC with the given data
 	 * 
@@ -58,6 +216,21 @@ public class CRC {
 	 * @return 32-bit CRC checksum
 	 */
 	public static final long crc(final byte[] bytes) {
-		return updateCRC(0xFFFFFFFFL, bytes) ^ 0xFFFFFFFFL;
+		return crc(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Computes a 32-bit CRC with <code>length</code> bytes of the given data, starting at <code>offset</code>.
+	 * 
+	 * @param bytes input data
+	 * @param offset index of the first byte to use
+	 * @param length number of bytes to use
+	 * @return 32-bit CRC checksum
+	 */
+	public static final long crc(final byte[] bytes, final int offset, final int length) {
+		final Checksum checksum = newChecksum();
+		checksum.update(bytes, offset, length);
+		
+		return checksum.getValue();
 	}
 }
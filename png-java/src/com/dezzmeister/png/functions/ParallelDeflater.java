@@ -0,0 +1,296 @@
+package com.dezzmeister.png.functions;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses data into a zlib stream using several threads. The input is split into blocks of a fixed size, and each block
+ * is deflated independently on an {@link ExecutorService}. Every block except the first uses the last 32 KB of the preceding
+ * input as a preset dictionary, so matches across block boundaries are still found and the compression ratio stays close to
+ * that of a single {@link Deflater}. Each block except the last ends with a sync flush, which aligns it to a byte boundary
+ * so that the compressed blocks can simply be concatenated. The blocks are wrapped in a single zlib header and Adler-32 trailer;
+ * the Adler-32 checksums of the blocks are computed in parallel as well and then combined.
+ * <p>
+ * Smaller blocks give more parallelism but slightly worse compression, because each block boundary costs a flush
+ * and resets the compressor's state.
+ * 
+ * @author Joe Desmond
+ * @see <a href="https://www.ietf.org/rfc/rfc1950.txt">RFC 1950 - zlib format</a>
+ */
+public class ParallelDeflater {
+	
+	/**
+	 * Default number of uncompressed bytes in each block
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+	
+	/**
+	 * Size of the deflate sliding window. This much of the previous block is used as a dictionary.
+	 */
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	
+	/**
+	 * Largest prime smaller than 65536, used by Adler-32
+	 */
+	private static final int ADLER_BASE = 65521;
+	
+	private static final byte[] EMPTY = new byte[0];
+	
+	private final ExecutorService executor;
+	
+	private final int blockSize;
+	
+	private final int level;
+	
+	private final int strategy;
+	
+	/**
+	 * Creates a ParallelDeflater with the default compression level.
+	 * 
+	 * @param _executor executor that compresses the blocks
+	 * @param _blockSize number of uncompressed bytes in each block
+	 */
+	public ParallelDeflater(final ExecutorService _executor, final int _blockSize) {
+		this(_executor, _blockSize, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	/**
+	 * Creates a ParallelDeflater.
+	 * 
+	 * @param _executor executor that compresses the blocks
+	 * @param _blockSize number of uncompressed bytes in each block
+	 * @param _level deflate compression level (0-9, or {@link Deflater#DEFAULT_COMPRESSION})
+	 */
+	public ParallelDeflater(final ExecutorService _executor, final int _blockSize, final int _level) {
+		this(_executor, _blockSize, _level, Deflater.DEFAULT_STRATEGY);
+	}
+	
+	/**
+	 * Creates a ParallelDeflater with the given compression level and strategy.
+	 * 
+	 * @param _executor executor that compresses the blocks
+	 * @param _blockSize number of uncompressed bytes in each block
+	 * @param _level deflate compression level (0-9, or {@link Deflater#DEFAULT_COMPRESSION})
+	 * @param _strategy deflate compression strategy ({@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED}, or {@link Deflater#HUFFMAN_ONLY})
+	 */
+	public ParallelDeflater(final ExecutorService _executor, final int _blockSize, final int _level, final int _strategy) {
+		if (_blockSize <= 0) {
+			throw new IllegalArgumentException("Block size must be positive: " + _blockSize);
+		}
+		
+		executor = _executor;
+		blockSize = _blockSize;
+		level = _level;
+		strategy = _strategy;
+	}
+	
+	/**
+	 * Compresses the given data into a complete zlib stream.
+	 * 
+	 * @param data uncompressed data
+	 * @return zlib stream
+	 */
+	public byte[] deflate(final byte[] data) {
+		final int blocks = Math.max(1, (data.length + blockSize - 1) / blockSize);
+		final List<Future<Block>> futures = new ArrayList<Future<Block>>(blocks);
+		
+		for (int i = 0; i < blocks; i++) {
+			final int start = i * blockSize;
+			final int length = Math.min(blockSize, data.length - start);
+			final boolean last = (i == blocks - 1);
+			
+			futures.add(executor.submit(() -> deflateBlock(data, start, length, last)));
+		}
+		
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(header(), 0, 2);
+		
+		long adler = 1;
+		
+		for (final Future<Block> future : futures) {
+			final Block block = await(future);
+			
+			out.write(block.compressed, 0, block.compressed.length);
+			adler = combineAdler32(adler, block.adler, block.length);
+		}
+		
+		out.write(trailer(adler), 0, 4);
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Returns the two-byte zlib header that starts a stream compressed with this deflater's compression level.
+	 * 
+	 * @return zlib header
+	 */
+	public byte[] header() {
+		return new byte[] {0x78, (byte) headerFlags()};
+	}
+	
+	/**
+	 * Returns the zlib trailer that ends a stream: the Adler-32 checksum of all of the uncompressed data, in big endian order.
+	 * 
+	 * @param adler Adler-32 checksum of the uncompressed data
+	 * @return zlib trailer
+	 */
+	public static byte[] trailer(final long adler) {
+		return new byte[] {(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler};
+	}
+	
+	/**
+	 * Deflates one block as raw deflate data (no zlib header or trailer) on the calling thread. If <code>start</code> is not 0, up to 32 KB of
+	 * the data before the block is used as a preset dictionary. Blocks that are compressed separately can be concatenated into one deflate
+	 * stream, between a {@link #header() header} and a {@link #trailer(long) trailer} with the {@link #combineAdler32(long, long, long) combined}
+	 * checksum, as long as only the last block is <code>last</code>.
+	 * 
+	 * @param data all of the uncompressed data
+	 * @param start index of the first byte in the block
+	 * @param length number of bytes in the block
+	 * @param last true if this is the last block; the last block ends the deflate stream instead of flushing it
+	 * @return compressed block
+	 */
+	public Block deflateBlock(final byte[] data, final int start, final int length, final boolean last) {
+		final Deflater deflater = new Deflater(level, true);
+		
+		try {
+			if (strategy != Deflater.DEFAULT_STRATEGY) {
+				
+				// Deflater applies a new strategy lazily, on the next call to deflate(). Changing the strategy after the dictionary
+				// has been set produces a corrupt stream, so apply it now with an empty deflate()
+				
+				deflater.setStrategy(strategy);
+				deflater.deflate(EMPTY, 0, 0, Deflater.NO_FLUSH);
+			}
+			
+			if (start > 0) {
+				final int dictionaryStart = Math.max(0, start - DICTIONARY_SIZE);
+				deflater.setDictionary(data, dictionaryStart, start - dictionaryStart);
+			}
+			
+			deflater.setInput(data, start, length);
+			
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length >>> 1));
+			final byte[] buffer = new byte[8192];
+			
+			if (last) {
+				deflater.finish();
+				
+				while (!deflater.finished()) {
+					final int written = deflater.deflate(buffer);
+					out.write(buffer, 0, written);
+				}
+			} else {
+				int written;
+				
+				do {
+					written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					out.write(buffer, 0, written);
+				} while (written == buffer.length);
+			}
+			
+			final Adler32 adler = new Adler32();
+			adler.update(data, start, length);
+			
+			return new Block(out.toByteArray(), adler.getValue(), length);
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	/**
+	 * Returns the second byte of the zlib header (FLG). The compression level is recorded in it, and the
+	 * check bits are chosen so that the header is a multiple of 31.
+	 * 
+	 * @return zlib FLG byte
+	 */
+	private int headerFlags() {
+		final int levelFlag;
+		
+		if (level == Deflater.DEFAULT_COMPRESSION || level == 6) {
+			levelFlag = 2;
+		} else if (level < 2) {
+			levelFlag = 0;
+		} else if (level < 6) {
+			levelFlag = 1;
+		} else {
+			levelFlag = 3;
+		}
+		
+		final int flags = levelFlag << 6;
+		
+		return flags + ((31 - (((0x78 << 8) | flags) % 31)) % 31);
+	}
+	
+	/**
+	 * Combines two Adler-32 checksums. Given the checksum of sequence A and the checksum of sequence B, returns
+	 * the checksum of A followed by B.
+	 * 
+	 * @param adler1 checksum of the first sequence
+	 * @param adler2 checksum of the second sequence
+	 * @param length2 length of the second sequence
+	 * @return checksum of both sequences
+	 */
+	public static long combineAdler32(final long adler1, final long adler2, final long length2) {
+		final long remainder = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = (remainder * sum1) % ADLER_BASE;
+		
+		sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+		sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+		
+		if (sum1 >= ADLER_BASE) {
+			sum1 -= ADLER_BASE;
+		}
+		
+		if (sum1 >= ADLER_BASE) {
+			sum1 -= ADLER_BASE;
+		}
+		
+		if (sum2 >= (ADLER_BASE << 1)) {
+			sum2 -= (ADLER_BASE << 1);
+		}
+		
+		if (sum2 >= ADLER_BASE) {
+			sum2 -= ADLER_BASE;
+		}
+		
+		return sum1 | (sum2 << 16);
+	}
+	
+	private static <T> T await(final Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while compressing", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			
+			throw new IllegalStateException("Failed to compress block", e.getCause());
+		}
+	}
+	
+	/**
+	 * A compressed block along with the Adler-32 checksum and length of its uncompressed data
+	 */
+	public static final class Block {
+		public final byte[] compressed;
+		public final long adler;
+		public final int length;
+		
+		Block(final byte[] _compressed, final long _adler, final int _length) {
+			compressed = _compressed;
+			adler = _adler;
+			length = _length;
+		}
+	}
+}
@@ -5,15 +5,19 @@ import org.junit.runners.Suite;
 
 import com.dezzmeister.png.junit.converters.ARGBConverter16Test;
 import com.dezzmeister.png.junit.converters.GrayscaleConverterTest;
+import com.dezzmeister.png.junit.converters.PaletteConverterTest;
 import com.dezzmeister.png.junit.converters.RGBConverter16Test;
 import com.dezzmeister.png.junit.converters.RGBConverter8Test;
+import com.dezzmeister.png.junit.converters.ReducedConverterTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	GrayscaleConverterTest.class,
 	RGBConverter16Test.class,
 	ARGBConverter16Test.class,
-	RGBConverter8Test.class
+	RGBConverter8Test.class,
+	PaletteConverterTest.class,
+	ReducedConverterTest.class
 })
 public class ConverterTestSuite {
 
@@ -4,12 +4,16 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 import com.dezzmeister.png.junit.filters.AverageFilterTest;
+import com.dezzmeister.png.junit.filters.HeuristicTest;
+import com.dezzmeister.png.junit.filters.LineFilterTest;
 import com.dezzmeister.png.junit.filters.PaethFilterTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	AverageFilterTest.class,
-	PaethFilterTest.class
+	PaethFilterTest.class,
+	LineFilterTest.class,
+	HeuristicTest.class
 })
 public class FilterTestSuite {
 
@@ -41,5 +41,17 @@ public class GrayscaleConverterTest {
 			assertArrayEquals(data.scanlines[i], expectedScanlines[i]);
 		}
 	}
+	
+	@Test
+	public void testBitDepths() {
+		System.out.println("Converter should infer bit depths of 4 and 8");
+		final PNGData data4 = converter.convert(new int[] {0, 4369, 65535, 8738}, 4, 1);
+		final PNGData data8 = converter.convert(new int[] {0, 257, 65535, 514}, 4, 1);
+		
+		assertEquals(4, data4.bitDepth);
+		assertArrayEquals(new byte[] {0x01, (byte) 0xF2}, data4.scanlines[0]);
+		assertEquals(8, data8.bitDepth);
+		assertArrayEquals(new byte[] {0, 1, (byte) 0xFF, 2}, data8.scanlines[0]);
+	}
 
 }
@@ -0,0 +1,122 @@
+package com.dezzmeister.png.junit.converters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.chunks.meta.PNGData;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.converters.PaletteConverter;
+import com.dezzmeister.png.data.IntHashSet;
+
+public class PaletteConverterTest {
+	
+	@Test
+	public void test() {
+		final int width = 13;
+		final int height = 7;
+		final int[] colors = {0xFF000000, 0x80FF0000, 0xFF00FF00, 0x00000000, 0xFF0000FF};
+		final int[] pixels = new int[width * height];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = colors[(i / 3) % colors.length];
+		}
+		
+		System.out.println("Transparent colors should come first in the palette");
+		final PNGData data = ColorFormat.ARGB_8888.convertToPNGFormat(pixels, width, height, true, false);
+		
+		assertEquals(ColorType.PALETTE, data.colorType);
+		assertEquals(4, data.bitDepth);
+		assertEquals(colors.length * 3, data.palette.length);
+		assertArrayEquals(new byte[] {(byte) 0x80, 0}, data.transparency);
+		
+		System.out.println("Palette images should decode to the original pixels");
+		
+		for (final ColorFormat format : new ColorFormat[] {ColorFormat.ARGB_8888, ColorFormat.RGBA_8888}) {
+			final int[] input = (format == ColorFormat.ARGB_8888) ? pixels : new Decoder(new Encoder(pixels, width, height, ColorFormat.ARGB_8888).encode()).decode(format);
+			final byte[] png = new Encoder(input, width, height, format).encode();
+			final Decoder decoder = new Decoder(png);
+			
+			assertEquals(ColorType.PALETTE, decoder.getColorType());
+			assertArrayEquals(input, decoder.decode(format));
+		}
+		
+		System.out.println("Opaque images should not have a tRNS chunk");
+		final int[] opaque = new int[width * height];
+		
+		for (int i = 0; i < opaque.length; i++) {
+			opaque[i] = (i % 2 == 0) ? 0x123456 : 0xFEDCBA;
+		}
+		
+		final PaletteConverter converter = PaletteConverter.create(opaque, width, height, ColorFormat.RGB_888);
+		
+		assertEquals(1, converter.bitDepth());
+		assertNull(converter.transparency());
+		
+		final byte[] png = new ReusableEncoder().encode(opaque, width, height, ColorFormat.RGB_888);
+		final Decoder decoder = new Decoder(png);
+		
+		assertEquals(1, decoder.getBitDepth());
+		assertArrayEquals(opaque, decoder.decode(ColorFormat.RGB_888));
+	}
+	
+	@Test
+	public void testTooManyColors() {
+		final int width = 17;
+		final int height = 16;
+		final int[] pixels = new int[width * height];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xFF000000 | (i * 101);
+		}
+		
+		System.out.println("Images with more than 256 colors should not use a palette");
+		assertNull(PaletteConverter.create(pixels, width, height, ColorFormat.ARGB_8888));
+		assertEquals(ColorType.RGB, new Decoder(new Encoder(pixels, width, height, ColorFormat.ARGB_8888).encode()).getColorType());
+		
+		System.out.println("Images with exactly 256 colors should use an 8-bit palette");
+		final int[] square = Arrays.copyOf(pixels, 16 * 16);
+		final Decoder decoder = new Decoder(new Encoder(square, 16, 16, ColorFormat.ARGB_8888).encode());
+		
+		assertEquals(8, PaletteConverter.create(square, 16, 16, ColorFormat.ARGB_8888).bitDepth());
+		assertEquals(ColorType.PALETTE, decoder.getColorType());
+		assertArrayEquals(square, decoder.decode(ColorFormat.ARGB_8888));
+		
+		System.out.println("Palettes should not be used when they are disabled");
+		final int[] black = new int[width * height];
+		final EncoderOptions options = EncoderOptions.builder().palette(false).build();
+		
+		assertEquals(ColorType.GRAYSCALE, new Decoder(new Encoder(black, width, height, ColorFormat.ARGB_8888, options).encode()).getColorType());
+	}
+	
+	@Test
+	public void testIntHashSet() {
+		final IntHashSet set = new IntHashSet(4);
+		
+		System.out.println("Ints should be indexed in the order they were added");
+		assertEquals(0, set.add(0));
+		assertEquals(1, set.add(-7));
+		assertEquals(0, set.add(0));
+		assertEquals(2, set.add(1 << 20));
+		assertEquals(3, set.add(42));
+		assertEquals(IntHashSet.FULL, set.add(43));
+		assertEquals(1, set.indexOf(-7));
+		assertEquals(IntHashSet.NOT_FOUND, set.indexOf(43));
+		
+		System.out.println("A cleared set should be empty");
+		set.clear();
+		
+		assertEquals(0, set.size());
+		assertEquals(IntHashSet.NOT_FOUND, set.indexOf(0));
+		assertEquals(0, set.add(43));
+	}
+}
@@ -0,0 +1,151 @@
+package com.dezzmeister.png.junit.converters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.chunks.meta.PNGData;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.converters.QuantizedConverter;
+
+public class QuantizedConverterTest {
+	
+	@Test
+	public void test() {
+		final int width = 120;
+		final int height = 90;
+		final int[] pixels = photo(width, height, 0xFF);
+		
+		System.out.println("Quantized images should be palette images that stay close to the original pixels");
+		
+		for (final boolean dither : new boolean[] {false, true}) {
+			final PNGData data = ColorFormat.ARGB_8888.convertToPNGFormat(pixels, width, height, true, true, 64, dither);
+			
+			assertEquals(ColorType.PALETTE, data.colorType);
+			assertEquals(8, data.bitDepth);
+			assertTrue(data.palette.length <= 64 * 3);
+			assertNull(data.transparency);
+			
+			final byte[] png = new Encoder(pixels, width, height, ColorFormat.ARGB_8888, EncoderOptions.builder().quantize(64).dither(dither).build()).encode();
+			final int[] decoded = new Decoder(png).decode(ColorFormat.ARGB_8888);
+			
+			assertTrue("Mean error is too large", meanError(pixels, decoded) < (dither ? 12 : 10));
+			
+			for (final int pixel : decoded) {
+				assertEquals(0xFF, pixel >>> 24);
+			}
+			
+			try (final ReusableEncoder encoder = new ReusableEncoder(EncoderOptions.builder().quantize(64).dither(dither).build())) {
+				assertArrayEquals(decoded, new Decoder(encoder.encode(pixels, width, height, ColorFormat.ARGB_8888)).decode(ColorFormat.ARGB_8888));
+			}
+		}
+	}
+	
+	@Test
+	public void testSmallPalette() {
+		final int width = 300;
+		final int height = 250;
+		final int[] pixels = photo(width, height, 0xFF);
+		
+		System.out.println("Large images should be quantized in parallel to the smallest bit depth that holds the palette");
+		
+		final QuantizedConverter converter = QuantizedConverter.create(pixels, width, height, ColorFormat.ARGB_8888, 16, false);
+		
+		assertEquals(4, converter.bitDepth());
+		assertTrue(converter.palette().length <= 16 * 3);
+		assertTrue("Mean error is too large", meanError(pixels, new Decoder(encode(pixels, width, height, 16)).decode(ColorFormat.ARGB_8888)) < 24);
+	}
+	
+	@Test
+	public void testTransparency() {
+		final int width = 64;
+		final int height = 64;
+		final int[] pixels = photo(width, height, 0xC0);
+		
+		for (int i = 0; i < pixels.length; i += 2) {
+			pixels[i] = 0x00FFFFFF & pixels[i];
+		}
+		
+		System.out.println("Transparent pixels should stay transparent, and translucent colors should come first in the palette");
+		
+		final Decoder decoder = new Decoder(encode(pixels, width, height, 32));
+		final int[] decoded = decoder.decode(ColorFormat.ARGB_8888);
+		
+		assertEquals(ColorType.PALETTE, decoder.getColorType());
+		
+		for (int i = 0; i < pixels.length; i++) {
+			assertEquals((i % 2 == 0) ? 0 : 0xC0, decoded[i] >>> 24);
+		}
+	}
+	
+	@Test
+	public void testExact() {
+		final int[] colors = {0xFF102030, 0xFF405060, 0xFF708090};
+		final int[] pixels = new int[40 * 40];
+		final int[] gray = new int[40 * 40];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = colors[i % colors.length];
+			gray[i] = 0xFF000000 | ((i & 0xFF) * 0x010101);
+		}
+		
+		System.out.println("Images that can be written exactly should not be quantized");
+		
+		assertArrayEquals(pixels, new Decoder(encode(pixels, 40, 40, 2)).decode(ColorFormat.ARGB_8888));
+		assertArrayEquals(gray, new Decoder(encode(gray, 40, 40, 2)).decode(ColorFormat.ARGB_8888));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		EncoderOptions.builder().quantize(1);
+	}
+	
+	private static byte[] encode(final int[] pixels, final int width, final int height, final int colors) {
+		return new Encoder(pixels, width, height, ColorFormat.ARGB_8888, EncoderOptions.builder().quantize(colors).build()).encode();
+	}
+	
+	/**
+	 * Smooth colors with a little noise, with thousands of distinct colors
+	 */
+	private static int[] photo(final int width, final int height, final int alpha) {
+		final Random random = new Random(width * height);
+		final int[] pixels = new int[width * height];
+		
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int red = Math.min(255, x * 255 / width + random.nextInt(6));
+				final int green = Math.min(255, y * 255 / height + random.nextInt(6));
+				final int blue = (int) (127.5 + 127.5 * Math.sin((x + y) / 17.0));
+				
+				pixels[x + y * width] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+			}
+		}
+		
+		return pixels;
+	}
+	
+	/**
+	 * Returns the mean absolute difference of every sample.
+	 */
+	private static double meanError(final int[] expected, final int[] actual) {
+		long error = 0;
+		
+		for (int i = 0; i < expected.length; i++) {
+			for (int shift = 0; shift < 32; shift += 8) {
+				error += Math.abs(((expected[i] >>> shift) & 0xFF) - ((actual[i] >>> shift) & 0xFF));
+			}
+		}
+		
+		return error / (expected.length * 4.0);
+	}
+}
@@ -0,0 +1,162 @@
+package com.dezzmeister.png.junit.converters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.ScanlineConverter;
+import com.dezzmeister.png.color.converters.ReducedConverter;
+
+public class ReducedConverterTest {
+	
+	private static final int WIDTH = 23;
+	
+	private static final int HEIGHT = 11;
+	
+	/**
+	 * Options that disable palettes, so that only the reduced color type is tested
+	 */
+	private static final EncoderOptions NO_PALETTE = EncoderOptions.builder().palette(false).build();
+	
+	@Test
+	public void test() {
+		final int[] opaque = new int[WIDTH * HEIGHT];
+		final int[] gray = new int[WIDTH * HEIGHT];
+		final int[] grayAlpha = new int[WIDTH * HEIGHT];
+		final int[] keyed = new int[WIDTH * HEIGHT];
+		final int[] twoAlphas = new int[WIDTH * HEIGHT];
+		
+		for (int i = 0; i < opaque.length; i++) {
+			final int value = (i * 97) & 0xFF;
+			
+			opaque[i] = 0xFF000000 | (i * 7919);
+			gray[i] = 0xFF000000 | (value * 0x010101);
+			grayAlpha[i] = (i << 24) | (value * 0x010101);
+			keyed[i] = (i % 3 == 0) ? 0x00123456 : opaque[i];
+			twoAlphas[i] = (i % 3 == 0) ? 0x00123456 : (i % 3 == 1) ? 0x10123456 : opaque[i];
+		}
+		
+		System.out.println("Opaque images should not have alpha samples");
+		check(opaque, ColorFormat.ARGB_8888, ColorType.RGB, 8);
+		
+		System.out.println("Gray images should be written as grayscale");
+		check(gray, ColorFormat.ARGB_8888, ColorType.GRAYSCALE, 8);
+		check(grayAlpha, ColorFormat.ARGB_8888, ColorType.GRAYSCALE_ALPHA, 8);
+		
+		System.out.println("A single transparent color should use a tRNS chunk");
+		check(keyed, ColorFormat.ARGB_8888, ColorType.RGB, 8);
+		check(twoAlphas, ColorFormat.ARGB_8888, ColorType.RGB_ALPHA, 8);
+		
+		System.out.println("The transparent color cannot be used by an opaque pixel");
+		keyed[0] = 0xFF123456;
+		check(keyed, ColorFormat.ARGB_8888, ColorType.RGB_ALPHA, 8);
+		keyed[0] = 0x00123456;
+		keyed[keyed.length - 1] = 0xFF123456;
+		check(keyed, ColorFormat.ARGB_8888, ColorType.RGB_ALPHA, 8);
+		
+		System.out.println("RGBA and RGB input should be reduced the same way");
+		final int[] rgba = new int[grayAlpha.length];
+		
+		for (int i = 0; i < rgba.length; i++) {
+			rgba[i] = (grayAlpha[i] << 8) | (grayAlpha[i] >>> 24);
+		}
+		
+		check(rgba, ColorFormat.RGBA_8888, ColorType.GRAYSCALE_ALPHA, 8);
+		final int[] rgb = new int[opaque.length];
+		
+		for (int i = 0; i < rgb.length; i++) {
+			rgb[i] = opaque[i] & 0xFFFFFF;
+		}
+		
+		check(rgb, ColorFormat.RGB_888, ColorType.RGB, 8);
+	}
+	
+	@Test
+	public void testBitDepth() {
+		final int[] black = new int[WIDTH * HEIGHT];
+		final int[] gray4 = new int[WIDTH * HEIGHT];
+		final int[] keyedGray = new int[WIDTH * HEIGHT];
+		
+		for (int i = 0; i < black.length; i++) {
+			black[i] = (i % 2 == 0) ? 0xFF000000 : 0xFFFFFFFF;
+			gray4[i] = 0xFF000000 | (((i % 16) * 17) * 0x010101);
+			keyedGray[i] = (i % 5 == 0) ? 0x00555555 : 0xFFAAAAAA;
+		}
+		
+		System.out.println("Gray samples should be written with as few bits as possible");
+		check(black, ColorFormat.ARGB_8888, ColorType.GRAYSCALE, 1);
+		check(gray4, ColorFormat.ARGB_8888, ColorType.GRAYSCALE, 4);
+		
+		final ScanlineConverter keyed = ReducedConverter.analyze(keyedGray, WIDTH, HEIGHT, ColorFormat.ARGB_8888, null);
+		
+		assertEquals(ColorType.GRAYSCALE, keyed.colorType());
+		assertEquals(2, keyed.bitDepth());
+		assertArrayEquals(new byte[] {0, 1}, keyed.transparency());
+		check(keyedGray, ColorFormat.ARGB_8888, ColorType.GRAYSCALE, 2);
+		
+		System.out.println("16-bit samples with equal bytes should be written with 8 bits");
+		final int[] samples = new int[WIDTH * HEIGHT * 4];
+		
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = ((i * 31) & 0xFF) * 257;
+		}
+		
+		check(samples, ColorFormat.RGBA_16, ColorType.RGB_ALPHA, 8);
+		
+		samples[samples.length - 1] = 12345;
+		check(samples, ColorFormat.RGBA_16, ColorType.RGB_ALPHA, 16);
+		
+		for (int i = 3; i < samples.length; i += 4) {
+			samples[i] = 65535;
+		}
+		
+		check(samples, ColorFormat.RGBA_16, ColorType.RGB, 8);
+		
+		System.out.println("16-bit grayscale should be reduced as before");
+		final int[] gray16 = new int[WIDTH * HEIGHT];
+		
+		for (int i = 0; i < gray16.length; i++) {
+			gray16[i] = (i * 4099) & 0xFFFF;
+		}
+		
+		check(gray16, ColorFormat.GRAYSCALE, ColorType.GRAYSCALE, 16);
+		
+		for (int i = 0; i < gray16.length; i++) {
+			gray16[i] = (i % 4) * 21845;
+		}
+		
+		check(gray16, ColorFormat.GRAYSCALE, ColorType.GRAYSCALE, 2);
+		
+		System.out.println("Reduction should be skipped when it is disabled");
+		final EncoderOptions options = NO_PALETTE.toBuilder().reduce(false).build();
+		final Decoder decoder = new Decoder(new Encoder(black, WIDTH, HEIGHT, ColorFormat.ARGB_8888, options).encode());
+		
+		assertEquals(ColorType.RGB_ALPHA, decoder.getColorType());
+		assertNull(ReducedConverter.analyze(black, WIDTH, HEIGHT, ColorFormat.ARGB_8888, null).palette());
+	}
+	
+	/**
+	 * Encodes an image with {@link Encoder} and {@link ReusableEncoder}, checks the color type and bit depth, and checks that
+	 * the image decodes to the original pixels.
+	 */
+	private static void check(final int[] pixels, final ColorFormat format, final ColorType colorType, final int bitDepth) {
+		final byte[] png = new Encoder(pixels, WIDTH, HEIGHT, format, NO_PALETTE).encode();
+		final Decoder decoder = new Decoder(png);
+		
+		assertEquals(colorType, decoder.getColorType());
+		assertEquals(bitDepth, decoder.getBitDepth());
+		assertArrayEquals(pixels, decoder.decode(format));
+		
+		try (final ReusableEncoder encoder = new ReusableEncoder(NO_PALETTE)) {
+			assertArrayEquals(png, encoder.encode(pixels, WIDTH, HEIGHT, format));
+		}
+	}
+}
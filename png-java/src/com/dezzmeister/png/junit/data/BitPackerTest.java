@@ -0,0 +1,106 @@
+package com.dezzmeister.png.junit.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.data.BitPacker;
+import com.dezzmeister.png.data.ByteBitSet;
+
+public class BitPackerTest {
+	
+	@Test
+	public void test() {
+		final Random random = new Random(17);
+		
+		System.out.println("BitPacker should pack samples like packing them one bit at a time");
+		
+		for (int bitDepth = 1; bitDepth <= 32; bitDepth++) {
+			for (final int count : new int[] {0, 1, 7, 8, 9, 63, 64, 65, 333}) {
+				final int[] samples = new int[count + 3];
+				
+				for (int i = 0; i < samples.length; i++) {
+					samples[i] = random.nextInt() & (int) (0xFFFFFFFFL >>> (32 - bitDepth));
+				}
+				
+				final byte[] expected = pack(samples, 3, count, bitDepth, 2);
+				final byte[] packed = new byte[expected.length];
+				final byte[] put = new byte[expected.length];
+				final int length = (int) (((long) count * bitDepth + 7) >>> 3);
+				
+				// Packing overwrites the output, so garbage in the output should not matter
+				Arrays.fill(packed, 2, 2 + length, (byte) 0xA5);
+				
+				assertEquals(length, BitPacker.pack(samples, 3, count, bitDepth, packed, 2));
+				assertArrayEquals(expected, packed);
+				
+				final BitPacker packer = new BitPacker(put, 2, bitDepth);
+				
+				for (int i = 0; i < count; i++) {
+					packer.put(samples[3 + i]);
+				}
+				
+				assertEquals(2 + length, packer.finish());
+				assertArrayEquals(expected, put);
+			}
+		}
+	}
+	
+	@Test
+	public void testByteBitSet() {
+		final Random random = new Random(23);
+		final int[] values = new int[500];
+		final int[] widths = new int[values.length];
+		long bits = 0;
+		
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt();
+			widths[i] = random.nextInt(33);
+			bits += widths[i];
+		}
+		
+		System.out.println("ByteBitSet should insert bits of any length at any bit index");
+		final ByteBitSet set = new ByteBitSet(bits);
+		final byte[] expected = new byte[set.getArray().length];
+		long bitIndex = 0;
+		
+		for (int i = 0; i < values.length; i++) {
+			for (int bit = widths[i] - 1; bit >= 0; bit--) {
+				setBit(expected, bitIndex++, (values[i] >>> bit) & 1);
+			}
+		}
+		
+		bitIndex = 0;
+		
+		for (int i = 0; i < values.length; i++) {
+			bitIndex = set.put(bitIndex, values[i], widths[i]);
+		}
+		
+		assertEquals(bits, bitIndex);
+		assertArrayEquals(expected, set.getArray());
+	}
+	
+	/**
+	 * Packs samples one bit at a time, into an array with <code>outOffset</code> zero bytes before the packed samples
+	 */
+	private static byte[] pack(final int[] samples, final int offset, final int count, final int bitDepth, final int outOffset) {
+		final byte[] out = new byte[outOffset + (int) (((long) count * bitDepth + 7) >>> 3)];
+		long bitIndex = (long) outOffset * 8;
+		
+		for (int i = 0; i < count; i++) {
+			for (int bit = bitDepth - 1; bit >= 0; bit--) {
+				setBit(out, bitIndex++, (samples[offset + i] >>> bit) & 1);
+			}
+		}
+		
+		return out;
+	}
+	
+	private static void setBit(final byte[] array, final long bitIndex, final int bit) {
+		array[(int) (bitIndex >>> 3)] |= bit << (7 - (int) (bitIndex & 7));
+	}
+}
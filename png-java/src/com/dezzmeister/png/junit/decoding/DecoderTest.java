@@ -0,0 +1,102 @@
+package com.dezzmeister.png.junit.decoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.PngReader;
+import com.dezzmeister.png.PngWriter;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.filters.Filter;
+
+public class DecoderTest {
+	
+	@Test
+	public void test() throws IOException {
+		final int width = 71;
+		final int height = 43;
+		final int[] pixels = new int[width * height];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (i % 5 == 0) ? (int)(Math.random() * Integer.MAX_VALUE) : (0xC0000000 | (i * 37));
+		}
+		
+		System.out.println("Decoded pixels should match the encoded pixels");
+		
+		for (final Filter filter : Filter.values()) {
+			final EncoderOptions options = EncoderOptions.builder().filter(filter).maxChunkLength(500).build();
+			final byte[] png = new Encoder(pixels, width, height, ColorFormat.ARGB_8888, options).encode();
+			final Decoder decoder = new Decoder(png);
+			
+			assertEquals(width, decoder.getWidth());
+			assertEquals(height, decoder.getHeight());
+			assertEquals(ColorType.RGB_ALPHA, decoder.getColorType());
+			assertArrayEquals(pixels, decoder.decode(ColorFormat.ARGB_8888));
+		}
+		
+		System.out.println("Pixels should be converted to the requested color format");
+		final byte[] png = new Encoder(pixels, width, height, ColorFormat.ARGB_8888).encode();
+		final int[] rgb = new Decoder(png).decode(ColorFormat.RGB_888);
+		final int[] rgba = new Decoder(png).decode(ColorFormat.RGBA_8888);
+		final int[] argb16 = new Decoder(png).decode(ColorFormat.ARGB_16);
+		
+		for (int i = 0; i < pixels.length; i++) {
+			assertEquals(pixels[i] & 0xFFFFFF, rgb[i]);
+			assertEquals((pixels[i] << 8) | (pixels[i] >>> 24), rgba[i]);
+			assertEquals((pixels[i] >>> 24) * 257, argb16[i * 4]);
+			assertEquals((pixels[i] & 0xFF) * 257, argb16[i * 4 + 3]);
+		}
+		
+		System.out.println("16-bit samples should survive a round trip");
+		final int[] samples = new int[width * height * 3];
+		
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (int)(Math.random() * 65536);
+		}
+		
+		assertArrayEquals(samples, new Decoder(new Encoder(samples, width, height, ColorFormat.RGB_16).encode()).decode(ColorFormat.RGB_16));
+		
+		System.out.println("PngReader should decode a streamed PNG one row at a time");
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		
+		try (final PngWriter writer = new PngWriter(baos, width, height, ColorFormat.ARGB_8888)) {
+			for (int row = 0; row < height; row++) {
+				writer.writeRow(pixels, row * width);
+			}
+		}
+		
+		try (final PngReader reader = new PngReader(new ByteArrayInputStream(baos.toByteArray()), ColorFormat.ARGB_8888)) {
+			final int[] row = new int[reader.getRowLength()];
+			
+			for (int y = 0; y < height; y++) {
+				reader.readRow(row);
+				
+				for (int x = 0; x < width; x++) {
+					assertEquals(pixels[y * width + x], row[x]);
+				}
+			}
+			
+			reader.finish();
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testCorruptCRC() {
+		final int[] pixels = new int[16 * 16];
+		final byte[] png = new Encoder(pixels, 16, 16, ColorFormat.ARGB_8888).encode();
+		
+		// Last byte of the IDAT chunk's CRC
+		png[png.length - 13]++;
+		
+		new Decoder(png).decode(ColorFormat.ARGB_8888);
+	}
+}
@@ -0,0 +1,127 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+
+public class BufferInputTest {
+	
+	private static final int WIDTH = 37;
+	
+	private static final int HEIGHT = 23;
+	
+	/**
+	 * Ints of padding at the end of each row
+	 */
+	private static final int PADDING = 5;
+	
+	private static final EncoderOptions OPTIONS = EncoderOptions.builder().reduce(false).palette(false).build();
+	
+	@Test
+	public void testIntBuffer() throws DataFormatException {
+		final int[] pixels = TestPixels.randomPixels(WIDTH * HEIGHT, 1);
+		final int stride = WIDTH + PADDING;
+		final IntBuffer buffer = IntBuffer.allocate(3 + stride * HEIGHT);
+		
+		buffer.position(3);
+		
+		for (int y = 0; y < HEIGHT; y++) {
+			buffer.put(3 + y * stride, pixels, y * WIDTH, WIDTH);
+		}
+		
+		System.out.println("Pixels in an IntBuffer with padded rows should encode like an int[]");
+		
+		final byte[] expected = new Encoder(pixels, WIDTH, HEIGHT, ColorFormat.ARGB_8888, OPTIONS).encode();
+		
+		assertArrayEquals(expected, new Encoder(buffer, WIDTH, HEIGHT, stride, ColorFormat.ARGB_8888, OPTIONS).encode());
+		assertEquals(3, buffer.position());
+		
+		try (final ReusableEncoder encoder = new ReusableEncoder(OPTIONS)) {
+			assertArrayEquals(expected, encoder.encode(buffer, WIDTH, HEIGHT, stride, ColorFormat.ARGB_8888));
+		}
+		
+		assertArrayEquals(pixels, new Decoder(expected).decode(ColorFormat.ARGB_8888));
+	}
+	
+	@Test
+	public void testByteBuffer() throws DataFormatException {
+		final int[] pixels = TestPixels.randomPixels(WIDTH * HEIGHT, 1);
+		final int stride = (WIDTH + PADDING) * 4;
+		final byte[] expected = new Encoder(pixels, WIDTH, HEIGHT, ColorFormat.ARGB_8888, OPTIONS).encode();
+		
+		System.out.println("Pixels in heap and direct ByteBuffers should encode like an int[] in either byte order");
+		
+		for (final ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+			for (final ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(stride * HEIGHT), ByteBuffer.allocateDirect(stride * HEIGHT)}) {
+				final ByteBuffer ordered = buffer.duplicate().order(order);
+				
+				for (int y = 0; y < HEIGHT; y++) {
+					for (int x = 0; x < WIDTH; x++) {
+						ordered.putInt(y * stride + x * 4, pixels[x + y * WIDTH]);
+					}
+				}
+				
+				assertArrayEquals(expected, new Encoder(buffer, order, WIDTH, HEIGHT, stride, ColorFormat.ARGB_8888, OPTIONS).encode());
+				assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+				
+				try (final ReusableEncoder encoder = new ReusableEncoder(OPTIONS)) {
+					assertArrayEquals(expected, encoder.encode(buffer, order, WIDTH, HEIGHT, stride, ColorFormat.ARGB_8888));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testRaw() throws DataFormatException {
+		final int[] rgba = TestPixels.randomPixels(WIDTH * HEIGHT, 1);
+		final int stride = WIDTH * 4 + PADDING;
+		final ByteBuffer scanlines = ByteBuffer.allocateDirect(stride * HEIGHT);
+		
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				scanlines.putInt(y * stride + x * 4, rgba[x + y * WIDTH]);
+			}
+		}
+		
+		System.out.println("Raw RGBA scanlines should encode like RGBA_8888 pixels without being converted");
+		
+		final byte[] expected = new Encoder(rgba, WIDTH, HEIGHT, ColorFormat.RGBA_8888, OPTIONS).encode();
+		
+		assertArrayEquals(expected, Encoder.raw(scanlines, WIDTH, HEIGHT, stride, ColorType.RGB_ALPHA, 8, OPTIONS).encode());
+		
+		try (final ReusableEncoder encoder = new ReusableEncoder(OPTIONS)) {
+			assertArrayEquals(expected, encoder.encodeRaw(scanlines, WIDTH, HEIGHT, stride, ColorType.RGB_ALPHA, 8));
+		}
+		
+		assertArrayEquals(rgba, new Decoder(expected).decode(ColorFormat.RGBA_8888));
+		
+		final ByteBuffer gray = ByteBuffer.wrap(new byte[] {(byte) 0b10110000, (byte) 0b01000000});
+		final Decoder decoder = new Decoder(Encoder.raw(gray, 3, 2, 1, ColorType.GRAYSCALE, 1, OPTIONS).encode());
+		
+		assertEquals(ColorType.GRAYSCALE, decoder.getColorType());
+		assertEquals(1, decoder.getBitDepth());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooSmall() {
+		new Encoder(IntBuffer.allocate(WIDTH * HEIGHT - 1), WIDTH, HEIGHT, WIDTH, ColorFormat.ARGB_8888, OPTIONS);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testRawPalette() {
+		Encoder.raw(ByteBuffer.allocate(16), 4, 4, 4, ColorType.PALETTE, 8, OPTIONS);
+	}
+}
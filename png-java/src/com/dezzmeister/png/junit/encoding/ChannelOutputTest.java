@@ -0,0 +1,163 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.data.DirectBufferPool;
+
+public class ChannelOutputTest {
+	
+	@Test
+	public void test() throws IOException {
+		final int[] pixels = TestPixels.randomPixels(300 * 200, 7);
+		final Encoder encoder = new Encoder(pixels, 300, 200, ColorFormat.ARGB_8888);
+		final byte[] expected = encoder.encode();
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final Path file = Files.createTempFile("png-java", ".png");
+		
+		System.out.println("A PNG written to a channel or a file should be the same as the encoded byte array");
+		
+		try {
+			encoder.encode(Channels.newChannel(stream));
+			assertArrayEquals(expected, stream.toByteArray());
+			
+			encoder.encodeToFile(file);
+			assertArrayEquals(expected, Files.readAllBytes(file));
+			
+			// Chunks written to a channel are no longer than the buffer size
+			
+			try (final ReusableEncoder reusable = new ReusableEncoder(EncoderOptions.builder().maxChunkLength(EncoderOptions.DEFAULT_BUFFER_SIZE).build())) {
+				try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					reusable.encode(pixels, 300, 200, ColorFormat.ARGB_8888, channel);
+				}
+				
+				assertArrayEquals(reusable.encode(pixels, 300, 200, ColorFormat.ARGB_8888), Files.readAllBytes(file));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void testStreaming() throws IOException {
+		final int[] pixels = TestPixels.randomPixels(512 * 512, 1);
+		final EncoderOptions chunked = EncoderOptions.builder().maxChunkLength(EncoderOptions.DEFAULT_BUFFER_SIZE).build();
+		final CountingChannel channel = new CountingChannel();
+		final Path file = Files.createTempFile("png-java", ".png");
+		final byte[] expected;
+		
+		try (final ReusableEncoder reusable = new ReusableEncoder(chunked)) {
+			expected = reusable.encode(pixels, 512, 512, ColorFormat.ARGB_8888);
+		}
+		
+		System.out.println("A PNG larger than the pooled buffers should be written to a channel in pieces no larger than one buffer");
+		
+		assertTrue(expected.length > 4 * DirectBufferPool.DEFAULT_BUFFER_SIZE);
+		
+		try {
+			Encoder.encode(pixels, 512, 512, ColorFormat.ARGB_8888, EncoderOptions.DEFAULT, channel);
+			assertArrayEquals(expected, channel.bytes.toByteArray());
+			assertTrue(channel.largestWrite <= DirectBufferPool.DEFAULT_BUFFER_SIZE);
+			assertTrue(channel.writes > expected.length / DirectBufferPool.DEFAULT_BUFFER_SIZE);
+			
+			Encoder.encodeToFile(pixels, 512, 512, ColorFormat.ARGB_8888, EncoderOptions.DEFAULT, file);
+			assertArrayEquals(expected, Files.readAllBytes(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void testPool() throws IOException {
+		final DirectBufferPool pool = new DirectBufferPool(7, 2);
+		final byte[][] parts = {new byte[3], new byte[0], new byte[40], new byte[7], new byte[0], new byte[1]};
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		final Random random = new Random(1);
+		final Path file = Files.createTempFile("png-java", ".bin");
+		
+		for (final byte[] part : parts) {
+			random.nextBytes(part);
+			expected.write(part);
+		}
+		
+		System.out.println("Sources should be split across small pooled buffers and written in order, with and without gathering writes");
+		
+		try {
+			final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			
+			assertEquals(expected.size(), pool.write(Channels.newChannel(stream), wrap(parts)));
+			assertArrayEquals(expected.toByteArray(), stream.toByteArray());
+			
+			try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				assertEquals(expected.size(), pool.write(channel, wrap(parts)));
+			}
+			
+			assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	/**
+	 * Collects the bytes written to it and records the size of each write
+	 */
+	private static class CountingChannel implements WritableByteChannel {
+		
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		private int writes = 0;
+		
+		private int largestWrite = 0;
+		
+		@Override
+		public int write(final ByteBuffer src) {
+			final int length = src.remaining();
+			final byte[] data = new byte[length];
+			
+			src.get(data);
+			bytes.write(data, 0, length);
+			writes++;
+			largestWrite = Math.max(largestWrite, length);
+			
+			return length;
+		}
+		
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+		
+		@Override
+		public void close() {
+		
+		}
+	}
+	
+	private static ByteBuffer[] wrap(final byte[][] parts) {
+		final ByteBuffer[] buffers = new ByteBuffer[parts.length];
+		
+		for (int i = 0; i < parts.length; i++) {
+			buffers[i] = ByteBuffer.wrap(parts[i]);
+		}
+		
+		return buffers;
+	}
+}
@@ -0,0 +1,98 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.chunks.ChunkType;
+import com.dezzmeister.png.chunks.ChunkWriter;
+import com.dezzmeister.png.chunks.IEND;
+import com.dezzmeister.png.chunks.IHDR;
+import com.dezzmeister.png.chunks.PLTE;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.functions.CRC;
+
+public class ChunkWriterTest {
+	
+	@Test
+	public void test() throws IOException {
+		final Random random = new Random(29);
+		final byte[] data = new byte[300];
+		random.nextBytes(data);
+		
+		System.out.println("Chunks framed into arrays and streams should have the right length, type, data, and CRC");
+		
+		final byte[] expected = chunk(ChunkType.PLTE, data);
+		
+		assertArrayEquals(expected, ChunkWriter.encode(ChunkType.PLTE, data));
+		assertArrayEquals(expected, PLTE.encode(data));
+		
+		final byte[] out = new byte[7 + expected.length];
+		
+		assertEquals(expected.length, PLTE.write(data, out, 7));
+		assertArrayEquals(expected, Arrays.copyOfRange(out, 7, out.length));
+		
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final ChunkWriter writer = new ChunkWriter(stream);
+		
+		// Write the same chunk twice to make sure the CRC is reset between chunks
+		
+		writer.writeChunk(ChunkType.PLTE, data);
+		writer.writeChunk(ChunkType.PLTE, data, 0, data.length);
+		
+		final byte[] typeAndData = Arrays.copyOfRange(expected, 4, expected.length - 4);
+		writer.writeChunk(typeAndData, data.length, (int) CRC.crc(typeAndData));
+		
+		final byte[] written = stream.toByteArray();
+		
+		assertEquals(expected.length * 3, written.length);
+		
+		for (int i = 0; i < 3; i++) {
+			assertArrayEquals(expected, Arrays.copyOfRange(written, i * expected.length, (i + 1) * expected.length));
+		}
+		
+		final byte[] ihdrData = ByteBuffer.allocate(13).putInt(640).putInt(480).put((byte) 8).put(ColorType.RGB_ALPHA.getTypeCode()).put(new byte[] {0, 0, 1}).array();
+		
+		assertArrayEquals(chunk(ChunkType.IHDR, ihdrData), IHDR.encode(640, 480, (byte) 8, ColorType.RGB_ALPHA, true));
+		assertEquals(IHDR.LENGTH, IHDR.encode(640, 480, (byte) 8, ColorType.RGB_ALPHA, true).length);
+	}
+	
+	@Test
+	public void testIEND() throws IOException {
+		final byte[] expected = {0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xAE, 0x42, 0x60, (byte) 0x82};
+		
+		System.out.println("The IEND chunk should always be the same 12 bytes, and copies of it should not share its array");
+		
+		final byte[] iend = IEND.encode();
+		
+		assertArrayEquals(expected, iend);
+		iend[0] = 1;
+		assertArrayEquals(expected, IEND.encode());
+		
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		IEND.write(stream);
+		
+		assertArrayEquals(expected, stream.toByteArray());
+		
+		final byte[] out = new byte[IEND.LENGTH + 2];
+		
+		assertEquals(IEND.LENGTH, IEND.write(out, 2));
+		assertArrayEquals(expected, Arrays.copyOfRange(out, 2, out.length));
+	}
+	
+	/**
+	 * Builds a chunk the slow way, for comparison.
+	 */
+	private static byte[] chunk(final ChunkType type, final byte[] data) {
+		final ByteBuffer typeAndData = ByteBuffer.allocate(4 + data.length).put(type.getByteName()).put(data);
+		
+		return ByteBuffer.allocate(12 + data.length).putInt(data.length).put(typeAndData.array()).putInt((int) CRC.crc(typeAndData.array())).array();
+	}
+}
@@ -0,0 +1,121 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.PngWriter;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.metrics.EncodeStage;
+import com.dezzmeister.png.metrics.EncodeStats;
+import com.dezzmeister.png.metrics.MetricsRegistry;
+
+public class EncodeListenerTest {
+	
+	private static final int WIDTH = 97;
+	
+	private static final int HEIGHT = 53;
+	
+	@Test
+	public void test() throws IOException {
+		final int[] pixels = pixels();
+		final List<EncodeStats> received = new ArrayList<EncodeStats>();
+		final EncoderOptions options = EncoderOptions.builder().listener(received::add).build();
+		final byte[] expected = new Encoder(pixels, WIDTH, HEIGHT, ColorFormat.ARGB_8888).encode();
+		
+		System.out.println("A listener should not change the encoded PNG");
+		assertArrayEquals(expected, new Encoder(pixels, WIDTH, HEIGHT, ColorFormat.ARGB_8888, options).encode());
+		
+		final byte[] parallel = new Encoder(pixels, WIDTH, HEIGHT, ColorFormat.ARGB_8888, options.toBuilder().threads(2).blockSize(4096).build()).encode();
+		
+		try (final ReusableEncoder encoder = new ReusableEncoder(options)) {
+			assertArrayEquals(expected, encoder.encode(pixels, WIDTH, HEIGHT, ColorFormat.ARGB_8888));
+		}
+		
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		
+		try (final PngWriter writer = new PngWriter(baos, WIDTH, HEIGHT, ColorFormat.ARGB_8888, options)) {
+			for (int row = 0; row < HEIGHT; row++) {
+				writer.writeRow(pixels, row * WIDTH);
+			}
+		}
+		
+		System.out.println("Every encoder should report its stats once per image");
+		assertEquals(4, received.size());
+		
+		final long[] pngLengths = {expected.length, parallel.length, expected.length, baos.size()};
+		
+		for (int i = 0; i < received.size(); i++) {
+			final EncodeStats stats = received.get(i);
+			
+			assertEquals((long) WIDTH * 4 * HEIGHT, stats.getRawBytes());
+			assertEquals((long) (WIDTH * 4 + 1) * HEIGHT, stats.getFilteredBytes());
+			assertTrue(stats.getCompressedBytes() > 0 && stats.getCompressedBytes() < stats.getPngBytes());
+			assertEquals(HEIGHT, rows(stats));
+			assertTrue(stats.getTotalNanos() > 0);
+			assertTrue(stats.getNanos(EncodeStage.DEFLATE) > 0);
+			assertEquals(pngLengths[i], stats.getPngBytes());
+		}
+	}
+	
+	@Test
+	public void testRegistry() {
+		final int[] pixels = pixels();
+		final MetricsRegistry metrics = new MetricsRegistry();
+		final EncoderOptions options = EncoderOptions.builder().filter(Filter.UP).listener(metrics).build();
+		
+		final byte[] first = new Encoder(pixels, WIDTH, HEIGHT, ColorFormat.ARGB_8888, options).encode();
+		final byte[] second = new Encoder(pixels, WIDTH, HEIGHT, ColorFormat.ARGB_8888, options).encode();
+		
+		System.out.println("The registry should add up the stats of every image");
+		final Map<String, Long> snapshot = metrics.snapshot();
+		
+		assertEquals(2L, (long) snapshot.get("png.images"));
+		assertEquals(first.length + second.length, (long) snapshot.get("png.bytes.png"));
+		assertEquals(2L * HEIGHT, (long) snapshot.get("png.rows.up"));
+		assertEquals(0L, (long) snapshot.get("png.rows.paeth"));
+		assertTrue(snapshot.get("png.nanos.filter") > 0);
+		
+		System.out.println("Resetting the registry should set every metric to zero");
+		metrics.reset();
+		
+		for (final long value : metrics.snapshot().values()) {
+			assertEquals(0, value);
+		}
+	}
+	
+	/**
+	 * Noisy pixels with more than 256 colors, so that the image is written as 8-bit RGBA
+	 */
+	private static int[] pixels() {
+		final int[] pixels = new int[WIDTH * HEIGHT];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (i * 0x9E3779B9) ^ (i << 7);
+		}
+		
+		return pixels;
+	}
+	
+	private static long rows(final EncodeStats stats) {
+		long rows = 0;
+		
+		for (final Filter filter : Filter.values()) {
+			rows += stats.getFilterCount(filter);
+		}
+		
+		return rows;
+	}
+}
@@ -0,0 +1,87 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.CompressionStrategy;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.filters.Filter;
+
+public class EncoderOptionsTest {
+	
+	@Test
+	public void test() throws DataFormatException {
+		final int width = 83;
+		final int height = 59;
+		final int maxChunkLength = 1000;
+		final int[] pixels = new int[width * height];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (i % 7 == 0) ? (int)(Math.random() * Integer.MAX_VALUE) : (0xFF000000 | (i * 3));
+		}
+		
+		final EncoderOptions options = EncoderOptions.builder()
+				.level(1)
+				.strategy(CompressionStrategy.HUFFMAN_ONLY)
+				.filter(Filter.SUB)
+				.maxChunkLength(maxChunkLength)
+				.bufferSize(100)
+				.build();
+		
+		final byte[] fast = new Encoder(pixels, width, height, ColorFormat.ARGB_8888, options).encode();
+		final byte[] fastParallel = new Encoder(pixels, width, height, ColorFormat.ARGB_8888, options.toBuilder().threads(3).blockSize(4096).build()).encode();
+		final byte[] best = new Encoder(pixels, width, height, ColorFormat.ARGB_8888, options.toBuilder().level(9).strategy(CompressionStrategy.DEFAULT).build()).encode();
+		
+		System.out.println("IDAT chunks should respect the maximum chunk length, and compression settings should not change the image data");
+		final byte[] fastData = PngWriterTest.inflateIDAT(fast, maxChunkLength);
+		assertArrayEquals(PngWriterTest.inflateIDAT(best, maxChunkLength), fastData);
+		assertArrayEquals(PngWriterTest.inflateIDAT(fastParallel, maxChunkLength), fastData);
+		
+		System.out.println("Huffman-only compression should not beat the best compression level");
+		assertTrue(fast.length > best.length);
+		
+		System.out.println("Every line should use the fixed filter");
+		
+		for (int line = 0; line < height; line++) {
+			assertTrue(fastData[line * (width * 4 + 1)] == Filter.SUB.typeCode);
+		}
+	}
+	
+	@Test
+	public void testSharedPool() {
+		final int[] pixels = new int[64 * 64];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (i % 5 == 0) ? (i * 0x9E3779B9) : (0xFF000000 | i);
+		}
+		
+		final EncoderOptions parallel = EncoderOptions.builder().threads(5).blockSize(1024).build();
+		final EncoderOptions oneBlock = EncoderOptions.builder().threads(6).build();
+		final byte[] serial = new Encoder(pixels, 64, 64, ColorFormat.ARGB_8888, EncoderOptions.DEFAULT).encode();
+		
+		System.out.println("Encoders with more than one thread should share one pool, and small images should not be compressed in parallel");
+		
+		for (int i = 0; i < 10; i++) {
+			new Encoder(pixels, 64, 64, ColorFormat.ARGB_8888, parallel).encode();
+		}
+		
+		assertArrayEquals(serial, new Encoder(pixels, 64, 64, ColorFormat.ARGB_8888, oneBlock).encode());
+		assertTrue(countThreads("png-deflate-5-") <= 5);
+		assertTrue(countThreads("png-deflate-6-") == 0);
+	}
+	
+	private static long countThreads(final String prefix) {
+		return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().startsWith(prefix)).count();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLevel() {
+		EncoderOptions.builder().level(10);
+	}
+}
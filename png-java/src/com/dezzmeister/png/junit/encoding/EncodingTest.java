@@ -1,7 +1,14 @@
 package com.dezzmeister.png.junit.encoding;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.chunks.IDAT;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.chunks.meta.PNGData;
+
 public class EncodingTest {
 	
 	@Test
@@ -10,4 +17,26 @@ public class EncodingTest {
 		final int width = 50;
 		final int height = 50;
 	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLarge() {
+		System.out.println("Filtered image data that does not fit in a byte array should be rejected before it is allocated");
+		IDAT.encode(hugeImage(), EncoderOptions.DEFAULT);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLargeInterlaced() {
+		System.out.println("Interlaced image data that does not fit in a byte array should be rejected before it is allocated");
+		IDAT.encode(hugeImage(), EncoderOptions.builder().interlace(true).build());
+	}
+	
+	/**
+	 * Returns an image whose filtered scanlines are over 2 GB. Every row is the same array, so it uses very little memory.
+	 */
+	private static PNGData hugeImage() {
+		final byte[][] scanlines = new byte[32768][];
+		Arrays.fill(scanlines, new byte[65536]);
+		
+		return new PNGData(ColorType.RGB_ALPHA, (byte) 8, scanlines, 16384, scanlines.length);
+	}
 }
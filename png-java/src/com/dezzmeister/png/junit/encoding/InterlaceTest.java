@@ -0,0 +1,132 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.PngReader;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.chunks.meta.Adam7;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.chunks.meta.PNGData;
+import com.dezzmeister.png.color.ColorFormat;
+
+public class InterlaceTest {
+	
+	private static final EncoderOptions OPTIONS = EncoderOptions.builder().interlace(true).build();
+	
+	private static final int[][] SIZES = {{1, 1}, {2, 3}, {5, 5}, {7, 9}, {33, 17}, {8, 8}, {100, 1}, {1, 100}};
+	
+	@Test
+	public void testPasses() {
+		System.out.println("Adam7 passes should cover every pixel exactly once");
+		
+		for (final int[] size : SIZES) {
+			int pixels = 0;
+			
+			for (int pass = 0; pass < Adam7.PASSES; pass++) {
+				pixels += Adam7.passWidth(pass, size[0]) * Adam7.passHeight(pass, size[1]);
+			}
+			
+			assertEquals(size[0] * size[1], pixels);
+		}
+		
+		final PNGData image = new PNGData(ColorType.GRAYSCALE, (byte) 8, new byte[][] {{1, 2, 3, 4, 5}}, 5, 1);
+		
+		assertArrayEquals(new byte[] {1}, Adam7.extract(image, 0).scanlines[0]);
+		assertArrayEquals(new byte[] {5}, Adam7.extract(image, 1).scanlines[0]);
+		assertNull(Adam7.extract(image, 2));
+		assertArrayEquals(new byte[] {3}, Adam7.extract(image, 3).scanlines[0]);
+		assertNull(Adam7.extract(image, 4));
+		assertArrayEquals(new byte[] {2, 4}, Adam7.extract(image, 5).scanlines[0]);
+		assertNull(Adam7.extract(image, 6));
+	}
+	
+	@Test
+	public void test() throws IOException, DataFormatException {
+		final Random random = new Random(7);
+		
+		System.out.println("Interlaced images should decode to the original pixels in every color type and bit depth");
+		
+		for (final int[] size : SIZES) {
+			final int count = size[0] * size[1];
+			
+			// 16-bit samples, 8-bit RGBA, a palette, and 1-bit grayscale
+			final int[] rgba16 = new int[count * 4];
+			final int[] argb = new int[count];
+			final int[] fewColors = new int[count];
+			final int[] blackAndWhite = new int[count];
+			
+			for (int i = 0; i < rgba16.length; i++) {
+				rgba16[i] = random.nextInt(0x10000);
+			}
+			
+			for (int i = 0; i < count; i++) {
+				argb[i] = random.nextInt();
+				fewColors[i] = 0xFF000000 | (random.nextInt(5) * 0x331177);
+				blackAndWhite[i] = random.nextBoolean() ? 0xFFFFFFFF : 0xFF000000;
+			}
+			
+			assertRoundTrip(rgba16, size[0], size[1], ColorFormat.RGBA_16);
+			assertRoundTrip(argb, size[0], size[1], ColorFormat.ARGB_8888);
+			assertRoundTrip(fewColors, size[0], size[1], ColorFormat.ARGB_8888);
+			assertRoundTrip(blackAndWhite, size[0], size[1], ColorFormat.ARGB_8888);
+		}
+	}
+	
+	@Test
+	public void testParallel() throws IOException, DataFormatException {
+		final int width = 640;
+		final int height = 480;
+		final int[] pixels = new int[width * height];
+		
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				pixels[x + y * width] = (x * 0x010203) ^ (y * 0x030201) ^ ((x * y) << 24);
+			}
+		}
+		
+		System.out.println("A large interlaced image should be filtered in parallel and still decode correctly");
+		
+		final byte[] png = assertRoundTrip(pixels, width, height, ColorFormat.ARGB_8888);
+		final EncoderOptions threaded = OPTIONS.toBuilder().threads(4).blockSize(64 * 1024).build();
+		
+		assertArrayEquals(PngWriterTest.inflateIDAT(png, Integer.MAX_VALUE),
+				PngWriterTest.inflateIDAT(new Encoder(pixels, width, height, ColorFormat.ARGB_8888, threaded).encode(), Integer.MAX_VALUE));
+	}
+	
+	/**
+	 * Encodes an interlaced image with Encoder and ReusableEncoder, and checks that both decode to the original pixels.
+	 * 
+	 * @return the PNG encoded by Encoder
+	 */
+	private static byte[] assertRoundTrip(final int[] pixels, final int width, final int height, final ColorFormat format) throws IOException, DataFormatException {
+		final byte[] png = new Encoder(pixels, width, height, format, OPTIONS).encode();
+		
+		try (final PngReader reader = new PngReader(new ByteArrayInputStream(png), format)) {
+			assertTrue(reader.isInterlaced());
+		}
+		
+		assertArrayEquals(pixels, new Decoder(png).decode(format));
+		
+		try (final ReusableEncoder encoder = new ReusableEncoder(OPTIONS)) {
+			final byte[] reused = encoder.encode(pixels, width, height, format);
+			
+			assertArrayEquals(PngWriterTest.inflateIDAT(png, Integer.MAX_VALUE), PngWriterTest.inflateIDAT(reused, Integer.MAX_VALUE));
+			assertArrayEquals(pixels, new Decoder(reused).decode(format));
+		}
+		
+		return png;
+	}
+}
@@ -0,0 +1,61 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.functions.ParallelDeflater;
+
+public class ParallelDeflaterTest {
+	
+	@Test
+	public void test() throws DataFormatException {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try {
+			final byte[] data = new byte[100000];
+			
+			for (int i = 0; i < data.length; i++) {
+				// Mix of repetitive and random data so that blocks depend on their dictionaries
+				data[i] = (i % 3000 < 1500) ? (byte) (i % 97) : (byte)(Math.random() * 256);
+			}
+			
+			System.out.println("Blocks should inflate to the original data as a single zlib stream");
+			assertArrayEquals(data, inflate(new ParallelDeflater(executor, 4096).deflate(data)));
+			
+			System.out.println("A single block should inflate to the original data");
+			assertArrayEquals(data, inflate(new ParallelDeflater(executor, data.length, 9).deflate(data)));
+			
+			System.out.println("Empty data should produce a valid zlib stream");
+			assertArrayEquals(new byte[0], inflate(new ParallelDeflater(executor, 4096, 1).deflate(new byte[0])));
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Inflates a zlib stream. The Inflater verifies the zlib header and Adler-32 checksum.
+	 */
+	private byte[] inflate(final byte[] compressed) throws DataFormatException {
+		final Inflater inflater = new Inflater();
+		inflater.setInput(compressed);
+		
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		
+		while (!inflater.finished()) {
+			final int inflated = inflater.inflate(buffer);
+			out.write(buffer, 0, inflated);
+		}
+		
+		inflater.end();
+		
+		return out.toByteArray();
+	}
+}
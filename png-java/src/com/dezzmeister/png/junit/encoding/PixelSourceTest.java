@@ -0,0 +1,121 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.PngWriter;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.color.PixelSource;
+import com.dezzmeister.png.color.QueuedPixelSource;
+
+public class PixelSourceTest {
+	
+	private static final int WIDTH = 257;
+	
+	private static final int HEIGHT = 301;
+	
+	/**
+	 * Generates a pattern with a different color in every pixel
+	 */
+	private static final PixelSource PATTERN = (y, dst) -> {
+		for (int x = 0; x < WIDTH; x++) {
+			dst[x] = (x * 0x01020304) ^ (y * 0x04030201);
+		}
+	};
+	
+	@Test
+	public void test() throws IOException {
+		final int[] expected = new int[WIDTH * HEIGHT];
+		final int[] row = new int[WIDTH];
+		
+		for (int y = 0; y < HEIGHT; y++) {
+			PATTERN.fillRow(y, row);
+			System.arraycopy(row, 0, expected, y * WIDTH, WIDTH);
+		}
+		
+		System.out.println("Images pulled from a pixel source should decode to the generated pixels");
+		
+		assertArrayEquals(expected, new Decoder(new Encoder(PATTERN, WIDTH, HEIGHT, ColorFormat.ARGB_8888, EncoderOptions.DEFAULT).encode()).decode(ColorFormat.ARGB_8888));
+		
+		try (final ReusableEncoder encoder = new ReusableEncoder()) {
+			assertArrayEquals(expected, new Decoder(encoder.encode(PATTERN, WIDTH, HEIGHT, ColorFormat.ARGB_8888)).decode(ColorFormat.ARGB_8888));
+		}
+		
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		
+		try (final PngWriter writer = new PngWriter(stream, WIDTH, HEIGHT, ColorFormat.ARGB_8888)) {
+			writer.writeRow(expected);
+			writer.writeRows(PATTERN);
+		}
+		
+		assertArrayEquals(expected, new Decoder(stream.toByteArray()).decode(ColorFormat.ARGB_8888));
+	}
+	
+	@Test
+	public void testQueued() throws InterruptedException {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		System.out.println("A generator running on another thread should feed the encoder through a bounded queue");
+		
+		try (final ReusableEncoder encoder = new ReusableEncoder()) {
+			final byte[] expected = encoder.encode(PATTERN, WIDTH, HEIGHT, ColorFormat.ARGB_8888);
+			
+			for (final int capacity : new int[] {1, 4, HEIGHT * 2}) {
+				try (final QueuedPixelSource source = new QueuedPixelSource(PATTERN, WIDTH, HEIGHT, ColorFormat.ARGB_8888, capacity, executor)) {
+					assertArrayEquals(expected, encoder.encode(source, WIDTH, HEIGHT, ColorFormat.ARGB_8888));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void testErrors() throws InterruptedException {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final RuntimeException error = new RuntimeException("Generator failed");
+		
+		System.out.println("Generator failures should reach the encoder, and closing a queued source should stop its generator");
+		
+		try {
+			try (final QueuedPixelSource source = new QueuedPixelSource((y, dst) -> {
+				if (y == 10) {
+					throw error;
+				}
+			}, WIDTH, HEIGHT, ColorFormat.ARGB_8888, 2, executor)) {
+				new Encoder(source, WIDTH, HEIGHT, ColorFormat.ARGB_8888, EncoderOptions.DEFAULT);
+				fail("Expected an IllegalStateException");
+			} catch (IllegalStateException e) {
+				assertEquals(error, e.getCause());
+			}
+			
+			try (final QueuedPixelSource source = new QueuedPixelSource(PATTERN, WIDTH, HEIGHT, ColorFormat.ARGB_8888, 1, executor)) {
+				source.fillRow(0, new int[WIDTH]);
+				source.fillRow(2, new int[WIDTH]);
+				fail("Expected an IllegalStateException");
+			} catch (IllegalStateException e) {
+				// Rows must be read in order
+			}
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,105 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.PngEncodingService;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.color.ColorFormat;
+
+public class PngEncodingServiceTest {
+	
+	@Test
+	public void test() throws InterruptedException, ExecutionException {
+		final Random random = new Random(3);
+		final List<int[]> images = new ArrayList<int[]>();
+		final List<CompletableFuture<byte[]>> futures = new ArrayList<CompletableFuture<byte[]>>();
+		
+		System.out.println("Images submitted to an encoding service should be encoded like they would be with a ReusableEncoder");
+		
+		try (final PngEncodingService service = new PngEncodingService(EncoderOptions.DEFAULT, 3, 4)) {
+			for (int i = 0; i < 60; i++) {
+				final int[] pixels = new int[16 * 16];
+				
+				for (int j = 0; j < pixels.length; j++) {
+					pixels[j] = (i % 2 == 0) ? random.nextInt() : (0xFF000000 | random.nextInt(i + 1));
+				}
+				
+				images.add(pixels);
+				futures.add(service.submit(pixels, 16, 16, ColorFormat.ARGB_8888));
+			}
+			
+			try (final ReusableEncoder encoder = new ReusableEncoder()) {
+				for (int i = 0; i < images.size(); i++) {
+					assertArrayEquals(encoder.encode(images.get(i), 16, 16, ColorFormat.ARGB_8888), futures.get(i).get());
+				}
+			}
+			
+			final Map<String, Long> metrics = service.snapshot();
+			
+			assertEquals(60L, (long) metrics.get("png.service.submitted"));
+			assertEquals(60L, (long) metrics.get("png.service.completed"));
+			assertEquals(0L, (long) metrics.get("png.service.queue.depth"));
+			assertTrue(metrics.get("png.service.queue.peak") <= 3 + 4);
+			assertTrue(service.getThroughput() > 0);
+		}
+	}
+	
+	@Test
+	public void testBackpressure() throws InterruptedException, ExecutionException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final EncoderOptions options = EncoderOptions.builder().listener(stats -> {
+			started.countDown();
+			
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}).build();
+		final int[] pixels = new int[8 * 8];
+		
+		System.out.println("A full queue should turn away images, and failures should complete their futures exceptionally");
+		
+		try (final PngEncodingService service = new PngEncodingService(options, 1, 1)) {
+			final CompletableFuture<byte[]> first = service.submit(pixels, 8, 8, ColorFormat.ARGB_8888);
+			
+			started.await();
+			
+			final CompletableFuture<byte[]> second = service.trySubmit(pixels, 8, 8, ColorFormat.ARGB_8888);
+			
+			assertNotNull(second);
+			assertNull(service.trySubmit(pixels, 8, 8, ColorFormat.ARGB_8888));
+			assertEquals(1, service.getQueueDepth());
+			assertEquals(1L, (long) service.snapshot().get("png.service.rejected"));
+			
+			release.countDown();
+			assertArrayEquals(first.get(), second.get());
+			
+			try {
+				service.submit(pixels, 0, 8, ColorFormat.ARGB_8888).get();
+				fail("Expected an IllegalArgumentException");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+			
+			assertEquals(1L, (long) service.snapshot().get("png.service.failed"));
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.PngWriter;
+import com.dezzmeister.png.color.ColorFormat;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.Heuristic;
+import com.dezzmeister.png.functions.CRC;
+
+public class PngWriterTest {
+	
+	@Test
+	public void test() throws IOException, DataFormatException {
+		final int width = 61;
+		final int height = 47;
+		final int maxChunkLength = 256;
+		final int[] pixels = new int[width * height];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (int)(Math.random() * Integer.MAX_VALUE);
+		}
+		
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		
+		try (final PngWriter writer = new PngWriter(baos, width, height, ColorFormat.ARGB_8888, Filter.DYNAMIC, maxChunkLength)) {
+			for (int row = 0; row < height; row++) {
+				writer.writeRow(pixels, row * width);
+			}
+		}
+		
+		final byte[] streamed = baos.toByteArray();
+		final byte[] encoded = new Encoder(pixels, width, height, ColorFormat.ARGB_8888).encode();
+		
+		System.out.println("Streamed IDAT chunks should respect the maximum chunk length");
+		final byte[] streamedData = inflateIDAT(streamed, maxChunkLength);
+		
+		System.out.println("Streamed image data should match the data produced by Encoder");
+		assertArrayEquals(inflateIDAT(encoded, Integer.MAX_VALUE), streamedData);
+	}
+	
+	@Test
+	public void testUnlimitedChunkLength() throws IOException, DataFormatException {
+		final int width = 97;
+		final int height = 53;
+		final int[] pixels = new int[width * height];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xFF000000 | (i * 0x10305);
+		}
+		
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		
+		System.out.println("An unlimited chunk length should be an upper bound on IDAT chunks, not the size of a buffer");
+		
+		try (final PngWriter writer = new PngWriter(baos, width, height, ColorFormat.ARGB_8888, Filter.DYNAMIC, Heuristic.MINIMUM_SUM, EncoderOptions.UNLIMITED_CHUNK_LENGTH)) {
+			for (int row = 0; row < height; row++) {
+				writer.writeRow(pixels, row * width);
+			}
+		}
+		
+		final byte[] encoded = new Encoder(pixels, width, height, ColorFormat.ARGB_8888, EncoderOptions.builder().reduce(false).palette(false).build()).encode();
+		
+		assertArrayEquals(inflateIDAT(encoded, Integer.MAX_VALUE), inflateIDAT(baos.toByteArray(), EncoderOptions.DEFAULT_BUFFER_SIZE));
+	}
+	
+	/**
+	 * Checks every chunk's CRC, concatenates the IDAT chunks, and inflates them.
+	 */
+	static byte[] inflateIDAT(final byte[] png, final int maxChunkLength) throws DataFormatException {
+		final ByteBuffer in = ByteBuffer.wrap(png);
+		in.position(8);
+		
+		final ByteArrayOutputStream idat = new ByteArrayOutputStream();
+		String type;
+		
+		do {
+			final int length = in.getInt();
+			final int start = in.position();
+			final byte[] typeAndData = new byte[length + 4];
+			in.get(typeAndData);
+			
+			assertEquals((int) CRC.crc(typeAndData), in.getInt());
+			
+			type = new String(typeAndData, 0, 4, StandardCharsets.US_ASCII);
+			
+			if (type.equals("IDAT")) {
+				assertTrue(length <= maxChunkLength);
+				idat.write(png, start + 4, length);
+			}
+		} while (!type.equals("IEND"));
+		
+		final Inflater inflater = new Inflater();
+		inflater.setInput(idat.toByteArray());
+		
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		
+		while (!inflater.finished()) {
+			final int inflated = inflater.inflate(buffer);
+			out.write(buffer, 0, inflated);
+		}
+		
+		inflater.end();
+		
+		return out.toByteArray();
+	}
+}
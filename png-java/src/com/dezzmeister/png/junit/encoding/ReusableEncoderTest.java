@@ -0,0 +1,121 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.Encoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.EncoderPool;
+import com.dezzmeister.png.ReusableEncoder;
+import com.dezzmeister.png.color.ColorFormat;
+
+public class ReusableEncoderTest {
+	
+	@Test
+	public void test() throws DataFormatException {
+		final int[][] sizes = {{64, 48}, {13, 200}, {64, 48}, {1, 1}, {300, 7}};
+		final EncoderOptions options = EncoderOptions.builder().maxChunkLength(777).build();
+		
+		System.out.println("A reused encoder should produce the same image data as Encoder for every image");
+		
+		try (final ReusableEncoder encoder = new ReusableEncoder(options)) {
+			for (final int[] size : sizes) {
+				final int[] pixels = TestPixels.randomPixels(size[0] * size[1], 3);
+				final byte[] png = encoder.encode(pixels, size[0], size[1], ColorFormat.ARGB_8888);
+				final byte[] expected = new Encoder(pixels, size[0], size[1], ColorFormat.ARGB_8888).encode();
+				
+				assertArrayEquals(PngWriterTest.inflateIDAT(expected, Integer.MAX_VALUE), PngWriterTest.inflateIDAT(png, 777));
+				assertArrayEquals(pixels, new Decoder(png).decode(ColorFormat.ARGB_8888));
+			}
+			
+			final int[] rgb = TestPixels.randomPixels(40 * 30, 1);
+			
+			for (int i = 0; i < rgb.length; i++) {
+				rgb[i] &= 0xFFFFFF;
+			}
+			
+			assertArrayEquals(rgb, new Decoder(encoder.encode(rgb, 40, 30, ColorFormat.RGB_888)).decode(ColorFormat.RGB_888));
+		}
+	}
+	
+	@Test
+	public void testPool() throws InterruptedException, ExecutionException {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		System.out.println("Pooled and thread-local encoders should encode images correctly from several threads");
+		
+		try (final EncoderPool pool = new EncoderPool(EncoderOptions.DEFAULT, 2)) {
+			final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			
+			for (int i = 0; i < 32; i++) {
+				final boolean threadLocal = (i % 2 == 0);
+				final int width = 10 + i;
+				
+				results.add(executor.submit(() -> {
+					final int[] pixels = TestPixels.randomPixels(width * 20, 3);
+					final byte[] png = threadLocal ? pool.forCurrentThread().encode(pixels, width, 20, ColorFormat.ARGB_8888) : pool.encode(pixels, width, 20, ColorFormat.ARGB_8888);
+					
+					assertArrayEquals(pixels, new Decoder(png).decode(ColorFormat.ARGB_8888));
+					return true;
+				}));
+			}
+			
+			for (final Future<Boolean> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testThreadEncoders() throws InterruptedException {
+		final ReusableEncoder[] ended = new ReusableEncoder[1];
+		final EncoderPool pool = new EncoderPool(EncoderOptions.DEFAULT, 0);
+		final Thread thread = new Thread(() -> ended[0] = pool.forCurrentThread());
+		
+		System.out.println("The encoders of threads that have ended should be closed when another thread's encoder is created");
+		
+		thread.start();
+		thread.join();
+		
+		final ReusableEncoder current = pool.forCurrentThread();
+		
+		assertSame(current, pool.forCurrentThread());
+		
+		try {
+			ended[0].encode(new int[1], 1, 1, ColorFormat.ARGB_8888);
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException e) {
+			// The ended thread's encoder was closed
+		}
+		
+		pool.close();
+		
+		try {
+			pool.forCurrentThread();
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException e) {
+			// The pool is closed
+		}
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testClosed() {
+		final ReusableEncoder encoder = new ReusableEncoder();
+		encoder.close();
+		encoder.encode(new int[1], 1, 1, ColorFormat.ARGB_8888);
+	}
+}
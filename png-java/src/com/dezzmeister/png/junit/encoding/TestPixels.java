@@ -0,0 +1,35 @@
+package com.dezzmeister.png.junit.encoding;
+
+import java.util.Random;
+
+/**
+ * Pixels shared by the encoding tests. They are generated from a seed, so every run encodes the same pixels and a failure can
+ * be reproduced.
+ * 
+ * @author Joe Desmond
+ */
+final class TestPixels {
+	
+	private TestPixels() {
+		
+	}
+	
+	/**
+	 * Returns ARGB pixels in which every <code>noiseInterval</code>th pixel is a random color and the rest are an opaque ramp. The
+	 * random colors are seeded with <code>count</code>.
+	 * 
+	 * @param count number of pixels
+	 * @param noiseInterval distance between random pixels; 1 makes every pixel random
+	 * @return pixels
+	 */
+	static int[] randomPixels(final int count, final int noiseInterval) {
+		final Random random = new Random(count);
+		final int[] pixels = new int[count];
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (i % noiseInterval == 0) ? random.nextInt() : (0xFF000000 | (i * 31));
+		}
+		
+		return pixels;
+	}
+}
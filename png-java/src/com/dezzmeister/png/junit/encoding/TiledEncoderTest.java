@@ -0,0 +1,147 @@
+package com.dezzmeister.png.junit.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.Decoder;
+import com.dezzmeister.png.EncoderOptions;
+import com.dezzmeister.png.TiledEncoder;
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.color.ColorFormat;
+
+public class TiledEncoderTest {
+	
+	private static final int WIDTH = 250;
+	
+	private static final int HEIGHT = 170;
+	
+	private static final int TILE_WIDTH = 64;
+	
+	private static final int TILE_HEIGHT = 48;
+	
+	@Test
+	public void test() throws Exception {
+		final int[] pixels = new int[WIDTH * HEIGHT];
+		final Random random = new Random(23);
+		
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (i % 5 == 0) ? random.nextInt() : (i * 0x010307);
+		}
+		
+		final ExecutorService producers = Executors.newFixedThreadPool(4);
+		final ExecutorService workers = Executors.newFixedThreadPool(3);
+		
+		System.out.println("Tiles added from several threads in any order should be stitched into one PNG");
+		
+		try {
+			for (final int maxPendingBands : new int[] {1, 2, 4}) {
+				for (final EncoderOptions options : new EncoderOptions[] {EncoderOptions.DEFAULT, EncoderOptions.builder().maxChunkLength(100).level(1).build()}) {
+					final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+					
+					try (final TiledEncoder encoder = new TiledEncoder(stream, WIDTH, HEIGHT, ColorFormat.ARGB_8888, TILE_WIDTH, TILE_HEIGHT, maxPendingBands, workers, options)) {
+						final List<Future<?>> futures = new ArrayList<Future<?>>();
+						
+						// Each producer adds one column of tiles from top to bottom, so every band is eventually filled
+						
+						final List<Integer> columns = new ArrayList<Integer>();
+						
+						for (int column = 0; column * TILE_WIDTH < WIDTH; column++) {
+							columns.add(column);
+						}
+						
+						Collections.shuffle(columns, random);
+						
+						for (final int column : columns) {
+							futures.add(producers.submit(() -> {
+								for (int row = 0; row * TILE_HEIGHT < HEIGHT; row++) {
+									encoder.putTile(column, row, tile(pixels, column, row));
+								}
+								
+								return null;
+							}));
+						}
+						
+						for (final Future<?> future : futures) {
+							future.get();
+						}
+						
+						encoder.finish();
+					}
+					
+					assertArrayEquals(pixels, new Decoder(stream.toByteArray()).decode(ColorFormat.ARGB_8888));
+				}
+			}
+		} finally {
+			producers.shutdown();
+			workers.shutdown();
+		}
+		
+		assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void testErrors() throws IOException {
+		final ExecutorService workers = Executors.newSingleThreadExecutor();
+		final int[] pixels = new int[WIDTH * HEIGHT];
+		
+		System.out.println("Tiles that are missing, added twice, outside of the image, or the wrong size should be rejected");
+		
+		try (final TiledEncoder encoder = new TiledEncoder(new ByteArrayOutputStream(), WIDTH, HEIGHT, ColorFormat.ARGB_8888, TILE_WIDTH, TILE_HEIGHT, 4, workers, EncoderOptions.DEFAULT)) {
+			encoder.putTile(0, 0, tile(pixels, 0, 0));
+			
+			assertThrows(() -> encoder.putTile(0, 0, tile(pixels, 0, 0)), IllegalArgumentException.class);
+			assertThrows(() -> encoder.putTile(4, 0, tile(pixels, 3, 0)), IllegalArgumentException.class);
+			assertThrows(() -> encoder.putTile(3, 0, tile(pixels, 2, 0)), IllegalArgumentException.class);
+			assertThrows(() -> encoder.finish(), IllegalStateException.class);
+		} finally {
+			workers.shutdown();
+		}
+		
+		assertThrows(() -> ColorType.RGB_ALPHA.getScanlineLength(Integer.MAX_VALUE, 16), IllegalArgumentException.class);
+	}
+	
+	/**
+	 * Copies one tile out of the whole image.
+	 */
+	private static int[] tile(final int[] pixels, final int column, final int row) {
+		final int x = column * TILE_WIDTH;
+		final int y = row * TILE_HEIGHT;
+		final int tileWidth = Math.min(TILE_WIDTH, WIDTH - x);
+		final int tileHeight = Math.min(TILE_HEIGHT, HEIGHT - y);
+		final int[] tile = new int[tileWidth * tileHeight];
+		
+		for (int i = 0; i < tileHeight; i++) {
+			System.arraycopy(pixels, (y + i) * WIDTH + x, tile, i * tileWidth, tileWidth);
+		}
+		
+		return tile;
+	}
+	
+	private static void assertThrows(final ThrowingRunnable runnable, final Class<? extends Exception> expected) {
+		try {
+			runnable.run();
+			fail("Expected " + expected.getSimpleName());
+		} catch (Exception e) {
+			assertTrue("Expected " + expected.getSimpleName() + " but got " + e, expected.isInstance(e));
+		}
+	}
+	
+	@FunctionalInterface
+	private interface ThrowingRunnable {
+		void run() throws Exception;
+	}
+}
@@ -46,6 +46,21 @@ public class AverageFilterTest {
 		}		
 	}
 	
+	@Test
+	public void testUnsignedAverage() {
+		final byte[] prevLine = {(byte) 0xFF, (byte) 0xF0};
+		final byte[] thisLine = {(byte) 0x80, (byte) 0x81};
+		
+		// 0x80 - ((0x00 + 0xFF) / 2) = 0x01 and 0x81 - ((0x80 + 0xF0) / 2) = 0xC9
+		System.out.println("Average filter should treat samples as unsigned");
+		assertArrayEquals(new byte[] {0x01, (byte) 0xC9}, filter.applyFilter(prevLine, thisLine, 1));
+		
+		System.out.println("Average filter should write into the given array at the given offset");
+		final byte[] out = new byte[4];
+		filter.applyFilter(prevLine, thisLine, 1, out, 2);
+		assertArrayEquals(new byte[] {0x00, 0x00, 0x01, (byte) 0xC9}, out);
+	}
+	
 	private byte[][] applyFilter(final byte[][] scanlines, final int bytesPerPixel) {
 		final byte[][] out = new byte[scanlines.length][scanlines[0].length];
 		
@@ -0,0 +1,53 @@
+package com.dezzmeister.png.junit.filters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.Heuristic;
+import com.dezzmeister.png.filters.LineFilter;
+
+public class HeuristicTest {
+	
+	@Test
+	public void test() {
+		
+		// Simulate RGB pixels
+		final int bytesPerPixel = 3;
+		final int height = 48;
+		final int width = 200;
+		
+		final byte[][] scanlines = new byte[height][width * bytesPerPixel];
+		
+		for (int line = 0; line < height; line++) {
+			final boolean noisy = (line % 5 == 0);
+			
+			for (int i = 0; i < scanlines[line].length; i++) {
+				scanlines[line][i] = noisy ? (byte)(Math.random() * 256) : (byte) (line * 3 + (i / bytesPerPixel));
+			}
+		}
+		
+		for (final Heuristic heuristic : Heuristic.values()) {
+			final LineFilter lineFilter = new LineFilter(ColorType.RGB, (byte) 8, Filter.DYNAMIC, heuristic.newStrategy());
+			final byte[] out = new byte[width * bytesPerPixel + 1];
+			
+			System.out.println(heuristic + " should produce lines that can be unfiltered with the chosen filter");
+			
+			for (int line = 0; line < height; line++) {
+				final byte[] prevLine = (line == 0) ? null : scanlines[line - 1];
+				final Filter chosen = lineFilter.filter(prevLine, scanlines[line], out, 0);
+				
+				assertTrue(chosen != Filter.DYNAMIC);
+				
+				final byte[] filtered = new byte[out.length - 1];
+				System.arraycopy(out, 1, filtered, 0, filtered.length);
+				assertArrayEquals(scanlines[line], Filter.getFilter(out[0]).filterFunction().removeFilter(prevLine, filtered, bytesPerPixel));
+			}
+			
+			lineFilter.end();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.dezzmeister.png.junit.filters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.chunks.meta.ColorType;
+import com.dezzmeister.png.filters.Filter;
+import com.dezzmeister.png.filters.Heuristic;
+import com.dezzmeister.png.filters.LineFilter;
+
+public class LineFilterTest {
+	private static final Filter[] CANDIDATES = {Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE, Filter.PAETH};
+	
+	@Test
+	public void test() {
+		
+		// Simulate RGBA pixels
+		final int bytesPerPixel = 4;
+		final int height = 64;
+		final int width = 300;
+		
+		final byte[][] scanlines = new byte[height][width * bytesPerPixel];
+		
+		for (int line = 0; line < height; line++) {
+			final boolean noisy = (line % 3 == 0);
+			
+			for (int i = 0; i < scanlines[line].length; i++) {
+				scanlines[line][i] = noisy ? (byte)(Math.random() * 256) : (byte) (line + (i / bytesPerPixel));
+			}
+		}
+		
+		final LineFilter lineFilter = new LineFilter(ColorType.RGB_ALPHA, (byte) 8, Filter.DYNAMIC, Heuristic.MINIMUM_SUM.newStrategy());
+		final byte[] out = new byte[width * bytesPerPixel + 1];
+		
+		System.out.println("Dynamic filter should pick the filter with the minimum sum of absolute differences");
+		
+		for (int line = 0; line < height; line++) {
+			final byte[] prevLine = (line == 0) ? null : scanlines[line - 1];
+			final Filter chosen = lineFilter.filter(prevLine, scanlines[line], out, 0);
+			final Filter expected = bruteForce(prevLine, scanlines[line], bytesPerPixel);
+			
+			assertEquals(expected, chosen);
+			assertEquals(expected.typeCode, out[0]);
+			
+			final byte[] filtered = new byte[out.length - 1];
+			System.arraycopy(out, 1, filtered, 0, filtered.length);
+			assertArrayEquals(expected.filterFunction().applyFilter(prevLine, scanlines[line], bytesPerPixel), filtered);
+		}
+	}
+	
+	private Filter bruteForce(final byte[] prevLine, final byte[] thisLine, final int bytesPerPixel) {
+		Filter best = null;
+		int bestSum = Integer.MAX_VALUE;
+		
+		for (final Filter filter : CANDIDATES) {
+			final byte[] filtered = filter.filterFunction().applyFilter(prevLine, thisLine, bytesPerPixel);
+			int sum = 0;
+			
+			for (final byte b : filtered) {
+				sum += Math.abs(b);
+			}
+			
+			if (sum < bestSum) {
+				best = filter;
+				bestSum = sum;
+			}
+		}
+		
+		return best;
+	}
+}
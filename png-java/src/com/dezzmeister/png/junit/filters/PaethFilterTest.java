@@ -1,6 +1,7 @@
 package com.dezzmeister.png.junit.filters;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
 import java.util.Arrays;
@@ -46,6 +47,37 @@ public class PaethFilterTest {
 		}		
 	}
 	
+	@Test
+	public void testPredictor() {
+		System.out.println("Branch-free predictor should match the predictor in the PNG specification");
+		
+		for (int a = 0; a < 256; a++) {
+			for (int b = 0; b < 256; b++) {
+				for (int c = 0; c < 256; c++) {
+					assertEquals(referencePredictor(a, b, c), PaethFilter.predict(a, b, c));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The Paeth predictor, as written in the PNG specification
+	 */
+	private static int referencePredictor(final int a, final int b, final int c) {
+		final int p = a + b - c;
+		final int pa = Math.abs(p - a);
+		final int pb = Math.abs(p - b);
+		final int pc = Math.abs(p - c);
+		
+		if (pa <= pb && pa <= pc) {
+			return a;
+		} else if (pb <= pc) {
+			return b;
+		} else {
+			return c;
+		}
+	}
+	
 	private byte[][] applyFilter(final byte[][] scanlines, final int bytesPerPixel) {
 		final byte[][] out = new byte[scanlines.length][scanlines[0].length];
 		
@@ -0,0 +1,62 @@
+package com.dezzmeister.png.junit.functions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import com.dezzmeister.png.functions.CRC;
+
+public class CRCTest {
+	
+	@Test
+	public void test() {
+		final Random random = new Random(8);
+		final byte[] data = new byte[1000];
+		random.nextBytes(data);
+		
+		System.out.println("Slice-by-8 CRC should match java.util.zip.CRC32 for every offset and length");
+		
+		for (int offset = 0; offset < 9; offset++) {
+			for (int length = 0; length < 70; length++) {
+				final CRC crc = new CRC();
+				final CRC32 expected = new CRC32();
+				
+				crc.update(data, offset, length);
+				expected.update(data, offset, length);
+				
+				assertEquals(expected.getValue(), crc.getValue());
+			}
+		}
+		
+		System.out.println("CRC should be the same when updated in pieces and from ByteBuffers");
+		final CRC32 expected = new CRC32();
+		expected.update(data);
+		
+		final CRC pieces = new CRC();
+		pieces.update(data, 0, 13);
+		pieces.update(data[13]);
+		pieces.update(ByteBuffer.wrap(data, 14, 500));
+		
+		final ByteBuffer direct = ByteBuffer.allocateDirect(data.length - 514);
+		direct.put(data, 514, data.length - 514).flip();
+		pieces.update(direct);
+		
+		assertEquals(expected.getValue(), pieces.getValue());
+		
+		System.out.println("Both implementations should give the known CRC of an IEND chunk");
+		final byte[] iend = "IEND".getBytes(StandardCharsets.US_ASCII);
+		
+		for (final CRC.Implementation implementation : CRC.Implementation.values()) {
+			CRC.setImplementation(implementation);
+			assertEquals(0xAE426082L, CRC.crc(iend));
+		}
+		
+		CRC.setImplementation(CRC.Implementation.ZIP);
+		assertEquals(0xAE426082L, CRC.updateCRC(0xFFFFFFFFL, iend) ^ 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,24 @@
+package com.dezzmeister.png.metrics;
+
+import com.dezzmeister.png.EncoderOptions;
+
+/**
+ * Receives the {@link EncodeStats} of every image encoded with a set of {@link EncoderOptions}. A listener is set with
+ * {@link EncoderOptions.Builder#listener(EncodeListener)}; when there is no listener, encoders do not time anything or count anything.
+ * <p>
+ * The listener is called on the thread that encoded the image, once the image has been encoded. Several encoders can share the same options,
+ * so a listener may be called from several threads at once. {@link MetricsRegistry} is a listener that adds up the stats of every image.
+ * 
+ * @author Joe Desmond
+ * @see MetricsRegistry
+ */
+@FunctionalInterface
+public interface EncodeListener {
+	
+	/**
+	 * Called after an image has been encoded.
+	 * 
+	 * @param stats timings and byte counts of the image; these do not change after this method is called
+	 */
+	void encoded(EncodeStats stats);
+}
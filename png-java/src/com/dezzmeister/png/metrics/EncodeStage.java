@@ -0,0 +1,29 @@
+package com.dezzmeister.png.metrics;
+
+/**
+ * Stages of encoding a PNG that are timed by {@link EncodeStats}.
+ * 
+ * @author Joe Desmond
+ */
+public enum EncodeStage {
+	
+	/**
+	 * Converting pixels to PNG scanlines, including finding the smallest color type and bit depth or palette for the image
+	 */
+	CONVERT,
+	
+	/**
+	 * Choosing filters and filtering scanlines
+	 */
+	FILTER,
+	
+	/**
+	 * Compressing the filtered scanlines
+	 */
+	DEFLATE,
+	
+	/**
+	 * Computing the CRCs of the IDAT chunks
+	 */
+	CRC
+}
@@ -0,0 +1,222 @@
+package com.dezzmeister.png.metrics;
+
+import java.util.Locale;
+
+import com.dezzmeister.png.filters.Filter;
+
+/**
+ * Timings and byte counts of one encoded image. Encoders create an EncodeStats for each image when their options have an
+ * {@link EncodeListener}, fill it in as the image is encoded, and give it to the listener. Each {@link EncodeStage} is timed with
+ * {@link System#nanoTime()}; stages that run on several threads (such as filtering a large image) are timed by wall clock, not CPU time.
+ * <p>
+ * Encoders pass null instead of an EncodeStats when there is no listener. {@link #start(EncodeStats)} and {@link #record(EncodeStats, EncodeStage, long)}
+ * do nothing when given null, so that timing code costs no more than a null check when it is disabled.
+ * <p>
+ * An EncodeStats is not thread safe; it should only be updated by the thread encoding the image.
+ * 
+ * @author Joe Desmond
+ */
+public class EncodeStats {
+	
+	private static final EncodeStage[] STAGES = EncodeStage.values();
+	
+	private static final Filter[] FILTERS = Filter.values();
+	
+	/**
+	 * Nanoseconds spent in each stage, indexed by ordinal
+	 */
+	private final long[] nanos = new long[STAGES.length];
+	
+	/**
+	 * Number of rows filtered with each filter, indexed by ordinal
+	 */
+	private final long[] filterCounts = new long[FILTERS.length];
+	
+	private long rawBytes = 0;
+	
+	private long filteredBytes = 0;
+	
+	private long compressedBytes = 0;
+	
+	private long pngBytes = 0;
+	
+	/**
+	 * Returns the current time, if <code>stats</code> is not null. This is the start time to give to {@link #record(EncodeStats, EncodeStage, long)}.
+	 * 
+	 * @param stats stats of the image being encoded, or null
+	 * @return {@link System#nanoTime()}, or 0 if <code>stats</code> is null
+	 */
+	public static long start(final EncodeStats stats) {
+		return (stats == null) ? 0 : System.nanoTime();
+	}
+	
+	/**
+	 * Adds the time since <code>start</code> to a stage, if <code>stats</code> is not null. The current time is returned, so
+	 * it can be used as the start of the next stage.
+	 * 
+	 * @param stats stats of the image being encoded, or null
+	 * @param stage stage that started at <code>start</code>
+	 * @param start start time from {@link #start(EncodeStats)}
+	 * @return {@link System#nanoTime()}, or 0 if <code>stats</code> is null
+	 */
+	public static long record(final EncodeStats stats, final EncodeStage stage, final long start) {
+		if (stats == null) {
+			return 0;
+		}
+		
+		final long now = System.nanoTime();
+		stats.nanos[stage.ordinal()] += now - start;
+		
+		return now;
+	}
+	
+	/**
+	 * Counts rows that were filtered with each filter.
+	 * 
+	 * @param counts number of rows for each filter, indexed by {@link Filter#ordinal()}
+	 */
+	public void addFilterCounts(final int[] counts) {
+		for (int i = 0; i < counts.length; i++) {
+			filterCounts[i] += counts[i];
+		}
+	}
+	
+	/**
+	 * Counts one row that was filtered with the given filter.
+	 * 
+	 * @param filter filter that was applied to the row
+	 */
+	public void addFilter(final Filter filter) {
+		filterCounts[filter.ordinal()]++;
+	}
+	
+	/**
+	 * Adds to the number of bytes of unfiltered scanlines.
+	 * 
+	 * @param bytes number of bytes
+	 */
+	public void addRawBytes(final long bytes) {
+		rawBytes += bytes;
+	}
+	
+	/**
+	 * Adds to the number of bytes of filtered scanlines, including filter type codes.
+	 * 
+	 * @param bytes number of bytes
+	 */
+	public void addFilteredBytes(final long bytes) {
+		filteredBytes += bytes;
+	}
+	
+	/**
+	 * Adds to the number of bytes of compressed image data.
+	 * 
+	 * @param bytes number of bytes
+	 */
+	public void addCompressedBytes(final long bytes) {
+		compressedBytes += bytes;
+	}
+	
+	/**
+	 * Adds to the number of bytes in the PNG file.
+	 * 
+	 * @param bytes number of bytes
+	 */
+	public void addPngBytes(final long bytes) {
+		pngBytes += bytes;
+	}
+	
+	/**
+	 * Returns the nanoseconds spent in the given stage.
+	 * 
+	 * @param stage encoding stage
+	 * @return nanoseconds spent in <code>stage</code>
+	 */
+	public long getNanos(final EncodeStage stage) {
+		return nanos[stage.ordinal()];
+	}
+	
+	/**
+	 * Returns the nanoseconds spent in every stage.
+	 * 
+	 * @return total nanoseconds
+	 */
+	public long getTotalNanos() {
+		long total = 0;
+		
+		for (final long stageNanos : nanos) {
+			total += stageNanos;
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * Returns the number of rows that were filtered with the given filter. When the filter is {@link Filter#DYNAMIC}, this is the number
+	 * of rows for which the filter was chosen. Otherwise every row is counted with the one filter. {@link Filter#DYNAMIC} itself always has
+	 * a count of zero.
+	 * 
+	 * @param filter a filter
+	 * @return number of rows filtered with <code>filter</code>
+	 */
+	public long getFilterCount(final Filter filter) {
+		return filterCounts[filter.ordinal()];
+	}
+	
+	/**
+	 * Returns the number of bytes of unfiltered scanlines.
+	 * 
+	 * @return raw image data bytes
+	 */
+	public long getRawBytes() {
+		return rawBytes;
+	}
+	
+	/**
+	 * Returns the number of bytes of filtered scanlines, including the filter type code at the start of each line. This is the
+	 * number of bytes that were compressed.
+	 * 
+	 * @return filtered image data bytes
+	 */
+	public long getFilteredBytes() {
+		return filteredBytes;
+	}
+	
+	/**
+	 * Returns the number of bytes of compressed image data (the zlib stream split across the IDAT chunks).
+	 * 
+	 * @return compressed image data bytes
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes;
+	}
+	
+	/**
+	 * Returns the number of bytes in the PNG file, including the signature and every chunk.
+	 * 
+	 * @return PNG file bytes
+	 */
+	public long getPngBytes() {
+		return pngBytes;
+	}
+	
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("EncodeStats[");
+		
+		for (final EncodeStage stage : STAGES) {
+			sb.append(stage.name().toLowerCase(Locale.ROOT)).append('=').append(nanos[stage.ordinal()] / 1000).append("us, ");
+		}
+		
+		sb.append("raw=").append(rawBytes).append(", filtered=").append(filteredBytes);
+		sb.append(", compressed=").append(compressedBytes).append(", png=").append(pngBytes);
+		
+		for (final Filter filter : FILTERS) {
+			if (filterCounts[filter.ordinal()] != 0) {
+				sb.append(", ").append(filter.name().toLowerCase(Locale.ROOT)).append('=').append(filterCounts[filter.ordinal()]);
+			}
+		}
+		
+		return sb.append(']').toString();
+	}
+}
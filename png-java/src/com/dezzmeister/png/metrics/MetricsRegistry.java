@@ -0,0 +1,130 @@
+package com.dezzmeister.png.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dezzmeister.png.filters.Filter;
+
+/**
+ * An {@link EncodeListener} that adds up the {@link EncodeStats} of every image it receives. A MetricsRegistry is thread safe, so
+ * it can be shared by encoders on any number of threads, and it can be read at any time with {@link #snapshot()}:
+ * 
+ * <pre>
+ * final MetricsRegistry metrics = new MetricsRegistry();
+ * final EncoderOptions options = EncoderOptions.builder().listener(metrics).build();
+ * ...
+ * final long pngBytes = metrics.snapshot().get("png.bytes.png");
+ * </pre>
+ * 
+ * Metric names are listed in {@link #snapshot()}.
+ * 
+ * @author Joe Desmond
+ */
+public class MetricsRegistry implements EncodeListener {
+	
+	private static final EncodeStage[] STAGES = EncodeStage.values();
+	
+	private static final Filter[] FILTERS = Filter.values();
+	
+	private final LongAdder images = new LongAdder();
+	
+	private final LongAdder[] nanos = adders(STAGES.length);
+	
+	private final LongAdder[] filterCounts = adders(FILTERS.length);
+	
+	private final LongAdder rawBytes = new LongAdder();
+	
+	private final LongAdder filteredBytes = new LongAdder();
+	
+	private final LongAdder compressedBytes = new LongAdder();
+	
+	private final LongAdder pngBytes = new LongAdder();
+	
+	private static LongAdder[] adders(final int count) {
+		final LongAdder[] out = new LongAdder[count];
+		
+		for (int i = 0; i < count; i++) {
+			out[i] = new LongAdder();
+		}
+		
+		return out;
+	}
+	
+	@Override
+	public void encoded(final EncodeStats stats) {
+		images.increment();
+		
+		for (final EncodeStage stage : STAGES) {
+			nanos[stage.ordinal()].add(stats.getNanos(stage));
+		}
+		
+		for (final Filter filter : FILTERS) {
+			filterCounts[filter.ordinal()].add(stats.getFilterCount(filter));
+		}
+		
+		rawBytes.add(stats.getRawBytes());
+		filteredBytes.add(stats.getFilteredBytes());
+		compressedBytes.add(stats.getCompressedBytes());
+		pngBytes.add(stats.getPngBytes());
+	}
+	
+	/**
+	 * Returns the current value of every metric. The metrics are:
+	 * <ul>
+	 * <li><code>png.images</code>: number of images encoded</li>
+	 * <li><code>png.nanos.convert</code>, <code>png.nanos.filter</code>, <code>png.nanos.deflate</code>, <code>png.nanos.crc</code>:
+	 * nanoseconds spent in each {@link EncodeStage}</li>
+	 * <li><code>png.bytes.raw</code>, <code>png.bytes.filtered</code>, <code>png.bytes.compressed</code>, <code>png.bytes.png</code>:
+	 * bytes of unfiltered scanlines, filtered scanlines, compressed image data, and PNG files</li>
+	 * <li><code>png.rows.none</code>, <code>png.rows.sub</code>, <code>png.rows.up</code>, <code>png.rows.average</code>,
+	 * <code>png.rows.paeth</code>: rows filtered with each filter</li>
+	 * </ul>
+	 * Metrics are read one at a time while other threads may be adding to them, so a snapshot taken during encoding may include
+	 * part of an image's stats.
+	 * 
+	 * @return metric names and values, in the order above
+	 */
+	public Map<String, Long> snapshot() {
+		final Map<String, Long> out = new LinkedHashMap<String, Long>();
+		
+		out.put("png.images", images.sum());
+		
+		for (final EncodeStage stage : STAGES) {
+			out.put("png.nanos." + stage.name().toLowerCase(Locale.ROOT), nanos[stage.ordinal()].sum());
+		}
+		
+		out.put("png.bytes.raw", rawBytes.sum());
+		out.put("png.bytes.filtered", filteredBytes.sum());
+		out.put("png.bytes.compressed", compressedBytes.sum());
+		out.put("png.bytes.png", pngBytes.sum());
+		
+		for (final Filter filter : FILTERS) {
+			if (filter != Filter.DYNAMIC) {
+				out.put("png.rows." + filter.name().toLowerCase(Locale.ROOT), filterCounts[filter.ordinal()].sum());
+			}
+		}
+		
+		return out;
+	}
+	
+	/**
+	 * Sets every metric back to zero.
+	 */
+	public void reset() {
+		images.reset();
+		rawBytes.reset();
+		filteredBytes.reset();
+		compressedBytes.reset();
+		pngBytes.reset();
+		
+		for (final LongAdder adder : nanos) {
+			adder.reset();
+		}
+		
+		for (final LongAdder adder : filterCounts) {
+			adder.reset();
+		}
+	}
+}